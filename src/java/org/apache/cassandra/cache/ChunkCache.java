@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.Iterators;
+import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.metrics.CacheMetrics;
+
+/**
+ * An off-heap cache of decompressed chunks of compressed sstables, keyed by data file path and chunk offset, so
+ * that repeated reads of hot chunks pay a memory copy rather than a decompression.
+ *
+ * Eviction follows W-TinyLFU (Einziger et al., "TinyLFU: A Highly Efficient Cache Admission Policy"): new chunks
+ * enter a small LRU window; chunks evicted from the window are only admitted into the main LRU region if they
+ * have been accessed more frequently, according to a {@link FrequencySketch}, than the main region's eviction
+ * victim. This keeps one-off scans (compaction, repair, large range reads) from flushing out hot chunks.
+ *
+ * Chunks are held in reference-counted native memory, so a chunk evicted while being copied out stays valid
+ * until the copy completes. The offsets of the cached chunks are also indexed by file, so that the chunks of a
+ * released file are dropped without scanning the whole cache.
+ */
+public class ChunkCache implements ICache<ChunkCache.Key, RefCountedMemory>
+{
+    private static final Logger logger = LoggerFactory.getLogger(ChunkCache.class);
+
+    // the share of the capacity given to the admission window
+    private static final double WINDOW_RATIO = 0.01;
+    private static final int EXPECTED_CHUNK_SIZE = 65536;
+
+    public static final ChunkCache instance = create(DatabaseDescriptor.getChunkCacheSizeInMB() * 1024L * 1024L);
+
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> window;
+    private final ConcurrentLinkedHashMap<Key, RefCountedMemory> main;
+    private final FrequencySketch sketch;
+    // the offsets of the chunks cached for each file, possibly along with a few since evicted
+    private final ConcurrentMap<String, Set<Long>> offsetsByFile = new ConcurrentHashMap<>();
+    public final CacheMetrics metrics;
+
+    /**
+     * @return a chunk cache of the provided capacity in bytes, or null if the capacity is 0
+     */
+    private static ChunkCache create(long capacity)
+    {
+        if (capacity <= 0)
+            return null;
+
+        logger.info("Initializing chunk cache with capacity of {} MBs.", capacity / (1024 * 1024));
+        return new ChunkCache(capacity);
+    }
+
+    ChunkCache(long capacity)
+    {
+        long windowCapacity = Math.max(1, (long) (capacity * WINDOW_RATIO));
+        EntryWeigher<Key, RefCountedMemory> weigher = new EntryWeigher<Key, RefCountedMemory>()
+        {
+            public int weightOf(Key key, RefCountedMemory value)
+            {
+                return (int) value.size();
+            }
+        };
+
+        main = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+               .weigher(weigher)
+               .maximumWeightedCapacity(capacity - windowCapacity)
+               .concurrencyLevel(ConcurrentLinkedHashCache.DEFAULT_CONCURENCY_LEVEL)
+               .listener(new EvictionListener<Key, RefCountedMemory>()
+               {
+                   public void onEviction(Key key, RefCountedMemory value)
+                   {
+                       release(key, value);
+                   }
+               })
+               .build();
+
+        window = new ConcurrentLinkedHashMap.Builder<Key, RefCountedMemory>()
+                 .weigher(weigher)
+                 .maximumWeightedCapacity(windowCapacity)
+                 .concurrencyLevel(ConcurrentLinkedHashCache.DEFAULT_CONCURENCY_LEVEL)
+                 .listener(new EvictionListener<Key, RefCountedMemory>()
+                 {
+                     public void onEviction(Key key, RefCountedMemory value)
+                     {
+                         admit(key, value);
+                     }
+                 })
+                 .build();
+
+        sketch = new FrequencySketch(capacity / EXPECTED_CHUNK_SIZE);
+        metrics = new CacheMetrics("ChunkCache", this);
+    }
+
+    /**
+     * Copies the cached content of the chunk starting at the provided (compressed) offset of the file into the
+     * target, from position 0, setting the target's limit to the chunk length.
+     *
+     * @return true if the chunk was cached, false if the target was left untouched
+     */
+    public boolean read(String path, long offset, ByteBuffer target)
+    {
+        Key key = new Key(path, offset);
+        sketch.increment(key);
+        metrics.requests.mark();
+
+        RefCountedMemory chunk = get(key);
+        if (chunk == null || !chunk.reference())
+            return false;
+
+        try
+        {
+            int length = (int) chunk.size();
+            if (length > target.capacity())
+                return false;
+
+            target.clear();
+            target.put(chunk.asByteBuffer(0, length));
+            target.flip();
+        }
+        finally
+        {
+            chunk.unreference();
+        }
+        metrics.hits.mark();
+        return true;
+    }
+
+    /**
+     * Caches a copy of the remaining bytes of the source, which hold the decompressed chunk starting at the
+     * provided (compressed) offset of the file. The source's position is left unchanged.
+     */
+    public void put(String path, long offset, ByteBuffer source)
+    {
+        RefCountedMemory chunk = new RefCountedMemory(source.remaining());
+        chunk.setBytes(0, source);
+        if (!putIfAbsent(new Key(path, offset), chunk))
+            chunk.unreference();
+    }
+
+    /**
+     * Drops all the chunks of the provided file, once it is no longer read.
+     */
+    public void invalidateFile(String path)
+    {
+        Set<Long> offsets = offsetsByFile.remove(path);
+        if (offsets == null)
+            return;
+
+        for (Long offset : offsets)
+            remove(new Key(path, offset));
+    }
+
+    // indexes the key before it is inserted, so that invalidateFile() can't miss a cached chunk
+    private void index(Key key)
+    {
+        Set<Long> offsets = offsetsByFile.get(key.path);
+        if (offsets == null)
+        {
+            Set<Long> created = ConcurrentHashMap.newKeySet();
+            offsets = offsetsByFile.putIfAbsent(key.path, created);
+            if (offsets == null)
+                offsets = created;
+        }
+        offsets.add(key.offset);
+    }
+
+    // releases a chunk that is no longer cached under the key, unindexing the key unless it was cached again since
+    private void release(Key key, RefCountedMemory value)
+    {
+        value.unreference();
+        if (containsKey(key))
+            return;
+
+        Set<Long> offsets = offsetsByFile.get(key.path);
+        if (offsets != null)
+            offsets.remove(key.offset);
+    }
+
+    // a chunk leaving the window enters the main region only if it is more popular than what it would evict there
+    private void admit(Key key, RefCountedMemory value)
+    {
+        if (main.weightedSize() + value.size() > main.capacity())
+        {
+            Iterator<Key> victims = main.ascendingKeySetWithLimit(1).iterator();
+            if (victims.hasNext() && sketch.frequency(victims.next()) >= sketch.frequency(key))
+            {
+                release(key, value);
+                return;
+            }
+        }
+
+        RefCountedMemory previous = main.put(key, value);
+        if (previous != null)
+            previous.unreference();
+    }
+
+    public long capacity()
+    {
+        return window.capacity() + main.capacity();
+    }
+
+    public void setCapacity(long capacity)
+    {
+        long windowCapacity = Math.max(1, (long) (capacity * WINDOW_RATIO));
+        window.setCapacity(windowCapacity);
+        main.setCapacity(capacity - windowCapacity);
+    }
+
+    public void put(Key key, RefCountedMemory value)
+    {
+        index(key);
+        RefCountedMemory previous = window.put(key, value);
+        if (previous != null)
+            previous.unreference();
+    }
+
+    public boolean putIfAbsent(Key key, RefCountedMemory value)
+    {
+        if (main.containsKey(key))
+            return false;
+        index(key);
+        return window.putIfAbsent(key, value) == null;
+    }
+
+    public boolean replace(Key key, RefCountedMemory old, RefCountedMemory value)
+    {
+        if (!window.replace(key, old, value) && !main.replace(key, old, value))
+            return false;
+
+        old.unreference();
+        return true;
+    }
+
+    public RefCountedMemory get(Key key)
+    {
+        RefCountedMemory value = main.get(key);
+        return value != null ? value : window.get(key);
+    }
+
+    public void remove(Key key)
+    {
+        RefCountedMemory value = window.remove(key);
+        if (value != null)
+            release(key, value);
+        value = main.remove(key);
+        if (value != null)
+            release(key, value);
+    }
+
+    public int size()
+    {
+        return window.size() + main.size();
+    }
+
+    public long weightedSize()
+    {
+        return window.weightedSize() + main.weightedSize();
+    }
+
+    public void clear()
+    {
+        for (Key key : window.keySet())
+            remove(key);
+        for (Key key : main.keySet())
+            remove(key);
+    }
+
+    public Iterator<Key> keyIterator()
+    {
+        return Iterators.concat(window.keySet().iterator(), main.keySet().iterator());
+    }
+
+    public Iterator<Key> hotKeyIterator(int n)
+    {
+        return main.descendingKeySetWithLimit(n).iterator();
+    }
+
+    public boolean containsKey(Key key)
+    {
+        return main.containsKey(key) || window.containsKey(key);
+    }
+
+    public static final class Key
+    {
+        public final String path;
+        public final long offset;
+
+        public Key(String path, long offset)
+        {
+            this.path = path;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key that = (Key) o;
+            return offset == that.offset && path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hashCode(path, offset);
+        }
+
+        @Override
+        public String toString()
+        {
+            return path + '@' + offset;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch of 4-bit counters estimating how often each key was recently accessed, as used by the
+ * TinyLFU admission policy (Einziger et al., "TinyLFU: A Highly Efficient Cache Admission Policy").
+ *
+ * Each key maps to one counter in each of four rows; its estimate is the minimum of those counters. To keep
+ * the estimates recent, all counters are halved once the number of recorded accesses reaches ten times the
+ * expected number of entries. Updates are racy by design: a lost increment only slightly skews an estimate.
+ */
+public class FrequencySketch
+{
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    // each long holds sixteen 4-bit counters
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private volatile int additions;
+
+    public FrequencySketch(long expectedEntries)
+    {
+        int size = (int) Math.min(1 << 30, Math.max(16, Long.highestOneBit(Math.max(1, expectedEntries) - 1) << 1));
+        this.table = new AtomicLongArray(size);
+        this.tableMask = size - 1;
+        this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * size);
+    }
+
+    /**
+     * @return the estimated number of recent accesses to the key, between 0 and 15
+     */
+    public int frequency(Object key)
+    {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < 4; row++)
+        {
+            int index = indexOf(hash, row);
+            int shift = counterShift(hash, row);
+            frequency = Math.min(frequency, (int) ((table.get(index) >>> shift) & 0xF));
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access to the key.
+     */
+    public void increment(Object key)
+    {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < 4; row++)
+            added |= incrementAt(indexOf(hash, row), counterShift(hash, row));
+
+        if (added && ++additions >= sampleSize)
+            reset();
+    }
+
+    private boolean incrementAt(int index, int shift)
+    {
+        long mask = 0xFL << shift;
+        while (true)
+        {
+            long current = table.get(index);
+            if ((current & mask) == mask)
+                return false;
+            if (table.compareAndSet(index, current, current + (1L << shift)))
+                return true;
+        }
+    }
+
+    // halve every counter, so that old accesses progressively stop counting
+    private void reset()
+    {
+        additions = 0;
+        for (int i = 0; i < table.length(); i++)
+            table.set(i, (table.get(i) >>> 1) & RESET_MASK);
+    }
+
+    private int indexOf(int hash, int row)
+    {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    // the counter used within the selected long, distinct for each row
+    private static int counterShift(int hash, int row)
+    {
+        return (((hash >>> (row << 3)) & 3) << 2) + (row << 4);
+    }
+
+    private static int spread(int hash)
+    {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
@@ -81,10 +81,14 @@ public class Config
 
     public volatile Long cas_contention_timeout_in_ms = 1000L;
 
+    public boolean optimistic_cas_enabled = false;
+
     public volatile Long truncate_request_timeout_in_ms = 60000L;
 
     public Integer streaming_socket_timeout_in_ms = 0;
 
+    public boolean stream_entire_sstables = false;
+
     public boolean cross_node_timeout = false;
 
     public volatile Double phi_convict_threshold = 8.0;
@@ -132,6 +136,7 @@ public class Config
     public Boolean start_native_transport = false;
     public Integer native_transport_port = 9042;
     public Integer native_transport_max_threads = 128;
+    public Integer native_transport_request_shards = 0;
     public Integer native_transport_max_frame_size_in_mb = 256;
     public volatile Long native_transport_max_concurrent_connections = -1L;
     public volatile Long native_transport_max_concurrent_connections_per_ip = -1L;
@@ -145,11 +150,17 @@ public class Config
 
     /* if the size of columns or super-columns are more than this, indexing will kick in */
     public Integer column_index_size_in_kb = 64;
+    /* partitions whose column index is larger than this read it from the index file rather than keeping it on heap */
+    public volatile int column_index_cache_size_in_kb = 2;
     public volatile int batch_size_warn_threshold_in_kb = 5;
     public volatile int batch_size_fail_threshold_in_kb = 50;
     public Integer concurrent_compactors;
     public volatile Integer compaction_throughput_mb_per_sec = 16;
     public volatile Integer compaction_large_partition_warning_threshold_mb = 100;
+    public volatile int compaction_subranges = 1;
+    public volatile int min_compaction_subrange_size_in_mb = 1024;
+    public volatile boolean compaction_direct_io = false;
+    public volatile boolean repair_partition_hashes_enabled = false;
 
     public Integer max_streaming_retries = 3;
 
@@ -165,6 +176,7 @@ public class Config
     public Integer commitlog_total_space_in_mb;
     public CommitLogSync commitlog_sync;
     public Double commitlog_sync_batch_window_in_ms;
+    public Double commitlog_sync_group_window_in_ms;
     public Integer commitlog_sync_period_in_ms;
     public int commitlog_segment_size_in_mb = 32;
     public ParameterizedClass commitlog_compression;
@@ -190,6 +202,7 @@ public class Config
     public ServerEncryptionOptions encryption_options;
 
     public InternodeCompression internode_compression = InternodeCompression.none;
+    public InternodeMessagingTransport internode_messaging_transport = InternodeMessagingTransport.threads;
 
     @Deprecated
     public Integer index_interval = null;
@@ -197,6 +210,12 @@ public class Config
     public int hinted_handoff_throttle_in_kb = 1024;
     public int batchlog_replay_throttle_in_kb = 1024;
     public int max_hints_delivery_threads = 1;
+    public String hints_directory;
+    public int max_hints_file_size_in_mb = 128;
+    public boolean paxos_state_log_enabled = false;
+    public String paxos_state_directory;
+    public boolean batchlog_files_enabled = false;
+    public String batchlog_directory;
     public int sstable_preemptive_open_interval_in_mb = 50;
 
     public volatile boolean incremental_backups = false;
@@ -209,6 +228,7 @@ public class Config
 
     public String row_cache_class_name = "org.apache.cassandra.cache.OHCProvider";
     public long row_cache_size_in_mb = 0;
+    public volatile int row_cache_admission_frequency = 0;
     public volatile int row_cache_save_period = 0;
     public volatile int row_cache_keys_to_save = Integer.MAX_VALUE;
 
@@ -223,6 +243,8 @@ public class Config
 
     public Integer file_cache_size_in_mb = 512;
 
+    public Integer chunk_cache_size_in_mb = null;
+
     public boolean buffer_pool_use_heap_if_exhausted = true;
 
     public DiskOptimizationStrategy disk_optimization_strategy = DiskOptimizationStrategy.ssd;
@@ -321,13 +343,19 @@ public class Config
     public enum CommitLogSync
     {
         periodic,
-        batch
+        batch,
+        group
     }
     public enum InternodeCompression
     {
         all, none, dc
     }
 
+    public enum InternodeMessagingTransport
+    {
+        threads, netty
+    }
+
     public enum DiskAccessMode
     {
         auto,
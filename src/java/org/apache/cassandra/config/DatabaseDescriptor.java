@@ -270,21 +270,33 @@ public class DatabaseDescriptor
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_batch_window_in_ms: Double expected.", false);
             }
-            else if (conf.commitlog_sync_period_in_ms != null)
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync", false);
+                throw new ConfigurationException("Batch sync specified, but commitlog_sync_period_in_ms or commitlog_sync_group_window_in_ms found. Only specify commitlog_sync_batch_window_in_ms when using batch sync", false);
             }
             logger.debug("Syncing log with a batch window of {}", conf.commitlog_sync_batch_window_in_ms);
         }
+        else if (conf.commitlog_sync == Config.CommitLogSync.group)
+        {
+            if (conf.commitlog_sync_group_window_in_ms == null || conf.commitlog_sync_group_window_in_ms <= 0)
+            {
+                throw new ConfigurationException("Missing or non-positive value for commitlog_sync_group_window_in_ms: positive Double expected.", false);
+            }
+            else if (conf.commitlog_sync_period_in_ms != null || conf.commitlog_sync_batch_window_in_ms != null)
+            {
+                throw new ConfigurationException("Group sync specified, but commitlog_sync_period_in_ms or commitlog_sync_batch_window_in_ms found. Only specify commitlog_sync_group_window_in_ms when using group sync", false);
+            }
+            logger.debug("Syncing log with a maximum group window of {}", conf.commitlog_sync_group_window_in_ms);
+        }
         else
         {
             if (conf.commitlog_sync_period_in_ms == null)
             {
                 throw new ConfigurationException("Missing value for commitlog_sync_period_in_ms: Integer expected", false);
             }
-            else if (conf.commitlog_sync_batch_window_in_ms != null)
+            else if (conf.commitlog_sync_batch_window_in_ms != null || conf.commitlog_sync_group_window_in_ms != null)
             {
-                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.", false);
+                throw new ConfigurationException("commitlog_sync_period_in_ms specified, but commitlog_sync_batch_window_in_ms or commitlog_sync_group_window_in_ms found.  Only specify commitlog_sync_period_in_ms when using periodic sync.", false);
             }
             logger.debug("Syncing log with a period of {}", conf.commitlog_sync_period_in_ms);
         }
@@ -383,6 +395,12 @@ public class DatabaseDescriptor
         if (conf.file_cache_size_in_mb == null)
             conf.file_cache_size_in_mb = Math.min(512, (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576)));
 
+        // if chunk_cache_size_in_mb is left empty the cache is sized to min(5% of Heap (in MB), 256MB)
+        if (conf.chunk_cache_size_in_mb == null)
+            conf.chunk_cache_size_in_mb = Math.min(256, (int) (Runtime.getRuntime().maxMemory() * 0.05 / 1048576));
+        if (conf.chunk_cache_size_in_mb < 0)
+            throw new ConfigurationException("chunk_cache_size_in_mb must be positive, but was " + conf.chunk_cache_size_in_mb, false);
+
         if (conf.memtable_offheap_space_in_mb == null)
             conf.memtable_offheap_space_in_mb = (int) (Runtime.getRuntime().maxMemory() / (4 * 1048576));
         if (conf.memtable_offheap_space_in_mb < 0)
@@ -406,6 +424,9 @@ public class DatabaseDescriptor
         if (conf.native_transport_max_frame_size_in_mb <= 0)
             throw new ConfigurationException("native_transport_max_frame_size_in_mb must be positive, but was " + conf.native_transport_max_frame_size_in_mb, false);
 
+        if (conf.native_transport_request_shards < 0)
+            throw new ConfigurationException("native_transport_request_shards must not be negative, but was " + conf.native_transport_request_shards, false);
+
         // fail early instead of OOMing (see CASSANDRA-8116)
         if (ThriftServer.HSHA.equals(conf.rpc_server_type) && conf.rpc_max_threads == Integer.MAX_VALUE)
             throw new ConfigurationException("The hsha rpc_server_type is not compatible with an rpc_max_threads " +
@@ -491,6 +512,27 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("saved_caches_directory is missing and -Dcassandra.storagedir is not set", false);
             conf.saved_caches_directory += File.separator + "saved_caches";
         }
+        if (conf.hints_directory == null)
+        {
+            conf.hints_directory = System.getProperty("cassandra.storagedir", null);
+            if (conf.hints_directory == null)
+                throw new ConfigurationException("hints_directory is missing and -Dcassandra.storagedir is not set", false);
+            conf.hints_directory += File.separator + "hints";
+        }
+        if (conf.paxos_state_directory == null)
+        {
+            conf.paxos_state_directory = System.getProperty("cassandra.storagedir", null);
+            if (conf.paxos_state_directory == null)
+                throw new ConfigurationException("paxos_state_directory is missing and -Dcassandra.storagedir is not set", false);
+            conf.paxos_state_directory += File.separator + "paxos";
+        }
+        if (conf.batchlog_directory == null)
+        {
+            conf.batchlog_directory = System.getProperty("cassandra.storagedir", null);
+            if (conf.batchlog_directory == null)
+                throw new ConfigurationException("batchlog_directory is missing and -Dcassandra.storagedir is not set", false);
+            conf.batchlog_directory += File.separator + "batchlog";
+        }
         if (conf.data_file_directories == null || conf.data_file_directories.length == 0)
         {
             String defaultDataDir = System.getProperty("cassandra.storagedir", null);
@@ -506,10 +548,33 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("commitlog_directory must not be the same as any data_file_directories", false);
             if (datadir.equals(conf.saved_caches_directory))
                 throw new ConfigurationException("saved_caches_directory must not be the same as any data_file_directories", false);
+            if (datadir.equals(conf.hints_directory))
+                throw new ConfigurationException("hints_directory must not be the same as any data_file_directories", false);
+            if (datadir.equals(conf.paxos_state_directory))
+                throw new ConfigurationException("paxos_state_directory must not be the same as any data_file_directories", false);
+            if (datadir.equals(conf.batchlog_directory))
+                throw new ConfigurationException("batchlog_directory must not be the same as any data_file_directories", false);
         }
 
         if (conf.commitlog_directory.equals(conf.saved_caches_directory))
             throw new ConfigurationException("saved_caches_directory must not be the same as the commitlog_directory", false);
+        if (conf.commitlog_directory.equals(conf.hints_directory))
+            throw new ConfigurationException("hints_directory must not be the same as the commitlog_directory", false);
+        if (conf.saved_caches_directory.equals(conf.hints_directory))
+            throw new ConfigurationException("hints_directory must not be the same as the saved_caches_directory", false);
+        for (String directory : new String[]{ conf.commitlog_directory, conf.saved_caches_directory, conf.hints_directory })
+        {
+            if (directory.equals(conf.paxos_state_directory))
+                throw new ConfigurationException("paxos_state_directory must not be the same as " + directory, false);
+        }
+        for (String directory : new String[]{ conf.commitlog_directory, conf.saved_caches_directory, conf.hints_directory, conf.paxos_state_directory })
+        {
+            if (directory.equals(conf.batchlog_directory))
+                throw new ConfigurationException("batchlog_directory must not be the same as " + directory, false);
+        }
+
+        if (conf.max_hints_file_size_in_mb <= 0)
+            throw new ConfigurationException("max_hints_file_size_in_mb must be positive, but was " + conf.max_hints_file_size_in_mb, false);
 
         if (conf.memtable_flush_writers == null)
             conf.memtable_flush_writers = Math.min(8, Math.max(2, Math.min(FBUtilities.getAvailableProcessors(), conf.data_file_directories.length)));
@@ -530,9 +595,21 @@ public class DatabaseDescriptor
         if (conf.concurrent_compactors == null)
             conf.concurrent_compactors = Math.min(8, Math.max(2, Math.min(FBUtilities.getAvailableProcessors(), conf.data_file_directories.length)));
 
+        if (conf.row_cache_admission_frequency < 0 || conf.row_cache_admission_frequency > 15)
+            throw new ConfigurationException("row_cache_admission_frequency must be between 0 and 15, but was " + conf.row_cache_admission_frequency, false);
+
         if (conf.concurrent_compactors <= 0)
             throw new ConfigurationException("concurrent_compactors should be strictly greater than 0, but was " + conf.concurrent_compactors, false);
 
+        if (conf.column_index_cache_size_in_kb < 0)
+            throw new ConfigurationException("column_index_cache_size_in_kb must be non-negative, but was " + conf.column_index_cache_size_in_kb, false);
+
+        if (conf.compaction_subranges <= 0)
+            throw new ConfigurationException("compaction_subranges should be strictly greater than 0, but was " + conf.compaction_subranges, false);
+
+        if (conf.min_compaction_subrange_size_in_mb < 0)
+            throw new ConfigurationException("min_compaction_subrange_size_in_mb must be non-negative, but was " + conf.min_compaction_subrange_size_in_mb, false);
+
         if (conf.initial_token != null)
             for (String token : tokensFromString(conf.initial_token))
                 partitioner.getTokenFactory().validate(token);
@@ -727,6 +804,21 @@ public class DatabaseDescriptor
                 throw new ConfigurationException("saved_caches_directory must be specified", false);
 
             FileUtils.createDirectory(conf.saved_caches_directory);
+
+            if (conf.hints_directory == null)
+                throw new ConfigurationException("hints_directory must be specified", false);
+
+            FileUtils.createDirectory(conf.hints_directory);
+
+            if (conf.paxos_state_directory == null)
+                throw new ConfigurationException("paxos_state_directory must be specified", false);
+
+            FileUtils.createDirectory(conf.paxos_state_directory);
+
+            if (conf.batchlog_directory == null)
+                throw new ConfigurationException("batchlog_directory must be specified", false);
+
+            FileUtils.createDirectory(conf.batchlog_directory);
         }
         catch (ConfigurationException e)
         {
@@ -785,6 +877,17 @@ public class DatabaseDescriptor
         return conf.column_index_size_in_kb * 1024;
     }
 
+    public static int getColumnIndexCacheSize()
+    {
+        return conf.column_index_cache_size_in_kb * 1024;
+    }
+
+    @VisibleForTesting
+    public static void setColumnIndexCacheSize(int sizeInKB)
+    {
+        conf.column_index_cache_size_in_kb = sizeInKB;
+    }
+
     public static int getBatchSizeWarnThreshold()
     {
         return conf.batch_size_warn_threshold_in_kb * 1024;
@@ -966,6 +1069,17 @@ public class DatabaseDescriptor
         conf.cas_contention_timeout_in_ms = timeOutInMillis;
     }
 
+    public static boolean isOptimisticCasEnabled()
+    {
+        return conf.optimistic_cas_enabled;
+    }
+
+    @VisibleForTesting
+    public static void setOptimisticCasEnabled(boolean enabled)
+    {
+        conf.optimistic_cas_enabled = enabled;
+    }
+
     public static long getTruncateRpcTimeout()
     {
         return conf.truncate_request_timeout_in_ms;
@@ -987,6 +1101,7 @@ public class DatabaseDescriptor
         switch (verb)
         {
             case READ:
+            case AGGREGATE_READ:
                 return getReadRpcTimeout();
             case RANGE_SLICE:
                 return getRangeRpcTimeout();
@@ -997,6 +1112,7 @@ public class DatabaseDescriptor
             case PAXOS_COMMIT:
             case PAXOS_PREPARE:
             case PAXOS_PROPOSE:
+            case PAXOS_PREPARE_AND_READ:
             case BATCHLOG_MUTATION:
             case MATERIALIZED_VIEW_MUTATION:
                 return getWriteRpcTimeout();
@@ -1076,6 +1192,50 @@ public class DatabaseDescriptor
 
     public static int getCompactionLargePartitionWarningThreshold() { return conf.compaction_large_partition_warning_threshold_mb * 1024 * 1024; }
 
+    public static int getCompactionSubRanges()
+    {
+        return conf.compaction_subranges;
+    }
+
+    @VisibleForTesting
+    public static void setCompactionSubRanges(int subRanges)
+    {
+        conf.compaction_subranges = subRanges;
+    }
+
+    public static long getMinCompactionSubRangeSize()
+    {
+        return conf.min_compaction_subrange_size_in_mb * 1024L * 1024L;
+    }
+
+    @VisibleForTesting
+    public static void setMinCompactionSubRangeSizeInMB(int sizeInMB)
+    {
+        conf.min_compaction_subrange_size_in_mb = sizeInMB;
+    }
+
+    public static boolean getCompactionDirectIO()
+    {
+        return conf.compaction_direct_io;
+    }
+
+    @VisibleForTesting
+    public static void setCompactionDirectIO(boolean directIO)
+    {
+        conf.compaction_direct_io = directIO;
+    }
+
+    public static boolean getRepairPartitionHashesEnabled()
+    {
+        return conf.repair_partition_hashes_enabled;
+    }
+
+    @VisibleForTesting
+    public static void setRepairPartitionHashesEnabled(boolean enabled)
+    {
+        conf.repair_partition_hashes_enabled = enabled;
+    }
+
     public static boolean getDisableSTCSInL0()
     {
         return Boolean.getBoolean("cassandra.disable_stcs_in_l0");
@@ -1264,6 +1424,17 @@ public class DatabaseDescriptor
         return conf.native_transport_max_threads;
     }
 
+    public static int getNativeTransportRequestShards()
+    {
+        return conf.native_transport_request_shards;
+    }
+
+    @VisibleForTesting
+    public static void setNativeTransportRequestShards(int shards)
+    {
+        conf.native_transport_request_shards = shards;
+    }
+
     public static int getNativeTransportMaxFrameSize()
     {
         return conf.native_transport_max_frame_size_in_mb * 1024 * 1024;
@@ -1298,6 +1469,16 @@ public class DatabaseDescriptor
         conf.commitlog_sync_batch_window_in_ms = windowMillis;
     }
 
+    public static double getCommitLogSyncGroupWindow()
+    {
+        return conf.commitlog_sync_group_window_in_ms;
+    }
+
+    public static void setCommitLogSyncGroupWindow(double windowMillis)
+    {
+        conf.commitlog_sync_group_window_in_ms = windowMillis;
+    }
+
     public static int getCommitLogSyncPeriod()
     {
         return conf.commitlog_sync_period_in_ms;
@@ -1491,6 +1672,48 @@ public class DatabaseDescriptor
         return conf.max_hints_delivery_threads;
     }
 
+    public static File getHintsDirectory()
+    {
+        return new File(conf.hints_directory);
+    }
+
+    public static long getMaxHintsFileSize()
+    {
+        return conf.max_hints_file_size_in_mb * 1024L * 1024L;
+    }
+
+    public static boolean isPaxosStateLogEnabled()
+    {
+        return conf.paxos_state_log_enabled;
+    }
+
+    @VisibleForTesting
+    public static void setPaxosStateLogEnabled(boolean enabled)
+    {
+        conf.paxos_state_log_enabled = enabled;
+    }
+
+    public static File getPaxosStateDirectory()
+    {
+        return new File(conf.paxos_state_directory);
+    }
+
+    public static boolean isBatchlogFilesEnabled()
+    {
+        return conf.batchlog_files_enabled;
+    }
+
+    @VisibleForTesting
+    public static void setBatchlogFilesEnabled(boolean enabled)
+    {
+        conf.batchlog_files_enabled = enabled;
+    }
+
+    public static File getBatchlogDirectory()
+    {
+        return new File(conf.batchlog_directory);
+    }
+
     public static boolean isIncrementalBackupsEnabled()
     {
         return conf.incremental_backups;
@@ -1506,6 +1729,12 @@ public class DatabaseDescriptor
         return conf.file_cache_size_in_mb;
     }
 
+    public static int getChunkCacheSizeInMB()
+    {
+        // left unset in client mode, where the cache is not used
+        return conf.chunk_cache_size_in_mb == null ? 0 : conf.chunk_cache_size_in_mb;
+    }
+
     public static boolean getBufferPoolUseHeapIfExhausted()
     {
         return conf.buffer_pool_use_heap_if_exhausted;
@@ -1598,6 +1827,17 @@ public class DatabaseDescriptor
         return conf.row_cache_size_in_mb;
     }
 
+    public static int getRowCacheAdmissionFrequency()
+    {
+        return conf.row_cache_admission_frequency;
+    }
+
+    @VisibleForTesting
+    public static void setRowCacheAdmissionFrequency(int frequency)
+    {
+        conf.row_cache_admission_frequency = frequency;
+    }
+
     @VisibleForTesting
     public static void setRowCacheSizeInMB(long val)
     {
@@ -1654,6 +1894,17 @@ public class DatabaseDescriptor
         return conf.streaming_socket_timeout_in_ms;
     }
 
+    public static boolean streamEntireSSTables()
+    {
+        return conf.stream_entire_sstables;
+    }
+
+    @VisibleForTesting
+    public static void setStreamEntireSSTables(boolean value)
+    {
+        conf.stream_entire_sstables = value;
+    }
+
     public static String getLocalDataCenter()
     {
         return localDC;
@@ -1669,6 +1920,23 @@ public class DatabaseDescriptor
         return conf.internode_compression;
     }
 
+    @VisibleForTesting
+    public static void setInternodeCompression(Config.InternodeCompression compression)
+    {
+        conf.internode_compression = compression;
+    }
+
+    public static Config.InternodeMessagingTransport getInternodeMessagingTransport()
+    {
+        return conf.internode_messaging_transport;
+    }
+
+    @VisibleForTesting
+    public static void setInternodeMessagingTransport(Config.InternodeMessagingTransport transport)
+    {
+        conf.internode_messaging_transport = transport;
+    }
+
     public static boolean getInterDCTcpNoDelay()
     {
         return conf.inter_dc_tcp_nodelay;
@@ -17,6 +17,9 @@
  */
 package org.apache.cassandra.cql3;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import org.apache.cassandra.cql3.functions.Function;
 import org.apache.cassandra.exceptions.*;
 import org.apache.cassandra.service.ClientState;
@@ -53,6 +56,18 @@ public interface CQLStatement
      */
     public ResultMessage execute(QueryState state, QueryOptions options) throws RequestValidationException, RequestExecutionException;
 
+    /**
+     * Asynchronous variant of execute: returns a future of the result (or of null if there is no result) instead
+     * of blocking until the replicas have answered. Statements that don't support it are executed synchronously.
+     *
+     * @param state the current query state
+     * @param options options for this query (consistency, variables, pageSize, ...)
+     */
+    public default ListenableFuture<ResultMessage> executeAsync(QueryState state, QueryOptions options) throws RequestValidationException, RequestExecutionException
+    {
+        return Futures.immediateFuture(execute(state, options));
+    }
+
     /**
      * Variant of execute used for internal query against the system tables, and thus only query the local node.
      *
@@ -20,6 +20,9 @@ package org.apache.cassandra.cql3;
 import java.nio.ByteBuffer;
 import java.util.Map;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 import org.apache.cassandra.cql3.statements.BatchStatement;
 import org.apache.cassandra.cql3.statements.ParsedStatement;
 import org.apache.cassandra.exceptions.RequestExecutionException;
@@ -35,6 +38,17 @@ public interface QueryHandler
                           QueryOptions options,
                           Map<String, ByteBuffer> customPayload) throws RequestExecutionException, RequestValidationException;
 
+    /**
+     * Asynchronous variant of process(). Handlers that don't support it process the query synchronously.
+     */
+    default ListenableFuture<ResultMessage> processAsync(String query,
+                                                         QueryState state,
+                                                         QueryOptions options,
+                                                         Map<String, ByteBuffer> customPayload) throws RequestExecutionException, RequestValidationException
+    {
+        return Futures.immediateFuture(process(query, state, options, customPayload));
+    }
+
     ResultMessage.Prepared prepare(String query,
                                    QueryState state,
                                    Map<String, ByteBuffer> customPayload) throws RequestValidationException;
@@ -48,6 +62,17 @@ public interface QueryHandler
                                   QueryOptions options,
                                   Map<String, ByteBuffer> customPayload) throws RequestExecutionException, RequestValidationException;
 
+    /**
+     * Asynchronous variant of processPrepared(). Handlers that don't support it process the statement synchronously.
+     */
+    default ListenableFuture<ResultMessage> processPreparedAsync(CQLStatement statement,
+                                                                 QueryState state,
+                                                                 QueryOptions options,
+                                                                 Map<String, ByteBuffer> customPayload) throws RequestExecutionException, RequestValidationException
+    {
+        return Futures.immediateFuture(processPrepared(statement, state, options, customPayload));
+    }
+
     ResultMessage processBatch(BatchStatement statement,
                                QueryState state,
                                BatchQueryOptions options,
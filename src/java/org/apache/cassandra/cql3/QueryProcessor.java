@@ -28,6 +28,8 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -94,6 +96,14 @@ public class QueryProcessor implements QueryHandler
     // counters. Callers of processStatement are responsible for correctly notifying metrics
     public static final CQLMetrics metrics = new CQLMetrics();
 
+    private static final com.google.common.base.Function<ResultMessage, ResultMessage> VOID_IF_NULL = new com.google.common.base.Function<ResultMessage, ResultMessage>()
+    {
+        public ResultMessage apply(ResultMessage result)
+        {
+            return result == null ? new ResultMessage.Void() : result;
+        }
+    };
+
     private static final AtomicInteger lastMinuteEvictionsCount = new AtomicInteger(0);
 
     static
@@ -205,6 +215,17 @@ public class QueryProcessor implements QueryHandler
         return result == null ? new ResultMessage.Void() : result;
     }
 
+    public ListenableFuture<ResultMessage> processStatementAsync(CQLStatement statement, QueryState queryState, QueryOptions options)
+    throws RequestExecutionException, RequestValidationException
+    {
+        logger.trace("Process {} @CL.{}", statement, options.getConsistency());
+        ClientState clientState = queryState.getClientState();
+        statement.checkAccess(clientState);
+        statement.validate(clientState);
+
+        return Futures.transform(statement.executeAsync(queryState, options), VOID_IF_NULL);
+    }
+
     public static ResultMessage process(String queryString, ConsistencyLevel cl, QueryState queryState)
     throws RequestExecutionException, RequestValidationException
     {
@@ -222,6 +243,21 @@ public class QueryProcessor implements QueryHandler
 
     public ResultMessage process(String queryString, QueryState queryState, QueryOptions options)
     throws RequestExecutionException, RequestValidationException
+    {
+        return processStatement(prepareForExecution(queryString, queryState, options), queryState, options);
+    }
+
+    public ListenableFuture<ResultMessage> processAsync(String query,
+                                                        QueryState state,
+                                                        QueryOptions options,
+                                                        Map<String, ByteBuffer> customPayload)
+                                                                throws RequestExecutionException, RequestValidationException
+    {
+        return processStatementAsync(prepareForExecution(query, state, options), state, options);
+    }
+
+    private CQLStatement prepareForExecution(String queryString, QueryState queryState, QueryOptions options)
+    throws RequestValidationException
     {
         ParsedStatement.Prepared p = getStatement(queryString, queryState.getClientState());
         options.prepare(p.boundNames);
@@ -232,7 +268,7 @@ public class QueryProcessor implements QueryHandler
         if (!queryState.getClientState().isInternal)
             metrics.regularStatementsExecuted.inc();
 
-        return processStatement(prepared, queryState, options);
+        return prepared;
     }
 
     public static ParsedStatement.Prepared parseStatement(String queryStr, QueryState queryState) throws RequestValidationException
@@ -449,6 +485,22 @@ public class QueryProcessor implements QueryHandler
 
     public ResultMessage processPrepared(CQLStatement statement, QueryState queryState, QueryOptions options)
     throws RequestExecutionException, RequestValidationException
+    {
+        checkPreparedVariables(statement, options);
+        return processStatement(statement, queryState, options);
+    }
+
+    public ListenableFuture<ResultMessage> processPreparedAsync(CQLStatement statement,
+                                                                QueryState state,
+                                                                QueryOptions options,
+                                                                Map<String, ByteBuffer> customPayload)
+                                                                        throws RequestExecutionException, RequestValidationException
+    {
+        checkPreparedVariables(statement, options);
+        return processStatementAsync(statement, state, options);
+    }
+
+    private void checkPreparedVariables(CQLStatement statement, QueryOptions options) throws InvalidRequestException
     {
         List<ByteBuffer> variables = options.getValues();
         // Check to see if there are any bound variables to verify
@@ -467,7 +519,6 @@ public class QueryProcessor implements QueryHandler
         }
 
         metrics.preparedStatementsExecuted.inc();
-        return processStatement(statement, queryState, options);
     }
 
     public ResultMessage processBatch(BatchStatement statement,
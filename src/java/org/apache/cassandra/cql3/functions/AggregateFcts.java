@@ -26,6 +26,7 @@ import java.util.List;
 
 import org.apache.cassandra.cql3.CQL3Type;
 import org.apache.cassandra.db.marshal.*;
+import org.apache.cassandra.utils.ByteBufferUtil;
 
 /**
  * Factory methods for aggregate functions.
@@ -81,7 +82,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private long count;
 
@@ -95,10 +96,25 @@ public abstract class AggregateFcts
                             return ((LongType) returnType()).decompose(count);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((LongType) returnType()).decompose(count);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += ((LongType) returnType()).compose(state);
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             count++;
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            count += values.size();
+                        }
                     };
                 }
             };
@@ -112,7 +128,7 @@ public abstract class AggregateFcts
                 @Override
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new MergeableAggregate()
                     {
                         private BigDecimal sum = BigDecimal.ZERO;
 
@@ -126,6 +142,16 @@ public abstract class AggregateFcts
                             return ((DecimalType) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((DecimalType) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum = sum.add(((DecimalType) returnType()).compose(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -148,7 +174,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new MergeableAggregate()
                     {
                         private BigDecimal sum = BigDecimal.ZERO;
 
@@ -168,6 +194,17 @@ public abstract class AggregateFcts
                             return ((DecimalType) returnType()).decompose(sum.divide(BigDecimal.valueOf(count)));
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((DecimalType) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum = sum.add(((DecimalType) returnType()).compose(avgSum(state)));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -191,7 +228,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new MergeableAggregate()
                     {
                         private BigInteger sum = BigInteger.ZERO;
 
@@ -205,6 +242,16 @@ public abstract class AggregateFcts
                             return ((IntegerType) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((IntegerType) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum = sum.add(((IntegerType) returnType()).compose(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -227,7 +274,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new MergeableAggregate()
                     {
                         private BigInteger sum = BigInteger.ZERO;
 
@@ -247,6 +294,17 @@ public abstract class AggregateFcts
                             return ((IntegerType) returnType()).decompose(sum.divide(BigInteger.valueOf(count)));
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((IntegerType) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum = sum.add(((IntegerType) returnType()).compose(avgSum(state)));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -270,7 +328,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private byte sum;
 
@@ -284,6 +342,16 @@ public abstract class AggregateFcts
                             return ((ByteType) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((ByteType) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum += ((ByteType) returnType()).compose(state);
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -294,6 +362,11 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.byteValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -306,7 +379,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private byte sum;
 
@@ -325,6 +398,17 @@ public abstract class AggregateFcts
                             return ((ByteType) returnType()).decompose((byte) avg);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((ByteType) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum += ((ByteType) returnType()).compose(avgSum(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -336,6 +420,12 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.byteValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            count += values.nonNulls();
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -348,7 +438,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private short sum;
 
@@ -362,6 +452,16 @@ public abstract class AggregateFcts
                             return ((ShortType) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((ShortType) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum += ((ShortType) returnType()).compose(state);
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -372,6 +472,11 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.shortValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -384,7 +489,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private short sum;
 
@@ -403,6 +508,17 @@ public abstract class AggregateFcts
                             return ((ShortType) returnType()).decompose((short) avg);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((ShortType) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum += ((ShortType) returnType()).compose(avgSum(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -414,6 +530,12 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.shortValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            count += values.nonNulls();
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -426,7 +548,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private int sum;
 
@@ -440,6 +562,16 @@ public abstract class AggregateFcts
                             return ((Int32Type) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((Int32Type) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum += ((Int32Type) returnType()).compose(state);
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -450,6 +582,11 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.intValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -462,7 +599,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private int sum;
 
@@ -481,6 +618,17 @@ public abstract class AggregateFcts
                             return ((Int32Type) returnType()).decompose(avg);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((Int32Type) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum += ((Int32Type) returnType()).compose(avgSum(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -492,6 +640,12 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.intValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            count += values.nonNulls();
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -504,7 +658,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private long sum;
 
@@ -518,6 +672,16 @@ public abstract class AggregateFcts
                             return ((LongType) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((LongType) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum += ((LongType) returnType()).compose(state);
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -528,6 +692,11 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.longValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -540,7 +709,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private long sum;
 
@@ -559,6 +728,17 @@ public abstract class AggregateFcts
                             return ((LongType) returnType()).decompose(avg);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((LongType) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum += ((LongType) returnType()).compose(avgSum(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -570,6 +750,12 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.longValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            count += values.nonNulls();
+                            sum += sumIntegral(values);
+                        }
                     };
                 }
             };
@@ -582,7 +768,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private float sum;
 
@@ -596,6 +782,16 @@ public abstract class AggregateFcts
                             return ((FloatType) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((FloatType) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum += ((FloatType) returnType()).compose(state);
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -606,6 +802,11 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.floatValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            sum = sumFloats(sum, values);
+                        }
                     };
                 }
             };
@@ -618,7 +819,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private float sum;
 
@@ -637,6 +838,17 @@ public abstract class AggregateFcts
                             return ((FloatType) returnType()).decompose(avg);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((FloatType) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum += ((FloatType) returnType()).compose(avgSum(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -648,6 +860,12 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.floatValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            count += values.nonNulls();
+                            sum = sumFloats(sum, values);
+                        }
                     };
                 }
             };
@@ -660,7 +878,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private double sum;
 
@@ -674,6 +892,16 @@ public abstract class AggregateFcts
                             return ((DoubleType) returnType()).decompose(sum);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return ((DoubleType) returnType()).decompose(sum);
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            sum += ((DoubleType) returnType()).compose(state);
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -684,6 +912,11 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.doubleValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            sum = sumDoubles(sum, values);
+                        }
                     };
                 }
             };
@@ -696,7 +929,7 @@ public abstract class AggregateFcts
             {
                 public Aggregate newAggregate()
                 {
-                    return new Aggregate()
+                    return new VectorizedMergeableAggregate()
                     {
                         private double sum;
 
@@ -715,6 +948,17 @@ public abstract class AggregateFcts
                             return ((DoubleType) returnType()).decompose(avg);
                         }
 
+                        public ByteBuffer getState()
+                        {
+                            return avgState(count, ((DoubleType) returnType()).decompose(sum));
+                        }
+
+                        public void mergeState(ByteBuffer state)
+                        {
+                            count += avgCount(state);
+                            sum += ((DoubleType) returnType()).compose(avgSum(state));
+                        }
+
                         public void addInput(int protocolVersion, List<ByteBuffer> values)
                         {
                             ByteBuffer value = values.get(0);
@@ -726,6 +970,12 @@ public abstract class AggregateFcts
                             Number number = ((Number) argTypes().get(0).compose(value));
                             sum += number.doubleValue();
                         }
+
+                        public void addInputs(ColumnVector values)
+                        {
+                            count += values.nonNulls();
+                            sum = sumDoubles(sum, values);
+                        }
                     };
                 }
             };
@@ -738,37 +988,88 @@ public abstract class AggregateFcts
      */
     public static AggregateFunction makeMaxFunction(final AbstractType<?> inputType)
     {
+        // counters are ordered by their bytes rather than as numbers
+        final ColumnVector.Kind kind = inputType instanceof CounterColumnType ? ColumnVector.Kind.OPAQUE
+                                                                              : ColumnVector.kindOf(inputType);
         return new NativeAggregateFunction("max", inputType, inputType)
         {
             public Aggregate newAggregate()
             {
-                return new Aggregate()
-                {
-                    private ByteBuffer max;
+                if (kind == ColumnVector.Kind.OPAQUE)
+                    return new MaxAggregate(returnType());
 
-                    public void reset()
-                    {
-                        max = null;
-                    }
+                return new VectorizedMaxAggregate(returnType(), kind);
+            }
+        };
+    }
 
-                    public ByteBuffer compute(int protocolVersion)
-                    {
-                        return max;
-                    }
+    private static class MaxAggregate implements AggregateFunction.MergeableAggregate
+    {
+        protected final AbstractType<?> type;
+        private ByteBuffer max;
 
-                    public void addInput(int protocolVersion, List<ByteBuffer> values)
-                    {
-                        ByteBuffer value = values.get(0);
+        private MaxAggregate(AbstractType<?> type)
+        {
+            this.type = type;
+        }
 
-                        if (value == null)
-                            return;
+        public void reset()
+        {
+            max = null;
+        }
 
-                        if (max == null || returnType().compare(max, value) < 0)
-                            max = value;
-                    }
-                };
-            }
-        };
+        public ByteBuffer compute(int protocolVersion)
+        {
+            return max;
+        }
+
+        public ByteBuffer getState()
+        {
+            return max;
+        }
+
+        public void mergeState(ByteBuffer state)
+        {
+            if (state != null)
+                add(state);
+        }
+
+        public void addInput(int protocolVersion, List<ByteBuffer> values)
+        {
+            ByteBuffer value = values.get(0);
+
+            if (value == null)
+                return;
+
+            add(value);
+        }
+
+        protected void add(ByteBuffer value)
+        {
+            if (max == null || type.compare(max, value) < 0)
+                max = value;
+        }
+    }
+
+    private static final class VectorizedMaxAggregate extends MaxAggregate implements AggregateFunction.VectorizedAggregate
+    {
+        private final ColumnVector.Kind kind;
+
+        private VectorizedMaxAggregate(AbstractType<?> type, ColumnVector.Kind kind)
+        {
+            super(type);
+            this.kind = kind;
+        }
+
+        public void addInputs(ColumnVector values)
+        {
+            int index = kind == ColumnVector.Kind.INTEGRAL ? maxIntegral(values) : maxFloating(values);
+            if (index < 0)
+                return;
+
+            add(kind == ColumnVector.Kind.INTEGRAL ? decompose(type, values.longs[index])
+                                                   : decompose(type, values.doubles[index]));
+        }
     }
 
     /**
@@ -779,37 +1080,88 @@ public abstract class AggregateFcts
      */
     public static AggregateFunction makeMinFunction(final AbstractType<?> inputType)
     {
+        // counters are ordered by their bytes rather than as numbers
+        final ColumnVector.Kind kind = inputType instanceof CounterColumnType ? ColumnVector.Kind.OPAQUE
+                                                                              : ColumnVector.kindOf(inputType);
         return new NativeAggregateFunction("min", inputType, inputType)
         {
             public Aggregate newAggregate()
             {
-                return new Aggregate()
-                {
-                    private ByteBuffer min;
+                if (kind == ColumnVector.Kind.OPAQUE)
+                    return new MinAggregate(returnType());
 
-                    public void reset()
-                    {
-                        min = null;
-                    }
+                return new VectorizedMinAggregate(returnType(), kind);
+            }
+        };
+    }
 
-                    public ByteBuffer compute(int protocolVersion)
-                    {
-                        return min;
-                    }
+    private static class MinAggregate implements AggregateFunction.MergeableAggregate
+    {
+        protected final AbstractType<?> type;
+        private ByteBuffer min;
 
-                    public void addInput(int protocolVersion, List<ByteBuffer> values)
-                    {
-                        ByteBuffer value = values.get(0);
+        private MinAggregate(AbstractType<?> type)
+        {
+            this.type = type;
+        }
 
-                        if (value == null)
-                            return;
+        public void reset()
+        {
+            min = null;
+        }
 
-                        if (min == null || returnType().compare(min, value) > 0)
-                            min = value;
-                    }
-                };
-            }
-        };
+        public ByteBuffer compute(int protocolVersion)
+        {
+            return min;
+        }
+
+        public ByteBuffer getState()
+        {
+            return min;
+        }
+
+        public void mergeState(ByteBuffer state)
+        {
+            if (state != null)
+                add(state);
+        }
+
+        public void addInput(int protocolVersion, List<ByteBuffer> values)
+        {
+            ByteBuffer value = values.get(0);
+
+            if (value == null)
+                return;
+
+            add(value);
+        }
+
+        protected void add(ByteBuffer value)
+        {
+            if (min == null || type.compare(min, value) > 0)
+                min = value;
+        }
+    }
+
+    private static final class VectorizedMinAggregate extends MinAggregate implements AggregateFunction.VectorizedAggregate
+    {
+        private final ColumnVector.Kind kind;
+
+        private VectorizedMinAggregate(AbstractType<?> type, ColumnVector.Kind kind)
+        {
+            super(type);
+            this.kind = kind;
+        }
+
+        public void addInputs(ColumnVector values)
+        {
+            int index = kind == ColumnVector.Kind.INTEGRAL ? minIntegral(values) : minFloating(values);
+            if (index < 0)
+                return;
+
+            add(kind == ColumnVector.Kind.INTEGRAL ? decompose(type, values.longs[index])
+                                                   : decompose(type, values.doubles[index]));
+        }
     }
 
     /**
@@ -824,7 +1176,7 @@ public abstract class AggregateFcts
         {
             public Aggregate newAggregate()
             {
-                return new Aggregate()
+                return new VectorizedMergeableAggregate()
                 {
                     private long count;
 
@@ -838,6 +1190,16 @@ public abstract class AggregateFcts
                         return ((LongType) returnType()).decompose(count);
                     }
 
+                    public ByteBuffer getState()
+                    {
+                        return ((LongType) returnType()).decompose(count);
+                    }
+
+                    public void mergeState(ByteBuffer state)
+                    {
+                        count += ((LongType) returnType()).compose(state);
+                    }
+
                     public void addInput(int protocolVersion, List<ByteBuffer> values)
                     {
                         ByteBuffer value = values.get(0);
@@ -847,8 +1209,126 @@ public abstract class AggregateFcts
 
                         count++;
                     }
+
+                    public void addInputs(ColumnVector values)
+                    {
+                        count += values.nonNulls();
+                    }
                 };
             }
         };
     }
+
+    private interface VectorizedMergeableAggregate extends AggregateFunction.VectorizedAggregate, AggregateFunction.MergeableAggregate
+    {
+    }
+
+    // The state of an AVG aggregate is the count of its values followed by their sum, in the type of the values.
+    private static ByteBuffer avgState(int count, ByteBuffer sum)
+    {
+        ByteBuffer state = ByteBuffer.allocate(4 + sum.remaining());
+        state.putInt(count).put(sum.duplicate()).flip();
+        return state;
+    }
+
+    private static int avgCount(ByteBuffer state)
+    {
+        return state.getInt(state.position());
+    }
+
+    private static ByteBuffer avgSum(ByteBuffer state)
+    {
+        ByteBuffer sum = state.duplicate();
+        sum.position(sum.position() + 4);
+        return sum;
+    }
+
+    private static long sumIntegral(ColumnVector values)
+    {
+        // nulls are decoded to 0, which keeps this loop free of branches
+        long[] longs = values.longs;
+        long sum = 0;
+        for (int i = 0, m = values.size(); i < m; i++)
+            sum += longs[i];
+        return sum;
+    }
+
+    // floating point sums are accumulated in the order of the values, as they would be one value at a time
+    private static float sumFloats(float sum, ColumnVector values)
+    {
+        double[] doubles = values.doubles;
+        for (int i = 0, m = values.size(); i < m; i++)
+            sum += (float) doubles[i];
+        return sum;
+    }
+
+    private static double sumDoubles(double sum, ColumnVector values)
+    {
+        double[] doubles = values.doubles;
+        for (int i = 0, m = values.size(); i < m; i++)
+            sum += doubles[i];
+        return sum;
+    }
+
+    // Returns the index of the greatest non-null value, or -1 if they are all null.
+    private static int maxIntegral(ColumnVector values)
+    {
+        int max = -1;
+        for (int i = 0, m = values.size(); i < m; i++)
+        {
+            if (!values.nulls[i] && (max < 0 || values.longs[i] > values.longs[max]))
+                max = i;
+        }
+        return max;
+    }
+
+    private static int maxFloating(ColumnVector values)
+    {
+        int max = -1;
+        for (int i = 0, m = values.size(); i < m; i++)
+        {
+            if (!values.nulls[i] && (max < 0 || Double.compare(values.doubles[i], values.doubles[max]) > 0))
+                max = i;
+        }
+        return max;
+    }
+
+    // Returns the index of the least non-null value, or -1 if they are all null.
+    private static int minIntegral(ColumnVector values)
+    {
+        int min = -1;
+        for (int i = 0, m = values.size(); i < m; i++)
+        {
+            if (!values.nulls[i] && (min < 0 || values.longs[i] < values.longs[min]))
+                min = i;
+        }
+        return min;
+    }
+
+    private static int minFloating(ColumnVector values)
+    {
+        int min = -1;
+        for (int i = 0, m = values.size(); i < m; i++)
+        {
+            if (!values.nulls[i] && (min < 0 || Double.compare(values.doubles[i], values.doubles[min]) < 0))
+                min = i;
+        }
+        return min;
+    }
+
+    private static ByteBuffer decompose(AbstractType<?> type, long value)
+    {
+        if (type instanceof ByteType)
+            return ByteBuffer.wrap(new byte[]{ (byte) value });
+        if (type instanceof ShortType)
+            return ByteBufferUtil.bytes((short) value);
+        if (type instanceof Int32Type)
+            return ByteBufferUtil.bytes((int) value);
+        return ByteBufferUtil.bytes(value);
+    }
+
+    private static ByteBuffer decompose(AbstractType<?> type, double value)
+    {
+        return type instanceof FloatType ? ByteBufferUtil.bytes((float) value) : ByteBufferUtil.bytes(value);
+    }
 }
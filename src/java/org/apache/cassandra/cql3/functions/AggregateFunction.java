@@ -60,4 +60,42 @@ public interface AggregateFunction extends Function
          */
         public void reset();
     }
+
+    /**
+     * An aggregation operation whose state can be merged into another aggregate of the same function, so that its
+     * input can be aggregated in several parts, like the pages of a partition that a replica aggregates one at a time.
+     * <p>
+     * Merged floating point sums may differ in their last bits from the ones of all the values added to one aggregate.
+     */
+    interface MergeableAggregate extends Aggregate
+    {
+        /**
+         * Returns the state of this aggregate.
+         *
+         * @return the state of this aggregate, which can be <code>null</code> if it hasn't aggregated any value.
+         */
+        public ByteBuffer getState();
+
+        /**
+         * Merges the specified state into this aggregate.
+         *
+         * @param state a state returned by <code>getState</code> on an aggregate of the same function.
+         */
+        public void mergeState(ByteBuffer state);
+    }
+
+    /**
+     * An aggregation operation that can also add its input a batch of values at a time, for the aggregates
+     * of a single argument or of none.
+     */
+    interface VectorizedAggregate extends Aggregate
+    {
+        /**
+         * Adds the specified values to this aggregate.
+         *
+         * @param values the values to add to the aggregate, of which only the size is relevant to the aggregates
+         * of no argument.
+         */
+        public void addInputs(ColumnVector values);
+    }
 }
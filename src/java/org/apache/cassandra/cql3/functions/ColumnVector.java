@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cql3.functions;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.cassandra.db.marshal.*;
+
+/**
+ * A batch of the values of a column, decoded into primitives so that native aggregates can consume them a batch
+ * at a time in tight loops, rather than composing a boxed value for each cell.
+ * <p>
+ * Null values are decoded to 0, and flagged in <code>nulls</code>. The empty values of numeric types have no
+ * primitive to be decoded to, see <code>isDecodable</code>.
+ */
+public final class ColumnVector
+{
+    /**
+     * The primitives the values of a type are decoded to.
+     */
+    public enum Kind
+    {
+        /** tinyint, smallint, int, bigint and counter values, decoded to <code>longs</code> */
+        INTEGRAL,
+        /** float and double values, decoded to <code>doubles</code> */
+        FLOATING,
+        /** values of any other type, of which only nullness is kept */
+        OPAQUE
+    }
+
+    private enum Decoder { BYTE, SHORT, INT, LONG, FLOAT, DOUBLE, NONE }
+
+    public final Kind kind;
+    private final Decoder decoder;
+
+    public final long[] longs;
+    public final double[] doubles;
+    public final boolean[] nulls;
+
+    private int size;
+    private int nonNulls;
+
+    /**
+     * @param type the type of the values, or <code>null</code> for a vector only counting rows
+     * @param capacity the maximum number of values of the vector
+     */
+    public ColumnVector(AbstractType<?> type, int capacity)
+    {
+        this.decoder = decoderOf(type);
+        this.kind = kindOf(decoder);
+        this.longs = kind == Kind.INTEGRAL ? new long[capacity] : null;
+        this.doubles = kind == Kind.FLOATING ? new double[capacity] : null;
+        this.nulls = new boolean[capacity];
+    }
+
+    public static Kind kindOf(AbstractType<?> type)
+    {
+        return kindOf(decoderOf(type));
+    }
+
+    private static Kind kindOf(Decoder decoder)
+    {
+        switch (decoder)
+        {
+            case BYTE: case SHORT: case INT: case LONG:
+                return Kind.INTEGRAL;
+            case FLOAT: case DOUBLE:
+                return Kind.FLOATING;
+            default:
+                return Kind.OPAQUE;
+        }
+    }
+
+    private static Decoder decoderOf(AbstractType<?> type)
+    {
+        if (type instanceof ByteType)
+            return Decoder.BYTE;
+        if (type instanceof ShortType)
+            return Decoder.SHORT;
+        if (type instanceof Int32Type)
+            return Decoder.INT;
+        // counter values are handed to selectors as their total
+        if (type instanceof LongType || type instanceof CounterColumnType)
+            return Decoder.LONG;
+        if (type instanceof FloatType)
+            return Decoder.FLOAT;
+        if (type instanceof DoubleType)
+            return Decoder.DOUBLE;
+        return Decoder.NONE;
+    }
+
+    /**
+     * @return whether the specified value can be added to this vector, which is the case of every value but the
+     * empty values of numeric types
+     */
+    public boolean isDecodable(ByteBuffer value)
+    {
+        return kind == Kind.OPAQUE || value == null || value.hasRemaining();
+    }
+
+    /**
+     * Adds a value to this vector, which must not be full, and must be decodable.
+     */
+    public void add(ByteBuffer value)
+    {
+        boolean isNull = value == null;
+        nulls[size] = isNull;
+        if (!isNull)
+            nonNulls++;
+
+        if (kind == Kind.INTEGRAL)
+            longs[size] = isNull ? 0 : decodeLong(value);
+        else if (kind == Kind.FLOATING)
+            doubles[size] = isNull ? 0 : decodeDouble(value);
+        size++;
+    }
+
+    private long decodeLong(ByteBuffer value)
+    {
+        int position = value.position();
+        switch (decoder)
+        {
+            case BYTE:
+                return value.get(position);
+            case SHORT:
+                return value.getShort(position);
+            case INT:
+                return value.getInt(position);
+            default:
+                return value.getLong(position);
+        }
+    }
+
+    private double decodeDouble(ByteBuffer value)
+    {
+        int position = value.position();
+        return decoder == Decoder.FLOAT ? value.getFloat(position) : value.getDouble(position);
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int nonNulls()
+    {
+        return nonNulls;
+    }
+
+    public boolean isFull()
+    {
+        return size == nulls.length;
+    }
+
+    public void clear()
+    {
+        size = 0;
+        nonNulls = 0;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("ColumnVector(%s, size=%d, nonNulls=%d, values=%s)",
+                             kind,
+                             size,
+                             nonNulls,
+                             kind == Kind.INTEGRAL ? Arrays.toString(Arrays.copyOf(longs, size))
+                                                   : kind == Kind.FLOATING ? Arrays.toString(Arrays.copyOf(doubles, size)) : "?");
+    }
+}
@@ -18,11 +18,15 @@
 package org.apache.cassandra.cql3.selection;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.cassandra.cql3.functions.AggregateFunction;
+import org.apache.cassandra.cql3.functions.ColumnVector;
 import org.apache.cassandra.cql3.functions.Function;
 import org.apache.cassandra.cql3.selection.Selection.ResultSetBuilder;
+import org.apache.cassandra.db.AggregateReadCommand;
+import org.apache.cassandra.db.marshal.AbstractType;
 import org.apache.cassandra.exceptions.InvalidRequestException;
 
 final class AggregateFunctionSelector extends AbstractFunctionSelector<AggregateFunction>
@@ -57,6 +61,84 @@ final class AggregateFunctionSelector extends AbstractFunctionSelector<Aggregate
         aggregate.reset();
     }
 
+    /**
+     * Creates a vector to batch the input of this selector in, if the aggregate can add its input a batch at a time
+     * and has no argument or a column as its only argument.
+     *
+     * @param capacity the capacity of the vector
+     * @return a new vector, or <code>null</code> if the input of this selector can't be batched
+     */
+    ColumnVector newInputVector(int capacity)
+    {
+        if (!(aggregate instanceof AggregateFunction.VectorizedAggregate))
+            return null;
+
+        if (argSelectors.isEmpty())
+            return new ColumnVector(null, capacity);
+
+        if (argSelectors.size() != 1 || !(argSelectors.get(0) instanceof SimpleSelector))
+            return null;
+
+        AbstractType<?> type = argSelectors.get(0).getType();
+        if (ColumnVector.kindOf(type) != ColumnVector.kindOf(fun.argTypes().get(0)))
+            return null;
+
+        return new ColumnVector(type, capacity);
+    }
+
+    /**
+     * @return the index of the column this selector aggregates in the rows of the <code>ResultSetBuilder</code>,
+     * or -1 if the aggregate has no argument
+     */
+    int inputColumnIndex()
+    {
+        return argSelectors.isEmpty() ? -1 : ((SimpleSelector) argSelectors.get(0)).columnIndex();
+    }
+
+    /**
+     * Adds a batch of input to the aggregate, which the vector must have been created by
+     * <code>newInputVector</code> for.
+     */
+    void addInputs(ColumnVector values)
+    {
+        ((AggregateFunction.VectorizedAggregate) aggregate).addInputs(values);
+    }
+
+    /**
+     * @return the state of the aggregate of this selector, which must be mergeable
+     */
+    ByteBuffer getState()
+    {
+        return ((AggregateFunction.MergeableAggregate) aggregate).getState();
+    }
+
+    /**
+     * Merges a state returned by <code>getState</code> on a selector of the same aggregate into this one.
+     */
+    void mergeState(ByteBuffer state)
+    {
+        ((AggregateFunction.MergeableAggregate) aggregate).mergeState(state);
+    }
+
+    /**
+     * @return the aggregate of this selector, if it is a mergeable native aggregate of columns or of the rows
+     * themselves, or <code>null</code> otherwise
+     */
+    AggregateReadCommand.Aggregate toNativeAggregate()
+    {
+        if (!fun.isNative() || !(aggregate instanceof AggregateFunction.MergeableAggregate))
+            return null;
+
+        List<String> arguments = new ArrayList<>(argSelectors.size());
+        for (Selector argSelector : argSelectors)
+        {
+            if (!(argSelector instanceof SimpleSelector))
+                return null;
+            arguments.add(((SimpleSelector) argSelector).columnName());
+        }
+        return new AggregateReadCommand.Aggregate(fun.name(), arguments);
+    }
+
     AggregateFunctionSelector(Function fun, List<Selector> argSelectors) throws InvalidRequestException
     {
         super((AggregateFunction) fun, argSelectors);
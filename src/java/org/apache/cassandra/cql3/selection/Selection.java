@@ -28,7 +28,9 @@ import com.google.common.collect.Iterators;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.cql3.*;
+import org.apache.cassandra.cql3.functions.ColumnVector;
 import org.apache.cassandra.cql3.functions.Function;
+import org.apache.cassandra.db.AggregateReadCommand;
 import org.apache.cassandra.db.rows.Cell;
 import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.db.marshal.UTF8Type;
@@ -199,6 +201,23 @@ public abstract class Selection
                : new SimpleSelection(cfm, defs, mapping, false);
     }
 
+    /**
+     * Creates the selection of the specified native aggregates, as computed by the replicas for an
+     * <code>AggregateReadCommand</code>.
+     */
+    public static Selection forAggregates(CFMetaData cfm, List<AggregateReadCommand.Aggregate> aggregates) throws InvalidRequestException
+    {
+        List<RawSelector> rawSelectors = new ArrayList<>(aggregates.size());
+        for (AggregateReadCommand.Aggregate aggregate : aggregates)
+        {
+            List<Selectable.Raw> args = new ArrayList<>(aggregate.arguments.size());
+            for (String argument : aggregate.arguments)
+                args.add(new ColumnIdentifier.Raw(argument, true));
+            rawSelectors.add(new RawSelector(new Selectable.WithFunction.Raw(aggregate.function, args), null));
+        }
+        return fromSelectors(cfm, rawSelectors);
+    }
+
     private static SelectionColumnMapping collectColumnMappings(CFMetaData cfm,
                                                                 List<RawSelector> rawSelectors,
                                                                 SelectorFactories factories)
@@ -240,6 +259,18 @@ public abstract class Selection
 
     public abstract boolean isAggregate();
 
+    /**
+     * Returns the aggregates of this selection if it is only made of native aggregates of columns, which the
+     * replicas can then compute on their own.
+     *
+     * @return the aggregates of this selection, or <code>null</code> if it isn't only made of native aggregates
+     * of columns
+     */
+    public List<AggregateReadCommand.Aggregate> getAggregatesForPushDown()
+    {
+        return null;
+    }
+
     @Override
     public String toString()
     {
@@ -339,6 +370,12 @@ public abstract class Selection
                     resultSet.addRow(getOutputRow(protocolVersion));
                     selectors.reset();
                 }
+                else
+                {
+                    // aggregating selectors don't keep the row itself, so we can reuse it
+                    current.clear();
+                    return;
+                }
             }
             current = new ArrayList<>(columns.size());
         }
@@ -358,6 +395,29 @@ public abstract class Selection
             return resultSet;
         }
 
+        /**
+         * Returns the states of the aggregates of the rows added so far, for a selection created by
+         * <code>forAggregates</code>.
+         */
+        public List<ByteBuffer> getAggregateStates(int protocolVersion) throws InvalidRequestException
+        {
+            if (current != null)
+            {
+                selectors.addInputRow(protocolVersion, this);
+                current = null;
+            }
+            return selectors.getAggregateStates();
+        }
+
+        /**
+         * Merges the specified states, returned by <code>getAggregateStates</code> for the same aggregates, into
+         * the aggregates of this selection, which must be the ones of its <code>getAggregatesForPushDown</code>.
+         */
+        public void mergeAggregateStates(List<ByteBuffer> states)
+        {
+            selectors.mergeAggregateStates(states);
+        }
+
         private List<ByteBuffer> getOutputRow(int protocolVersion)
         {
             List<ByteBuffer> outputRow = selectors.getOutputRow(protocolVersion);
@@ -392,6 +452,21 @@ public abstract class Selection
         }
     }
 
+    private static List<ByteBuffer> getAggregateStates(List<Selector> selectors)
+    {
+        List<ByteBuffer> states = new ArrayList<>(selectors.size());
+        for (Selector selector : selectors)
+            states.add(((AggregateFunctionSelector) selector).getState());
+        return states;
+    }
+
+    private static void mergeAggregateStates(List<Selector> selectors, List<ByteBuffer> states)
+    {
+        assert states.size() == selectors.size();
+        for (int i = 0; i < states.size(); i++)
+            ((AggregateFunctionSelector) selectors.get(i)).mergeState(states.get(i));
+    }
+
     private static interface Selectors
     {
         public boolean isAggregate();
@@ -406,6 +481,10 @@ public abstract class Selection
 
         public List<ByteBuffer> getOutputRow(int protocolVersion) throws InvalidRequestException;
 
+        public List<ByteBuffer> getAggregateStates();
+
+        public void mergeAggregateStates(List<ByteBuffer> states);
+
         public void reset();
     }
 
@@ -465,6 +544,16 @@ public abstract class Selection
                     current = rs.current;
                 }
 
+                public List<ByteBuffer> getAggregateStates()
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                public void mergeAggregateStates(List<ByteBuffer> states)
+                {
+                    throw new UnsupportedOperationException();
+                }
+
                 public boolean isAggregate()
                 {
                     return false;
@@ -476,6 +565,7 @@ public abstract class Selection
     private static class SelectionWithProcessing extends Selection
     {
         private final SelectorFactories factories;
+        private final List<AggregateReadCommand.Aggregate> aggregatesForPushDown;
 
         public SelectionWithProcessing(CFMetaData cfm,
                                        List<ColumnDefinition> columns,
@@ -489,6 +579,22 @@ public abstract class Selection
                   factories.containsTTLSelectorFactory());
 
             this.factories = factories;
+            this.aggregatesForPushDown = factories.doesAggregation() ? collectAggregates(factories.newInstances()) : null;
+        }
+
+        private static List<AggregateReadCommand.Aggregate> collectAggregates(List<Selector> selectors)
+        {
+            List<AggregateReadCommand.Aggregate> aggregates = new ArrayList<>(selectors.size());
+            for (Selector selector : selectors)
+            {
+                AggregateReadCommand.Aggregate aggregate = selector instanceof AggregateFunctionSelector
+                                                         ? ((AggregateFunctionSelector) selector).toNativeAggregate()
+                                                         : null;
+                if (aggregate == null)
+                    return null;
+                aggregates.add(aggregate);
+            }
+            return aggregates;
         }
 
         @Override
@@ -510,11 +616,21 @@ public abstract class Selection
             return factories.doesAggregation();
         }
 
+        @Override
+        public List<AggregateReadCommand.Aggregate> getAggregatesForPushDown()
+        {
+            return aggregatesForPushDown;
+        }
+
         protected Selectors newSelectors() throws InvalidRequestException
         {
+            final List<Selector> selectors = factories.newInstances();
+            Selectors vectorized = VectorizedSelectors.create(selectors);
+            if (vectorized != null)
+                return vectorized;
+
             return new Selectors()
             {
-                private final List<Selector> selectors = factories.newInstances();
 
                 public void reset()
                 {
@@ -542,8 +658,138 @@ public abstract class Selection
                     for (Selector selector : selectors)
                         selector.addInput(protocolVersion, rs);
                 }
+
+                public List<ByteBuffer> getAggregateStates()
+                {
+                    return Selection.getAggregateStates(selectors);
+                }
+
+                public void mergeAggregateStates(List<ByteBuffer> states)
+                {
+                    Selection.mergeAggregateStates(selectors, states);
+                }
             };
         }
 
     }
+
+    /**
+     * Selectors for the selections made only of native aggregates of columns, like <code>SELECT count(*), sum(v),
+     * max(v)</code>, which decode the values of the aggregated columns into primitive vectors, a batch of rows
+     * at a time, and hand each batch to the aggregates at once.
+     */
+    private static final class VectorizedSelectors implements Selectors
+    {
+        private static final int VECTOR_SIZE = 1024;
+
+        private final List<Selector> selectors;
+        private final AggregateFunctionSelector[] aggregates;
+        private final ColumnVector[] vectors;
+        private final int[] columnIndexes;
+
+        private VectorizedSelectors(List<Selector> selectors, ColumnVector[] vectors)
+        {
+            this.selectors = selectors;
+            this.vectors = vectors;
+            this.aggregates = new AggregateFunctionSelector[selectors.size()];
+            this.columnIndexes = new int[selectors.size()];
+            for (int i = 0; i < aggregates.length; i++)
+            {
+                aggregates[i] = (AggregateFunctionSelector) selectors.get(i);
+                columnIndexes[i] = aggregates[i].inputColumnIndex();
+            }
+        }
+
+        /**
+         * @return vectorized selectors for the specified selectors, or <code>null</code> if they can't all batch
+         * their input
+         */
+        static Selectors create(List<Selector> selectors)
+        {
+            if (selectors.isEmpty())
+                return null;
+
+            ColumnVector[] vectors = new ColumnVector[selectors.size()];
+            for (int i = 0; i < vectors.length; i++)
+            {
+                Selector selector = selectors.get(i);
+                if (!(selector instanceof AggregateFunctionSelector))
+                    return null;
+
+                vectors[i] = ((AggregateFunctionSelector) selector).newInputVector(VECTOR_SIZE);
+                if (vectors[i] == null)
+                    return null;
+            }
+            return new VectorizedSelectors(selectors, vectors);
+        }
+
+        public boolean isAggregate()
+        {
+            return true;
+        }
+
+        public void addInputRow(int protocolVersion, ResultSetBuilder rs) throws InvalidRequestException
+        {
+            for (int i = 0; i < vectors.length; i++)
+            {
+                if (columnIndexes[i] >= 0 && !vectors[i].isDecodable(rs.current.get(columnIndexes[i])))
+                {
+                    // the aggregates then add the row one value at a time, after the rows batched before it
+                    flush();
+                    for (AggregateFunctionSelector aggregate : aggregates)
+                        aggregate.addInput(protocolVersion, rs);
+                    return;
+                }
+            }
+
+            for (int i = 0; i < vectors.length; i++)
+                vectors[i].add(columnIndexes[i] < 0 ? null : rs.current.get(columnIndexes[i]));
+
+            if (vectors[0].isFull())
+                flush();
+        }
+
+        private void flush()
+        {
+            if (vectors[0].size() == 0)
+                return;
+
+            for (int i = 0; i < vectors.length; i++)
+            {
+                aggregates[i].addInputs(vectors[i]);
+                vectors[i].clear();
+            }
+        }
+
+        public List<ByteBuffer> getOutputRow(int protocolVersion) throws InvalidRequestException
+        {
+            flush();
+
+            List<ByteBuffer> outputRow = new ArrayList<>(selectors.size());
+            for (Selector selector : selectors)
+                outputRow.add(selector.getOutput(protocolVersion));
+            return outputRow;
+        }
+
+        public List<ByteBuffer> getAggregateStates()
+        {
+            flush();
+            return Selection.getAggregateStates(selectors);
+        }
+
+        public void mergeAggregateStates(List<ByteBuffer> states)
+        {
+            flush();
+            Selection.mergeAggregateStates(selectors, states);
+        }
+
+        public void reset()
+        {
+            for (int i = 0; i < vectors.length; i++)
+            {
+                vectors[i].clear();
+                aggregates[i].reset();
+            }
+        }
+    }
 }
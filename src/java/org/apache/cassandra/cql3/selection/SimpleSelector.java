@@ -85,6 +85,22 @@ public final class SimpleSelector extends Selector
         current = null;
     }
 
+    /**
+     * @return the name of the selected column
+     */
+    String columnName()
+    {
+        return columnName;
+    }
+
+    /**
+     * @return the index of the selected column in the rows of the <code>ResultSetBuilder</code>
+     */
+    int columnIndex()
+    {
+        return idx;
+    }
+
     @Override
     public AbstractType<?> getType()
     {
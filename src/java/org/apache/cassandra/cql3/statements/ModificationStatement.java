@@ -20,7 +20,10 @@ package org.apache.cassandra.cql3.statements;
 import java.nio.ByteBuffer;
 import java.util.*;
 
+import com.google.common.base.Functions;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -599,15 +602,27 @@ public abstract class ModificationStatement implements CQLStatement
              : executeWithoutCondition(queryState, options);
     }
 
-    private ResultMessage executeWithoutCondition(QueryState queryState, QueryOptions options)
+    /**
+     * Only writes without conditions are executed asynchronously, conditional updates still block on Paxos.
+     */
+    public ListenableFuture<ResultMessage> executeAsync(QueryState queryState, QueryOptions options)
     throws RequestExecutionException, RequestValidationException
     {
-        ConsistencyLevel cl = options.getConsistency();
-        if (isCounter())
-            cl.validateCounterForWrite(cfm);
-        else
-            cl.validateForWrite(cfm.ksName);
+        if (options.getConsistency() == null || hasConditions())
+            return Futures.immediateFuture(execute(queryState, options));
 
+        ConsistencyLevel cl = validateWriteConsistency(options);
+        Collection<? extends IMutation> mutations = getMutations(options, false, options.getTimestamp(queryState));
+        if (mutations.isEmpty())
+            return Futures.immediateFuture(null);
+
+        return Futures.transform(StorageProxy.mutateWithTriggersAsync(mutations, cl, false), Functions.<ResultMessage>constant(null));
+    }
+
+    private ResultMessage executeWithoutCondition(QueryState queryState, QueryOptions options)
+    throws RequestExecutionException, RequestValidationException
+    {
+        ConsistencyLevel cl = validateWriteConsistency(options);
         Collection<? extends IMutation> mutations = getMutations(options, false, options.getTimestamp(queryState));
         if (!mutations.isEmpty())
             StorageProxy.mutateWithTriggers(mutations, cl, false);
@@ -615,6 +630,16 @@ public abstract class ModificationStatement implements CQLStatement
         return null;
     }
 
+    private ConsistencyLevel validateWriteConsistency(QueryOptions options) throws InvalidRequestException
+    {
+        ConsistencyLevel cl = options.getConsistency();
+        if (isCounter())
+            cl.validateCounterForWrite(cfm);
+        else
+            cl.validateForWrite(cfm.ksName);
+        return cl;
+    }
+
     public ResultMessage executeWithCondition(QueryState queryState, QueryOptions options)
     throws RequestExecutionException, RequestValidationException
     {
@@ -188,6 +188,10 @@ public class SelectStatement implements CQLStatement
 
         int pageSize = getPageSize(options);
 
+        ResultMessage.Rows aggregates = executeAggregatesOnReplica(query, options, state, pageSize, nowInSec);
+        if (aggregates != null)
+            return aggregates;
+
         if (pageSize <= 0 || query.limits().count() <= pageSize)
             return execute(query, options, state, nowInSec);
 
@@ -195,6 +199,67 @@ public class SelectStatement implements CQLStatement
         return execute(Pager.forDistributedQuery(pager, cl, state.getClientState()), options, pageSize, nowInSec);
     }
 
+    /**
+     * Has a replica compute the aggregates of the selection if the query reads a single partition and only selects
+     * native aggregates of columns, so that the rows of the partition don't have to be sent to the coordinator.
+     * The partition is read page by page, the replica returning the states of the aggregates of each page, which
+     * are merged here. The pages that the replicas can't aggregate, or don't agree on, are read normally instead.
+     *
+     * @return the aggregates, or <code>null</code> if the query can't have them computed by a replica
+     */
+    private ResultMessage.Rows executeAggregatesOnReplica(ReadQuery query, QueryOptions options, QueryState state, int pageSize, int nowInSec)
+    throws RequestValidationException, RequestExecutionException
+    {
+        List<AggregateReadCommand.Aggregate> aggregates = selection.getAggregatesForPushDown();
+        if (aggregates == null
+            || parameters.isJson
+            || !parameters.orderings.isEmpty()
+            || options.getConsistency().isSerialConsistency()
+            || !(query instanceof SinglePartitionReadCommand.Group))
+            return null;
+
+        List<SinglePartitionReadCommand<?>> commands = ((SinglePartitionReadCommand.Group) query).commands;
+        if (commands.size() != 1)
+            return null;
+
+        SinglePartitionReadCommand<?> readCommand = commands.get(0);
+        Selection.ResultSetBuilder result = selection.resultSetBuilder(false);
+        PagingState pagingState = null;
+        do
+        {
+            AggregateReadCommand command = new AggregateReadCommand(readCommand,
+                                                                    aggregates,
+                                                                    selectsStaticRow(),
+                                                                    pagingState,
+                                                                    pageSize,
+                                                                    options.getProtocolVersion());
+            AggregateReadResponse response = StorageProxy.readAggregates(command, options.getConsistency());
+            if (response != null)
+            {
+                result.mergeAggregateStates(response.states);
+                pagingState = response.pagingState;
+                continue;
+            }
+
+            QueryPager pager = readCommand.getPager(pagingState);
+            try (PartitionIterator page = pager.fetchPage(pageSize, options.getConsistency(), state.getClientState()))
+            {
+                while (page.hasNext())
+                {
+                    try (RowIterator partition = page.next())
+                    {
+                        processPartition(partition, options, result, nowInSec);
+                    }
+                }
+            }
+            // the state of the pager is only updated once the page is closed
+            pagingState = pager.isExhausted() ? null : pager.state();
+        }
+        while (pagingState != null);
+
+        return new ResultMessage.Rows(result.build(options.getProtocolVersion()));
+    }
+
     private int getPageSize(QueryOptions options)
     {
         int pageSize = options.getPageSize();
@@ -602,17 +667,39 @@ public class SelectStatement implements CQLStatement
     void processPartition(RowIterator partition, QueryOptions options, Selection.ResultSetBuilder result, int nowInSec)
     throws InvalidRequestException
     {
-        int protocolVersion = options.getProtocolVersion();
+        processPartition(partition, selection, selectsStaticRow(), result, nowInSec, options.getProtocolVersion());
+    }
 
-        ByteBuffer[] keyComponents = getComponents(cfm, partition.partitionKey());
+    /**
+     * Whether a partition with no rows but a static row is selected as a row, which is the case provided the select
+     * is a full partition selection (i.e. not a 2ndary index search and there was no condition on clustering columns).
+     */
+    private boolean selectsStaticRow()
+    {
+        return (!restrictions.usesSecondaryIndexing() || cfm.isStaticCompactTable()) && !restrictions.hasClusteringColumnsRestriction();
+    }
+
+    /**
+     * Adds the rows of the specified partition to the result of the specified selection.
+     *
+     * @param selectsStaticRow whether the static row of the partition must be added as a row if it has no other rows
+     */
+    public static void processPartition(RowIterator partition,
+                                        Selection selection,
+                                        boolean selectsStaticRow,
+                                        Selection.ResultSetBuilder result,
+                                        int nowInSec,
+                                        int protocolVersion)
+    throws InvalidRequestException
+    {
+        ByteBuffer[] keyComponents = getComponents(partition.metadata(), partition.partitionKey());
 
         Row staticRow = partition.staticRow();
-        // If there is no rows, then provided the select was a full partition selection
-        // (i.e. not a 2ndary index search and there was no condition on clustering columns),
-        // we want to include static columns and we're done.
+        // If there is no rows, then provided the select was a full partition selection, we want to include static
+        // columns and we're done.
         if (!partition.hasNext())
         {
-            if (!staticRow.isEmpty() && (!restrictions.usesSecondaryIndexing() || cfm.isStaticCompactTable()) && !restrictions.hasClusteringColumnsRestriction())
+            if (!staticRow.isEmpty() && selectsStaticRow)
             {
                 result.newRow(protocolVersion);
                 for (ColumnDefinition def : selection.getColumns())
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.cql3.functions.FunctionName;
+import org.apache.cassandra.cql3.selection.Selection;
+import org.apache.cassandra.cql3.statements.SelectStatement;
+import org.apache.cassandra.db.partitions.PartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.RowIterator;
+import org.apache.cassandra.exceptions.InvalidRequestException;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.pager.PagingState;
+import org.apache.cassandra.service.pager.SinglePartitionPager;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * A read of a page of a single partition for which the replica returns the states of the native aggregates of a
+ * select over the rows of the page, along with the digest of the data read and the paging state of the next page,
+ * instead of the rows themselves.
+ * <p>
+ * The pages are those the internal paging of aggregation queries would read, so that the replicas never read more
+ * than a page at once. The coordinator sends this command to a single replica and normal digest reads of the page
+ * to the other replicas it blocks for, and only merges the aggregate states returned if all the digests match.
+ * Otherwise, it falls back to a normal read of the page, which takes care of read repair.
+ */
+public class AggregateReadCommand
+{
+    public static final IVersionedSerializer<AggregateReadCommand> serializer = new Serializer();
+
+    public final SinglePartitionReadCommand<?> command;
+    public final List<Aggregate> aggregates;
+
+    /**
+     * Whether a partition that has no rows but a static row is selected as a row, as when the select has no
+     * restriction on the clustering columns.
+     */
+    public final boolean selectsStaticRow;
+
+    /**
+     * The paging state of the page to read, or <code>null</code> for the first page.
+     */
+    public final PagingState pagingState;
+
+    public final int pageSize;
+
+    /**
+     * The version of the native protocol to compute the aggregates with.
+     */
+    public final int protocolVersion;
+
+    /**
+     * The read of the page, as sent to the replicas that only return its digest.
+     */
+    public final ReadCommand pageCommand;
+
+    public AggregateReadCommand(SinglePartitionReadCommand<?> command,
+                                List<Aggregate> aggregates,
+                                boolean selectsStaticRow,
+                                PagingState pagingState,
+                                int pageSize,
+                                int protocolVersion)
+    {
+        assert !command.isDigestQuery() && pageSize > 0;
+        this.command = command;
+        this.aggregates = aggregates;
+        this.selectsStaticRow = selectsStaticRow;
+        this.pagingState = pagingState;
+        this.pageSize = pageSize;
+        this.protocolVersion = protocolVersion;
+        this.pageCommand = command.getPager(pagingState).nextPageCommand(pageSize);
+    }
+
+    public CFMetaData metadata()
+    {
+        return command.metadata();
+    }
+
+    /**
+     * Creates a message for this command.
+     */
+    public MessageOut<AggregateReadCommand> createMessage()
+    {
+        return new MessageOut<>(MessagingService.Verb.AGGREGATE_READ, this, serializer);
+    }
+
+    /**
+     * Executes this command on the local host, reading the page once to both digest and aggregate it.
+     *
+     * @return the aggregate states of the page, or <code>AggregateReadResponse.NOT_AGGREGATED</code> if the
+     * aggregates can't be computed with the schema of this node
+     */
+    public AggregateReadResponse execute()
+    {
+        Selection selection;
+        try
+        {
+            selection = Selection.forAggregates(metadata(), aggregates);
+        }
+        catch (InvalidRequestException e)
+        {
+            return AggregateReadResponse.NOT_AGGREGATED;
+        }
+
+        // The rows are buffered like for a local data read, which is a page of them
+        ReadResponse data;
+        try (ReadOrderGroup orderGroup = pageCommand.startOrderGroup(); UnfilteredPartitionIterator iterator = pageCommand.executeLocally(orderGroup))
+        {
+            data = ReadResponse.createDataResponse(iterator);
+        }
+
+        // The pager counts the rows of the page and skips the static row of the partition on the pages after the first
+        SinglePartitionPager pager = command.getPager(pagingState);
+        List<ByteBuffer> states;
+        int nowInSec = command.nowInSec();
+        try
+        {
+            Selection.ResultSetBuilder result = selection.resultSetBuilder(false);
+            try (PartitionIterator partitions = pager.nextPage(UnfilteredPartitionIterators.filter(data.makeIterator(metadata()), nowInSec), pageSize))
+            {
+                while (partitions.hasNext())
+                {
+                    try (RowIterator partition = partitions.next())
+                    {
+                        SelectStatement.processPartition(partition, selection, selectsStaticRow, result, nowInSec, protocolVersion);
+                    }
+                }
+            }
+            states = result.getAggregateStates(protocolVersion);
+        }
+        catch (InvalidRequestException e)
+        {
+            return AggregateReadResponse.NOT_AGGREGATED;
+        }
+
+        // The state of the pager is only updated once the page is closed
+        PagingState nextPage = pager.isExhausted() ? null : pager.state();
+        return new AggregateReadResponse(states, data.digest(pageCommand), nextPage);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("AggregateReadCommand(%s, aggregates=%s, pagingState=%s, pageSize=%d)", command, aggregates, pagingState, pageSize);
+    }
+
+    /**
+     * A native aggregate function applied to columns of the rows read, or to the rows themselves if it has no
+     * arguments.
+     */
+    public static final class Aggregate
+    {
+        public final FunctionName function;
+        public final List<String> arguments;
+
+        public Aggregate(FunctionName function, List<String> arguments)
+        {
+            this.function = function;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Aggregate))
+                return false;
+
+            Aggregate that = (Aggregate) o;
+            return function.equals(that.function) && arguments.equals(that.arguments);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * function.hashCode() + arguments.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return function + "(" + Joiner.on(", ").join(arguments) + ")";
+        }
+    }
+
+    private static class Serializer implements IVersionedSerializer<AggregateReadCommand>
+    {
+        public void serialize(AggregateReadCommand command, DataOutputPlus out, int version) throws IOException
+        {
+            ReadCommand.serializer.serialize(command.command, out, version);
+            out.writeUnsignedVInt(command.aggregates.size());
+            for (Aggregate aggregate : command.aggregates)
+            {
+                out.writeUTF(aggregate.function.keyspace);
+                out.writeUTF(aggregate.function.name);
+                out.writeUnsignedVInt(aggregate.arguments.size());
+                for (String argument : aggregate.arguments)
+                    out.writeUTF(argument);
+            }
+            out.writeBoolean(command.selectsStaticRow);
+            out.writeBoolean(command.pagingState != null);
+            if (command.pagingState != null)
+                ByteBufferUtil.writeWithVIntLength(command.pagingState.serialize(), out);
+            out.writeUnsignedVInt(command.pageSize);
+            out.writeUnsignedVInt(command.protocolVersion);
+        }
+
+        public AggregateReadCommand deserialize(DataInputPlus in, int version) throws IOException
+        {
+            SinglePartitionReadCommand<?> command = (SinglePartitionReadCommand<?>) ReadCommand.serializer.deserialize(in, version);
+            int size = (int) in.readUnsignedVInt();
+            List<Aggregate> aggregates = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+            {
+                FunctionName function = new FunctionName(in.readUTF(), in.readUTF());
+                int argumentCount = (int) in.readUnsignedVInt();
+                List<String> arguments = new ArrayList<>(argumentCount);
+                for (int j = 0; j < argumentCount; j++)
+                    arguments.add(in.readUTF());
+                aggregates.add(new Aggregate(function, arguments));
+            }
+            boolean selectsStaticRow = in.readBoolean();
+            PagingState pagingState = in.readBoolean() ? PagingState.deserialize(ByteBufferUtil.readWithVIntLength(in)) : null;
+            int pageSize = (int) in.readUnsignedVInt();
+            int protocolVersion = (int) in.readUnsignedVInt();
+            return new AggregateReadCommand(command, aggregates, selectsStaticRow, pagingState, pageSize, protocolVersion);
+        }
+
+        public long serializedSize(AggregateReadCommand command, int version)
+        {
+            long size = ReadCommand.serializer.serializedSize(command.command, version);
+            size += TypeSizes.sizeofUnsignedVInt(command.aggregates.size());
+            for (Aggregate aggregate : command.aggregates)
+            {
+                size += TypeSizes.sizeof(aggregate.function.keyspace);
+                size += TypeSizes.sizeof(aggregate.function.name);
+                size += TypeSizes.sizeofUnsignedVInt(aggregate.arguments.size());
+                for (String argument : aggregate.arguments)
+                    size += TypeSizes.sizeof(argument);
+            }
+            size += TypeSizes.sizeof(command.selectsStaticRow);
+            size += TypeSizes.sizeof(command.pagingState != null);
+            if (command.pagingState != null)
+                size += ByteBufferUtil.serializedSizeWithVIntLength(command.pagingState.serialize());
+            size += TypeSizes.sizeofUnsignedVInt(command.pageSize);
+            size += TypeSizes.sizeofUnsignedVInt(command.protocolVersion);
+            return size;
+        }
+    }
+}
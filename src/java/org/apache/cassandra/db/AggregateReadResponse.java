@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.service.pager.PagingState;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+/**
+ * The response to an {@link AggregateReadCommand}: the states of the aggregates of the page read, the digest of
+ * the data they have been computed from, and the paging state of the next page, if the partition has more rows.
+ */
+public class AggregateReadResponse
+{
+    public static final IVersionedSerializer<AggregateReadResponse> serializer = new Serializer();
+
+    /**
+     * The response of a replica that couldn't compute the aggregates, in which case the coordinator reads the
+     * rows of the page instead.
+     */
+    public static final AggregateReadResponse NOT_AGGREGATED = new AggregateReadResponse();
+
+    public final List<ByteBuffer> states;
+    public final ByteBuffer digest;
+
+    /**
+     * The paging state of the next page, or <code>null</code> if the page read was the last one.
+     */
+    public final PagingState pagingState;
+
+    public AggregateReadResponse(List<ByteBuffer> states, ByteBuffer digest, PagingState pagingState)
+    {
+        assert states != null && digest.hasRemaining();
+        this.states = states;
+        this.digest = digest;
+        this.pagingState = pagingState;
+    }
+
+    private AggregateReadResponse()
+    {
+        this.states = null;
+        this.digest = null;
+        this.pagingState = null;
+    }
+
+    public boolean isAggregated()
+    {
+        return states != null;
+    }
+
+    private static class Serializer implements IVersionedSerializer<AggregateReadResponse>
+    {
+        public void serialize(AggregateReadResponse response, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeBoolean(response.isAggregated());
+            if (!response.isAggregated())
+                return;
+
+            out.writeUnsignedVInt(response.states.size());
+            for (ByteBuffer state : response.states)
+            {
+                out.writeBoolean(state != null);
+                if (state != null)
+                    ByteBufferUtil.writeWithVIntLength(state, out);
+            }
+            ByteBufferUtil.writeWithVIntLength(response.digest, out);
+            out.writeBoolean(response.pagingState != null);
+            if (response.pagingState != null)
+                ByteBufferUtil.writeWithVIntLength(response.pagingState.serialize(), out);
+        }
+
+        public AggregateReadResponse deserialize(DataInputPlus in, int version) throws IOException
+        {
+            if (!in.readBoolean())
+                return NOT_AGGREGATED;
+
+            int size = (int) in.readUnsignedVInt();
+            List<ByteBuffer> states = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                states.add(in.readBoolean() ? ByteBufferUtil.readWithVIntLength(in) : null);
+            ByteBuffer digest = ByteBufferUtil.readWithVIntLength(in);
+            PagingState pagingState = in.readBoolean() ? PagingState.deserialize(ByteBufferUtil.readWithVIntLength(in)) : null;
+            return new AggregateReadResponse(states, digest, pagingState);
+        }
+
+        public long serializedSize(AggregateReadResponse response, int version)
+        {
+            long size = TypeSizes.sizeof(response.isAggregated());
+            if (!response.isAggregated())
+                return size;
+
+            size += TypeSizes.sizeofUnsignedVInt(response.states.size());
+            for (ByteBuffer state : response.states)
+            {
+                size += TypeSizes.sizeof(state != null);
+                if (state != null)
+                    size += ByteBufferUtil.serializedSizeWithVIntLength(state);
+            }
+            size += ByteBufferUtil.serializedSizeWithVIntLength(response.digest);
+            size += TypeSizes.sizeof(response.pagingState != null);
+            if (response.pagingState != null)
+                size += ByteBufferUtil.serializedSizeWithVIntLength(response.pagingState.serialize());
+            return size;
+        }
+    }
+}
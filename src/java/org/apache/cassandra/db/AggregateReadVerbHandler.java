@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.tracing.Tracing;
+
+public class AggregateReadVerbHandler implements IVerbHandler<AggregateReadCommand>
+{
+    public void doVerb(MessageIn<AggregateReadCommand> message, int id)
+    {
+        if (StorageService.instance.isBootstrapMode())
+        {
+            throw new RuntimeException("Cannot service reads while bootstrapping!");
+        }
+
+        // If this node can't compute the aggregates, the response tells the coordinator to read the rows instead
+        AggregateReadResponse response = message.payload.execute();
+        MessageOut<AggregateReadResponse> reply = new MessageOut<>(MessagingService.Verb.REQUEST_RESPONSE, response, AggregateReadResponse.serializer);
+
+        Tracing.trace("Enqueuing aggregate response to {}", message.from);
+        MessagingService.instance().sendReply(reply, id, message.from);
+    }
+}
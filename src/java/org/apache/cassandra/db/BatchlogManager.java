@@ -17,6 +17,7 @@
  */
 package org.apache.cassandra.db;
 
+import java.io.File;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
@@ -24,6 +25,7 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -35,12 +37,17 @@ import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.cassandra.concurrent.DebuggableScheduledThreadPoolExecutor;
+import org.apache.cassandra.concurrent.ScheduledExecutors;
+import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.lifecycle.SSTableSet;
 import org.apache.cassandra.db.marshal.UUIDType;
+import org.apache.cassandra.db.rows.Cell;
+import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.WriteFailureException;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
@@ -56,6 +63,7 @@ import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.StorageProxy;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.service.WriteResponseHandler;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.WrappedRunnable;
 
@@ -72,6 +80,9 @@ public class BatchlogManager implements BatchlogManagerMBean
 
     private final AtomicLong totalBatchesReplayed = new AtomicLong();
 
+    // the batchlog files, if enabled or still holding batches to replay
+    private volatile BatchlogStore files;
+
     // Single-thread executor service for scheduling and serializing log replay.
     private static final ScheduledExecutorService batchlogTasks = new DebuggableScheduledThreadPoolExecutor("BatchlogTasks");
 
@@ -87,6 +98,14 @@ public class BatchlogManager implements BatchlogManagerMBean
             throw new RuntimeException(e);
         }
 
+        openFiles();
+        if (files != null && DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.periodic)
+        {
+            // batches are then synced as often as the commit log is
+            long period = DatabaseDescriptor.getCommitLogSyncPeriod();
+            ScheduledExecutors.scheduledTasks.scheduleWithFixedDelay(this::syncFiles, period, period, TimeUnit.MILLISECONDS);
+        }
+
         Runnable runnable = new WrappedRunnable()
         {
             public void runMayThrow() throws ExecutionException, InterruptedException
@@ -98,16 +117,37 @@ public class BatchlogManager implements BatchlogManagerMBean
         batchlogTasks.scheduleWithFixedDelay(runnable, StorageService.RING_DELAY, REPLAY_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Opens the batchlog files if they are enabled, or if they still hold batches to replay.
+     */
+    @VisibleForTesting
+    void openFiles()
+    {
+        File directory = DatabaseDescriptor.getBatchlogDirectory();
+        if (DatabaseDescriptor.isBatchlogFilesEnabled() || BatchlogStore.exists(directory))
+            files = BatchlogStore.open(directory);
+    }
+
+    private void syncFiles()
+    {
+        BatchlogStore files = this.files;
+        if (files != null)
+            files.sync();
+    }
+
     public static void shutdown() throws InterruptedException
     {
         batchlogTasks.shutdown();
         batchlogTasks.awaitTermination(60, TimeUnit.SECONDS);
+        instance.syncFiles();
     }
 
     public int countAllBatches()
     {
         String query = String.format("SELECT count(*) FROM %s.%s", SystemKeyspace.NAME, SystemKeyspace.BATCHLOG);
-        return (int) executeInternal(query).one().getLong("count");
+        int count = (int) executeInternal(query).one().getLong("count");
+        BatchlogStore files = this.files;
+        return files == null ? count : count + files.size();
     }
 
     public long getTotalBatchesReplayed()
@@ -149,6 +189,48 @@ public class BatchlogManager implements BatchlogManagerMBean
                .build();
     }
 
+    /**
+     * Applies a mutation of the system.batchlog table, built by {@link #getBatchlogMutationFor} or
+     * {@link #deleteBatch}, to the batchlog files if they are enabled, or to the table otherwise.
+     */
+    public void apply(Mutation batchlogMutation)
+    {
+        BatchlogStore files = this.files;
+        PartitionUpdate update = batchlogMutation.getPartitionUpdate(SystemKeyspace.Batchlog.cfId);
+        if (files == null || !DatabaseDescriptor.isBatchlogFilesEnabled() || update == null)
+        {
+            batchlogMutation.apply();
+            return;
+        }
+
+        UUID id = UUIDType.instance.compose(update.partitionKey().getKey());
+        if (!update.partitionLevelDeletion().isLive())
+        {
+            files.remove(id);
+            return;
+        }
+
+        Row row = update.getRow(Clustering.EMPTY);
+        Cell data = row == null ? null : row.getCell(column("data"));
+        Cell writtenAt = row == null ? null : row.getCell(column("written_at"));
+        if (data == null || writtenAt == null)
+        {
+            batchlogMutation.apply();
+            return;
+        }
+
+        Cell version = row.getCell(column("version"));
+        files.store(id,
+                    ByteBufferUtil.toLong(writtenAt.value()),
+                    version == null ? MessagingService.VERSION_12 : ByteBufferUtil.toInt(version.value()),
+                    data.value());
+    }
+
+    private static ColumnDefinition column(String name)
+    {
+        return SystemKeyspace.Batchlog.getColumnDefinition(ByteBufferUtil.bytes(name));
+    }
+
     private static ByteBuffer serializeMutations(Collection<Mutation> mutations, int version)
     {
         try (DataOutputBuffer buf = new DataOutputBuffer())
@@ -193,6 +275,7 @@ public class BatchlogManager implements BatchlogManagerMBean
         }
 
         cleanup();
+        replayFailedBatchesFromFiles(rateLimiter);
 
         logger.debug("Finished replayAllFailedBatches");
     }
@@ -212,7 +295,6 @@ public class BatchlogManager implements BatchlogManagerMBean
         UUID id = null;
         ArrayList<Batch> batches = new ArrayList<>(page.size());
 
-        // Sending out batches for replay without waiting for them, so that one stuck batch doesn't affect others
         for (UntypedResultSet.Row row : page)
         {
             id = row.getUUID("id");
@@ -223,37 +305,87 @@ public class BatchlogManager implements BatchlogManagerMBean
                 continue; // not ready to replay yet, might still get a deletion.
 
             int version = row.has("version") ? row.getInt("version") : MessagingService.VERSION_12;
-            Batch batch = new Batch(id, writtenAt, row.getBytes("data"), version);
+            batches.add(new Batch(id, writtenAt, row.getBytes("data"), version));
+        }
+
+        replayBatches(batches, rateLimiter, this::deleteBatch);
+
+        return id;
+    }
+
+    /**
+     * Replays the batches of the files that are ready to be, a page at a time, then deletes the segments left
+     * without batches to replay. Once the files are disabled and drained, they are deleted altogether.
+     */
+    private void replayFailedBatchesFromFiles(RateLimiter rateLimiter)
+    {
+        BatchlogStore files = this.files;
+        if (files == null)
+            return;
+
+        long timeout = getBatchlogTimeout();
+        ArrayList<Batch> batches = new ArrayList<>(PAGE_SIZE);
+        for (BatchlogStore.Entry entry : files.entries())
+        {
+            if (System.currentTimeMillis() < entry.writtenAt + timeout)
+                continue; // not ready to replay yet, might still get a deletion.
+
+            ByteBuffer data = entry.data();
+            if (data == null)
+                continue; // deleted in the meantime
+
+            batches.add(new Batch(entry.id, entry.writtenAt, data, entry.version));
+            if (batches.size() == PAGE_SIZE)
+            {
+                replayBatches(batches, rateLimiter, files::remove);
+                batches.clear();
+            }
+        }
+        replayBatches(batches, rateLimiter, files::remove);
+
+        files.deleteDeadSegments();
+        if (!DatabaseDescriptor.isBatchlogFilesEnabled() && files.size() == 0)
+        {
+            this.files = null;
+            files.deleteAll();
+        }
+    }
+
+    private void replayBatches(List<Batch> batches, RateLimiter rateLimiter, Consumer<UUID> remove)
+    {
+        ArrayList<Batch> replaying = new ArrayList<>(batches.size());
+
+        // Sending out batches for replay without waiting for them, so that one stuck batch doesn't affect others
+        for (Batch batch : batches)
+        {
             try
             {
                 if (batch.replay(rateLimiter) > 0)
                 {
-                    batches.add(batch);
+                    replaying.add(batch);
                 }
                 else
                 {
-                    deleteBatch(id); // no write mutations were sent (either expired or all CFs involved truncated).
+                    remove.accept(batch.id); // no write mutations were sent (either expired or all CFs involved truncated).
                     totalBatchesReplayed.incrementAndGet();
                 }
             }
             catch (IOException e)
             {
-                logger.warn("Skipped batch replay of {} due to {}", id, e);
-                deleteBatch(id);
+                logger.warn("Skipped batch replay of {} due to {}", batch.id, e);
+                remove.accept(batch.id);
             }
         }
 
         // now waiting for all batches to complete their processing
         // schedule hints for timed out deliveries
-        for (Batch batch : batches)
+        for (Batch batch : replaying)
         {
             batch.finish();
-            deleteBatch(batch.id);
+            remove.accept(batch.id);
         }
 
-        totalBatchesReplayed.addAndGet(batches.size());
-
-        return id;
+        totalBatchesReplayed.addAndGet(replaying.size());
     }
 
     public long getBatchlogTimeout()
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.util.AppendOnlyLog;
+import org.apache.cassandra.io.util.AppendOnlyLogSegment;
+
+/**
+ * Keeps the batchlog in an {@link AppendOnlyLog} instead of in the system.batchlog table.
+ *
+ * Storing a batch appends a record holding its serialized mutations, and removing it once it has been acknowledged
+ * appends a record holding only its id. The batches not yet removed are indexed in memory, so that a replay reads
+ * back the mutations of those batches only, and a segment whose batches have all been removed is deleted as a whole
+ * instead of being compacted. Segments are deleted oldest first, so that a removal record never outlives the
+ * batch it removes.
+ */
+final class BatchlogStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(BatchlogStore.class);
+
+    private static final String SEGMENT_PREFIX = "batchlog";
+
+    private static final byte STORE = 0;
+    private static final byte REMOVE = 1;
+
+    // kind, id, written at, version
+    private static final int STORE_HEADER_SIZE = 1 + 16 + 8 + 4;
+    private static final int REMOVE_SIZE = 1 + 16;
+
+    private final AppendOnlyLog log;
+    private final ConcurrentMap<UUID, Entry> entries = new ConcurrentHashMap<>();
+
+    private BatchlogStore(AppendOnlyLog log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * Loads the batchlog from the log in the provided directory.
+     */
+    static BatchlogStore open(File directory)
+    {
+        return load(AppendOnlyLog.open(directory, SEGMENT_PREFIX), directory);
+    }
+
+    static BatchlogStore open(File directory, long segmentSize, boolean syncEachWrite)
+    {
+        return load(AppendOnlyLog.open(directory, SEGMENT_PREFIX, segmentSize, syncEachWrite), directory);
+    }
+
+    private static BatchlogStore load(AppendOnlyLog log, File directory)
+    {
+        BatchlogStore store = new BatchlogStore(log);
+
+        log.replay((segment, position, size, record) -> {
+            UUID id = new UUID(record.getLong(record.position() + 1), record.getLong(record.position() + 9));
+            if (record.get(record.position()) == STORE)
+            {
+                long writtenAt = record.getLong(record.position() + 17);
+                int version = record.getInt(record.position() + 25);
+                store.put(new Entry(id, writtenAt, version, segment, position, size));
+            }
+            else
+            {
+                store.release(id);
+            }
+        });
+        logger.debug("Loaded {} unacknowledged batches from {}", store.entries.size(), directory);
+
+        store.deleteDeadSegments();
+        return store;
+    }
+
+    /**
+     * @return whether the directory holds a batchlog
+     */
+    static boolean exists(File directory)
+    {
+        return AppendOnlyLog.exists(directory, SEGMENT_PREFIX);
+    }
+
+    /**
+     * Stores the batch, whose mutations have been serialized with the provided messaging version.
+     */
+    void store(UUID id, long writtenAt, int version, ByteBuffer data)
+    {
+        ByteBuffer record = ByteBuffer.allocate(STORE_HEADER_SIZE + data.remaining());
+        record.put(STORE)
+              .putLong(id.getMostSignificantBits())
+              .putLong(id.getLeastSignificantBits())
+              .putLong(writtenAt)
+              .putInt(version)
+              .put(data.duplicate());
+        record.flip();
+
+        AppendOnlyLog.Appended appended = log.append(record);
+        log.awaitSynced(appended);
+        put(new Entry(id, writtenAt, version, appended.segment, appended.position, appended.size));
+        appended.segment.release(appended.size);
+    }
+
+    /**
+     * Removes the batch. The removal isn't synced: should it be lost, the batch is replayed once more.
+     */
+    void remove(UUID id)
+    {
+        if (!entries.containsKey(id))
+            return;
+
+        ByteBuffer record = ByteBuffer.allocate(REMOVE_SIZE);
+        record.put(REMOVE).putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        record.flip();
+
+        AppendOnlyLog.Appended appended = log.append(record);
+        appended.segment.release(appended.size);
+        release(id);
+    }
+
+    private void put(Entry entry)
+    {
+        entry.segment.retain(entry.size);
+        Entry previous = entries.put(entry.id, entry);
+        if (previous != null)
+            previous.segment.release(previous.size);
+    }
+
+    private void release(UUID id)
+    {
+        Entry entry = entries.remove(id);
+        if (entry != null)
+            entry.segment.release(entry.size);
+    }
+
+    /**
+     * @return the batches stored and not removed since
+     */
+    Collection<Entry> entries()
+    {
+        return entries.values();
+    }
+
+    int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Deletes the oldest segments holding no batch that hasn't been removed.
+     */
+    synchronized void deleteDeadSegments()
+    {
+        for (AppendOnlyLogSegment segment : log.inactiveSegments())
+        {
+            if (segment.liveSize() > 0)
+                break;
+
+            log.delete(segment);
+        }
+    }
+
+    @VisibleForTesting
+    int segmentCount()
+    {
+        return log.segmentCount();
+    }
+
+    void sync()
+    {
+        log.sync();
+    }
+
+    /**
+     * Syncs and closes the log.
+     */
+    void close()
+    {
+        log.close();
+    }
+
+    /**
+     * Closes and deletes the log, and forgets all the batches.
+     */
+    void deleteAll()
+    {
+        entries.clear();
+        log.deleteAll();
+    }
+
+    /**
+     * A batch stored and not removed since, whose mutations are read back from its record.
+     */
+    static final class Entry
+    {
+        final UUID id;
+        final long writtenAt;
+        final int version;
+        private final AppendOnlyLogSegment segment;
+        private final long position;
+        private final int size;
+
+        private Entry(UUID id, long writtenAt, int version, AppendOnlyLogSegment segment, long position, int size)
+        {
+            this.id = id;
+            this.writtenAt = writtenAt;
+            this.version = version;
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+        }
+
+        /**
+         * @return the serialized mutations of the batch, or null if it has been removed in the meantime
+         */
+        ByteBuffer data()
+        {
+            ByteBuffer record = segment.read(position);
+            if (record == null)
+                return null;
+            record.position(record.position() + STORE_HEADER_SIZE);
+            return record;
+        }
+    }
+}
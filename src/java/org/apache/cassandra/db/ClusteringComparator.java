@@ -27,6 +27,7 @@ import com.google.common.base.Joiner;
 
 import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.ReversedType;
 import org.apache.cassandra.serializers.MarshalException;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
@@ -44,6 +45,11 @@ public class ClusteringComparator implements Comparator<Clusterable>
     private final List<AbstractType<?>> clusteringTypes;
     private final boolean isByteOrderComparable;
 
+    // how each component is compared, resolved once from its type so that comparisons of the built-in byte ordered
+    // and fixed-width types, possibly reversed, don't dispatch to the type
+    private final ComponentComparison[] componentComparisons;
+    private final boolean[] reversedComponents;
+
     private final Comparator<IndexInfo> indexComparator;
     private final Comparator<IndexInfo> indexReverseComparator;
     private final Comparator<Clusterable> reverseComparator;
@@ -59,6 +65,14 @@ public class ClusteringComparator implements Comparator<Clusterable>
     {
         this.clusteringTypes = clusteringTypes;
         this.isByteOrderComparable = isByteOrderComparable(clusteringTypes);
+        this.componentComparisons = new ComponentComparison[clusteringTypes.size()];
+        this.reversedComponents = new boolean[clusteringTypes.size()];
+        for (int i = 0; i < clusteringTypes.size(); i++)
+        {
+            AbstractType<?> type = clusteringTypes.get(i);
+            reversedComponents[i] = type instanceof ReversedType;
+            componentComparisons[i] = ComponentComparison.of(reversedComponents[i] ? ((ReversedType<?>) type).baseType : type);
+        }
 
         this.indexComparator = (o1, o2) -> ClusteringComparator.this.compare(o1.lastName, o2.lastName);
         this.indexReverseComparator = (o1, o2) -> ClusteringComparator.this.compare(o1.firstName, o2.firstName);
@@ -168,9 +182,31 @@ public class ClusteringComparator implements Comparator<Clusterable>
         if (v2 == null)
             return 1;
 
-        return isByteOrderComparable
-             ? ByteBufferUtil.compareUnsigned(v1, v2)
-             : clusteringTypes.get(i).compare(v1, v2);
+        if (isByteOrderComparable)
+            return ByteBufferUtil.compareUnsigned(v1, v2);
+
+        ComponentComparison comparison = componentComparisons[i];
+        if (comparison == ComponentComparison.CUSTOM)
+            return clusteringTypes.get(i).compare(v1, v2);
+
+        // empty values sort first, even for reversed types
+        if (!v1.hasRemaining() || !v2.hasRemaining())
+            return v1.hasRemaining() ? 1 : v2.hasRemaining() ? -1 : 0;
+
+        int cmp = comparison == ComponentComparison.BYTE_ORDER
+                ? ByteBufferUtil.compareUnsigned(v1, v2)
+                : compareSigned(v1, v2);
+        return reversedComponents[i] ? -cmp : cmp;
+    }
+
+    // compares two's complement integers of the same width: their first byte signed, then the rest unsigned
+    private static int compareSigned(ByteBuffer v1, ByteBuffer v2)
+    {
+        int diff = v1.get(v1.position()) - v2.get(v2.position());
+        if (diff != 0)
+            return diff;
+
+        return ByteBufferUtil.compareUnsigned(v1, v2);
     }
 
     /**
@@ -265,4 +301,20 @@ public class ClusteringComparator implements Comparator<Clusterable>
     {
         return Objects.hashCode(clusteringTypes);
     }
+
+    private enum ComponentComparison
+    {
+        BYTE_ORDER,         // compared unsigned, e.g. UTF8Type or BytesType
+        SIGNED_BYTE_ORDER,  // compared unsigned but for the sign of the first byte, e.g. Int32Type or LongType
+        CUSTOM;             // compared by the type
+
+        static ComponentComparison of(AbstractType<?> type)
+        {
+            if (type.isByteOrderComparable())
+                return BYTE_ORDER;
+            if (type.isSignedByteOrderComparable())
+                return SIGNED_BYTE_ORDER;
+            return CUSTOM;
+        }
+    }
 }
@@ -1732,6 +1732,31 @@ public class ColumnFamilyStore implements ColumnFamilyStoreMBean
         CacheService.instance.counterCache.put(CounterCacheKey.create(metadata.cfId, partitionKey, clustering, column, path), clockAndCount);
     }
 
+    /**
+     * Caches the counter's value unless it's already cached. With the counter cache disabled there is nothing
+     * to race with, so this always succeeds.
+     */
+    public boolean putCachedCounterIfAbsent(ByteBuffer partitionKey, Clustering clustering, ColumnDefinition column, CellPath path, ClockAndCount clockAndCount)
+    {
+        if (CacheService.instance.counterCache.getCapacity() == 0L) // counter cache disabled.
+            return true;
+        return CacheService.instance.counterCache.putIfAbsent(CounterCacheKey.create(metadata.cfId, partitionKey, clustering, column, path), clockAndCount);
+    }
+
+    public boolean replaceCachedCounter(ByteBuffer partitionKey, Clustering clustering, ColumnDefinition column, CellPath path, ClockAndCount old, ClockAndCount clockAndCount)
+    {
+        if (CacheService.instance.counterCache.getCapacity() == 0L) // counter cache disabled.
+            return false;
+        return CacheService.instance.counterCache.replace(CounterCacheKey.create(metadata.cfId, partitionKey, clustering, column, path), old, clockAndCount);
+    }
+
+    public boolean containsCachedCounter(ByteBuffer partitionKey, Clustering clustering, ColumnDefinition column, CellPath path)
+    {
+        if (CacheService.instance.counterCache.getCapacity() == 0L) // counter cache disabled.
+            return false;
+        return CacheService.instance.counterCache.containsKey(CounterCacheKey.create(metadata.cfId, partitionKey, clustering, column, path));
+    }
+
     public void forceMajorCompaction() throws InterruptedException, ExecutionException
     {
         forceMajorCompaction(false);
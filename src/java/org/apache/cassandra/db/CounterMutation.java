@@ -19,7 +19,11 @@ package org.apache.cassandra.db;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 
 import com.google.common.base.Function;
@@ -29,6 +33,8 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.util.concurrent.Striped;
 
+import org.apache.cassandra.cache.CounterCacheKey;
+import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.db.filter.*;
@@ -52,6 +58,13 @@ public class CounterMutation implements IMutation
 
     private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentCounterWriters() * 1024);
 
+    /*
+     * The updates of counter cache entries made by mutations that were applied without locks, and that haven't
+     * been applied yet. A writer that has to read a counter's current value from the memtables and sstables
+     * is handed the latest of them, otherwise it could read a value older than the one it was evicted with.
+     */
+    private static final ConcurrentMap<CounterCacheKey, PendingUpdates> PENDING = new ConcurrentHashMap<>();
+
     private final Mutation mutation;
     private final ConsistencyLevel consistency;
 
@@ -99,6 +112,10 @@ public class CounterMutation implements IMutation
     /**
      * Applies the counter mutation, returns the result Mutation (for replication to other nodes).
      *
+     * If all the counters to be modified are in the counter cache, their new values are computed by
+     * compare-and-set on the cache entries and applied without taking any lock, see applyWithoutLocks().
+     * Otherwise:
+     *
      * 1. Grabs the striped cell-level locks in the proper order
      * 2. Gets the current values of the counters-to-be-modified from the counter cache
      * 3. Reads the rest of the current values (cache misses) from the CF
@@ -112,16 +129,24 @@ public class CounterMutation implements IMutation
      */
     public Mutation apply() throws WriteTimeoutException
     {
-        Mutation result = new Mutation(getKeyspaceName(), key());
         Keyspace keyspace = Keyspace.open(getKeyspaceName());
+        long startTime = System.nanoTime();
+        if (CacheService.instance.counterCache.getCapacity() != 0)
+        {
+            Mutation result = applyWithoutLocks(keyspace, startTime);
+            if (result != null)
+                return result;
+        }
+
+        Mutation result = new Mutation(getKeyspaceName(), key());
 
         List<Lock> locks = new ArrayList<>();
         Tracing.trace("Acquiring counter locks");
         try
         {
-            grabCounterLocks(keyspace, locks);
+            grabCounterLocks(keyspace, getCounterLockKeys(), locks, startTime);
             for (PartitionUpdate upd : getPartitionUpdates())
-                result.add(processModifications(upd));
+                result.add(processModifications(upd, keyspace, startTime));
             result.apply();
             return result;
         }
@@ -132,11 +157,165 @@ public class CounterMutation implements IMutation
         }
     }
 
-    private void grabCounterLocks(Keyspace keyspace, List<Lock> locks) throws WriteTimeoutException
+    /**
+     * Applies the mutation if every counter it modifies is in the counter cache. Each writer increments the
+     * local shard by compare-and-set on the cache entry, which gives it a distinct clock, so concurrent increments
+     * of the same counter don't have to be serialized: whichever order they reach the memtable in, the value
+     * with the highest clock includes all of them.
+     *
+     * @return the applied mutation, or null if some counter wasn't cached, in which case nothing was done
+     */
+    private Mutation applyWithoutLocks(Keyspace keyspace, long startTime) throws WriteTimeoutException
     {
-        long startTime = System.nanoTime();
+        int counters = 0;
+        for (PartitionUpdate upd : getPartitionUpdates())
+        {
+            ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(upd.metadata().cfId);
+            for (PartitionUpdate.CounterMark mark : upd.collectCounterMarks())
+            {
+                if (!cfs.containsCachedCounter(key().getKey(), mark.clustering(), mark.column(), mark.path()))
+                    return null;
+                counters++;
+            }
+        }
+
+        Tracing.trace("Updating cached counter values without locks");
+        Mutation result = new Mutation(getKeyspaceName(), key());
+        // the counters we're updating, whose PENDING entries we're registered with until we're applied
+        List<CounterCacheKey> pendingKeys = new ArrayList<>(counters);
+        List<PendingUpdates> pendings = new ArrayList<>(counters);
+        try
+        {
+            for (PartitionUpdate upd : getPartitionUpdates())
+            {
+                ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(upd.metadata().cfId);
+                List<PartitionUpdate.CounterMark> misses = new ArrayList<>();
+                Map<PartitionUpdate.CounterMark, PendingUpdates> missesPendings = new IdentityHashMap<>();
+                for (PartitionUpdate.CounterMark mark : upd.collectCounterMarks())
+                {
+                    CounterCacheKey cacheKey = counterCacheKey(cfs, mark);
+                    PendingUpdates pending = PendingUpdates.register(cacheKey);
+                    pendingKeys.add(cacheKey);
+                    pendings.add(pending);
+
+                    ClockAndCount updated;
+                    try
+                    {
+                        updated = updateWithCachedValue(mark, cfs);
+                        if (updated != null)
+                            pending.add(updated);
+                    }
+                    finally
+                    {
+                        pending.updated();
+                    }
+
+                    if (updated == null)
+                    {
+                        misses.add(mark);
+                        missesPendings.put(mark, pending);
+                    }
+                }
+                // entries can be evicted since we checked for them; that's rare enough to then read with locks
+                if (!misses.isEmpty())
+                    updateWithCurrentValuesWithLocks(keyspace, misses, missesPendings, cfs, startTime);
+                result.add(upd);
+            }
+            result.apply();
+            return result;
+        }
+        finally
+        {
+            for (int i = 0; i < pendings.size(); i++)
+                pendings.get(i).unregister(pendingKeys.get(i));
+        }
+    }
+
+    /**
+     * Reads the current values of counters that were evicted from the cache, under their locks. As the mutation
+     * is only applied once they're released, the new values are handed off to the counters' pending updates.
+     */
+    private void updateWithCurrentValuesWithLocks(Keyspace keyspace,
+                                                  List<PartitionUpdate.CounterMark> marks,
+                                                  Map<PartitionUpdate.CounterMark, PendingUpdates> pendings,
+                                                  ColumnFamilyStore cfs,
+                                                  long startTime)
+    throws WriteTimeoutException
+    {
+        List<Object> keys = new ArrayList<>(marks.size());
+        for (PartitionUpdate.CounterMark mark : marks)
+            keys.add(counterLockKey(cfs, mark));
+
+        List<Lock> locks = new ArrayList<>();
+        try
+        {
+            grabCounterLocks(keyspace, keys, locks, startTime);
+            // they may have been cached again before we got the locks
+            List<PartitionUpdate.CounterMark> misses = new ArrayList<>(marks);
+            updateWithCurrentValuesFromCache(misses, cfs);
+            if (!misses.isEmpty())
+                updateWithCurrentValuesFromCFS(keyspace, misses, cfs, startTime);
+
+            for (PartitionUpdate.CounterMark mark : marks)
+                pendings.get(mark).add(CounterContext.instance().getLocalClockAndCount(mark.value()));
+        }
+        finally
+        {
+            for (Lock lock : locks)
+                lock.unlock();
+        }
+    }
 
-        for (Lock lock : LOCKS.bulkGet(getCounterLockKeys()))
+    /**
+     * Returns the latest values the cache entries of these counters were updated to by the mutations that haven't
+     * been applied yet, which reading from the memtables and sstables would miss. This is only called with the
+     * counters' locks held once they're known to be evicted, which keeps them from being cached, and so from being
+     * updated, again in the meantime: it only waits for the updates made before the eviction to be recorded, which
+     * involves neither a lock nor a write.
+     */
+    private Map<PartitionUpdate.CounterMark, ClockAndCount> getPendingUpdates(Keyspace keyspace,
+                                                                             List<PartitionUpdate.CounterMark> marks,
+                                                                             ColumnFamilyStore cfs,
+                                                                             long startTime)
+    throws WriteTimeoutException
+    {
+        if (CacheService.instance.counterCache.getCapacity() == 0)
+            return Collections.emptyMap();
+
+        Map<PartitionUpdate.CounterMark, ClockAndCount> values = new IdentityHashMap<>();
+        for (PartitionUpdate.CounterMark mark : marks)
+        {
+            PendingUpdates pending = PENDING.get(counterCacheKey(cfs, mark));
+            if (pending == null)
+                continue;
+
+            while (pending.isUpdating())
+            {
+                checkTimeout(keyspace, startTime);
+                Thread.yield();
+            }
+
+            ClockAndCount latest = pending.latest();
+            if (latest != null)
+                values.put(mark, latest);
+        }
+        return values;
+    }
+
+    private CounterCacheKey counterCacheKey(ColumnFamilyStore cfs, PartitionUpdate.CounterMark mark)
+    {
+        return CounterCacheKey.create(cfs.metadata.cfId, key().getKey(), mark.clustering(), mark.column(), mark.path());
+    }
+
+    private void checkTimeout(Keyspace keyspace, long startTime) throws WriteTimeoutException
+    {
+        if (System.nanoTime() - startTime > TimeUnit.MILLISECONDS.toNanos(getTimeout()))
+            throw new WriteTimeoutException(WriteType.COUNTER, consistency(), 0, consistency().blockFor(keyspace));
+    }
+
+    private void grabCounterLocks(Keyspace keyspace, Iterable<Object> keys, List<Lock> locks, long startTime) throws WriteTimeoutException
+    {
+        for (Lock lock : LOCKS.bulkGet(keys))
         {
             long timeout = TimeUnit.MILLISECONDS.toNanos(getTimeout()) - (System.nanoTime() - startTime);
             try
@@ -171,7 +350,7 @@ public class CounterMutation implements IMutation
                         {
                             public Object apply(final ColumnData data)
                             {
-                                return Objects.hashCode(update.metadata().cfId, key(), row.clustering(), data.column());
+                                return counterLockKey(update.metadata().cfId, row.clustering(), data.column());
                             }
                         }));
                     }
@@ -180,9 +359,19 @@ public class CounterMutation implements IMutation
         }));
     }
 
-    private PartitionUpdate processModifications(PartitionUpdate changes)
+    private Object counterLockKey(UUID cfId, Clustering clustering, ColumnDefinition column)
+    {
+        return Objects.hashCode(cfId, key(), clustering, column);
+    }
+
+    private Object counterLockKey(ColumnFamilyStore cfs, PartitionUpdate.CounterMark mark)
+    {
+        return counterLockKey(cfs.metadata.cfId, mark.clustering(), mark.column());
+    }
+
+    private PartitionUpdate processModifications(PartitionUpdate changes, Keyspace keyspace, long startTime) throws WriteTimeoutException
     {
-        ColumnFamilyStore cfs = Keyspace.open(getKeyspaceName()).getColumnFamilyStore(changes.metadata().cfId);
+        ColumnFamilyStore cfs = keyspace.getColumnFamilyStore(changes.metadata().cfId);
 
         List<PartitionUpdate.CounterMark> marks = changes.collectCounterMarks();
 
@@ -195,44 +384,79 @@ public class CounterMutation implements IMutation
         }
 
         Tracing.trace("Reading {} counter values from the CF", marks.size());
-        updateWithCurrentValuesFromCFS(marks, cfs);
-
-        // What's remain is new counters
-        for (PartitionUpdate.CounterMark mark : marks)
-            updateWithCurrentValue(mark, ClockAndCount.BLANK, cfs);
+        updateWithCurrentValuesFromCFS(keyspace, marks, cfs, startTime);
 
         return changes;
     }
 
     private void updateWithCurrentValue(PartitionUpdate.CounterMark mark, ClockAndCount currentValue, ColumnFamilyStore cfs)
     {
-        long clock = currentValue.clock + 1L;
-        long count = currentValue.count + CounterContext.instance().total(mark.value());
+        ClockAndCount updated = ClockAndCount.create(currentValue.clock + 1L, currentValue.count + CounterContext.instance().total(mark.value()));
+
+        // Cache the newly updated value, unless the counter got cached since we read it: its cached value is then
+        // at least as recent as ours and others may already be updating it without locks, so we must update it too
+        while (!cfs.putCachedCounterIfAbsent(key().getKey(), mark.clustering(), mark.column(), mark.path(), updated))
+        {
+            if (updateWithCachedValue(mark, cfs) != null)
+                return;
+        }
+
+        mark.setValue(CounterContext.instance().createGlobal(CounterId.getLocalId(), updated.clock, updated.count));
+    }
 
-        mark.setValue(CounterContext.instance().createGlobal(CounterId.getLocalId(), clock, count));
+    /**
+     * Increments the cached value of the mark's counter by compare-and-set, and sets the mark to the result.
+     *
+     * @return the updated value, or null if the counter isn't cached
+     */
+    private ClockAndCount updateWithCachedValue(PartitionUpdate.CounterMark mark, ColumnFamilyStore cfs)
+    {
+        long delta = CounterContext.instance().total(mark.value());
+        while (true)
+        {
+            ClockAndCount cached = cfs.getCachedCounter(key().getKey(), mark.clustering(), mark.column(), mark.path());
+            if (cached == null)
+                return null;
 
-        // Cache the newly updated value
-        cfs.putCachedCounter(key().getKey(), mark.clustering(), mark.column(), mark.path(), ClockAndCount.create(clock, count));
+            ClockAndCount updated = ClockAndCount.create(cached.clock + 1L, cached.count + delta);
+            if (cfs.replaceCachedCounter(key().getKey(), mark.clustering(), mark.column(), mark.path(), cached, updated))
+            {
+                mark.setValue(CounterContext.instance().createGlobal(CounterId.getLocalId(), updated.clock, updated.count));
+                return updated;
+            }
+        }
     }
 
-    // Returns the count of cache misses.
+    // Updates the marks of the cached counters and removes them from the list, leaving the cache misses.
     private void updateWithCurrentValuesFromCache(List<PartitionUpdate.CounterMark> marks, ColumnFamilyStore cfs)
     {
         Iterator<PartitionUpdate.CounterMark> iter = marks.iterator();
         while (iter.hasNext())
         {
-            PartitionUpdate.CounterMark mark = iter.next();
-            ClockAndCount cached = cfs.getCachedCounter(key().getKey(), mark.clustering(), mark.column(), mark.path());
-            if (cached != null)
-            {
-                updateWithCurrentValue(mark, cached, cfs);
+            if (updateWithCachedValue(iter.next(), cfs) != null)
                 iter.remove();
-            }
         }
     }
 
-    // Reads the missing current values from the CFS.
-    private void updateWithCurrentValuesFromCFS(List<PartitionUpdate.CounterMark> marks, ColumnFamilyStore cfs)
+    // Reads the missing current values from the CFS, or the pending updates that are more recent.
+    private void updateWithCurrentValuesFromCFS(Keyspace keyspace, List<PartitionUpdate.CounterMark> marks, ColumnFamilyStore cfs, long startTime)
+    throws WriteTimeoutException
+    {
+        // the pending updates must be looked up before reading, as they're removed once applied
+        Map<PartitionUpdate.CounterMark, ClockAndCount> pendings = getPendingUpdates(keyspace, marks, cfs, startTime);
+        updateWithCurrentValuesFromCFS(marks, pendings, cfs);
+
+        // What's remain is new counters, unless they've been written by pending updates
+        for (PartitionUpdate.CounterMark mark : marks)
+            updateWithCurrentValue(mark, latest(ClockAndCount.BLANK, pendings.get(mark)), cfs);
+    }
+
+    private static ClockAndCount latest(ClockAndCount value, ClockAndCount pending)
+    {
+        return pending == null || value.clock >= pending.clock ? value : pending;
+    }
+
+    private void updateWithCurrentValuesFromCFS(List<PartitionUpdate.CounterMark> marks, Map<PartitionUpdate.CounterMark, ClockAndCount> pendings, ColumnFamilyStore cfs)
     {
         ColumnFilter.Builder builder = ColumnFilter.selectionBuilder();
         BTreeSet.Builder<Clustering> names = BTreeSet.builder(cfs.metadata.comparator);
@@ -251,14 +475,14 @@ public class CounterMutation implements IMutation
         PeekingIterator<PartitionUpdate.CounterMark> markIter = Iterators.peekingIterator(marks.iterator());
         try (OpOrder.Group op = cfs.readOrdering.start(); RowIterator partition = UnfilteredRowIterators.filter(cmd.queryMemtableAndDisk(cfs, op), nowInSec))
         {
-            updateForRow(markIter, partition.staticRow(), cfs);
+            updateForRow(markIter, partition.staticRow(), pendings, cfs);
 
             while (partition.hasNext())
             {
                 if (!markIter.hasNext())
                     return;
 
-                updateForRow(markIter, partition.next(), cfs);
+                updateForRow(markIter, partition.next(), pendings, cfs);
             }
         }
     }
@@ -273,7 +497,10 @@ public class CounterMutation implements IMutation
         return cfs.getComparator().compare(c1, c2);
     }
 
-    private void updateForRow(PeekingIterator<PartitionUpdate.CounterMark> markIter, Row row, ColumnFamilyStore cfs)
+    private void updateForRow(PeekingIterator<PartitionUpdate.CounterMark> markIter,
+                              Row row,
+                              Map<PartitionUpdate.CounterMark, ClockAndCount> pendings,
+                              ColumnFamilyStore cfs)
     {
         int cmp = 0;
         // If the mark is before the row, we have no value for this mark, just consume it
@@ -289,7 +516,8 @@ public class CounterMutation implements IMutation
             Cell cell = mark.path() == null ? row.getCell(mark.column()) : row.getCell(mark.column(), mark.path());
             if (cell != null)
             {
-                updateWithCurrentValue(mark, CounterContext.instance().getLocalClockAndCount(cell.value()), cfs);
+                ClockAndCount current = CounterContext.instance().getLocalClockAndCount(cell.value());
+                updateWithCurrentValue(mark, latest(current, pendings.get(mark)), cfs);
                 markIter.remove();
             }
             if (!markIter.hasNext())
@@ -299,6 +527,78 @@ public class CounterMutation implements IMutation
         }
     }
 
+    /**
+     * The updates of a counter made by the mutations applied without locks. Writers register before updating the
+     * cache entry and unregister once applied; the entry is removed when the last one does.
+     */
+    private static final class PendingUpdates
+    {
+        // the registered writers, or -1 once removed
+        private final AtomicInteger writers = new AtomicInteger();
+        // the registered writers that may be updating the cache entry, but haven't added the result yet
+        private final AtomicInteger updating = new AtomicInteger();
+        private final AtomicReference<ClockAndCount> latest = new AtomicReference<>();
+
+        static PendingUpdates register(CounterCacheKey key)
+        {
+            while (true)
+            {
+                PendingUpdates pending = PENDING.get(key);
+                if (pending == null)
+                {
+                    PendingUpdates created = new PendingUpdates();
+                    pending = PENDING.putIfAbsent(key, created);
+                    if (pending == null)
+                        pending = created;
+                }
+
+                int writers = pending.writers.get();
+                if (writers < 0)
+                {
+                    PENDING.remove(key, pending);
+                    continue;
+                }
+
+                if (pending.writers.compareAndSet(writers, writers + 1))
+                {
+                    pending.updating.incrementAndGet();
+                    return pending;
+                }
+            }
+        }
+
+        void add(ClockAndCount value)
+        {
+            while (true)
+            {
+                ClockAndCount current = latest.get();
+                if ((current != null && current.clock >= value.clock) || latest.compareAndSet(current, value))
+                    return;
+            }
+        }
+
+        void updated()
+        {
+            updating.decrementAndGet();
+        }
+
+        boolean isUpdating()
+        {
+            return updating.get() > 0;
+        }
+
+        ClockAndCount latest()
+        {
+            return latest.get();
+        }
+
+        void unregister(CounterCacheKey key)
+        {
+            if (writers.decrementAndGet() == 0 && writers.compareAndSet(0, -1))
+                PENDING.remove(key, this);
+        }
+    }
+
     public long getTimeout()
     {
         return DatabaseDescriptor.getCounterWriteRpcTimeout();
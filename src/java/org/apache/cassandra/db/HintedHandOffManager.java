@@ -24,13 +24,11 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.RateLimiter;
 import com.google.common.util.concurrent.Uninterruptibles;
 import org.slf4j.Logger;
@@ -40,48 +38,36 @@ import org.apache.cassandra.concurrent.JMXEnabledScheduledThreadPoolExecutor;
 import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.DatabaseDescriptor;
-import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.db.partitions.*;
-import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.db.marshal.Int32Type;
 import org.apache.cassandra.db.marshal.UUIDType;
-import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.gms.ApplicationState;
 import org.apache.cassandra.gms.FailureDetector;
 import org.apache.cassandra.gms.Gossiper;
-import org.apache.cassandra.io.sstable.Descriptor;
-import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.hints.Hint;
+import org.apache.cassandra.hints.HintsDispatcher;
+import org.apache.cassandra.hints.HintsStore;
 import org.apache.cassandra.io.util.DataInputBuffer;
-import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.metrics.HintedHandoffMetrics;
-import org.apache.cassandra.net.MessageOut;
 import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.*;
 import org.apache.cassandra.utils.*;
-import org.apache.cassandra.utils.concurrent.OpOrder;
 import org.cliffc.high_scale_lib.NonBlockingHashSet;
 
 /**
- * The hint schema looks like this:
+ * Hints are stored, per target host, in append-only files under hints_directory (see {@link HintsStore}):
+ * storing a hint costs about as much as a commit log append, and no compaction, tombstone or
+ * read-before-delete is involved.
  *
- * CREATE TABLE hints (
- *   target_id uuid,
- *   hint_id timeuuid,
- *   message_version int,
- *   mutation blob,
- *   PRIMARY KEY (target_id, hint_id, message_version)
- * ) WITH COMPACT STORAGE;
- *
- * Thus, for each node in the cluster we treat its uuid as the partition key; each hint is a logical row
- * (physical composite column) containing the mutation to replay and associated metadata.
- *
- * When FailureDetector signals that a node that was down is back up, we page through
- * the hinted mutations and send them over one at a time, waiting for
- * hinted_handoff_throttle_delay in between each.
+ * When FailureDetector signals that a node that was down is back up, we read its hints files sequentially
+ * and send the hints over, deleting each file once all of its hints have been acknowledged.
  *
  * deliverHints is also exposed to JMX so it can be run manually if FD ever misses
  * its cue somehow.
+ *
+ * The legacy system.hints table is only used to hand the hints over to another node when decommissioning,
+ * by streaming; any hint found there (left by a previous version or streamed in) is moved to the hints files.
  */
 
 public class HintedHandOffManager implements HintedHandOffManagerMBean
@@ -91,9 +77,6 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     private static final Logger logger = LoggerFactory.getLogger(HintedHandOffManager.class);
 
-    private static final int MAX_SIMULTANEOUSLY_REPLAYED_HINTS = 128;
-    private static final int LARGE_NUMBER = 65536; // 64k nodes ought to be enough for anybody.
-
     public final HintedHandoffMetrics metrics = new HintedHandoffMetrics();
 
     private volatile boolean hintedHandOffPaused = false;
@@ -108,18 +91,20 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             new NamedThreadFactory("HintedHandoff", Thread.MIN_PRIORITY),
             "internal");
 
+    private final ConcurrentMap<UUID, HintsStore> stores =
+        new ConcurrentHashMap<>(HintsStore.loadAll(DatabaseDescriptor.getHintsDirectory(), DatabaseDescriptor.getMaxHintsFileSize()));
+
     private final ColumnFamilyStore hintStore = Keyspace.open(SystemKeyspace.NAME).getColumnFamilyStore(SystemKeyspace.HINTS);
 
     private static final ColumnDefinition hintColumn = SystemKeyspace.Hints.compactValueColumn();
 
     /**
-     * Returns a mutation representing a Hint to be sent to <code>targetId</code>
-     * as soon as it becomes available again.
+     * Stores a hint for <code>targetId</code>, to be delivered as soon as it becomes available again.
+     *
+     * @param now current time in milliseconds - relevant for hint replay handling of truncated CFs
      */
-    public Mutation hintFor(Mutation mutation, long now, int ttl, UUID targetId)
+    public void write(Mutation mutation, long now, int ttl, UUID targetId)
     {
-        assert ttl > 0;
-
         InetAddress endpoint = StorageService.instance.getTokenMetadata().getEndpointForHostId(targetId);
         // during tests we may not have a matching endpoint, but this would be unexpected in real clusters
         if (endpoint != null)
@@ -127,6 +112,27 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         else
             logger.warn("Unable to find matching endpoint for target {} when storing a hint", targetId);
 
+        getStore(targetId).write(new Hint(mutation, now, ttl));
+    }
+
+    private HintsStore getStore(UUID hostId)
+    {
+        HintsStore store = stores.get(hostId);
+        if (store != null)
+            return store;
+
+        store = HintsStore.create(hostId, DatabaseDescriptor.getHintsDirectory(), DatabaseDescriptor.getMaxHintsFileSize());
+        HintsStore previous = stores.putIfAbsent(hostId, store);
+        return previous == null ? store : previous;
+    }
+
+    /**
+     * Returns a mutation representing a Hint for <code>targetId</code> in the legacy system.hints table.
+     */
+    public Mutation hintFor(Mutation mutation, long now, int ttl, UUID targetId)
+    {
+        assert ttl > 0;
+
         UUID hintId = UUIDGen.getTimeUUID();
         // serialize the hint with id and version as a composite column name
 
@@ -164,6 +170,14 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         }
         logger.debug("Created HHOM instance, registered MBean.");
 
+        executor.execute(new Runnable()
+        {
+            public void run()
+            {
+                migrateLegacyHints();
+            }
+        });
+
         Runnable runnable = new Runnable()
         {
             public void run()
@@ -173,13 +187,100 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             }
         };
         executor.scheduleWithFixedDelay(runnable, 10, 10, TimeUnit.MINUTES);
+
+        // hints are written to the page cache only, make sure they don't stay there for too long
+        Runnable sync = new Runnable()
+        {
+            public void run()
+            {
+                for (HintsStore store : stores.values())
+                    store.sync();
+            }
+        };
+        executor.scheduleWithFixedDelay(sync, 10, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Moves the hints of the legacy system.hints table, if any, to the hints files.
+     */
+    @VisibleForTesting
+    synchronized void migrateLegacyHints()
+    {
+        if (hintStore.isEmpty())
+            return;
+
+        logger.info("Migrating legacy hints to {}", DatabaseDescriptor.getHintsDirectory());
+        int migrated = 0;
+        int nowInSec = FBUtilities.nowInSeconds();
+        ReadCommand cmd = PartitionRangeReadCommand.allDataRead(SystemKeyspace.Hints, nowInSec);
+        try (ReadOrderGroup orderGroup = cmd.startOrderGroup();
+             PartitionIterator iter = UnfilteredPartitionIterators.filter(cmd.executeLocally(orderGroup), nowInSec))
+        {
+            while (iter.hasNext())
+            {
+                try (RowIterator partition = iter.next())
+                {
+                    HintsStore store = getStore(UUIDGen.getUUID(partition.partitionKey().getKey()));
+                    while (partition.hasNext())
+                    {
+                        Hint hint = legacyHint(partition.next(), nowInSec);
+                        if (hint == null)
+                            continue;
+
+                        store.write(hint);
+                        migrated++;
+                    }
+                    store.closeWriter();
+                }
+            }
+        }
+
+        hintStore.truncateBlocking();
+        logger.info("Migrated {} legacy hints", migrated);
+    }
+
+    private static Hint legacyHint(Row row, int nowInSec)
+    {
+        int version = Int32Type.instance.compose(row.clustering().get(1));
+        Cell cell = row.getCell(hintColumn);
+
+        // the hint expires along with its cell; the cell timestamp is the hint creation time, in milliseconds
+        int ttl = cell.isExpiring() ? cell.localDeletionTime() - (int) (cell.timestamp() / 1000) : maxHintTTL;
+        if (cell.isExpiring() && cell.localDeletionTime() <= nowInSec)
+            return null;
+
+        try
+        {
+            Mutation mutation = Mutation.serializer.deserialize(new DataInputBuffer(cell.value(), true), version);
+            return ttl > 0 ? new Hint(mutation, cell.timestamp(), ttl) : null;
+        }
+        catch (UnknownColumnFamilyException e)
+        {
+            logger.debug("Skipping legacy hint for deleted table", e);
+            return null;
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e);
+        }
     }
 
-    private static void deleteHint(ByteBuffer tokenBytes, Clustering clustering, long timestamp)
+    /**
+     * Moves all the hints of the hints files to the legacy system.hints table, so that they can be streamed to
+     * another node.
+     */
+    public synchronized void moveHintsToLegacyTable()
     {
-        Cell cell = BufferCell.tombstone(hintColumn, timestamp, FBUtilities.nowInSeconds());
-        PartitionUpdate upd = PartitionUpdate.singleRowUpdate(SystemKeyspace.Hints, tokenBytes, BTreeBackedRow.singleCellRow(clustering, cell));
-        new Mutation(upd).applyUnsafe(); // don't bother with commitlog since we're going to flush as soon as we're done with delivery
+        long now = System.currentTimeMillis();
+        for (HintsStore store : stores.values())
+        {
+            store.drain(hint ->
+            {
+                int ttl = hint.ttl - (int) TimeUnit.MILLISECONDS.toSeconds(now - hint.creationTime);
+                if (ttl > 0)
+                    hintFor(hint.mutation, hint.creationTime, ttl, store.hostId).applyUnsafe();
+            });
+        }
     }
 
     public void deleteHintsForEndpoint(final String ipOrHostname)
@@ -201,8 +302,9 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
         if (!StorageService.instance.getTokenMetadata().isMember(endpoint))
             return;
         UUID hostId = StorageService.instance.getTokenMetadata().getHostId(endpoint);
-        ByteBuffer key = ByteBuffer.wrap(UUIDGen.decompose(hostId));
-        final Mutation mutation = new Mutation(PartitionUpdate.fullPartitionDelete(SystemKeyspace.Hints, key, System.currentTimeMillis(), FBUtilities.nowInSeconds()));
+        final HintsStore store = stores.get(hostId);
+        if (store == null)
+            return;
 
         // execute asynchronously to avoid blocking caller (which may be processing gossip)
         Runnable runnable = new Runnable()
@@ -212,9 +314,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                 try
                 {
                     logger.info("Deleting any stored hints for {}", endpoint);
-                    mutation.apply();
-                    hintStore.forceBlockingFlush();
-                    compact();
+                    store.deleteAllHints();
                 }
                 catch (Exception e)
                 {
@@ -236,6 +336,8 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                 try
                 {
                     logger.info("Truncating all stored hints.");
+                    for (HintsStore store : stores.values())
+                        store.deleteAllHints();
                     Keyspace.open(SystemKeyspace.NAME).getColumnFamilyStore(SystemKeyspace.HINTS).truncateBlocking();
                 }
                 catch (Exception e)
@@ -248,26 +350,6 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     }
 
-    @VisibleForTesting
-    protected synchronized void compact()
-    {
-        ArrayList<Descriptor> descriptors = new ArrayList<>();
-        for (SSTable sstable : hintStore.getTracker().getUncompacting())
-            descriptors.add(sstable.descriptor);
-
-        if (descriptors.isEmpty())
-            return;
-
-        try
-        {
-            CompactionManager.instance.submitUserDefined(hintStore, descriptors, (int) (System.currentTimeMillis() / 1000)).get();
-        }
-        catch (InterruptedException | ExecutionException e)
-        {
-            throw new RuntimeException(e);
-        }
-    }
-
     private int waitForSchemaAgreement(InetAddress endpoint) throws TimeoutException
     {
         Gossiper gossiper = Gossiper.instance;
@@ -303,7 +385,9 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     private void deliverHintsToEndpoint(InetAddress endpoint)
     {
-        if (hintStore.isEmpty())
+        UUID hostId = Gossiper.instance.getHostId(endpoint);
+        HintsStore store = hostId == null ? null : stores.get(hostId);
+        if (store == null || !store.hasHints())
             return; // nothing to do, don't confuse users by logging a no-op handoff
 
         // check if hints delivery has been paused
@@ -329,44 +413,17 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             return;
         }
 
-        doDeliverHintsToEndpoint(endpoint);
-
-        // Flush all the tombstones to disk
-        hintStore.forceBlockingFlush();
-    }
-
-    private boolean checkDelivered(InetAddress endpoint, List<WriteResponseHandler<Mutation>> handlers, AtomicInteger rowsReplayed)
-    {
-        for (WriteResponseHandler<Mutation> handler : handlers)
-        {
-            try
-            {
-                handler.get();
-            }
-            catch (WriteTimeoutException e)
-            {
-                logger.info("Failed replaying hints to {}; aborting ({} delivered), error : {}",
-                            endpoint, rowsReplayed, e.getMessage());
-                return false;
-            }
-        }
-        return true;
+        doDeliverHintsToEndpoint(endpoint, store);
     }
 
     /*
-     * 1. Get the key of the endpoint we need to handoff
-     * 2. For each column, deserialize the mutation and send it to the endpoint
-     * 3. Delete the column if the write was successful
-     * 4. Force a flush
+     * 1. Complete the file currently written for the endpoint, so that all of its hints can be delivered
+     * 2. Stream the hints of each file to the endpoint
+     * 3. Delete each file once all its hints have been acknowledged
      */
-    private void doDeliverHintsToEndpoint(InetAddress endpoint)
+    private void doDeliverHintsToEndpoint(final InetAddress endpoint, HintsStore store)
     {
-        // find the hints for the node using its token.
-        UUID hostId = Gossiper.instance.getHostId(endpoint);
-        logger.info("Started hinted handoff for host: {} with IP: {}", hostId, endpoint);
-        final ByteBuffer hostIdBytes = ByteBuffer.wrap(UUIDGen.decompose(hostId));
-
-        final AtomicInteger rowsReplayed = new AtomicInteger(0);
+        logger.info("Started hinted handoff for host: {} with IP: {}", store.hostId, endpoint);
 
         // rate limit is in bytes per second. Uses Double.MAX_VALUE if disabled (set to 0 in cassandra.yaml).
         // max rate is scaled by the number of nodes in the cluster (CASSANDRA-5272).
@@ -374,88 +431,27 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
                            / (StorageService.instance.getTokenMetadata().getAllEndpoints().size() - 1);
         RateLimiter rateLimiter = RateLimiter.create(throttleInKB == 0 ? Double.MAX_VALUE : throttleInKB * 1024);
 
-        int nowInSec = FBUtilities.nowInSeconds();
-        try (OpOrder.Group op = hintStore.readOrdering.start();
-             RowIterator iter = UnfilteredRowIterators.filter(SinglePartitionReadCommand.fullPartitionRead(SystemKeyspace.Hints, nowInSec, hostIdBytes).queryMemtableAndDisk(hintStore, op), nowInSec))
+        store.closeWriter();
+        HintsDispatcher dispatcher = new HintsDispatcher(store, endpoint, rateLimiter, () ->
         {
-            List<WriteResponseHandler<Mutation>> responseHandlers = Lists.newArrayList();
-
-            while (iter.hasNext())
+            // check if node is still alive and we should continue delivery process
+            if (!FailureDetector.instance.isAlive(endpoint))
             {
-                // check if node is still alive and we should continue delivery process
-                if (!FailureDetector.instance.isAlive(endpoint))
-                {
-                    logger.info("Endpoint {} died during hint delivery; aborting ({} delivered)", endpoint, rowsReplayed);
-                    return;
-                }
-
-                // check if hints delivery has been paused during the process
-                if (hintedHandOffPaused)
-                {
-                    logger.debug("Hints delivery process is paused, aborting");
-                    return;
-                }
-
-                // Wait regularly on the endpoint acknowledgment. If we timeout on it, the endpoint is probably dead so stop delivery
-                if (responseHandlers.size() > MAX_SIMULTANEOUSLY_REPLAYED_HINTS && !checkDelivered(endpoint, responseHandlers, rowsReplayed))
-                    return;
-
-                final Row hint = iter.next();
-                int version = Int32Type.instance.compose(hint.clustering().get(1));
-                Cell cell = hint.getCell(hintColumn);
-
-                final long timestamp = cell.timestamp();
-                DataInputPlus in = new DataInputBuffer(cell.value(), true);
-                Mutation mutation;
-                try
-                {
-                    mutation = Mutation.serializer.deserialize(in, version);
-                }
-                catch (UnknownColumnFamilyException e)
-                {
-                    logger.debug("Skipping delivery of hint for deleted table", e);
-                    deleteHint(hostIdBytes, hint.clustering(), timestamp);
-                    continue;
-                }
-                catch (IOException e)
-                {
-                    throw new AssertionError(e);
-                }
-
-                for (UUID cfId : mutation.getColumnFamilyIds())
-                {
-                    if (timestamp <= SystemKeyspace.getTruncatedAt(cfId))
-                    {
-                        logger.debug("Skipping delivery of hint for truncated table {}", cfId);
-                        mutation = mutation.without(cfId);
-                    }
-                }
-
-                if (mutation.isEmpty())
-                {
-                    deleteHint(hostIdBytes, hint.clustering(), timestamp);
-                    continue;
-                }
+                logger.info("Endpoint {} died during hint delivery; aborting", endpoint);
+                return true;
+            }
 
-                MessageOut<Mutation> message = mutation.createMessage();
-                rateLimiter.acquire(message.serializedSize(MessagingService.current_version));
-                Runnable callback = new Runnable()
-                {
-                    public void run()
-                    {
-                        rowsReplayed.incrementAndGet();
-                        deleteHint(hostIdBytes, hint.clustering(), timestamp);
-                    }
-                };
-                WriteResponseHandler<Mutation> responseHandler = new WriteResponseHandler<>(endpoint, WriteType.SIMPLE, callback);
-                MessagingService.instance().sendRR(message, endpoint, responseHandler, false);
-                responseHandlers.add(responseHandler);
+            // check if hints delivery has been paused during the process
+            if (hintedHandOffPaused)
+            {
+                logger.debug("Hints delivery process is paused, aborting");
+                return true;
             }
+            return false;
+        });
 
-            // Wait on the last handlers
-            if (checkDelivered(endpoint, responseHandlers, rowsReplayed))
-                logger.info("Finished hinted handoff of {} rows to endpoint {}", rowsReplayed, endpoint);
-        }
+        if (dispatcher.dispatch())
+            logger.info("Finished hinted handoff of {} rows to endpoint {}", dispatcher.delivered(), endpoint);
     }
 
     /**
@@ -466,31 +462,18 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
     {
         logger.debug("Started scheduleAllDeliveries");
 
-        // Force a major compaction to get rid of the tombstones and expired hints. Do it once, before we schedule any
-        // individual replay, to avoid N - 1 redundant individual compactions (when N is the number of nodes with hints
-        // to deliver to).
-        compact();
+        // pick up any hint streamed in by a decommissioned node
+        migrateLegacyHints();
 
-        ReadCommand cmd = new PartitionRangeReadCommand(hintStore.metadata,
-                                                        FBUtilities.nowInSeconds(),
-                                                        ColumnFilter.all(hintStore.metadata),
-                                                        RowFilter.NONE,
-                                                        DataLimits.cqlLimits(Integer.MAX_VALUE, 1),
-                                                        DataRange.allData(hintStore.metadata.partitioner));
-
-        try (ReadOrderGroup orderGroup = cmd.startOrderGroup(); UnfilteredPartitionIterator iter = cmd.executeLocally(orderGroup))
+        for (HintsStore store : stores.values())
         {
-            while (iter.hasNext())
-            {
-                try (UnfilteredRowIterator partition = iter.next())
-                {
-                    UUID hostId = UUIDGen.getUUID(partition.partitionKey().getKey());
-                    InetAddress target = StorageService.instance.getTokenMetadata().getEndpointForHostId(hostId);
-                    // token may have since been removed (in which case we have just read back a tombstone)
-                    if (target != null)
-                        scheduleHintDelivery(target, false);
-                }
-            }
+            if (!store.hasHints())
+                continue;
+
+            InetAddress target = StorageService.instance.getTokenMetadata().getEndpointForHostId(store.hostId);
+            // the node may have since been removed
+            if (target != null)
+                scheduleHintDelivery(target);
         }
 
         logger.debug("Finished scheduleAllDeliveries");
@@ -501,7 +484,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
      * When we learn that some endpoint is back up we deliver the data
      * to him via an event driven mechanism.
     */
-    public void scheduleHintDelivery(final InetAddress to, final boolean precompact)
+    public void scheduleHintDelivery(final InetAddress to)
     {
         // We should not deliver hints to the same host in 2 different threads
         if (!queuedDeliveries.add(to))
@@ -515,11 +498,6 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
             {
                 try
                 {
-                    // If it's an individual node hint replay (triggered by Gossip or via JMX), and not the global scheduled replay
-                    // (every 10 minutes), force a major compaction to get rid of the tombstones and expired hints.
-                    if (precompact)
-                        compact();
-
                     deliverHintsToEndpoint(to);
                 }
                 finally
@@ -532,7 +510,7 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
 
     public void scheduleHintDelivery(String to) throws UnknownHostException
     {
-        scheduleHintDelivery(InetAddress.getByName(to), true);
+        scheduleHintDelivery(InetAddress.getByName(to));
     }
 
     public void pauseHintsDelivery(boolean b)
@@ -544,23 +522,9 @@ public class HintedHandOffManager implements HintedHandOffManagerMBean
     {
         // Extract the keys as strings to be reported.
         List<String> result = new ArrayList<>();
-
-        ReadCommand cmd = PartitionRangeReadCommand.allDataRead(SystemKeyspace.Hints, FBUtilities.nowInSeconds());
-        try (ReadOrderGroup orderGroup = cmd.startOrderGroup();
-             UnfilteredPartitionIterator iter = cmd.executeLocally(orderGroup))
-        {
-            while (iter.hasNext())
-            {
-                try (UnfilteredRowIterator partition = iter.next())
-                {
-                    // We don't delete by range on the hints table, so we don't have to worry about the
-                    // iterator returning only range tombstone marker
-                    if (partition.hasNext())
-                        result.add(UUIDType.instance.compose(partition.partitionKey().getKey()).toString());
-                }
-            }
-        }
-
+        for (HintsStore store : stores.values())
+            if (store.hasHints())
+                result.add(store.hostId.toString());
         return result;
     }
 }
@@ -19,8 +19,6 @@ package org.apache.cassandra.db;
 
 import java.io.File;
 import java.util.*;
-import java.util.concurrent.ConcurrentNavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -41,7 +39,6 @@ import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.db.commitlog.CommitLog;
 import org.apache.cassandra.db.commitlog.ReplayPosition;
 import org.apache.cassandra.db.index.SecondaryIndexManager;
-import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
 import org.apache.cassandra.db.filter.*;
 import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.dht.*;
@@ -50,6 +47,7 @@ import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.util.DiskAwareRunnable;
+import org.apache.cassandra.schema.MemtableParams;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.*;
 import org.apache.cassandra.utils.concurrent.OpOrder;
@@ -60,7 +58,6 @@ public class Memtable implements Comparable<Memtable>
     private static final Logger logger = LoggerFactory.getLogger(Memtable.class);
 
     static final MemtablePool MEMORY_POOL = DatabaseDescriptor.getMemtableAllocatorPool();
-    private static final int ROW_OVERHEAD_HEAP_SIZE = estimateRowOverhead(Integer.parseInt(System.getProperty("cassandra.memtable_row_overhead_computation_step", "100000")));
 
     private final MemtableAllocator allocator;
     private final AtomicLong liveDataSize = new AtomicLong(0);
@@ -85,10 +82,7 @@ public class Memtable implements Comparable<Memtable>
         }
     }
 
-    // We index the memtable by PartitionPosition only for the purpose of being able
-    // to select key range using Token.KeyBound. However put() ensures that we
-    // actually only store DecoratedKey.
-    private final ConcurrentNavigableMap<PartitionPosition, AtomicBTreePartition> partitions = new ConcurrentSkipListMap<>();
+    private final MemtablePartitions partitions;
     public final ColumnFamilyStore cfs;
     private final long creationTime = System.currentTimeMillis();
     private final long creationNano = System.nanoTime();
@@ -105,6 +99,7 @@ public class Memtable implements Comparable<Memtable>
     {
         this.cfs = cfs;
         this.allocator = MEMORY_POOL.newAllocator();
+        this.partitions = createPartitions(cfs.metadata, allocator);
         this.initialComparator = cfs.metadata.comparator;
         this.cfs.scheduleFlush();
         this.columnsCollector = new ColumnsCollector(cfs.metadata.partitionColumns());
@@ -117,9 +112,24 @@ public class Memtable implements Comparable<Memtable>
         this.initialComparator = metadata.comparator;
         this.cfs = null;
         this.allocator = null;
+        this.partitions = new SkipListMemtablePartitions();
         this.columnsCollector = new ColumnsCollector(metadata.partitionColumns());
     }
 
+    private static MemtablePartitions createPartitions(CFMetaData metadata, MemtableAllocator allocator)
+    {
+        if (metadata.params.memtable.type == MemtableParams.Type.TRIE)
+        {
+            if (TrieMemtablePartitions.supports(metadata.partitioner))
+                return new TrieMemtablePartitions(allocator);
+
+            NoSpamLogger.log(logger, NoSpamLogger.Level.WARN, 1, TimeUnit.HOURS,
+                             "Trie memtables are only supported by the Murmur3Partitioner; using a skip list memtable for {}.{}",
+                             metadata.ksName, metadata.cfName);
+        }
+        return new SkipListMemtablePartitions();
+    }
+
     public MemtableAllocator getAllocator()
     {
         return allocator;
@@ -147,6 +157,7 @@ public class Memtable implements Comparable<Memtable>
     void setDiscarded()
     {
         allocator.setDiscarded();
+        partitions.discard();
     }
 
     // decide if this memtable should take the write, or if it should go to the next memtable
@@ -219,13 +230,13 @@ public class Memtable implements Comparable<Memtable>
             final DecoratedKey cloneKey = allocator.clone(update.partitionKey(), opGroup);
             AtomicBTreePartition empty = new AtomicBTreePartition(cfs.metadata, cloneKey, allocator);
             // We'll add the columns later. This avoids wasting works if we get beaten in the putIfAbsent
-            previous = partitions.putIfAbsent(cloneKey, empty);
+            previous = partitions.putIfAbsent(cloneKey, empty, opGroup);
             if (previous == null)
             {
                 previous = empty;
                 // allocate the row overhead after the fact; this saves over allocating and having to free after, but
                 // means we can overshoot our declared limit.
-                int overhead = (int) (cloneKey.getToken().getHeapSize() + ROW_OVERHEAD_HEAP_SIZE);
+                int overhead = (int) (cloneKey.getToken().getHeapSize() + partitions.partitionOverheadHeapSize());
                 allocator.onHeap().allocate(overhead, opGroup);
                 initialSize = 8;
             }
@@ -270,15 +281,10 @@ public class Memtable implements Comparable<Memtable>
         boolean isBound = keyRange instanceof Bounds;
         boolean includeStart = isBound || keyRange instanceof IncludingExcludingBounds;
         boolean includeStop = isBound || keyRange instanceof Range;
-        Map<PartitionPosition, AtomicBTreePartition> subMap;
-        if (startIsMin)
-            subMap = stopIsMin ? partitions : partitions.headMap(keyRange.right, includeStop);
-        else
-            subMap = stopIsMin
-                   ? partitions.tailMap(keyRange.left, includeStart)
-                   : partitions.subMap(keyRange.left, includeStart, keyRange.right, includeStop);
-
-        final Iterator<Map.Entry<PartitionPosition, AtomicBTreePartition>> iter = subMap.entrySet().iterator();
+        final Iterator<AtomicBTreePartition> iter = partitions.iterator(startIsMin ? null : keyRange.left,
+                                                                        includeStart,
+                                                                        stopIsMin ? null : keyRange.right,
+                                                                        includeStop);
 
         return new AbstractUnfilteredPartitionIterator()
         {
@@ -299,12 +305,9 @@ public class Memtable implements Comparable<Memtable>
 
             public UnfilteredRowIterator next()
             {
-                Map.Entry<PartitionPosition, AtomicBTreePartition> entry = iter.next();
-                // Actual stored key should be true DecoratedKey
-                assert entry.getKey() instanceof DecoratedKey;
-                DecoratedKey key = (DecoratedKey)entry.getKey();
-                ClusteringIndexFilter filter = dataRange.clusteringIndexFilter(key);
-                return filter.getUnfilteredRowIterator(columnFilter, entry.getValue());
+                AtomicBTreePartition partition = iter.next();
+                ClusteringIndexFilter filter = dataRange.clusteringIndexFilter(partition.partitionKey());
+                return filter.getUnfilteredRowIterator(columnFilter, partition);
             }
         };
     }
@@ -331,12 +334,8 @@ public class Memtable implements Comparable<Memtable>
             this.context = context;
 
             long keySize = 0;
-            for (PartitionPosition key : partitions.keySet())
-            {
-                //  make sure we don't write non-sensical keys
-                assert key instanceof DecoratedKey;
-                keySize += ((DecoratedKey)key).getKey().remaining();
-            }
+            for (AtomicBTreePartition partition : partitions)
+                keySize += partition.partitionKey().getKey().remaining();
             estimatedSize = (long) ((keySize // index entries
                                     + keySize // keys in data file
                                     + liveDataSize.get()) // data
@@ -376,7 +375,7 @@ public class Memtable implements Comparable<Memtable>
                 int heavilyContendedRowCount = 0;
                 // (we can't clear out the map as-we-go to free up memory,
                 //  since the memtable is being used for queries in the "pending flush" category)
-                for (AtomicBTreePartition partition : partitions.values())
+                for (AtomicBTreePartition partition : partitions)
                 {
                     // Each batchlog partition is a separate entry in the log. And for an entry, we only do 2
                     // operations: 1) we insert the entry and 2) we delete it. Further, BL data is strictly local,
@@ -442,27 +441,6 @@ public class Memtable implements Comparable<Memtable>
         }
     }
 
-    private static int estimateRowOverhead(final int count)
-    {
-        // calculate row overhead
-        try (final OpOrder.Group group = new OpOrder().start())
-        {
-            int rowOverhead;
-            MemtableAllocator allocator = MEMORY_POOL.newAllocator();
-            ConcurrentNavigableMap<PartitionPosition, Object> partitions = new ConcurrentSkipListMap<>();
-            final Object val = new Object();
-            for (int i = 0 ; i < count ; i++)
-                partitions.put(allocator.clone(new BufferDecoratedKey(new LongToken(i), ByteBufferUtil.EMPTY_BYTE_BUFFER), group), val);
-            double avgSize = ObjectSizes.measureDeep(partitions) / (double) count;
-            rowOverhead = (int) ((avgSize - Math.floor(avgSize)) < 0.05 ? Math.floor(avgSize) : Math.ceil(avgSize));
-            rowOverhead -= ObjectSizes.measureDeep(new LongToken(0));
-            rowOverhead += AtomicBTreePartition.EMPTY_SIZE;
-            allocator.setDiscarding();
-            allocator.setDiscarded();
-            return rowOverhead;
-        }
-    }
-
     private static class ColumnsCollector
     {
         private final HashMap<ColumnDefinition, AtomicBoolean> predefined = new HashMap<>();
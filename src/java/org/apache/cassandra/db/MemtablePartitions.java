@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.util.Iterator;
+
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+
+/**
+ * The partitions of a {@link Memtable}, ordered by partition key.
+ *
+ * Implementations must support concurrent readers and writers; partitions are only ever added.
+ */
+interface MemtablePartitions extends Iterable<AtomicBTreePartition>
+{
+    public AtomicBTreePartition get(PartitionPosition key);
+
+    /**
+     * @return the partition already present for the key, or null if the provided partition was added
+     */
+    public AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition, OpOrder.Group opGroup);
+
+    /**
+     * Returns the partitions between the provided positions, in partition key order. A null position is unbounded.
+     */
+    public Iterator<AtomicBTreePartition> iterator(PartitionPosition left, boolean includeLeft, PartitionPosition right, boolean includeRight);
+
+    public int size();
+
+    public boolean isEmpty();
+
+    /**
+     * @return the estimated heap space used to hold a single partition, excluding its key and contents
+     */
+    public int partitionOverheadHeapSize();
+
+    /**
+     * Releases any resources held outside of the heap, once no reader can access this object anymore.
+     */
+    public void discard();
+}
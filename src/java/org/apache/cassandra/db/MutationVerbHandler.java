@@ -50,7 +50,10 @@ public class MutationVerbHandler implements IVerbHandler<Mutation>
 
         try
         {
-            message.payload.apply();
+            if (message.verb == MessagingService.Verb.BATCHLOG_MUTATION)
+                BatchlogManager.instance.apply(message.payload);
+            else
+                message.payload.apply();
             WriteResponse response = new WriteResponse();
             Tracing.trace("Enqueuing response to {}", replyTo);
             MessagingService.instance().sendReply(response.createMessage(), id, replyTo);
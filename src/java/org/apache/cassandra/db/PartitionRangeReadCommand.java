@@ -115,7 +115,9 @@ public class PartitionRangeReadCommand extends ReadCommand
 
     public PartitionRangeReadCommand copy()
     {
-        return new PartitionRangeReadCommand(isDigestQuery(), isForThrift(), metadata(), nowInSec(), columnFilter(), rowFilter(), limits(), dataRange());
+        PartitionRangeReadCommand copy = new PartitionRangeReadCommand(isDigestQuery(), isForThrift(), metadata(), nowInSec(), columnFilter(), rowFilter(), limits(), dataRange());
+        copy.setDigestVersion(digestVersion());
+        return copy;
     }
 
     public PartitionRangeReadCommand withUpdatedLimit(DataLimits newLimits)
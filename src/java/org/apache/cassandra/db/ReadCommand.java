@@ -60,6 +60,8 @@ public abstract class ReadCommand implements ReadQuery
     private final DataLimits limits;
 
     private boolean isDigestQuery;
+    // the messaging version deciding how digests are computed, see setDigestVersion()
+    private int digestVersion = MessagingService.current_version;
     private final boolean isForThrift;
 
     protected static abstract class SelectionDeserializer
@@ -192,6 +194,31 @@ public abstract class ReadCommand implements ReadQuery
         return this;
     }
 
+    /**
+     * The messaging version whose digest algorithm is used to digest the result of this query.
+     *
+     * @return the digest version of this query.
+     */
+    public int digestVersion()
+    {
+        return digestVersion;
+    }
+
+    /**
+     * Sets the messaging version whose digest algorithm is used to digest the result of this query.
+     * <p>
+     * All the replicas whose results are compared must compute their digest the same way, so a coordinator
+     * should set this to the lowest messaging version of the replicas it queries.
+     *
+     * @param digestVersion the messaging version to compute digests for.
+     * @return this read command.
+     */
+    public ReadCommand setDigestVersion(int digestVersion)
+    {
+        this.digestVersion = digestVersion;
+        return this;
+    }
+
     /**
      * Whether this query is for thrift or not.
      *
@@ -239,7 +266,7 @@ public abstract class ReadCommand implements ReadQuery
     public ReadResponse createResponse(UnfilteredPartitionIterator iterator)
     {
         return isDigestQuery()
-             ? ReadResponse.createDigestResponse(iterator)
+             ? ReadResponse.createDigestResponse(iterator, this)
              : ReadResponse.createDataResponse(iterator);
     }
 
@@ -470,6 +497,8 @@ public abstract class ReadCommand implements ReadQuery
 
             out.writeByte(command.kind.ordinal());
             out.writeByte(digestFlag(command.isDigestQuery()) | thriftFlag(command.isForThrift()));
+            if (version >= MessagingService.VERSION_31)
+                out.writeUnsignedVInt(command.digestVersion());
             CFMetaData.serializer.serialize(command.metadata(), out, version);
             out.writeInt(command.nowInSec());
             ColumnFilter.serializer.serialize(command.columnFilter(), out, version);
@@ -488,13 +517,16 @@ public abstract class ReadCommand implements ReadQuery
             int flags = in.readByte();
             boolean isDigest = isDigest(flags);
             boolean isForThrift = isForThrift(flags);
+            // a node older than VERSION_31 digests with its own algorithm, and expects the same from us
+            int digestVersion = version >= MessagingService.VERSION_31 ? (int) in.readUnsignedVInt() : version;
             CFMetaData metadata = CFMetaData.serializer.deserialize(in, version);
             int nowInSec = in.readInt();
             ColumnFilter columnFilter = ColumnFilter.serializer.deserialize(in, version, metadata);
             RowFilter rowFilter = RowFilter.serializer.deserialize(in, version, metadata);
             DataLimits limits = DataLimits.serializer.deserialize(in, version);
 
-            return kind.selectionDeserializer.deserialize(in, version, isDigest, isForThrift, metadata, nowInSec, columnFilter, rowFilter, limits);
+            return kind.selectionDeserializer.deserialize(in, version, isDigest, isForThrift, metadata, nowInSec, columnFilter, rowFilter, limits)
+                                             .setDigestVersion(digestVersion);
         }
 
         public long serializedSize(ReadCommand command, int version)
@@ -503,6 +535,7 @@ public abstract class ReadCommand implements ReadQuery
                 throw new UnsupportedOperationException();
 
             return 2 // kind + flags
+                 + (version >= MessagingService.VERSION_31 ? TypeSizes.sizeofUnsignedVInt(command.digestVersion()) : 0)
                  + CFMetaData.serializer.serializedSize(command.metadata(), version)
                  + TypeSizes.sizeof(command.nowInSec())
                  + ColumnFilter.serializer.serializedSize(command.columnFilter(), version)
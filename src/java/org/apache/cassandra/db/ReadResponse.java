@@ -52,18 +52,21 @@ public abstract class ReadResponse
         return new DataResponse(data);
     }
 
-    public static ReadResponse createDigestResponse(UnfilteredPartitionIterator data)
+    public static ReadResponse createDigestResponse(UnfilteredPartitionIterator data, ReadCommand command)
     {
-        return new DigestResponse(makeDigest(data));
+        return new DigestResponse(makeDigest(data, command));
     }
 
     public abstract UnfilteredPartitionIterator makeIterator(CFMetaData metadata);
-    public abstract ByteBuffer digest(CFMetaData metadata);
+    public abstract ByteBuffer digest(ReadCommand command);
     public abstract boolean isDigestQuery();
 
-    protected static ByteBuffer makeDigest(UnfilteredPartitionIterator iterator)
+    protected static ByteBuffer makeDigest(UnfilteredPartitionIterator iterator, ReadCommand command)
     {
-        MessageDigest digest = FBUtilities.threadLocalMD5Digest();
+        // MD5 until every replica queried knows the (much cheaper) non-cryptographic digest
+        MessageDigest digest = command.digestVersion() < MessagingService.VERSION_31
+                             ? FBUtilities.threadLocalMD5Digest()
+                             : FBUtilities.threadLocalMurmur3Digest();
         UnfilteredPartitionIterators.digest(iterator, digest);
         return ByteBuffer.wrap(digest.digest());
     }
@@ -84,7 +87,7 @@ public abstract class ReadResponse
             throw new UnsupportedOperationException();
         }
 
-        public ByteBuffer digest(CFMetaData metadata)
+        public ByteBuffer digest(ReadCommand command)
         {
             return digest;
         }
@@ -138,11 +141,11 @@ public abstract class ReadResponse
             }
         }
 
-        public ByteBuffer digest(CFMetaData metadata)
+        public ByteBuffer digest(ReadCommand command)
         {
-            try (UnfilteredPartitionIterator iterator = makeIterator(metadata))
+            try (UnfilteredPartitionIterator iterator = makeIterator(command.metadata()))
             {
-                return makeDigest(iterator);
+                return makeDigest(iterator, command);
             }
         }
 
@@ -163,12 +166,13 @@ public abstract class ReadResponse
             }
 
             boolean isDigest = response.isDigestQuery();
-            ByteBufferUtil.writeWithVIntLength(isDigest ? response.digest(response.metadata) : ByteBufferUtil.EMPTY_BYTE_BUFFER, out);
+            ByteBufferUtil.writeWithVIntLength(isDigest ? ((DigestResponse) response).digest : ByteBufferUtil.EMPTY_BYTE_BUFFER, out);
             if (!isDigest)
             {
-                // Note that we can only get there if version == 3.0, which is the current_version. When we'll change the
-                // version, we'll have to deserialize/re-serialize the data to be in the proper version.
-                assert version == MessagingService.VERSION_30;
+                // Note that we can only get there if version >= 3.0. The data is serialized in the current_version, which
+                // is fine as long as the format of partitions hasn't changed since 3.0. When it does, we'll have to
+                // deserialize/re-serialize the data to be in the proper version.
+                assert version >= MessagingService.VERSION_30;
                 ByteBuffer data = ((DataResponse)response).data;
                 ByteBufferUtil.writeWithVIntLength(data, out);
             }
@@ -186,7 +190,7 @@ public abstract class ReadResponse
             if (digest.hasRemaining())
                 return new DigestResponse(digest);
 
-            assert version == MessagingService.VERSION_30;
+            assert version >= MessagingService.VERSION_30;
             ByteBuffer data = ByteBufferUtil.readWithVIntLength(in);
             return new DataResponse(data);
         }
@@ -200,12 +204,13 @@ public abstract class ReadResponse
             }
 
             boolean isDigest = response.isDigestQuery();
-            long size = ByteBufferUtil.serializedSizeWithVIntLength(isDigest ? response.digest(response.metadata) : ByteBufferUtil.EMPTY_BYTE_BUFFER);
+            long size = ByteBufferUtil.serializedSizeWithVIntLength(isDigest ? ((DigestResponse) response).digest : ByteBufferUtil.EMPTY_BYTE_BUFFER);
             if (!isDigest)
             {
-                // Note that we can only get there if version == 3.0, which is the current_version. When we'll change the
-                // version, we'll have to deserialize/re-serialize the data to be in the proper version.
-                assert version == MessagingService.VERSION_30;
+                // Note that we can only get there if version >= 3.0. The data is serialized in the current_version, which
+                // is fine as long as the format of partitions hasn't changed since 3.0. When it does, we'll have to
+                // deserialize/re-serialize the data to be in the proper version.
+                assert version >= MessagingService.VERSION_30;
                 ByteBuffer data = ((DataResponse)response).data;
                 size += ByteBufferUtil.serializedSizeWithVIntLength(data);
             }
@@ -17,22 +17,29 @@
  */
 package org.apache.cassandra.db;
 
+import java.io.Closeable;
 import java.io.DataInput;
 import java.io.IOException;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import com.google.common.primitives.Ints;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.cache.IMeasurableMemory;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.ISerializer;
+import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.ObjectSizes;
 
@@ -72,7 +79,16 @@ public class RowIndexEntry<T> implements IMeasurableMemory
      */
     public boolean isIndexed()
     {
-        return !columnsIndex().isEmpty();
+        return columnsCount() > 0;
+    }
+
+    /**
+     * @return false if the column index isn't held by this entry but must be read from the sstable
+     * with {@link #columnsIndex(SSTableReader)}
+     */
+    public boolean isColumnsIndexInMemory()
+    {
+        return true;
     }
 
     public DeletionTime deletionTime()
@@ -89,11 +105,33 @@ public class RowIndexEntry<T> implements IMeasurableMemory
         return 0;
     }
 
+    /**
+     * @return the column index held by this entry, which is empty if the entry isn't indexed or if its column index
+     * is left in the sstable, see {@link #isColumnsIndexInMemory()} and {@link #columnsIndex(SSTableReader)}
+     */
     public List<T> columnsIndex()
     {
         return Collections.emptyList();
     }
 
+    /**
+     * @return the number of blocks in the column index
+     */
+    public int columnsCount()
+    {
+        return columnsIndex().size();
+    }
+
+    /**
+     * Returns the column index, reading it from the given sstable's primary index if this entry doesn't hold it.
+     * The returned list may then keep the index file open, and must be closed with {@link FileUtils#closeQuietly}
+     * if it is {@link Closeable}.
+     */
+    public List<T> columnsIndex(SSTableReader sstable)
+    {
+        return columnsIndex();
+    }
+
     public long unsharedHeapSize()
     {
         return EMPTY_SIZE;
@@ -121,6 +159,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
 
         public void serialize(RowIndexEntry<IndexHelper.IndexInfo> rie, DataOutputPlus out) throws IOException
         {
+            assert rie.isColumnsIndexInMemory() : "The column index of " + rie + " must be read from its sstable to be serialized";
             out.writeLong(rie.position);
             out.writeInt(rie.promotedSize(metadata, version, header));
 
@@ -131,6 +170,17 @@ public class RowIndexEntry<T> implements IMeasurableMemory
                 IndexHelper.IndexInfo.Serializer idxSerializer = metadata.serializers().indexSerializer(version);
                 for (IndexHelper.IndexInfo info : rie.columnsIndex())
                     idxSerializer.serialize(info, out, header);
+
+                if (version.hasIndexInfoOffsets())
+                {
+                    // the offset of each entry from the first, so that they can be binary searched in the file
+                    int offset = 0;
+                    for (IndexHelper.IndexInfo info : rie.columnsIndex())
+                    {
+                        out.writeInt(offset);
+                        offset += idxSerializer.serializedSize(info, header);
+                    }
+                }
             }
         }
 
@@ -145,9 +195,22 @@ public class RowIndexEntry<T> implements IMeasurableMemory
 
                 int entries = in.readInt();
                 IndexHelper.IndexInfo.Serializer idxSerializer = metadata.serializers().indexSerializer(version);
+
+                // large column indexes read straight from the index file are left there, to be binary searched when needed
+                if (version.hasIndexInfoOffsets() && in instanceof FileDataInput && size > DatabaseDescriptor.getColumnIndexCacheSize())
+                {
+                    long indexInfoPosition = ((FileDataInput) in).getFilePointer();
+                    int indexInfoSize = size - (int) DeletionTime.serializer.serializedSize(deletionTime) - TypeSizes.sizeof(entries);
+                    FileUtils.skipBytesFully(in, indexInfoSize);
+                    long offsetsPosition = indexInfoPosition + indexInfoSize - entries * TypeSizes.sizeof(entries);
+                    return new ShallowIndexedEntry(position, size, deletionTime, entries, indexInfoPosition, offsetsPosition, idxSerializer, header);
+                }
+
                 List<IndexHelper.IndexInfo> columnsIndex = new ArrayList<>(entries);
                 for (int i = 0; i < entries; i++)
                     columnsIndex.add(idxSerializer.deserialize(in, header));
+                if (version.hasIndexInfoOffsets())
+                    FileUtils.skipBytesFully(in, entries * TypeSizes.sizeof(entries));
 
                 return new IndexedEntry(position, deletionTime, columnsIndex);
             }
@@ -174,6 +237,7 @@ public class RowIndexEntry<T> implements IMeasurableMemory
 
         public int serializedSize(RowIndexEntry<IndexHelper.IndexInfo> rie)
         {
+            assert rie.isColumnsIndexInMemory() : "The column index of " + rie + " must be read from its sstable to be serialized";
             int size = TypeSizes.sizeof(rie.position) + TypeSizes.sizeof(rie.promotedSize(metadata, version, header));
 
             if (rie.isIndexed())
@@ -186,6 +250,9 @@ public class RowIndexEntry<T> implements IMeasurableMemory
                 IndexHelper.IndexInfo.Serializer idxSerializer = metadata.serializers().indexSerializer(version);
                 for (IndexHelper.IndexInfo info : index)
                     size += idxSerializer.serializedSize(info, header);
+
+                if (version.hasIndexInfoOffsets())
+                    size += index.size() * TypeSizes.sizeof(index.size());
             }
 
 
@@ -233,6 +300,8 @@ public class RowIndexEntry<T> implements IMeasurableMemory
             IndexHelper.IndexInfo.Serializer idxSerializer = metadata.serializers().indexSerializer(version);
             for (IndexHelper.IndexInfo info : columnsIndex)
                 size += idxSerializer.serializedSize(info, header);
+            if (version.hasIndexInfoOffsets())
+                size += columnsIndex.size() * TypeSizes.sizeof(columnsIndex.size());
 
             return Ints.checkedCast(size);
         }
@@ -250,4 +319,130 @@ public class RowIndexEntry<T> implements IMeasurableMemory
                    + ObjectSizes.sizeOfReferenceArray(columnsIndex.size());
         }
     }
+
+    /**
+     * An entry for a partition whose column index is too large to be kept on heap: only its location in the index
+     * file is retained, and {@link #columnsIndex(SSTableReader)} reads the blocks from there as they are accessed.
+     */
+    private static class ShallowIndexedEntry extends RowIndexEntry<IndexHelper.IndexInfo>
+    {
+        private static final long BASE_SIZE = ObjectSizes.measure(new ShallowIndexedEntry(0, 0, DeletionTime.LIVE, 2, 0, 0, null, null));
+
+        private final int promotedSize;
+        private final DeletionTime deletionTime;
+        private final int columnsCount;
+        private final long indexInfoPosition;
+        private final long offsetsPosition;
+        private final IndexHelper.IndexInfo.Serializer idxSerializer;
+        private final SerializationHeader header;
+
+        private ShallowIndexedEntry(long position,
+                                    int promotedSize,
+                                    DeletionTime deletionTime,
+                                    int columnsCount,
+                                    long indexInfoPosition,
+                                    long offsetsPosition,
+                                    IndexHelper.IndexInfo.Serializer idxSerializer,
+                                    SerializationHeader header)
+        {
+            super(position);
+            assert deletionTime != null;
+            assert columnsCount > 1;
+            this.promotedSize = promotedSize;
+            this.deletionTime = deletionTime;
+            this.columnsCount = columnsCount;
+            this.indexInfoPosition = indexInfoPosition;
+            this.offsetsPosition = offsetsPosition;
+            this.idxSerializer = idxSerializer;
+            this.header = header;
+        }
+
+        @Override
+        public DeletionTime deletionTime()
+        {
+            return deletionTime;
+        }
+
+        @Override
+        public boolean isColumnsIndexInMemory()
+        {
+            return false;
+        }
+
+        @Override
+        public int columnsCount()
+        {
+            return columnsCount;
+        }
+
+        @Override
+        public List<IndexHelper.IndexInfo> columnsIndex(SSTableReader sstable)
+        {
+            return new OnDiskColumnsIndex(this, sstable.getIndexFileDataInput(indexInfoPosition));
+        }
+
+        @Override
+        public int promotedSize(CFMetaData metadata, Version version, SerializationHeader header)
+        {
+            return promotedSize;
+        }
+
+        @Override
+        public long unsharedHeapSize()
+        {
+            return BASE_SIZE + deletionTime.unsharedHeapSize();
+        }
+    }
+
+    /**
+     * The column index of a {@link ShallowIndexedEntry}, binary searchable in the index file thanks to the offsets
+     * following the entries.
+     */
+    private static final class OnDiskColumnsIndex extends AbstractList<IndexHelper.IndexInfo> implements RandomAccess, Closeable
+    {
+        private final ShallowIndexedEntry entry;
+        private final FileDataInput in;
+
+        // callers tend to ask for the same block repeatedly
+        private int lastIndex = -1;
+        private IndexHelper.IndexInfo last;
+
+        private OnDiskColumnsIndex(ShallowIndexedEntry entry, FileDataInput in)
+        {
+            this.entry = entry;
+            this.in = in;
+        }
+
+        public IndexHelper.IndexInfo get(int index)
+        {
+            if (index < 0 || index >= entry.columnsCount)
+                throw new IndexOutOfBoundsException(index + " not in [0, " + entry.columnsCount + ')');
+            if (index == lastIndex)
+                return last;
+
+            try
+            {
+                in.seek(entry.offsetsPosition + (long) index * TypeSizes.sizeof(index));
+                int offset = in.readInt();
+                in.seek(entry.indexInfoPosition + offset);
+                last = entry.idxSerializer.deserialize(in, entry.header);
+                lastIndex = index;
+                return last;
+            }
+            catch (IOException e)
+            {
+                throw new CorruptSSTableException(e, in.getPath());
+            }
+        }
+
+        public int size()
+        {
+            return entry.columnsCount;
+        }
+
+        public void close()
+        {
+            FileUtils.closeQuietly(in);
+        }
+    }
 }
@@ -81,7 +81,9 @@ public class SinglePartitionNamesCommand extends SinglePartitionReadCommand<Clus
 
     public SinglePartitionNamesCommand copy()
     {
-        return new SinglePartitionNamesCommand(isDigestQuery(), isForThrift(), metadata(), nowInSec(), columnFilter(), rowFilter(), limits(), partitionKey(), clusteringIndexFilter());
+        SinglePartitionNamesCommand copy = new SinglePartitionNamesCommand(isDigestQuery(), isForThrift(), metadata(), nowInSec(), columnFilter(), rowFilter(), limits(), partitionKey(), clusteringIndexFilter());
+        copy.setDigestVersion(digestVersion());
+        return copy;
     }
 
     protected UnfilteredRowIterator queryMemtableAndDiskInternal(ColumnFamilyStore cfs, boolean copyOnHeap)
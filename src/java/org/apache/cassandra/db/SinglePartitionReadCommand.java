@@ -261,6 +261,7 @@ public abstract class SinglePartitionReadCommand<F extends ClusteringIndexFilter
 
         UUID cfId = metadata().cfId;
         RowCacheKey key = new RowCacheKey(cfId, partitionKey());
+        boolean admitted = CacheService.instance.recordRowCacheRead(key);
 
         // Attempt a sentinel-read-cache sequence.  if a write invalidates our sentinel, we'll return our
         // (now potentially obsolete) data, but won't cache it. see CASSANDRA-3862
@@ -292,6 +293,13 @@ public abstract class SinglePartitionReadCommand<F extends ClusteringIndexFilter
         cfs.metric.rowCacheMiss.inc();
         Tracing.trace("Row cache miss");
 
+        if (!admitted)
+        {
+            cfs.metric.rowCacheNotAdmitted.inc();
+            Tracing.trace("Fetching data but not populating cache as partition is not read often enough");
+            return queryMemtableAndDisk(cfs, readOp);
+        }
+
         boolean cacheFullPartitions = metadata().params.caching.cacheAllRows();
 
         // To be able to cache what we read, what we read must at least covers what the cache holds, that
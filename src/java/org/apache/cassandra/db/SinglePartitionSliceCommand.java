@@ -116,7 +116,9 @@ public class SinglePartitionSliceCommand extends SinglePartitionReadCommand<Clus
 
     public SinglePartitionSliceCommand copy()
     {
-        return new SinglePartitionSliceCommand(isDigestQuery(), isForThrift(), metadata(), nowInSec(), columnFilter(), rowFilter(), limits(), partitionKey(), clusteringIndexFilter());
+        SinglePartitionSliceCommand copy = new SinglePartitionSliceCommand(isDigestQuery(), isForThrift(), metadata(), nowInSec(), columnFilter(), rowFilter(), limits(), partitionKey(), clusteringIndexFilter());
+        copy.setDigestVersion(digestVersion());
+        return copy;
     }
 
     protected UnfilteredRowIterator queryMemtableAndDiskInternal(ColumnFamilyStore cfs, boolean copyOnHeap)
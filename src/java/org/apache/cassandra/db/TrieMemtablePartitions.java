@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.AbstractIterator;
+
+import org.apache.cassandra.db.partitions.AtomicBTreePartition;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.apache.cassandra.utils.memory.MemtableAllocator;
+import org.apache.cassandra.utils.memory.NativeTrie;
+
+/**
+ * Keeps the partitions of a memtable in {@link NativeTrie}s, one per shard of the token ring. Each trie maps
+ * the byte-comparable form of a partition key (its token, followed by the key bytes) to the index of the
+ * partition object in an on-heap array, so that no per-partition map entry lives on heap.
+ *
+ * A writer adding a partition locks the shard owning its token, readers never lock. Only usable with
+ * the Murmur3Partitioner, whose tokens have a fixed-size byte-comparable form.
+ */
+final class TrieMemtablePartitions implements MemtablePartitions
+{
+    static final int SHARD_COUNT = Math.max(1, Math.min(256, Integer.getInteger("cassandra.trie_memtable_shard_count",
+                                                                                FBUtilities.getAvailableProcessors())));
+
+    private static final int TOKEN_SIZE = 8;
+    // the partition itself plus its slot in the values array; the trie nodes are accounted for separately
+    private static final int PARTITION_OVERHEAD_HEAP_SIZE = (int) AtomicBTreePartition.EMPTY_SIZE + 8;
+
+    private final MemtableAllocator.SubAllocator trieAllocator;
+    private final Shard[] shards = new Shard[SHARD_COUNT];
+    private final AtomicInteger size = new AtomicInteger();
+
+    TrieMemtablePartitions(MemtableAllocator allocator)
+    {
+        // account for the tries off heap if the pool has an off-heap limit, as it only does for offheap allocation
+        // types; otherwise count them against the heap limit, so they still contribute to triggering flushes
+        this.trieAllocator = Memtable.MEMORY_POOL.offHeap.limit > 0 ? allocator.offHeap() : allocator.onHeap();
+        for (int i = 0 ; i < shards.length ; i++)
+            shards[i] = new Shard();
+    }
+
+    static boolean supports(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner;
+    }
+
+    public AtomicBTreePartition get(PartitionPosition key)
+    {
+        if (!(key instanceof DecoratedKey))
+            return null;
+
+        byte[] bytes = encode((DecoratedKey) key);
+        return shardFor(bytes).get(bytes);
+    }
+
+    public AtomicBTreePartition putIfAbsent(DecoratedKey key, AtomicBTreePartition partition, OpOrder.Group opGroup)
+    {
+        byte[] bytes = encode(key);
+        Shard shard = shardFor(bytes);
+        AtomicBTreePartition existing;
+        long allocated;
+        synchronized (shard)
+        {
+            existing = shard.putIfAbsent(bytes, partition);
+            allocated = shard.trie.sizeOffHeap() - shard.accounted;
+            shard.accounted += allocated;
+        }
+
+        if (existing == null)
+            size.incrementAndGet();
+        // allocate outside of the lock, as we may have to wait for memory to be reclaimed
+        if (allocated > 0)
+            trieAllocator.allocate(allocated, opGroup);
+        return existing;
+    }
+
+    public Iterator<AtomicBTreePartition> iterator(PartitionPosition left, boolean includeLeft, PartitionPosition right, boolean includeRight)
+    {
+        final NativeTrie.Bound leftBound = left == null ? null : bound(left, includeLeft);
+        final NativeTrie.Bound rightBound = right == null ? null : bound(right, includeRight);
+        final int firstShard = leftBound == null ? 0 : shardIndex(leftBound.bytes);
+        final int lastShard = rightBound == null ? SHARD_COUNT - 1 : shardIndex(rightBound.bytes);
+
+        return new AbstractIterator<AtomicBTreePartition>()
+        {
+            private int shardIndex = firstShard;
+            private NativeTrie.Cursor cursor;
+
+            protected AtomicBTreePartition computeNext()
+            {
+                while (true)
+                {
+                    if (cursor != null && cursor.hasNext())
+                        return shards[shardIndex].value(cursor.next());
+
+                    if (cursor != null)
+                        shardIndex++;
+                    if (shardIndex > lastShard)
+                        return endOfData();
+                    cursor = shards[shardIndex].trie.cursor(leftBound, rightBound);
+                }
+            }
+        };
+    }
+
+    public Iterator<AtomicBTreePartition> iterator()
+    {
+        return iterator(null, true, null, true);
+    }
+
+    public int size()
+    {
+        return size.get();
+    }
+
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    public int partitionOverheadHeapSize()
+    {
+        return PARTITION_OVERHEAD_HEAP_SIZE;
+    }
+
+    public void discard()
+    {
+        for (Shard shard : shards)
+        {
+            synchronized (shard)
+            {
+                shard.trie.discard();
+            }
+        }
+    }
+
+    private Shard shardFor(byte[] bytes)
+    {
+        return shards[shardIndex(bytes)];
+    }
+
+    // shards own contiguous ranges of the first byte, so that iterating them in order preserves the key order
+    private static int shardIndex(byte[] bytes)
+    {
+        return bytes.length == 0 ? 0 : ((bytes[0] & 0xFF) * SHARD_COUNT) >>> 8;
+    }
+
+    private static NativeTrie.Bound bound(PartitionPosition position, boolean inclusive)
+    {
+        if (position instanceof DecoratedKey)
+            return new NativeTrie.Bound(encode((DecoratedKey) position), 0, inclusive);
+
+        Token.KeyBound keyBound = (Token.KeyBound) position;
+        return new NativeTrie.Bound(encode(keyBound.getToken(), 0), keyBound.isMinimumBound ? -1 : 1, inclusive);
+    }
+
+    private static byte[] encode(DecoratedKey key)
+    {
+        ByteBuffer bytes = key.getKey();
+        byte[] encoded = encode(key.getToken(), bytes.remaining());
+        ByteBufferUtil.arrayCopy(bytes, bytes.position(), encoded, TOKEN_SIZE, bytes.remaining());
+        return encoded;
+    }
+
+    // flipping the sign bit makes the big-endian bytes of a signed long compare as unsigned bytes
+    private static byte[] encode(Token token, int extraLength)
+    {
+        long value = (Long) token.getTokenValue() ^ Long.MIN_VALUE;
+        byte[] encoded = new byte[TOKEN_SIZE + extraLength];
+        for (int i = TOKEN_SIZE - 1 ; i >= 0 ; i--)
+        {
+            encoded[i] = (byte) value;
+            value >>>= 8;
+        }
+        return encoded;
+    }
+
+    private static final class Shard
+    {
+        private static final int CHUNK_SHIFT = 10;
+        private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+        private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+        final NativeTrie trie = new NativeTrie();
+        // the partitions, indexed by the values of the trie; chunked so that growing never copies partitions
+        private volatile AtomicBTreePartition[][] values = new AtomicBTreePartition[4][];
+        private int count;
+        // the trie memory we have accounted for in the memtable allocator
+        long accounted;
+
+        AtomicBTreePartition get(byte[] key)
+        {
+            int index = trie.get(key);
+            return index == NativeTrie.NO_VALUE ? null : value(index);
+        }
+
+        // must be called with the shard locked
+        AtomicBTreePartition putIfAbsent(byte[] key, AtomicBTreePartition partition)
+        {
+            int index = count;
+            AtomicBTreePartition[][] values = this.values;
+            int chunk = index >>> CHUNK_SHIFT;
+            if (chunk == values.length)
+                values = Arrays.copyOf(values, chunk * 2);
+            if (values[chunk] == null)
+                values[chunk] = new AtomicBTreePartition[CHUNK_SIZE];
+            values[chunk][index & CHUNK_MASK] = partition;
+            // publish before the trie makes the index visible
+            this.values = values;
+
+            int existing = trie.putIfAbsent(key, index);
+            if (existing != NativeTrie.NO_VALUE)
+            {
+                values[chunk][index & CHUNK_MASK] = null;
+                return value(existing);
+            }
+            count++;
+            return null;
+        }
+
+        AtomicBTreePartition value(int index)
+        {
+            return values[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.IndexHelper;
 import org.apache.cassandra.io.util.FileDataInput;
 import org.apache.cassandra.io.util.FileMark;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 abstract class AbstractSSTableIterator implements SliceableUnfilteredRowIterator
@@ -408,7 +409,7 @@ abstract class AbstractSSTableIterator implements SliceableUnfilteredRowIterator
     }
 
     // Used by indexed readers to store where they are of the index.
-    protected static class IndexState
+    protected static class IndexState implements AutoCloseable
     {
         private final Reader reader;
         private final ClusteringComparator comparator;
@@ -422,14 +423,14 @@ abstract class AbstractSSTableIterator implements SliceableUnfilteredRowIterator
         // Marks the beginning of the block corresponding to currentIndexIdx.
         private FileMark mark;
 
-        public IndexState(Reader reader, ClusteringComparator comparator, RowIndexEntry indexEntry, boolean reversed)
+        public IndexState(Reader reader, ClusteringComparator comparator, RowIndexEntry indexEntry, boolean reversed, SSTableReader sstable)
         {
             this.reader = reader;
             this.comparator = comparator;
             this.indexEntry = indexEntry;
-            this.indexes = indexEntry.columnsIndex();
+            this.indexes = indexEntry.columnsIndex(sstable);
             this.reversed = reversed;
-            this.currentIndexIdx = reversed ? indexEntry.columnsIndex().size() : -1;
+            this.currentIndexIdx = reversed ? indexes.size() : -1;
         }
 
         public boolean isDone()
@@ -481,6 +482,13 @@ abstract class AbstractSSTableIterator implements SliceableUnfilteredRowIterator
             return IndexHelper.indexFor(bound, indexes, comparator, reversed, fromIdx);
         }
 
+        // releases the index file if the column index is read from it
+        public void close()
+        {
+            if (indexes instanceof AutoCloseable)
+                FileUtils.closeQuietly((AutoCloseable) indexes);
+        }
+
         @Override
         public String toString()
         {
@@ -208,7 +208,7 @@ public class SSTableReversedIterator extends AbstractSSTableIterator
         private ReverseIndexedReader(RowIndexEntry indexEntry, FileDataInput file, boolean isAtPartitionStart, boolean shouldCloseFile)
         {
             super(file, isAtPartitionStart, shouldCloseFile);
-            this.indexState = new IndexState(this, sstable.metadata.comparator, indexEntry, true);
+            this.indexState = new IndexState(this, sstable.metadata.comparator, indexEntry, true, sstable);
         }
 
         protected void init() throws IOException
@@ -301,6 +301,13 @@ public class SSTableReversedIterator extends AbstractSSTableIterator
         {
             return indexState.isPastCurrentBlock();
         }
+
+        @Override
+        public void close() throws IOException
+        {
+            indexState.close();
+            super.close();
+        }
     }
 
     private class ReusablePartitionData extends AbstractThreadUnsafePartition
@@ -78,6 +78,7 @@ public abstract class AbstractCommitLogService
                 long syncExceededIntervalBy = 0; // time that syncs exceeded pollInterval since firstLagAt
                 int lagCount = 0;
                 int syncCount = 0;
+                long lastSyncDuration = 0; // nanos spent in the last sync
 
                 boolean run = true;
                 while (run)
@@ -87,9 +88,15 @@ public abstract class AbstractCommitLogService
                         // always run once after shutdown signalled
                         run = !shutdown;
 
+                        // give the service a chance to let more writes join this sync
+                        if (run)
+                            beforeSync(lastSyncDuration);
+
                         // sync and signal
                         long syncStarted = System.currentTimeMillis();
+                        long syncStartedNanos = System.nanoTime();
                         commitLog.sync(shutdown);
+                        lastSyncDuration = System.nanoTime() - syncStartedNanos;
                         lastSyncedAt = syncStarted;
                         syncComplete.signalAll();
 
@@ -172,6 +179,23 @@ public abstract class AbstractCommitLogService
 
     protected abstract void maybeWaitForSync(Allocation alloc);
 
+    /**
+     * Called on the sync thread before each sync, with the duration in nanoseconds of the previous one.
+     * Implementations may block here to let concurrent writers share the upcoming sync.
+     */
+    protected void beforeSync(long lastSyncDurationNanos)
+    {
+    }
+
+    /**
+     * Wake the sync thread if it is waiting for its next scheduled sync
+     */
+    protected void requestSync()
+    {
+        if (haveWork.availablePermits() < 1)
+            haveWork.release();
+    }
+
     /**
      * Sync immediately, but don't block for the sync to cmplete
      */
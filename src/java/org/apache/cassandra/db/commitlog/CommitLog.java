@@ -33,7 +33,6 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.commons.lang3.StringUtils;
 
-import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.ParameterizedClass;
 import org.apache.cassandra.db.*;
@@ -100,9 +99,17 @@ public class CommitLog implements CommitLogMBean
         this.archiver = archiver;
         metrics = new CommitLogMetrics();//wxc pro 2015-9-27:22:13:03 这个Metrics能不能用到现在自己的工程中去？ 怎么用？有什么好处可以说动决策者？
 
-        executor = DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.batch
-                ? new BatchCommitLogService(this)
-                : new PeriodicCommitLogService(this); //wxc 2015-9-27:22:15:25 批量和定期并不对等吧？
+        switch (DatabaseDescriptor.getCommitLogSync()) //wxc 2015-9-27:22:15:25 批量和定期并不对等吧？
+        {
+            case batch:
+                executor = new BatchCommitLogService(this);
+                break;
+            case group:
+                executor = new GroupCommitLogService(this);
+                break;
+            default:
+                executor = new PeriodicCommitLogService(this);
+        }
 
         allocator = new CommitLogSegmentManager(this);
         executor.start();
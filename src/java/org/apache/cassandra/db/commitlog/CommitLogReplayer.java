@@ -25,6 +25,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
@@ -38,9 +42,9 @@ import com.google.common.collect.Ordering;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.apache.cassandra.concurrent.Stage;
-import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.rows.SerializationHelper;
@@ -67,6 +71,8 @@ public class CommitLogReplayer
     private static final Logger logger = LoggerFactory.getLogger(CommitLogReplayer.class);
     private static final int MAX_OUTSTANDING_REPLAY_COUNT = Integer.getInteger("cassandra.commitlog_max_outstanding_replay_count", 1024);
     private static final int LEGACY_END_OF_SEGMENT_MARKER = 0;
+    /** Default number of segments read (and their mutations deserialized) concurrently by recover(File[]) */
+    private static final int DEFAULT_REPLAY_THREADS = Integer.getInteger("cassandra.commitlog_replay_threads", Math.min(4, FBUtilities.getAvailableProcessors()));
 
     private final Set<Keyspace> keyspacesRecovered;
     private final List<Future<?>> futures;
@@ -74,25 +80,28 @@ public class CommitLogReplayer
     private final AtomicInteger replayedCount;
     private final Map<UUID, ReplayPosition> cfPositions;
     private final ReplayPosition globalPosition;
-    private final CRC32 checksum;
-    private byte[] buffer;
-    private byte[] uncompressedBuffer;
+    private final int replayThreads;
+    // single threaded executors the mutations are applied on, picked by partition key to keep per-partition ordering
+    private ExecutorService[] appliers;
 
     private final ReplayFilter replayFilter;
 
     CommitLogReplayer(ReplayPosition globalPosition, Map<UUID, ReplayPosition> cfPositions, ReplayFilter replayFilter)
+    {
+        this(globalPosition, cfPositions, replayFilter, DEFAULT_REPLAY_THREADS);
+    }
+
+    CommitLogReplayer(ReplayPosition globalPosition, Map<UUID, ReplayPosition> cfPositions, ReplayFilter replayFilter, int replayThreads)
     {
         this.keyspacesRecovered = new NonBlockingHashSet<Keyspace>();
         this.futures = new ArrayList<Future<?>>();
-        this.buffer = new byte[4096];
-        this.uncompressedBuffer = new byte[4096];
-        this.invalidMutations = new HashMap<UUID, AtomicInteger>();
+        this.invalidMutations = new ConcurrentHashMap<UUID, AtomicInteger>();
         // count the number of replayed mutation. We don't really care about atomicity, but we need it to be a reference.
         this.replayedCount = new AtomicInteger();
-        this.checksum = new CRC32();
         this.cfPositions = cfPositions;
         this.globalPosition = globalPosition;
         this.replayFilter = replayFilter;
+        this.replayThreads = replayThreads;
     }
 
     public static CommitLogReplayer create()
@@ -140,10 +149,70 @@ public class CommitLogReplayer
         return new CommitLogReplayer(globalPosition, cfPositions, replayFilter);
     }
 
+    /**
+     * Replays the given segments. Up to replayThreads segments are read, checksummed, decompressed and deserialized
+     * concurrently, but their mutations are handed to replayMutation() in the order of {@code clogs}, so mutations
+     * to the same partition are still applied in log order.
+     */
     public void recover(File[] clogs) throws IOException
     {
-        for (final File file : clogs)
-            recover(file);
+        if (replayThreads <= 1 || clogs.length <= 1)
+        {
+            for (final File file : clogs)
+                recover(file);
+            return;
+        }
+
+        ExecutorService readers = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplayReader", replayThreads);
+        try
+        {
+            Deque<Future<SegmentReader>> reads = new ArrayDeque<>();
+            for (final File file : clogs)
+            {
+                reads.add(readers.submit(new Callable<SegmentReader>()
+                {
+                    public SegmentReader call() throws IOException
+                    {
+                        SegmentReader segment = new SegmentReader(true);
+                        segment.read(file);
+                        return segment;
+                    }
+                }));
+
+                // only keep a bounded number of read segments around, as we hold on to all of their mutations
+                if (reads.size() > replayThreads)
+                    replay(reads.poll());
+            }
+
+            while (!reads.isEmpty())
+                replay(reads.poll());
+        }
+        finally
+        {
+            readers.shutdownNow();
+        }
+    }
+
+    private void replay(Future<SegmentReader> read) throws IOException
+    {
+        SegmentReader segment;
+        try
+        {
+            segment = read.get();
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+
+        for (int i = 0; i < segment.mutations.size(); i++)
+            replayMutation(segment.mutations.get(i), segment.entryLocations.get(i), segment.desc);
     }
 
     public int blockForWrites()
@@ -151,9 +220,15 @@ public class CommitLogReplayer
         for (Map.Entry<UUID, AtomicInteger> entry : invalidMutations.entrySet())
             logger.info(String.format("Skipped %d mutations from unknown (probably removed) CF with id %s", entry.getValue().intValue(), entry.getKey()));
 
-        // wait for all the writes to finish on the mutation stage
+        // wait for all the writes to finish on the replay executors
         FBUtilities.waitOnFutures(futures);
         logger.debug("Finished waiting on mutations from recovery");
+        if (appliers != null)
+        {
+            for (ExecutorService applier : appliers)
+                applier.shutdown();
+            appliers = null;
+        }
 
         // flush replayed keyspaces
         futures.clear();
@@ -268,116 +343,10 @@ public class CommitLogReplayer
         }
     }
 
-    @SuppressWarnings("resource")
     //wxc 2015-8-16:17:09:46 recoverܳ
     public void recover(File file) throws IOException
     {
-        CommitLogDescriptor desc = CommitLogDescriptor.fromFileName(file.getName());
-        RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
-        try
-        {
-            if (desc.version < CommitLogDescriptor.VERSION_21)
-            {
-                if (logAndCheckIfShouldSkip(file, desc))
-                    return;
-                if (globalPosition.segment == desc.id)
-                    reader.seek(globalPosition.position);
-                replaySyncSection(reader, (int) reader.getPositionLimit(), desc);
-                return;
-            }
-
-            final long segmentId = desc.id;
-            try
-            {
-                desc = CommitLogDescriptor.readHeader(reader);
-            }
-            catch (IOException e)
-            {
-                desc = null;
-            }
-            if (desc == null) {
-                logger.warn("Could not read commit log descriptor in file {}", file);
-                return;
-            }
-            assert segmentId == desc.id;
-            if (logAndCheckIfShouldSkip(file, desc))
-                return;
-
-            ICompressor compressor = null;
-            if (desc.compression != null)
-            {
-                try
-                {
-                    compressor = CompressionParams.createCompressor(desc.compression);
-                }
-                catch (ConfigurationException e)
-                {
-                    logger.warn("Unknown compression: {}", e.getMessage());
-                    return;
-                }
-            }
-
-            assert reader.length() <= Integer.MAX_VALUE;
-            int end = (int) reader.getFilePointer();
-            int replayEnd = end;
-
-            while ((end = readSyncMarker(desc, end, reader)) >= 0)
-            {
-                int replayPos = replayEnd + CommitLogSegment.SYNC_MARKER_SIZE;
-
-                if (logger.isDebugEnabled())
-                    logger.trace("Replaying {} between {} and {}", file, reader.getFilePointer(), end);
-                if (compressor != null)
-                {
-                    int uncompressedLength = reader.readInt();
-                    replayEnd = replayPos + uncompressedLength;
-                }
-                else
-                {
-                    replayEnd = end;
-                }
-
-                if (segmentId == globalPosition.segment && replayEnd < globalPosition.position)
-                    // Skip over flushed section.
-                    continue;
-
-                FileDataInput sectionReader = reader;
-                if (compressor != null)
-                {
-                    try
-                    {
-                        int start = (int) reader.getFilePointer();
-                        int compressedLength = end - start;
-                        if (logger.isDebugEnabled())
-                            logger.trace("Decompressing {} between replay positions {} and {}",
-                                         file,
-                                         replayPos,
-                                         replayEnd);
-                        if (compressedLength > buffer.length)
-                            buffer = new byte[(int) (1.2 * compressedLength)];
-                        reader.readFully(buffer, 0, compressedLength);
-                        int uncompressedLength = replayEnd - replayPos;
-                        if (uncompressedLength > uncompressedBuffer.length)
-                            uncompressedBuffer = new byte[(int) (1.2 * uncompressedLength)];
-                        compressedLength = compressor.uncompress(buffer, 0, compressedLength, uncompressedBuffer, 0);
-                        sectionReader = new ByteBufferDataInput(ByteBuffer.wrap(uncompressedBuffer), reader.getPath(), replayPos, 0);
-                    }
-                    catch (IOException e)
-                    {
-                        logger.error("Unexpected exception decompressing section {}", e);
-                        continue;
-                    }
-                }
-
-                if (!replaySyncSection(sectionReader, replayEnd, desc))
-                    break;
-            }
-        }
-        finally
-        {
-            FileUtils.closeQuietly(reader);
-            logger.info("Finished reading {}", file);
-        }
+        new SegmentReader(false).read(file);
     }
 
     public boolean logAndCheckIfShouldSkip(File file, CommitLogDescriptor desc)
@@ -397,84 +366,230 @@ public class CommitLogReplayer
     }
 
     /**
-     * Replays a sync section containing a list of mutations.
-     *
-     * @return Whether replay should continue with the next section.
+     * Reads the entries of a single segment, checking their CRCs and deserializing them. Each segment is read with
+     * its own buffers, so several segments can be read concurrently. Unless {@code buffered}, mutations are replayed
+     * as they are read; otherwise they are collected so the caller can replay them in segment order.
      */
-    private boolean replaySyncSection(FileDataInput reader, int end, CommitLogDescriptor desc) throws IOException
+    private class SegmentReader
     {
-         /* read the logs populate Mutation and apply */
-        while (reader.getFilePointer() < end && !reader.isEOF())
+        private final boolean buffered;
+        private final List<Mutation> mutations = new ArrayList<>();
+        private final List<Long> entryLocations = new ArrayList<>();
+        private final CRC32 checksum = new CRC32();
+        private byte[] buffer = new byte[4096];
+        private byte[] uncompressedBuffer = new byte[4096];
+        private CommitLogDescriptor desc;
+
+        private SegmentReader(boolean buffered)
         {
-            if (logger.isDebugEnabled())
-                logger.trace("Reading mutation at {}", reader.getFilePointer());
+            this.buffered = buffered;
+        }
 
-            long claimedCRC32;
-            int serializedSize;
+        @SuppressWarnings("resource")
+        private void read(File file) throws IOException
+        {
+            desc = CommitLogDescriptor.fromFileName(file.getName());
+            RandomAccessReader reader = RandomAccessReader.open(new File(file.getAbsolutePath()));
             try
             {
-                // any of the reads may hit EOF
-                serializedSize = reader.readInt();
-                if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
+                if (desc.version < CommitLogDescriptor.VERSION_21)
                 {
-                    logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
-                    return false;
+                    if (logAndCheckIfShouldSkip(file, desc))
+                        return;
+                    if (globalPosition.segment == desc.id)
+                        reader.seek(globalPosition.position);
+                    replaySyncSection(reader, (int) reader.getPositionLimit());
+                    return;
                 }
 
-                // Mutation must be at LEAST 10 bytes:
-                // 3 each for a non-empty Keyspace and Key (including the
-                // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
-                // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
-                if (serializedSize < 10)
-                    return false;
+                final long segmentId = desc.id;
+                try
+                {
+                    desc = CommitLogDescriptor.readHeader(reader);
+                }
+                catch (IOException e)
+                {
+                    desc = null;
+                }
+                if (desc == null) {
+                    logger.warn("Could not read commit log descriptor in file {}", file);
+                    return;
+                }
+                assert segmentId == desc.id;
+                if (logAndCheckIfShouldSkip(file, desc))
+                    return;
 
-                long claimedSizeChecksum;
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    claimedSizeChecksum = reader.readLong();
-                else
-                    claimedSizeChecksum = reader.readInt() & 0xffffffffL;
-                checksum.reset();
-                if (desc.version < CommitLogDescriptor.VERSION_20)
-                    checksum.update(serializedSize);
-                else
-                    updateChecksumInt(checksum, serializedSize);
+                ICompressor compressor = null;
+                if (desc.compression != null)
+                {
+                    try
+                    {
+                        compressor = CompressionParams.createCompressor(desc.compression);
+                    }
+                    catch (ConfigurationException e)
+                    {
+                        logger.warn("Unknown compression: {}", e.getMessage());
+                        return;
+                    }
+                }
 
-                if (checksum.getValue() != claimedSizeChecksum)
-                    return false;
-                // ok.
+                assert reader.length() <= Integer.MAX_VALUE;
+                int end = (int) reader.getFilePointer();
+                int replayEnd = end;
 
-                if (serializedSize > buffer.length)
-                    buffer = new byte[(int) (1.2 * serializedSize)];
-                reader.readFully(buffer, 0, serializedSize);
-                if (desc.version < CommitLogDescriptor.VERSION_21)
-                    claimedCRC32 = reader.readLong();
-                else
-                    claimedCRC32 = reader.readInt() & 0xffffffffL;
+                while ((end = readSyncMarker(desc, end, reader)) >= 0)
+                {
+                    int replayPos = replayEnd + CommitLogSegment.SYNC_MARKER_SIZE;
+
+                    if (logger.isDebugEnabled())
+                        logger.trace("Replaying {} between {} and {}", file, reader.getFilePointer(), end);
+                    if (compressor != null)
+                    {
+                        int uncompressedLength = reader.readInt();
+                        replayEnd = replayPos + uncompressedLength;
+                    }
+                    else
+                    {
+                        replayEnd = end;
+                    }
+
+                    if (segmentId == globalPosition.segment && replayEnd < globalPosition.position)
+                        // Skip over flushed section.
+                        continue;
+
+                    FileDataInput sectionReader = reader;
+                    if (compressor != null)
+                    {
+                        try
+                        {
+                            int start = (int) reader.getFilePointer();
+                            int compressedLength = end - start;
+                            if (logger.isDebugEnabled())
+                                logger.trace("Decompressing {} between replay positions {} and {}",
+                                             file,
+                                             replayPos,
+                                             replayEnd);
+                            if (compressedLength > buffer.length)
+                                buffer = new byte[(int) (1.2 * compressedLength)];
+                            reader.readFully(buffer, 0, compressedLength);
+                            int uncompressedLength = replayEnd - replayPos;
+                            if (uncompressedLength > uncompressedBuffer.length)
+                                uncompressedBuffer = new byte[(int) (1.2 * uncompressedLength)];
+                            compressedLength = compressor.uncompress(buffer, 0, compressedLength, uncompressedBuffer, 0);
+                            sectionReader = new ByteBufferDataInput(ByteBuffer.wrap(uncompressedBuffer), reader.getPath(), replayPos, 0);
+                        }
+                        catch (IOException e)
+                        {
+                            logger.error("Unexpected exception decompressing section {}", e);
+                            continue;
+                        }
+                    }
+
+                    if (!replaySyncSection(sectionReader, replayEnd))
+                        break;
+                }
             }
-            catch (EOFException eof)
+            finally
             {
-                return false; // last CL entry didn't get completely written. that's ok.
+                FileUtils.closeQuietly(reader);
+                logger.info("Finished reading {}", file);
             }
+        }
 
-            checksum.update(buffer, 0, serializedSize);
-            if (claimedCRC32 != checksum.getValue())
+        /**
+         * Replays a sync section containing a list of mutations.
+         *
+         * @return Whether replay should continue with the next section.
+         */
+        private boolean replaySyncSection(FileDataInput reader, int end) throws IOException
+        {
+             /* read the logs populate Mutation and apply */
+            while (reader.getFilePointer() < end && !reader.isEOF())
             {
-                // this entry must not have been fsynced. probably the rest is bad too,
-                // but just in case there is no harm in trying them (since we still read on an entry boundary)
-                continue;
+                if (logger.isDebugEnabled())
+                    logger.trace("Reading mutation at {}", reader.getFilePointer());
+
+                long claimedCRC32;
+                int serializedSize;
+                try
+                {
+                    // any of the reads may hit EOF
+                    serializedSize = reader.readInt();
+                    if (serializedSize == LEGACY_END_OF_SEGMENT_MARKER)
+                    {
+                        logger.debug("Encountered end of segment marker at {}", reader.getFilePointer());
+                        return false;
+                    }
+
+                    // Mutation must be at LEAST 10 bytes:
+                    // 3 each for a non-empty Keyspace and Key (including the
+                    // 2-byte length from writeUTF/writeWithShortLength) and 4 bytes for column count.
+                    // This prevents CRC by being fooled by special-case garbage in the file; see CASSANDRA-2128
+                    if (serializedSize < 10)
+                        return false;
+
+                    long claimedSizeChecksum;
+                    if (desc.version < CommitLogDescriptor.VERSION_21)
+                        claimedSizeChecksum = reader.readLong();
+                    else
+                        claimedSizeChecksum = reader.readInt() & 0xffffffffL;
+                    checksum.reset();
+                    if (desc.version < CommitLogDescriptor.VERSION_20)
+                        checksum.update(serializedSize);
+                    else
+                        updateChecksumInt(checksum, serializedSize);
+
+                    if (checksum.getValue() != claimedSizeChecksum)
+                        return false;
+                    // ok.
+
+                    if (serializedSize > buffer.length)
+                        buffer = new byte[(int) (1.2 * serializedSize)];
+                    reader.readFully(buffer, 0, serializedSize);
+                    if (desc.version < CommitLogDescriptor.VERSION_21)
+                        claimedCRC32 = reader.readLong();
+                    else
+                        claimedCRC32 = reader.readInt() & 0xffffffffL;
+                }
+                catch (EOFException eof)
+                {
+                    return false; // last CL entry didn't get completely written. that's ok.
+                }
+
+                checksum.update(buffer, 0, serializedSize);
+                if (claimedCRC32 != checksum.getValue())
+                {
+                    // this entry must not have been fsynced. probably the rest is bad too,
+                    // but just in case there is no harm in trying them (since we still read on an entry boundary)
+                    continue;
+                }
+
+                long entryLocation = reader.getFilePointer();
+                Mutation mutation = deserializeMutation(buffer, serializedSize, desc);
+                if (mutation == null)
+                    continue;
+
+                if (buffered)
+                {
+                    mutations.add(mutation);
+                    entryLocations.add(entryLocation);
+                }
+                else
+                {
+                    replayMutation(mutation, entryLocation, desc);
+                }
             }
-            replayMutation(buffer, serializedSize, reader.getFilePointer(), desc);
+            return true;
         }
-        return true;
     }
 
     /**
-     * Deserializes and replays a commit log entry.
+     * Deserializes a commit log entry.
+     *
+     * @return the deserialized mutation, or null if it can't be replayed
      */
-    void replayMutation(byte[] inputBuffer, int size,
-            final long entryLocation, final CommitLogDescriptor desc) throws IOException
+    private Mutation deserializeMutation(byte[] inputBuffer, int size, CommitLogDescriptor desc) throws IOException
     {
-
         final Mutation mutation;
         try (NIODataInputStream bufIn = new DataInputBuffer(inputBuffer, 0, size))
         {
@@ -488,16 +603,18 @@ public class CommitLogReplayer
         catch (UnknownColumnFamilyException ex)
         {
             if (ex.cfId == null)
-                return;
+                return null;
             AtomicInteger i = invalidMutations.get(ex.cfId);
             if (i == null)
             {
                 i = new AtomicInteger(1);
-                invalidMutations.put(ex.cfId, i);
+                AtomicInteger previous = invalidMutations.putIfAbsent(ex.cfId, i);
+                if (previous != null)
+                    previous.incrementAndGet();
             }
             else
                 i.incrementAndGet();
-            return;
+            return null;
         }
         catch (Throwable t)
         {
@@ -512,9 +629,17 @@ public class CommitLogReplayer
             String st = String.format("Unexpected error deserializing mutation; saved to %s and ignored.  This may be caused by replaying a mutation against a table with the same name but incompatible schema.  Exception follows: ",
                                       f.getAbsolutePath());
             logger.error(st, t);
-            return;
+            return null;
         }
+        return mutation;
+    }
 
+    /**
+     * Replays a deserialized commit log entry. Mutations are applied asynchronously, on an executor picked by
+     * partition key so that updates to the same partition are applied in the order they are replayed.
+     */
+    void replayMutation(final Mutation mutation, final long entryLocation, final CommitLogDescriptor desc)
+    {
         if (logger.isDebugEnabled())
             logger.debug("replaying mutation for {}.{}: {}", mutation.getKeyspaceName(), mutation.key(), "{" + StringUtils.join(mutation.getPartitionUpdates().iterator(), ", ") + "}");
 
@@ -560,7 +685,8 @@ public class CommitLogReplayer
                 }
             }
         };
-        futures.add(StageManager.getStage(Stage.MUTATION).submit(runnable));
+        CommitLog.instance.metrics.replayedMutations.mark();
+        futures.add(applierFor(mutation.key()).submit(runnable));
         if (futures.size() > MAX_OUTSTANDING_REPLAY_COUNT)
         {
             FBUtilities.waitOnFutures(futures);
@@ -568,6 +694,17 @@ public class CommitLogReplayer
         }
     }
 
+    private ExecutorService applierFor(DecoratedKey key)
+    {
+        if (appliers == null)
+        {
+            appliers = new ExecutorService[DatabaseDescriptor.getConcurrentWriters()];
+            for (int i = 0; i < appliers.length; i++)
+                appliers[i] = DebuggableThreadPoolExecutor.createWithFixedPoolSize("CommitLogReplay:" + i, 1);
+        }
+        return appliers[(key.hashCode() & Integer.MAX_VALUE) % appliers.length];
+    }
+
     protected boolean pointInTimeExceeded(Mutation fm)
     {
         long restoreTarget = CommitLog.instance.archiver.restorePointInTime;
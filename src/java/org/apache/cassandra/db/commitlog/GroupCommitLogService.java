@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+
+/**
+ * A commit log service that, like batch mode, doesn't ack a write until it has been synced, but wakes
+ * the sync thread as soon as a writer arrives instead of syncing on a fixed schedule.
+ *
+ * Writers that arrive while a sync is running are covered by the next one, so under load concurrent
+ * writers naturally share fsyncs. On top of that the sync thread may hold a sync back, for no longer than
+ * the configured group window, when the moving averages of writer inter-arrival gaps and sync durations
+ * predict that enough writers will join it to be worth the added latency (much like
+ * {@link org.apache.cassandra.utils.CoalescingStrategies} does for outbound messages).
+ */
+class GroupCommitLogService extends AbstractCommitLogService
+{
+    private final long maxWindowNanos;
+
+    private final AtomicLong lastArrivalNanos = new AtomicLong();
+    // updated racily by concurrent writers; it's only an estimate
+    private volatile long averageGapNanos;
+    // only accessed by the sync thread
+    private long averageSyncNanos;
+
+    public GroupCommitLogService(CommitLog commitLog)
+    {
+        super(commitLog, "COMMIT-LOG-WRITER", (long) Math.max(1, Math.ceil(DatabaseDescriptor.getCommitLogSyncGroupWindow())));
+        this.maxWindowNanos = (long) (DatabaseDescriptor.getCommitLogSyncGroupWindow() * TimeUnit.MILLISECONDS.toNanos(1));
+        this.averageGapNanos = maxWindowNanos;
+        this.averageSyncNanos = maxWindowNanos;
+    }
+
+    protected void maybeWaitForSync(CommitLogSegment.Allocation alloc)
+    {
+        long now = System.nanoTime();
+        long gap = Math.min(now - lastArrivalNanos.getAndSet(now), maxWindowNanos);
+        averageGapNanos += (gap - averageGapNanos) / 8;
+
+        // wait until record has been safely persisted to disk
+        pending.incrementAndGet();
+        requestSync();
+        alloc.awaitDiskSync(commitLog.metrics.waitingOnCommit);
+        pending.decrementAndGet();
+    }
+
+    @Override
+    protected void beforeSync(long lastSyncDurationNanos)
+    {
+        if (lastSyncDurationNanos > 0)
+            averageSyncNanos += (lastSyncDurationNanos - averageSyncNanos) / 8;
+
+        long delay = syncDelay(pending.get(), averageGapNanos, averageSyncNanos, maxWindowNanos);
+        if (delay <= 0)
+            return;
+
+        long deadline = System.nanoTime() + delay;
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0)
+            LockSupport.parkNanos(remaining);
+    }
+
+    /**
+     * @return how long to hold back a sync that {@code waiting} writers are waiting for, in nanoseconds
+     */
+    @VisibleForTesting
+    static long syncDelay(long waiting, long averageGapNanos, long averageSyncNanos, long maxWindowNanos)
+    {
+        if (waiting <= 0)
+            return 0;
+
+        // waiting for longer than a sync takes costs the waiting writers more than a second sync would
+        long window = Math.min(maxWindowNanos, averageSyncNanos);
+
+        // only delay if we can expect to double the number of writers covered by the sync within the window
+        if (averageGapNanos >= window / waiting)
+            return 0;
+        return waiting * averageGapNanos;
+    }
+}
@@ -56,6 +56,8 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.compaction.CompactionInfo.Holder;
+import org.apache.cassandra.db.filter.ClusteringIndexSliceFilter;
+import org.apache.cassandra.db.filter.ColumnFilter;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.db.index.SecondaryIndexBuilder;
 import org.apache.cassandra.db.view.MaterializedViewBuilder;
@@ -76,6 +78,7 @@ import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.JVMStabilityInspector;
+import org.apache.cassandra.utils.MergeIterator;
 import org.apache.cassandra.utils.MerkleTree;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.WrappedRunnable;
@@ -130,6 +133,7 @@ public class CompactionManager implements CompactionManagerMBean
     private final CompactionExecutor executor = new CompactionExecutor();
     private final CompactionExecutor validationExecutor = new ValidationExecutor();
     private final static CompactionExecutor cacheCleanupExecutor = new CacheCleanupExecutor();
+    private final CompactionExecutor subRangeExecutor = new SubRangeExecutor();
 
     private final CompactionMetrics metrics = new CompactionMetrics(executor, validationExecutor);
     private final Multiset<ColumnFamilyStore> compactingCF = ConcurrentHashMultiset.create();
@@ -204,6 +208,8 @@ public class CompactionManager implements CompactionManagerMBean
     {
         executor.shutdown();
         executor.awaitTermination(timeout, unit);
+        subRangeExecutor.shutdown();
+        subRangeExecutor.awaitTermination(timeout, unit);
     }
 
     // the actual sstables to compact are not determined until we run the BCT; that way, if new sstables
@@ -683,6 +689,14 @@ public class CompactionManager implements CompactionManagerMBean
         return validationExecutor.submit(callable);
     }
 
+    /**
+     * Runs the merge of one token sub-range of a compaction that CompactionTask has split into several.
+     */
+    public <T> Future<T> submitSubRange(Callable<T> subRange)
+    {
+        return subRangeExecutor.submit(subRange);
+    }
+
     /* Used in tests. */
     public void disableAutoCompaction()
     {
@@ -1086,22 +1100,10 @@ public class CompactionManager implements CompactionManagerMBean
             MerkleTree tree = new MerkleTree(cfs.getPartitioner(), validator.desc.range, MerkleTree.RECOMMENDED_DEPTH, (int) Math.pow(2, depth));
 
             long start = System.nanoTime();
-            try (AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategyManager().getScanners(sstables, validator.desc.range);
-                 ValidationCompactionController controller = new ValidationCompactionController(cfs, gcBefore);
-                 CompactionIterator ci = new ValidationCompactionIterator(scanners.scanners, controller, nowInSec, metrics))
+            try
             {
-                // validate the CF as we iterate over it
-                validator.prepare(cfs, tree);
-                while (ci.hasNext())
-                {
-                    if (ci.isStopRequested())
-                        throw new CompactionInterruptedException(ci.getCompactionInfo());
-                    try (UnfilteredRowIterator partition = ci.next())
-                    {
-                        validator.add(partition);
-                    }
-                }
-                validator.complete();
+                if (!validateFromPartitionHashes(cfs, sstables, validator, tree, gcBefore, nowInSec))
+                    validateByCompaction(cfs, sstables, validator, tree, gcBefore, nowInSec);
             }
             finally
             {
@@ -1130,6 +1132,124 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    private void validateByCompaction(ColumnFamilyStore cfs, Refs<SSTableReader> sstables, Validator validator, MerkleTree tree, int gcBefore, int nowInSec)
+    {
+        try (AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategyManager().getScanners(sstables, validator.desc.range);
+             ValidationCompactionController controller = new ValidationCompactionController(cfs, gcBefore);
+             CompactionIterator ci = new ValidationCompactionIterator(scanners.scanners, controller, nowInSec, metrics))
+        {
+            // validate the CF as we iterate over it
+            validator.prepare(cfs, tree);
+            while (ci.hasNext())
+            {
+                if (ci.isStopRequested())
+                    throw new CompactionInterruptedException(ci.getCompactionInfo());
+                try (UnfilteredRowIterator partition = ci.next())
+                {
+                    validator.add(partition);
+                }
+            }
+            validator.complete();
+        }
+    }
+
+    /**
+     * Builds the tree from the {@link PartitionHashes} of the sstables. Only the partitions whose stored hash may
+     * differ from what a validation compaction computes are read: those several sstables have data for, and those
+     * with something expired or deleted before gcBefore, which validation purges.
+     *
+     * @return false, without using the validator, if some sstable has no usable partition hashes
+     */
+    private boolean validateFromPartitionHashes(ColumnFamilyStore cfs, Refs<SSTableReader> sstables, Validator validator, MerkleTree tree, int gcBefore, int nowInSec)
+    {
+        if (!validator.usesFastDigest())
+            return false;
+
+        Range<Token> range = validator.desc.range;
+        if (range.isWrapAround() && !range.right.isMinimum())
+            return false;
+
+        List<SSTableReader> readers = new ArrayList<>(sstables);
+        List<PartitionHashes> hashes = new ArrayList<>(readers.size());
+        try
+        {
+            List<Iterator<PartitionHashes.Entry>> entries = new ArrayList<>(readers.size());
+            for (SSTableReader sstable : readers)
+            {
+                PartitionHashes sstableHashes = sstable.openPartitionHashes();
+                if (sstableHashes == null)
+                    return false;
+
+                hashes.add(sstableHashes);
+                if (!sstableHashes.isFor(cfs.metadata.partitionColumns()))
+                    return false;
+                entries.add(sstableHashes.iterator(range));
+            }
+
+            MergeIterator.Reducer<PartitionHashes.Entry, List<Pair<SSTableReader, PartitionHashes.Entry>>> reducer = new MergeIterator.Reducer<PartitionHashes.Entry, List<Pair<SSTableReader, PartitionHashes.Entry>>>()
+            {
+                private final List<Pair<SSTableReader, PartitionHashes.Entry>> partition = new ArrayList<>();
+
+                public void reduce(int idx, PartitionHashes.Entry entry)
+                {
+                    partition.add(Pair.create(readers.get(idx), entry));
+                }
+
+                protected List<Pair<SSTableReader, PartitionHashes.Entry>> getReduced()
+                {
+                    return new ArrayList<>(partition);
+                }
+
+                @Override
+                protected void onKeyChange()
+                {
+                    partition.clear();
+                }
+            };
+
+            long read = 0;
+            validator.prepare(cfs, tree);
+            try (ValidationCompactionController controller = new ValidationCompactionController(cfs, gcBefore);
+                 MergeIterator<PartitionHashes.Entry, List<Pair<SSTableReader, PartitionHashes.Entry>>> partitions = MergeIterator.get(entries, (e1, e2) -> e1.key.compareTo(e2.key), reducer))
+            {
+                while (partitions.hasNext())
+                {
+                    List<Pair<SSTableReader, PartitionHashes.Entry>> partition = partitions.next();
+                    PartitionHashes.Entry entry = partition.get(0).right;
+                    if (partition.size() == 1 && entry.minLocalDeletionTime > gcBefore)
+                    {
+                        validator.add(entry.key, new MerkleTree.RowHash(entry.key.getToken(), entry.hash, entry.size));
+                        continue;
+                    }
+
+                    read++;
+                    DataRange dataRange = new DataRange(new Bounds<PartitionPosition>(entry.key, entry.key), new ClusteringIndexSliceFilter(Slices.ALL, false));
+                    List<ISSTableScanner> scanners = new ArrayList<>(partition.size());
+                    for (Pair<SSTableReader, PartitionHashes.Entry> sstableEntry : partition)
+                        scanners.add(sstableEntry.left.getScanner(ColumnFilter.all(cfs.metadata), dataRange, false));
+                    try (AbstractCompactionStrategy.ScannerList scannerList = new AbstractCompactionStrategy.ScannerList(scanners);
+                         CompactionIterator ci = new ValidationCompactionIterator(scannerList.scanners, controller, nowInSec, null))
+                    {
+                        while (ci.hasNext())
+                        {
+                            try (UnfilteredRowIterator purged = ci.next())
+                            {
+                                validator.add(purged);
+                            }
+                        }
+                    }
+                }
+            }
+            validator.complete();
+            logger.debug("Validated {} from partition hashes, reading {} partitions", validator.desc, read);
+            return true;
+        }
+        finally
+        {
+            FileUtils.closeQuietly(hashes);
+        }
+    }
+
     /**
      * Splits up an sstable into two new sstables. The first of the new tables will store repaired ranges, the second
      * will store the non-repaired ranges. Once anticompation is completed, the original sstable is marked as compacted
@@ -1453,6 +1573,14 @@ public class CompactionManager implements CompactionManagerMBean
         }
     }
 
+    private static class SubRangeExecutor extends CompactionExecutor
+    {
+        public SubRangeExecutor()
+        {
+            super(DatabaseDescriptor.getCompactionSubRanges(), "CompactionSubRangeExecutor");
+        }
+    }
+
     private static class CacheCleanupExecutor extends CompactionExecutor
     {
         public CacheCleanupExecutor()
@@ -17,20 +17,35 @@
  */
 package org.apache.cassandra.db.compaction;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.apache.cassandra.db.compaction.writers.CompactionAwareWriter;
 import org.apache.cassandra.db.compaction.writers.DefaultCompactionWriter;
+import org.apache.cassandra.db.compaction.writers.SubRangeCompactionWriters;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.commons.lang3.StringUtils;
@@ -45,6 +60,7 @@ import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.CloseableIterator;
 import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Throwables;
 import org.apache.cassandra.utils.concurrent.Refs;
 
 public class CompactionTask extends AbstractCompactionTask
@@ -155,44 +171,74 @@ public class CompactionTask extends AbstractCompactionTask
             // to both ifile and dfile and SSTR will throw deletion errors on Windows if it tries to delete before scanner is closed.
             // See CASSANDRA-8019 and CASSANDRA-8399
             int nowInSec = FBUtilities.nowInSeconds();
-            try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
-                 AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact);
-                 CompactionIterator ci = new CompactionIterator(compactionType, scanners.scanners, controller, nowInSec, taskId))
+            List<Range<Token>> subRanges = getSubRanges(actuallyCompact, expectedWriteSize);
+            if (subRanges.size() > 1)
             {
-                if (collector != null)
-                    collector.beginCompaction(ci);
-                long lastCheckObsoletion = start;
-
-                if (!controller.cfs.getCompactionStrategyManager().isActive)
-                    throw new CompactionInterruptedException(ci.getCompactionInfo());
-
-                try (CompactionAwareWriter writer = getCompactionAwareWriter(cfs, transaction, actuallyCompact))
+                logger.debug("Splitting compaction ({}) into {} token sub-ranges", taskId, subRanges.size());
+                AtomicLong keysWritten = new AtomicLong();
+                Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
+                try (SubRangeCompactionWriters writers = new SubRangeCompactionWriters(transaction))
                 {
-                    estimatedKeys = writer.estimatedKeys();
-                    while (ci.hasNext())
+                    List<SubRangeCompaction> compactions = new ArrayList<>(subRanges.size());
+                    AtomicBoolean stopRequested = new AtomicBoolean();
+                    for (Range<Token> range : subRanges)
                     {
-                        if (ci.isStopRequested())
-                            throw new CompactionInterruptedException(ci.getCompactionInfo());
-
-                        if (writer.append(ci.next()))
-                            totalKeysWritten++;
-
-                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
-                        {
-                            controller.maybeRefreshOverlaps();
-                            lastCheckObsoletion = System.nanoTime();
-                        }
+                        CompactionAwareWriter writer = writers.add(new DefaultCompactionWriter(cfs, transaction, actuallyCompact, range));
+                        compactions.add(new SubRangeCompaction(range, actuallyCompact, writer, nowInSec, keysWritten, stopRequested));
                     }
+                    estimatedKeys = writers.estimatedKeys();
+                    mergedRowCounts = runSubRanges(compactions, stopRequested);
 
                     // point of no return
-                    newSStables = writer.finish();
+                    newSStables = writers.finish();
                 }
                 finally
+                {
+                    refs.release();
+                }
+                totalKeysWritten = keysWritten.get();
+            }
+            else
+            {
+                try (Refs<SSTableReader> refs = Refs.ref(actuallyCompact);
+                     AbstractCompactionStrategy.ScannerList scanners = strategy.getScanners(actuallyCompact);
+                     CompactionIterator ci = new CompactionIterator(compactionType, scanners.scanners, controller, nowInSec, taskId))
                 {
                     if (collector != null)
-                        collector.finishCompaction(ci);
+                        collector.beginCompaction(ci);
+                    long lastCheckObsoletion = start;
+
+                    if (!controller.cfs.getCompactionStrategyManager().isActive)
+                        throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                    try (CompactionAwareWriter writer = getCompactionAwareWriter(cfs, transaction, actuallyCompact))
+                    {
+                        estimatedKeys = writer.estimatedKeys();
+                        while (ci.hasNext())
+                        {
+                            if (ci.isStopRequested())
+                                throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                            if (writer.append(ci.next()))
+                                totalKeysWritten++;
+
+                            if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                            {
+                                controller.maybeRefreshOverlaps();
+                                lastCheckObsoletion = System.nanoTime();
+                            }
+                        }
 
-                    mergedRowCounts = ci.getMergedRowCounts();
+                        // point of no return
+                        newSStables = writer.finish();
+                    }
+                    finally
+                    {
+                        if (collector != null)
+                            collector.finishCompaction(ci);
+
+                        mergedRowCounts = ci.getMergedRowCounts();
+                    }
                 }
             }
 
@@ -219,6 +265,172 @@ public class CompactionTask extends AbstractCompactionTask
         }
     }
 
+    /**
+     * Whether the compaction may be split into token sub-ranges, each written by its own DefaultCompactionWriter.
+     * Tasks that lay their output out differently, by overriding getCompactionAwareWriter, must not be split.
+     */
+    protected boolean canSplitIntoSubRanges()
+    {
+        return true;
+    }
+
+    /**
+     * Splits the token range covered by {@code sstables} into at most compaction_subranges disjoint sub-ranges
+     * holding roughly the same number of partitions, each expected to write at least min_compaction_subrange_size_in_mb.
+     * Returns the full token range alone if the compaction should not be split.
+     */
+    @VisibleForTesting
+    List<Range<Token>> getSubRanges(Collection<SSTableReader> sstables, long expectedWriteSize)
+    {
+        IPartitioner partitioner = cfs.getPartitioner();
+        Token minimum = partitioner.getMinimumToken();
+
+        int count = DatabaseDescriptor.getCompactionSubRanges();
+        long minSubRangeSize = DatabaseDescriptor.getMinCompactionSubRangeSize();
+        if (minSubRangeSize > 0)
+            count = (int) Math.min(count, expectedWriteSize / minSubRangeSize);
+        if (count < 2 || offline || !canSplitIntoSubRanges())
+            return Collections.singletonList(new Range<>(minimum, minimum));
+
+        // pick the boundaries from the index summaries, taking a bounded number of samples per sub-range
+        long summaryEntries = 0;
+        for (SSTableReader sstable : sstables)
+            summaryEntries += sstable.getIndexSummarySize();
+        int interval = (int) Math.max(1, summaryEntries / (count * 128L));
+
+        List<Token> samples = new ArrayList<>();
+        for (SSTableReader sstable : sstables)
+        {
+            for (int i = 0; i < sstable.getIndexSummarySize(); i += interval)
+                samples.add(partitioner.getToken(ByteBuffer.wrap(sstable.getIndexSummaryKey(i))));
+        }
+        Collections.sort(samples);
+
+        List<Range<Token>> ranges = new ArrayList<>(count);
+        Token left = minimum;
+        for (int i = 1; i < count && !samples.isEmpty(); i++)
+        {
+            Token right = samples.get(i * samples.size() / count);
+            if (right.compareTo(left) > 0)
+            {
+                ranges.add(new Range<>(left, right));
+                left = right;
+            }
+        }
+        ranges.add(new Range<>(left, minimum));
+        return ranges;
+    }
+
+    /**
+     * Runs the sub-range compactions on the sub-range executor and waits for all of them, stopping the others as soon
+     * as one fails, so that none is still writing once we abort or commit their writers.
+     * @return the merged row counts of all sub-ranges
+     */
+    private long[] runSubRanges(List<SubRangeCompaction> compactions, AtomicBoolean stopRequested)
+    {
+        List<Future<long[]>> futures = new ArrayList<>(compactions.size());
+        Throwable fail = null;
+        try
+        {
+            for (SubRangeCompaction compaction : compactions)
+                futures.add(CompactionManager.instance.submitSubRange(compaction));
+        }
+        catch (Throwable t)
+        {
+            stopRequested.set(true);
+            fail = t;
+        }
+
+        long[] mergedRowCounts = new long[0];
+        for (Future<long[]> future : futures)
+        {
+            try
+            {
+                long[] counts = Uninterruptibles.getUninterruptibly(future);
+                if (counts.length > mergedRowCounts.length)
+                    mergedRowCounts = Arrays.copyOf(mergedRowCounts, counts.length);
+                for (int i = 0; i < counts.length; i++)
+                    mergedRowCounts[i] += counts[i];
+            }
+            catch (ExecutionException e)
+            {
+                // prefer reporting the failure that stopped the other sub-ranges over their interruptions
+                if (fail instanceof CompactionInterruptedException && !(e.getCause() instanceof CompactionInterruptedException))
+                    fail = Throwables.merge(e.getCause(), fail);
+                else
+                    fail = Throwables.merge(fail, e.getCause());
+            }
+        }
+        Throwables.maybeFail(fail);
+        return mergedRowCounts;
+    }
+
+    /**
+     * Merges the partitions of one token sub-range into its own writer.
+     */
+    private class SubRangeCompaction implements Callable<long[]>
+    {
+        private final Range<Token> range;
+        private final Set<SSTableReader> actuallyCompact;
+        private final CompactionAwareWriter writer;
+        private final int nowInSec;
+        private final AtomicLong keysWritten;
+        private final AtomicBoolean stopRequested;
+
+        private SubRangeCompaction(Range<Token> range, Set<SSTableReader> actuallyCompact, CompactionAwareWriter writer, int nowInSec, AtomicLong keysWritten, AtomicBoolean stopRequested)
+        {
+            this.range = range;
+            this.actuallyCompact = actuallyCompact;
+            this.writer = writer;
+            this.nowInSec = nowInSec;
+            this.keysWritten = keysWritten;
+            this.stopRequested = stopRequested;
+        }
+
+        public long[] call()
+        {
+            try (CompactionController controller = getCompactionController(transaction.originals());
+                 AbstractCompactionStrategy.ScannerList scanners = cfs.getCompactionStrategyManager().getScanners(actuallyCompact, range);
+                 CompactionIterator ci = new CompactionIterator(compactionType, scanners.scanners, controller, nowInSec, transaction.opId()))
+            {
+                if (collector != null)
+                    collector.beginCompaction(ci);
+                try
+                {
+                    if (!controller.cfs.getCompactionStrategyManager().isActive)
+                        throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                    long lastCheckObsoletion = System.nanoTime();
+                    while (ci.hasNext())
+                    {
+                        if (ci.isStopRequested() || stopRequested.get())
+                            throw new CompactionInterruptedException(ci.getCompactionInfo());
+
+                        if (writer.append(ci.next()))
+                            keysWritten.incrementAndGet();
+
+                        if (System.nanoTime() - lastCheckObsoletion > TimeUnit.MINUTES.toNanos(1L))
+                        {
+                            controller.maybeRefreshOverlaps();
+                            lastCheckObsoletion = System.nanoTime();
+                        }
+                    }
+                }
+                finally
+                {
+                    if (collector != null)
+                        collector.finishCompaction(ci);
+                }
+                return ci.getMergedRowCounts();
+            }
+            catch (Throwable t)
+            {
+                stopRequested.set(true);
+                throw t;
+            }
+        }
+    }
+
     @Override
     public CompactionAwareWriter getCompactionAwareWriter(ColumnFamilyStore cfs,
                                                           LifecycleTransaction transaction,
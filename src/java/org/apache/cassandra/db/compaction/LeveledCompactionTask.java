@@ -40,6 +40,12 @@ public class LeveledCompactionTask extends CompactionTask
         this.majorCompaction = majorCompaction;
     }
 
+    @Override
+    protected boolean canSplitIntoSubRanges()
+    {
+        return false;
+    }
+
     @Override
     public CompactionAwareWriter getCompactionAwareWriter(ColumnFamilyStore cfs,
                                                           LifecycleTransaction txn,
@@ -73,6 +73,12 @@ public class SSTableSplitter {
             return new SplitController(cfs);
         }
 
+        @Override
+        protected boolean canSplitIntoSubRanges()
+        {
+            return false;
+        }
+
         @Override
         public CompactionAwareWriter getCompactionAwareWriter(ColumnFamilyStore cfs,
                                                               LifecycleTransaction txn,
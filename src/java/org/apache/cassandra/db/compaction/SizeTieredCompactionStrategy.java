@@ -340,6 +340,12 @@ public class SizeTieredCompactionStrategy extends AbstractCompactionStrategy
             super(cfs, txn, gcBefore, offline);
         }
 
+        @Override
+        protected boolean canSplitIntoSubRanges()
+        {
+            return false;
+        }
+
         @Override
         public CompactionAwareWriter getCompactionAwareWriter(ColumnFamilyStore cfs,
                                                               LifecycleTransaction txn,
@@ -60,6 +60,24 @@ public abstract class CompactionAwareWriter extends Transactional.AbstractTransa
         this.sstableWriter = new SSTableRewriter(cfs, txn, maxAge, offline).keepOriginals(offline);
     }
 
+    /**
+     * Creates a writer for one token sub-range of a compaction. It shares {@code txn} with the writers of the other
+     * sub-ranges, and only prepares and commits its own files; {@link SubRangeCompactionWriters} drives the transaction.
+     */
+    protected CompactionAwareWriter(ColumnFamilyStore cfs,
+                                    LifecycleTransaction txn,
+                                    Set<SSTableReader> nonExpiredSSTables,
+                                    long estimatedTotalKeys)
+    {
+        this.cfs = cfs;
+        this.nonExpiredSSTables = nonExpiredSSTables;
+        this.estimatedTotalKeys = estimatedTotalKeys;
+        this.maxAge = CompactionTask.getMaxDataAge(nonExpiredSSTables);
+        this.minRepairedAt = CompactionTask.getMinRepairedAt(nonExpiredSSTables);
+        this.txn = txn;
+        this.sstableWriter = new SSTableRewriter(cfs, txn, maxAge, false, false).sharedTransaction(true);
+    }
+
     /**
      * Writes a partition in an implementation specific way
      * @param partition the partition to append
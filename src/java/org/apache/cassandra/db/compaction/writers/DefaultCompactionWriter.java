@@ -19,6 +19,7 @@ package org.apache.cassandra.db.compaction.writers;
 
 
 import java.io.File;
+import java.util.Collections;
 import java.util.Set;
 
 import org.slf4j.Logger;
@@ -28,6 +29,8 @@ import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.SerializationHeader;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
@@ -40,12 +43,35 @@ public class DefaultCompactionWriter extends CompactionAwareWriter
 {
     protected static final Logger logger = LoggerFactory.getLogger(DefaultCompactionWriter.class);
 
-    @SuppressWarnings("resource")
     public DefaultCompactionWriter(ColumnFamilyStore cfs, LifecycleTransaction txn, Set<SSTableReader> nonExpiredSSTables, boolean offline)
     {
         super(cfs, txn, nonExpiredSSTables, offline);
+        createWriter(cfs.getExpectedCompactedFileSize(nonExpiredSSTables, txn.opType()));
+    }
+
+    /**
+     * Creates the writer for the token sub-range {@code range} of a compaction that was split into sub-ranges.
+     */
+    public DefaultCompactionWriter(ColumnFamilyStore cfs, LifecycleTransaction txn, Set<SSTableReader> nonExpiredSSTables, Range<Token> range)
+    {
+        super(cfs, txn, nonExpiredSSTables, estimatedKeysForRange(nonExpiredSSTables, range));
+        long totalKeys = Math.max(1, SSTableReader.getApproximateKeyCount(nonExpiredSSTables));
+        double rangeRatio = Math.min(1.0, (double) estimatedTotalKeys / totalKeys);
+        createWriter((long) (cfs.getExpectedCompactedFileSize(nonExpiredSSTables, txn.opType()) * rangeRatio));
+    }
+
+    private static long estimatedKeysForRange(Set<SSTableReader> sstables, Range<Token> range)
+    {
+        long keys = 0;
+        for (SSTableReader sstable : sstables)
+            keys += sstable.estimatedKeysForRanges(Collections.singleton(range));
+        return keys;
+    }
+
+    @SuppressWarnings("resource")
+    private void createWriter(long expectedWriteSize)
+    {
         logger.debug("Expected bloom filter size : {}", estimatedTotalKeys);
-        long expectedWriteSize = cfs.getExpectedCompactedFileSize(nonExpiredSSTables, txn.opType());
         File sstableDirectory = cfs.directories.getLocationForDisk(getWriteDirectory(expectedWriteSize));
         @SuppressWarnings("resource")
         SSTableWriter writer = SSTableWriter.create(Descriptor.fromFilename(cfs.getSSTablePath(sstableDirectory)),
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.compaction.writers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.utils.concurrent.Transactional;
+
+/**
+ * The writers of a compaction that was split into disjoint token sub-ranges, each written by its own thread.
+ *
+ * The sub-range writers share one LifecycleTransaction but only prepare and commit their own files; once they have
+ * all been prepared we checkpoint the transaction, obsolete the originals and commit it, so that the outputs of every
+ * sub-range replace the originals atomically. Writers must be added, prepared and committed from a single thread.
+ */
+public class SubRangeCompactionWriters extends Transactional.AbstractTransactional implements Transactional
+{
+    private final LifecycleTransaction txn;
+    private final List<CompactionAwareWriter> writers = new ArrayList<>();
+    private final List<SSTableReader> preparedForCommit = new ArrayList<>();
+
+    public SubRangeCompactionWriters(LifecycleTransaction txn)
+    {
+        this.txn = txn;
+    }
+
+    public CompactionAwareWriter add(CompactionAwareWriter writer)
+    {
+        assert writer.txn == txn && writer.sstableWriter != null;
+        writers.add(writer);
+        return writer;
+    }
+
+    public long estimatedKeys()
+    {
+        long keys = 0;
+        for (CompactionAwareWriter writer : writers)
+            keys += writer.estimatedKeys();
+        return keys;
+    }
+
+    protected void doPrepare()
+    {
+        for (CompactionAwareWriter writer : writers)
+        {
+            writer.prepareToCommit();
+            preparedForCommit.addAll(writer.sstableWriter.finished());
+        }
+        txn.checkpoint();
+        txn.obsoleteOriginals();
+        txn.prepareToCommit();
+    }
+
+    protected Throwable doCommit(Throwable accumulate)
+    {
+        for (CompactionAwareWriter writer : writers)
+            accumulate = writer.commit(accumulate);
+        return txn.commit(accumulate);
+    }
+
+    protected Throwable doAbort(Throwable accumulate)
+    {
+        for (CompactionAwareWriter writer : writers)
+            accumulate = writer.abort(accumulate);
+        return txn.abort(accumulate);
+    }
+
+    /**
+     * @return the sstables written by all sub-ranges
+     */
+    public List<SSTableReader> finish()
+    {
+        super.finish();
+        return preparedForCommit;
+    }
+}
@@ -238,6 +238,16 @@ public abstract class AbstractType<T> implements Comparator<ByteBuffer>
         return false;
     }
 
+    /**
+     * @return true IFF the byte representation of this type, once the sign bit of its first byte is flipped, can be
+     * compared unsigned and always return the same result as calling this object's compare method. This is the case
+     * of the fixed-width two's complement integer types.
+     */
+    public boolean isSignedByteOrderComparable()
+    {
+        return false;
+    }
+
     /**
      * An alternative comparison function used by CollectionsType in conjunction with CompositeType.
      *
@@ -40,6 +40,11 @@ public class ByteType extends AbstractType<Byte>
         return o1.get(o1.position()) - o2.get(o2.position());
     }
 
+    public boolean isSignedByteOrderComparable()
+    {
+        return true;
+    }
+
     public ByteBuffer fromString(String source) throws MarshalException
     {
         // Return an empty ByteBuffer for an empty string.
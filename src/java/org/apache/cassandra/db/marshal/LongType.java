@@ -43,6 +43,11 @@ public class LongType extends AbstractType<Long>
         return compareLongs(o1, o2);
     }
 
+    public boolean isSignedByteOrderComparable()
+    {
+        return true;
+    }
+
     public static int compareLongs(ByteBuffer o1, ByteBuffer o2)
     {
         if (!o1.hasRemaining() || !o2.hasRemaining())
@@ -44,6 +44,11 @@ public class ShortType extends AbstractType<Short>
         return ByteBufferUtil.compareUnsigned(o1, o2);
     }
 
+    public boolean isSignedByteOrderComparable()
+    {
+        return true;
+    }
+
     public ByteBuffer fromString(String source) throws MarshalException
     {
         // Return an empty ByteBuffer for an empty string.
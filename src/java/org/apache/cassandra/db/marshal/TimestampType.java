@@ -55,6 +55,11 @@ public class TimestampType extends AbstractType<Date>
         return LongType.compareLongs(o1, o2);
     }
 
+    public boolean isSignedByteOrderComparable()
+    {
+        return true;
+    }
+
     public ByteBuffer fromString(String source) throws MarshalException
     {
       // Return an empty ByteBuffer for an empty string.
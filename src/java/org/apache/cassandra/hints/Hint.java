@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+
+/**
+ * A mutation that could not be delivered to one of its replicas, along with the time it was created and the
+ * number of seconds it remains deliverable for (the smallest gc_grace_seconds of the tables it touches, so that
+ * delivering it late cannot resurrect deleted data).
+ */
+public final class Hint
+{
+    public static final Serializer serializer = new Serializer();
+
+    public final Mutation mutation;
+    public final long creationTime; // in milliseconds
+    public final int ttl; // in seconds
+
+    public Hint(Mutation mutation, long creationTime, int ttl)
+    {
+        assert ttl > 0;
+        this.mutation = mutation;
+        this.creationTime = creationTime;
+        this.ttl = ttl;
+    }
+
+    public boolean isLive(long now)
+    {
+        return now < creationTime + TimeUnit.SECONDS.toMillis(ttl);
+    }
+
+    /**
+     * @return the hinted mutation without the updates to tables truncated after the hint was created, or null
+     * if nothing is left to deliver
+     */
+    public Mutation liveMutation()
+    {
+        Mutation live = mutation;
+        for (UUID cfId : mutation.getColumnFamilyIds())
+            if (creationTime <= SystemKeyspace.getTruncatedAt(cfId))
+                live = live.without(cfId);
+        return live.isEmpty() ? null : live;
+    }
+
+    public static class Serializer implements IVersionedSerializer<Hint>
+    {
+        public void serialize(Hint hint, DataOutputPlus out, int version) throws IOException
+        {
+            out.writeLong(hint.creationTime);
+            out.writeUnsignedVInt(hint.ttl);
+            Mutation.serializer.serialize(hint.mutation, out, version);
+        }
+
+        public Hint deserialize(DataInputPlus in, int version) throws IOException
+        {
+            long creationTime = in.readLong();
+            int ttl = (int) in.readUnsignedVInt();
+            return new Hint(Mutation.serializer.deserialize(in, version), creationTime, ttl);
+        }
+
+        public long serializedSize(Hint hint, int version)
+        {
+            return TypeSizes.sizeof(hint.creationTime)
+                 + TypeSizes.sizeofUnsignedVInt(hint.ttl)
+                 + Mutation.serializer.serializedSize(hint.mutation, version);
+        }
+    }
+}
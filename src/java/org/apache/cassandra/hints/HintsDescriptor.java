@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.File;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Objects;
+
+/**
+ * Identifies a hints file: the host the hints are for, when the file was created (which orders the files of
+ * a host), and the messaging version its mutations are serialized with.
+ *
+ * The file is named {@code <host id>-<timestamp>-<messaging version>.hints}.
+ */
+public final class HintsDescriptor
+{
+    private static final Pattern FILE_NAME = Pattern.compile("^([0-9a-fA-F]{8}(?:-[0-9a-fA-F]{4}){3}-[0-9a-fA-F]{12})-(\\d+)-(\\d+)\\.hints$");
+
+    public final UUID hostId;
+    public final long timestamp;
+    public final int messagingVersion;
+
+    public HintsDescriptor(UUID hostId, long timestamp, int messagingVersion)
+    {
+        this.hostId = hostId;
+        this.timestamp = timestamp;
+        this.messagingVersion = messagingVersion;
+    }
+
+    public String fileName()
+    {
+        return String.format("%s-%d-%d.hints", hostId, timestamp, messagingVersion);
+    }
+
+    public File file(File directory)
+    {
+        return new File(directory, fileName());
+    }
+
+    /**
+     * @return the descriptor of the hints file with the provided name, or null if it is not a hints file
+     */
+    public static HintsDescriptor fromFileName(String fileName)
+    {
+        Matcher matcher = FILE_NAME.matcher(fileName);
+        if (!matcher.matches())
+            return null;
+
+        return new HintsDescriptor(UUID.fromString(matcher.group(1)),
+                                   Long.parseLong(matcher.group(2)),
+                                   Integer.parseInt(matcher.group(3)));
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+        if (!(o instanceof HintsDescriptor))
+            return false;
+
+        HintsDescriptor that = (HintsDescriptor) o;
+        return hostId.equals(that.hostId) && timestamp == that.timestamp && messagingVersion == that.messagingVersion;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(hostId, timestamp, messagingVersion);
+    }
+
+    @Override
+    public String toString()
+    {
+        return fileName();
+    }
+}
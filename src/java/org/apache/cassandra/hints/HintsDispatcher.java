@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.WriteType;
+import org.apache.cassandra.exceptions.WriteTimeoutException;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.WriteResponseHandler;
+
+/**
+ * Delivers the complete hints files of a host, oldest first, reading each one sequentially and deleting it
+ * once all of its hints have been acknowledged.
+ */
+public final class HintsDispatcher
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintsDispatcher.class);
+
+    // the number of hints sent before waiting for them to be acknowledged
+    private static final int MAX_HINTS_IN_FLIGHT = 128;
+
+    private final HintsStore store;
+    private final InetAddress endpoint;
+    private final RateLimiter rateLimiter;
+    private final BooleanSupplier aborted;
+    private final AtomicInteger delivered = new AtomicInteger();
+
+    /**
+     * @param aborted checked before sending each hint, to stop the delivery if the endpoint went down or
+     * hints delivery was paused
+     */
+    public HintsDispatcher(HintsStore store, InetAddress endpoint, RateLimiter rateLimiter, BooleanSupplier aborted)
+    {
+        this.store = store;
+        this.endpoint = endpoint;
+        this.rateLimiter = rateLimiter;
+        this.aborted = aborted;
+    }
+
+    /**
+     * @return true if all the complete files of the host were delivered, false if delivery was aborted or
+     * timed out, in which case it will resume from the last acknowledged batch of hints next time
+     */
+    public boolean dispatch()
+    {
+        HintsDescriptor descriptor;
+        while ((descriptor = store.poll()) != null)
+        {
+            boolean dispatched = false;
+            try
+            {
+                dispatched = dispatch(descriptor);
+            }
+            finally
+            {
+                if (dispatched)
+                    store.delete(descriptor);
+                else
+                    store.offerFirst(descriptor);
+            }
+
+            if (!dispatched)
+                return false;
+        }
+        return true;
+    }
+
+    private boolean dispatch(HintsDescriptor descriptor)
+    {
+        logger.debug("Dispatching hints file {} to {}", descriptor, endpoint);
+
+        long now = System.currentTimeMillis();
+        List<WriteResponseHandler<Mutation>> handlers = new ArrayList<>(MAX_HINTS_IN_FLIGHT);
+        try (HintsReader reader = HintsReader.open(store.file(descriptor), descriptor, store.dispatchPosition(descriptor)))
+        {
+            Hint hint;
+            while ((hint = reader.readHint()) != null)
+            {
+                if (aborted.getAsBoolean())
+                    return false;
+
+                if (!hint.isLive(now))
+                    continue;
+
+                Mutation mutation = hint.liveMutation();
+                if (mutation == null)
+                    continue;
+
+                MessageOut<Mutation> message = mutation.createMessage();
+                rateLimiter.acquire(message.serializedSize(MessagingService.current_version));
+                WriteResponseHandler<Mutation> handler = new WriteResponseHandler<>(endpoint, WriteType.SIMPLE, delivered::incrementAndGet);
+                MessagingService.instance().sendRR(message, endpoint, handler, false);
+                handlers.add(handler);
+
+                if (handlers.size() >= MAX_HINTS_IN_FLIGHT)
+                {
+                    if (!awaitResponses(handlers))
+                        return false;
+                    store.markDispatched(descriptor, reader.position());
+                }
+            }
+        }
+        return awaitResponses(handlers);
+    }
+
+    private boolean awaitResponses(List<WriteResponseHandler<Mutation>> handlers)
+    {
+        try
+        {
+            for (WriteResponseHandler<Mutation> handler : handlers)
+                handler.get();
+            return true;
+        }
+        catch (WriteTimeoutException e)
+        {
+            logger.info("Failed replaying hints to {}; aborting ({} delivered), error : {}", endpoint, delivered, e.getMessage());
+            return false;
+        }
+        finally
+        {
+            handlers.clear();
+        }
+    }
+
+    /**
+     * @return the number of hints acknowledged by the endpoint so far
+     */
+    public int delivered()
+    {
+        return delivered.get();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.UnknownColumnFamilyException;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.RandomAccessReader;
+
+import static org.apache.cassandra.utils.FBUtilities.updateChecksumInt;
+
+/**
+ * Reads back, sequentially, the hints appended to a hints file by {@link HintsWriter}.
+ */
+final class HintsReader implements AutoCloseable
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintsReader.class);
+
+    private final HintsDescriptor descriptor;
+    private final RandomAccessReader reader;
+    private final CRC32 checksum = new CRC32();
+    private byte[] buffer = new byte[4096];
+
+    private HintsReader(HintsDescriptor descriptor, RandomAccessReader reader)
+    {
+        this.descriptor = descriptor;
+        this.reader = reader;
+    }
+
+    /**
+     * Opens the file to read the hints following the provided position, which must be an entry boundary
+     * previously returned by {@link #position()}.
+     */
+    static HintsReader open(File file, HintsDescriptor descriptor, long position)
+    {
+        RandomAccessReader reader = RandomAccessReader.open(file);
+        reader.seek(position);
+        return new HintsReader(descriptor, reader);
+    }
+
+    /**
+     * @return the next hint of the file, or null once the end of the file, or a corrupted entry that can't be
+     * skipped (a torn write, typically), is reached. Hints for tables that have since been dropped are skipped.
+     */
+    Hint readHint()
+    {
+        while (true)
+        {
+            try
+            {
+                if (reader.isEOF())
+                    return null;
+
+                int size = reader.readInt();
+                checksum.reset();
+                updateChecksumInt(checksum, size);
+                if (size < 0 || (reader.readInt() & 0xffffffffL) != checksum.getValue())
+                {
+                    logger.warn("Corrupted entry size at position {} of hints file {}, skipping the rest of the file",
+                                reader.getFilePointer(), descriptor);
+                    return null;
+                }
+
+                if (size > buffer.length)
+                    buffer = new byte[(int) (1.2 * size)];
+                reader.readFully(buffer, 0, size);
+                checksum.update(buffer, 0, size);
+                if ((reader.readInt() & 0xffffffffL) != checksum.getValue())
+                {
+                    // the next entry starts right after this one, so it's still worth trying
+                    logger.warn("Corrupted hint before position {} of hints file {}, skipping it", reader.getFilePointer(), descriptor);
+                    continue;
+                }
+
+                try (DataInputBuffer in = new DataInputBuffer(buffer, 0, size))
+                {
+                    return Hint.serializer.deserialize(in, descriptor.messagingVersion);
+                }
+                catch (UnknownColumnFamilyException e)
+                {
+                    logger.debug("Skipping hint for a dropped table in hints file {}", descriptor, e);
+                }
+            }
+            catch (EOFException e)
+            {
+                return null; // the last hint didn't get completely written before a crash
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, reader.getPath());
+            }
+        }
+    }
+
+    /**
+     * @return the position following the last hint read
+     */
+    long position()
+    {
+        return reader.getFilePointer();
+    }
+
+    public void close()
+    {
+        reader.close();
+    }
+}
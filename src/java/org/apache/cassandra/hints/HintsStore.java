@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.Throwables;
+
+/**
+ * The hints for a single host: the file currently appended to, and the queue of complete files awaiting
+ * dispatch, oldest first.
+ *
+ * A file is only ever read once complete, and is deleted as a whole once all of its hints have been
+ * delivered (or have expired), so that storing and delivering hints never requires compaction or tombstones.
+ * When a delivery is interrupted the position up to which the file was delivered is remembered, so that the
+ * next attempt can resume from it rather than resend the whole file.
+ */
+public final class HintsStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(HintsStore.class);
+
+    public final UUID hostId;
+    private final File directory;
+    private final long maxFileSize;
+
+    private final Deque<HintsDescriptor> dispatchQueue = new ConcurrentLinkedDeque<>();
+    private final Map<HintsDescriptor, Long> dispatchPositions = new ConcurrentHashMap<>();
+
+    // guarded by this
+    private HintsWriter writer;
+    private long lastTimestamp;
+
+    private HintsStore(UUID hostId, File directory, long maxFileSize, List<HintsDescriptor> descriptors)
+    {
+        this.hostId = hostId;
+        this.directory = directory;
+        this.maxFileSize = maxFileSize;
+
+        for (HintsDescriptor descriptor : descriptors)
+        {
+            dispatchQueue.offerLast(descriptor);
+            lastTimestamp = Math.max(lastTimestamp, descriptor.timestamp);
+        }
+    }
+
+    /**
+     * @return a new store, without any hints yet, for the provided host
+     */
+    public static HintsStore create(UUID hostId, File directory, long maxFileSize)
+    {
+        return new HintsStore(hostId, directory, maxFileSize, Collections.<HintsDescriptor>emptyList());
+    }
+
+    static HintsStore create(UUID hostId, File directory, long maxFileSize, List<HintsDescriptor> descriptors)
+    {
+        descriptors.sort((d1, d2) -> Long.compare(d1.timestamp, d2.timestamp));
+        return new HintsStore(hostId, directory, maxFileSize, descriptors);
+    }
+
+    /**
+     * Loads the stores of all the hints files left in the directory by a previous run.
+     */
+    public static Map<UUID, HintsStore> loadAll(File directory, long maxFileSize)
+    {
+        Map<UUID, List<HintsDescriptor>> descriptors = new HashMap<>();
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                HintsDescriptor descriptor = HintsDescriptor.fromFileName(file.getName());
+                if (descriptor == null)
+                    continue;
+
+                if (file.length() == 0)
+                {
+                    FileUtils.deleteWithConfirm(file);
+                    continue;
+                }
+                descriptors.computeIfAbsent(descriptor.hostId, id -> new ArrayList<>()).add(descriptor);
+            }
+        }
+
+        Map<UUID, HintsStore> stores = new HashMap<>();
+        for (Map.Entry<UUID, List<HintsDescriptor>> entry : descriptors.entrySet())
+            stores.put(entry.getKey(), create(entry.getKey(), directory, maxFileSize, entry.getValue()));
+        return stores;
+    }
+
+    /**
+     * Appends the hint to the current file, starting a new one if there is none or if it grew too large.
+     */
+    public synchronized void write(Hint hint)
+    {
+        if (writer == null)
+        {
+            // files of a host are ordered by timestamp, so it has to increase even if the clock doesn't
+            lastTimestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+            writer = HintsWriter.create(directory, new HintsDescriptor(hostId, lastTimestamp, MessagingService.current_version));
+        }
+
+        writer.append(hint);
+
+        if (writer.position() >= maxFileSize)
+            closeWriter();
+    }
+
+    /**
+     * Completes the current file, if any, making its hints available for dispatch.
+     */
+    public synchronized void closeWriter()
+    {
+        if (writer == null)
+            return;
+
+        writer.close();
+        dispatchQueue.offerLast(writer.descriptor);
+        writer = null;
+    }
+
+    public synchronized void sync()
+    {
+        if (writer != null)
+            writer.sync();
+    }
+
+    /**
+     * @return whether there are hints for the host, complete or not
+     */
+    public synchronized boolean hasHints()
+    {
+        return writer != null || !dispatchQueue.isEmpty();
+    }
+
+    /**
+     * @return the oldest complete file awaiting dispatch, which the caller then owns until it either
+     * {@link #delete}s it or hands it back with {@link #offerFirst}; null if there is none
+     */
+    HintsDescriptor poll()
+    {
+        return dispatchQueue.pollFirst();
+    }
+
+    void offerFirst(HintsDescriptor descriptor)
+    {
+        dispatchQueue.offerFirst(descriptor);
+    }
+
+    File file(HintsDescriptor descriptor)
+    {
+        return descriptor.file(directory);
+    }
+
+    long dispatchPosition(HintsDescriptor descriptor)
+    {
+        Long position = dispatchPositions.get(descriptor);
+        return position == null ? 0 : position;
+    }
+
+    void markDispatched(HintsDescriptor descriptor, long position)
+    {
+        dispatchPositions.put(descriptor, position);
+    }
+
+    void delete(HintsDescriptor descriptor)
+    {
+        dispatchPositions.remove(descriptor);
+        // the file may already be gone if all the hints of the host were deleted during its dispatch
+        Throwables.maybeFail(FileUtils.deleteWithConfirm(file(descriptor), false, null));
+        logger.debug("Deleted hints file {}", descriptor);
+    }
+
+    /**
+     * Hands all the undelivered hints for the host to the consumer, deleting their files, except those of a file
+     * currently being dispatched.
+     */
+    public synchronized void drain(Consumer<Hint> consumer)
+    {
+        closeWriter();
+        HintsDescriptor descriptor;
+        while ((descriptor = poll()) != null)
+        {
+            try (HintsReader reader = HintsReader.open(file(descriptor), descriptor, dispatchPosition(descriptor)))
+            {
+                Hint hint;
+                while ((hint = reader.readHint()) != null)
+                    consumer.accept(hint);
+            }
+            delete(descriptor);
+        }
+    }
+
+    /**
+     * Deletes all the hints for the host, except those of a file currently being dispatched.
+     */
+    public synchronized void deleteAllHints()
+    {
+        closeWriter();
+        HintsDescriptor descriptor;
+        while ((descriptor = poll()) != null)
+            delete(descriptor);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.DataOutputBufferFixed;
+import org.apache.cassandra.utils.SyncUtil;
+
+import static org.apache.cassandra.utils.FBUtilities.updateChecksumInt;
+
+/**
+ * Appends hints to a new hints file. Like commit log entries, each hint is framed as
+ *
+ * [size][CRC32 of size][serialized hint][CRC32 of size and serialized hint]
+ *
+ * so that a reader can detect a torn write at the end of the file after a crash. Hints are written to the
+ * page cache as they come; the file is only fsynced by {@link #sync()} and on close.
+ *
+ * Not thread-safe: {@link HintsStore} serializes the writes to its current file.
+ */
+final class HintsWriter implements AutoCloseable
+{
+    static final int ENTRY_OVERHEAD_SIZE = 12;
+
+    final HintsDescriptor descriptor;
+    private final File file;
+    private final FileChannel channel;
+    private final CRC32 checksum = new CRC32();
+    private long position;
+
+    private HintsWriter(HintsDescriptor descriptor, File file, FileChannel channel)
+    {
+        this.descriptor = descriptor;
+        this.file = file;
+        this.channel = channel;
+    }
+
+    static HintsWriter create(File directory, HintsDescriptor descriptor)
+    {
+        File file = descriptor.file(directory);
+        try
+        {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            return new HintsWriter(descriptor, file, channel);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    void append(Hint hint)
+    {
+        int size = (int) Hint.serializer.serializedSize(hint, descriptor.messagingVersion);
+        ByteBuffer buffer = ByteBuffer.allocate(size + ENTRY_OVERHEAD_SIZE);
+        try (DataOutputBufferFixed out = new DataOutputBufferFixed(buffer))
+        {
+            checksum.reset();
+            out.writeInt(size);
+            updateChecksumInt(checksum, size);
+            out.writeInt((int) checksum.getValue());
+
+            Hint.serializer.serialize(hint, out, descriptor.messagingVersion);
+            ByteBuffer serialized = buffer.duplicate();
+            serialized.position(8).limit(8 + size);
+            checksum.update(serialized);
+            out.writeInt((int) checksum.getValue());
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e); // can't happen when writing to a buffer
+        }
+
+        buffer.flip();
+        try
+        {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+        position += size + ENTRY_OVERHEAD_SIZE;
+    }
+
+    long position()
+    {
+        return position;
+    }
+
+    void sync()
+    {
+        try
+        {
+            SyncUtil.force(channel, false);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            SyncUtil.force(channel, true);
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+}
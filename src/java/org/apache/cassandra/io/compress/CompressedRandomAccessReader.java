@@ -28,6 +28,7 @@ import java.util.zip.Adler32;
 
 import com.google.common.primitives.Ints;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.util.*;
@@ -63,6 +64,10 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     // raw checksum bytes
     private ByteBuffer checksumBytes;
 
+    // null if decompressed chunks are not cached; only the chunks of segmented files are, as those invalidate
+    // their chunks once released
+    private final ChunkCache chunkCache;
+
     protected CompressedRandomAccessReader(ChannelProxy channel, CompressionMetadata metadata, ICompressedFile file)
     {
         super(channel, metadata.chunkLength(), metadata.compressedFileLength, metadata.compressor().preferredBufferType());
@@ -70,6 +75,7 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         checksum = new Adler32();
 
         chunkSegments = file == null ? null : file.chunkSegments();
+        chunkCache = file == null ? null : ChunkCache.instance;
         if (chunkSegments == null)
         {
             compressed = allocateBuffer(metadata.compressor().initialCompressedBufferLength(metadata.chunkLength()), metadata.compressor().preferredBufferType());
@@ -95,15 +101,10 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         }
     }
 
-    private void reBufferStandard()
+    private void reBufferStandard(CompressionMetadata.Chunk chunk)
     {
         try
         {
-            long position = current();
-            assert position < metadata.dataLength;
-
-            CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
-
             if (compressed.capacity() < chunk.length)
                 compressed = allocateBuffer(chunk.length, metadata.compressor().preferredBufferType());
             else
@@ -139,14 +140,6 @@ public class CompressedRandomAccessReader extends RandomAccessReader
                 // reset checksum object back to the original (blank) state
                 checksum.reset();
             }
-
-            // buffer offset is always aligned
-            bufferOffset = position & ~(buffer.capacity() - 1);
-            buffer.position((int) (position - bufferOffset));
-            // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
-            // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
-            if (bufferOffset + buffer.limit() > length())
-                buffer.limit((int)(length() - bufferOffset));
         }
         catch (CorruptBlockException e)
         {
@@ -158,15 +151,10 @@ public class CompressedRandomAccessReader extends RandomAccessReader
         }
     }
 
-    private void reBufferMmap()
+    private void reBufferMmap(CompressionMetadata.Chunk chunk)
     {
         try
         {
-            long position = current();
-            assert position < metadata.dataLength;
-
-            CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
-
             Map.Entry<Long, MappedByteBuffer> entry = chunkSegments.floorEntry(chunk.offset);
             long segmentOffset = entry.getKey();
             int chunkOffset = Ints.checkedCast(chunk.offset - segmentOffset);
@@ -202,14 +190,6 @@ public class CompressedRandomAccessReader extends RandomAccessReader
                 // reset checksum object back to the original (blank) state
                 checksum.reset();
             }
-
-            // buffer offset is always aligned
-            bufferOffset = position & ~(buffer.capacity() - 1);
-            buffer.position((int) (position - bufferOffset));
-            // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
-            // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
-            if (bufferOffset + buffer.limit() > length())
-                buffer.limit((int)(length() - bufferOffset));
         }
         catch (CorruptBlockException e)
         {
@@ -221,14 +201,30 @@ public class CompressedRandomAccessReader extends RandomAccessReader
     @Override
     protected void reBuffer()
     {
-        if (chunkSegments != null)
-        {
-            reBufferMmap();
-        }
-        else
+        long position = current();
+        assert position < metadata.dataLength;
+
+        CompressionMetadata.Chunk chunk = metadata.chunkFor(position);
+
+        // only chunks that were read (and possibly checksummed) from disk are cached, hits skip both steps
+        if (chunkCache == null || !chunkCache.read(getPath(), chunk.offset, buffer))
         {
-            reBufferStandard();
+            if (chunkSegments != null)
+                reBufferMmap(chunk);
+            else
+                reBufferStandard(chunk);
+
+            if (chunkCache != null)
+                chunkCache.put(getPath(), chunk.offset, buffer);
         }
+
+        // buffer offset is always aligned
+        bufferOffset = position & ~(buffer.capacity() - 1);
+        buffer.position((int) (position - bufferOffset));
+        // the length() can be provided at construction time, to override the true (uncompressed) length of the file;
+        // this is permitted to occur within a compressed segment, so we truncate validBufferBytes if we cross the imposed length
+        if (bufferOffset + buffer.limit() > length())
+            buffer.limit((int)(length() - bufferOffset));
     }
 
     private int checksum(CompressionMetadata.Chunk chunk) throws IOException
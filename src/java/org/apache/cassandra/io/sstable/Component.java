@@ -53,6 +53,10 @@ public class Component
         CRC("CRC.db"),
         // holds SSTable Index Summary (sampling of Index component)
         SUMMARY("Summary.db"),
+        // trie of the row keys with pointers to their positions in the index file
+        PARTITION_INDEX("Partitions.db"),
+        // repair hash of every partition, used by validation instead of reading the partitions
+        PARTITION_HASHES("PartitionHashes.db"),
         // table of contents, stores the list of all components for the sstable
         TOC("TOC.txt"),
         // custom component, used by e.g. custom compaction strategy
@@ -82,6 +86,8 @@ public class Component
     public final static Component DIGEST = new Component(Type.DIGEST);
     public final static Component CRC = new Component(Type.CRC);
     public final static Component SUMMARY = new Component(Type.SUMMARY);
+    public final static Component PARTITION_INDEX = new Component(Type.PARTITION_INDEX);
+    public final static Component PARTITION_HASHES = new Component(Type.PARTITION_HASHES);
     public final static Component TOC = new Component(Type.TOC);
 
     public final Type type;
@@ -120,9 +126,16 @@ public class Component
     public static Pair<Descriptor,Component> fromFilename(File directory, String name)
     {
         Pair<Descriptor,String> path = Descriptor.fromFilename(directory, name);
+        return Pair.create(path.left, parse(path.right));
+    }
 
-        // parse the component suffix
-        Type type = Type.fromRepresentation(path.right);
+    /**
+     * @param name the component suffix of an sstable filename, as returned by {@link #name()}
+     * @return the (singleton, if it has one) component with that name
+     */
+    public static Component parse(String name)
+    {
+        Type type = Type.fromRepresentation(name);
         // build (or retrieve singleton for) the component object
         Component component;
         switch(type)
@@ -136,12 +149,12 @@ public class Component
             case CRC:               component = Component.CRC;                          break;
             case SUMMARY:           component = Component.SUMMARY;                      break;
             case TOC:               component = Component.TOC;                          break;
-            case CUSTOM:            component = new Component(Type.CUSTOM, path.right); break;
+            case CUSTOM:            component = new Component(Type.CUSTOM, name);       break;
             default:
                  throw new IllegalStateException();
         }
 
-        return Pair.create(path.left, component);
+        return component;
     }
 
     @Override
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.collect.AbstractIterator;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.PartitionColumns;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.util.RandomAccessReader;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.Murmur3Digest;
+
+/**
+ * The repair hash of every partition of an sstable, written by {@link PartitionHashesWriter}.
+ *
+ * The hash of a partition is the one a validation compaction computes for it when no other sstable has data for
+ * the partition and nothing in it is purged, so validation can use it instead of reading the partition. Whether
+ * that holds depends on the other sstables and on gcBefore, which is why each entry also records the smallest
+ * local deletion time of the partition: a partition with anything expiring or deleted before gcBefore has to be
+ * read and purged. The hashes are {@link Murmur3Digest}s, so they can't be used by a validation that has to hash
+ * partitions the way nodes older than {@link org.apache.cassandra.net.MessagingService#VERSION_31} do.
+ *
+ * The file starts with a digest of the table columns the hashes were computed with, followed by the entries:
+ *   [key length][key][hash][size (unsigned vint)][min local deletion time]
+ * then a summary of every {@link #SUMMARY_INTERVAL}th key and the position of its entry, and finally the position
+ * of the summary.
+ */
+public class PartitionHashes implements AutoCloseable
+{
+    static final int HASH_SIZE = Murmur3Digest.DIGEST_LENGTH;
+    static final int SUMMARY_INTERVAL = 128;
+
+    private final RandomAccessReader reader;
+    private final IPartitioner partitioner;
+    private final byte[] columnsDigest;
+    private final long entriesStart;
+    private final long entriesEnd;
+    private final List<DecoratedKey> summaryKeys;
+    private final long[] summaryPositions;
+
+    private PartitionHashes(RandomAccessReader reader,
+                            IPartitioner partitioner,
+                            byte[] columnsDigest,
+                            long entriesStart,
+                            long entriesEnd,
+                            List<DecoratedKey> summaryKeys,
+                            long[] summaryPositions)
+    {
+        this.reader = reader;
+        this.partitioner = partitioner;
+        this.columnsDigest = columnsDigest;
+        this.entriesStart = entriesStart;
+        this.entriesEnd = entriesEnd;
+        this.summaryKeys = summaryKeys;
+        this.summaryPositions = summaryPositions;
+    }
+
+    public static PartitionHashes open(String path, IPartitioner partitioner)
+    {
+        RandomAccessReader reader = RandomAccessReader.open(new File(path));
+        try
+        {
+            byte[] columnsDigest = new byte[HASH_SIZE];
+            reader.readFully(columnsDigest);
+            long entriesStart = reader.getFilePointer();
+
+            reader.seek(reader.length() - 8);
+            long entriesEnd = reader.readLong();
+            reader.seek(entriesEnd);
+            int count = reader.readInt();
+            List<DecoratedKey> summaryKeys = new ArrayList<>(count);
+            long[] summaryPositions = new long[count];
+            for (int i = 0; i < count; i++)
+            {
+                summaryKeys.add(partitioner.decorateKey(ByteBufferUtil.readWithShortLength(reader)));
+                summaryPositions[i] = reader.readLong();
+            }
+            return new PartitionHashes(reader, partitioner, columnsDigest, entriesStart, entriesEnd, summaryKeys, summaryPositions);
+        }
+        catch (IOException e)
+        {
+            reader.close();
+            throw new FSReadError(e, path);
+        }
+    }
+
+    /**
+     * @return whether the hashes were computed with the given table columns, which validation digests with every
+     * partition
+     */
+    public boolean isFor(PartitionColumns columns)
+    {
+        return Arrays.equals(columnsDigest, digest(columns));
+    }
+
+    /**
+     * @return the entries of the partitions within {@code range}, in partition order. The range must not wrap, but
+     * may end at the minimum token.
+     */
+    public Iterator<Entry> iterator(final Range<Token> range)
+    {
+        assert !range.isWrapAround() || range.right.isMinimum() : range;
+
+        // start from the last summarized key before the range
+        long start = entriesStart;
+        for (int i = 0; i < summaryKeys.size() && summaryKeys.get(i).getToken().compareTo(range.left) <= 0; i++)
+            start = summaryPositions[i];
+        reader.seek(start);
+
+        return new AbstractIterator<Entry>()
+        {
+            protected Entry computeNext()
+            {
+                try
+                {
+                    while (reader.getFilePointer() < entriesEnd)
+                    {
+                        DecoratedKey key = partitioner.decorateKey(ByteBufferUtil.readWithShortLength(reader));
+                        byte[] hash = new byte[HASH_SIZE];
+                        reader.readFully(hash);
+                        long size = reader.readUnsignedVInt();
+                        int minLocalDeletionTime = reader.readInt();
+
+                        if (range.contains(key.getToken()))
+                            return new Entry(key, hash, size, minLocalDeletionTime);
+                        if (!range.right.isMinimum() && key.getToken().compareTo(range.right) > 0)
+                            break;
+                    }
+                    return endOfData();
+                }
+                catch (IOException e)
+                {
+                    throw new FSReadError(e, reader.getPath());
+                }
+            }
+        };
+    }
+
+    public void close()
+    {
+        reader.close();
+    }
+
+    static byte[] digest(PartitionColumns columns)
+    {
+        MessageDigest digest = new Murmur3Digest();
+        columns.digest(digest);
+        return digest.digest();
+    }
+
+    public static class Entry
+    {
+        public final DecoratedKey key;
+        public final byte[] hash;
+        public final long size;
+        public final int minLocalDeletionTime;
+
+        Entry(DecoratedKey key, byte[] hash, long size, int minLocalDeletionTime)
+        {
+            this.key = key;
+            this.hash = hash;
+            this.size = size;
+            this.minLocalDeletionTime = minLocalDeletionTime;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.LivenessInfo;
+import org.apache.cassandra.db.PartitionColumns;
+import org.apache.cassandra.db.partitions.PartitionStatisticsCollector;
+import org.apache.cassandra.db.rows.*;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.FileMark;
+import org.apache.cassandra.io.util.SequentialWriter;
+import org.apache.cassandra.repair.Validator;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.Murmur3Digest;
+import org.apache.cassandra.utils.concurrent.Transactional;
+
+import static org.apache.cassandra.io.sstable.PartitionHashes.*;
+
+/**
+ * Writes {@link PartitionHashes} for the partitions appended to an sstable, hashing each partition as it is written.
+ */
+public class PartitionHashesWriter extends Transactional.AbstractTransactional implements Transactional
+{
+    private final SequentialWriter writer;
+    private final PartitionColumns columns;
+
+    private final List<ByteBuffer> summaryKeys = new ArrayList<>();
+    private final List<Long> summaryPositions = new ArrayList<>();
+    private long keyCount;
+
+    private FileMark mark;
+    private long markedKeyCount;
+
+    // the partition being written
+    private Validator.CountingDigest digest;
+    private final MinDeletionTimeCollector minDeletionTime = new MinDeletionTimeCollector();
+
+    public PartitionHashesWriter(String path, PartitionColumns columns)
+    {
+        this.writer = SequentialWriter.open(new File(path));
+        this.columns = columns;
+        try
+        {
+            writer.write(PartitionHashes.digest(columns));
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+    }
+
+    /**
+     * Returns the given partition, hashing what is read from it. The hash is added by {@link #append(DecoratedKey)}
+     * once the partition has been fully consumed.
+     */
+    public UnfilteredRowIterator hashing(UnfilteredRowIterator partition)
+    {
+        // this mirrors UnfilteredRowIterators.digest() over what a validation compaction reads back from the sstable
+        digest = new Validator.CountingDigest(new Murmur3Digest());
+        digest.update(partition.partitionKey().getKey().duplicate());
+        partition.partitionLevelDeletion().digest(digest);
+        columns.digest(digest);
+        FBUtilities.updateWithBoolean(digest, false);
+        partition.staticRow().digest(digest);
+
+        minDeletionTime.reset();
+        minDeletionTime.update(partition.partitionLevelDeletion());
+        if (!partition.staticRow().isEmpty())
+            Rows.collectStats(partition.staticRow(), minDeletionTime);
+
+        return new AlteringUnfilteredRowIterator(partition)
+        {
+            @Override
+            protected Row computeNext(Row row)
+            {
+                row.digest(digest);
+                Rows.collectStats(row, minDeletionTime);
+                return row;
+            }
+
+            @Override
+            protected RangeTombstoneMarker computeNext(RangeTombstoneMarker marker)
+            {
+                marker.digest(digest);
+                if (marker.isBoundary())
+                {
+                    RangeTombstoneBoundaryMarker boundary = (RangeTombstoneBoundaryMarker) marker;
+                    minDeletionTime.update(boundary.endDeletionTime());
+                    minDeletionTime.update(boundary.startDeletionTime());
+                }
+                else
+                {
+                    minDeletionTime.update(((RangeTombstoneBoundMarker) marker).deletionTime());
+                }
+                return marker;
+            }
+        };
+    }
+
+    public void append(DecoratedKey key)
+    {
+        assert digest != null : "Partition " + key + " was not hashed";
+        try
+        {
+            long position = writer.getFilePointer();
+            if (keyCount % SUMMARY_INTERVAL == 0)
+            {
+                summaryKeys.add(key.getKey());
+                summaryPositions.add(position);
+            }
+            ByteBufferUtil.writeWithShortLength(key.getKey(), writer.stream);
+            long size = digest.count();
+            writer.write(digest.digest());
+            writer.stream.writeUnsignedVInt(size);
+            writer.stream.writeInt(minDeletionTime.min);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+        digest = null;
+        keyCount++;
+    }
+
+    public void mark()
+    {
+        mark = writer.mark();
+        markedKeyCount = keyCount;
+    }
+
+    public void resetAndTruncate()
+    {
+        writer.resetAndTruncate(mark);
+        keyCount = markedKeyCount;
+        int summarySize = (int) ((keyCount + SUMMARY_INTERVAL - 1) / SUMMARY_INTERVAL);
+        while (summaryKeys.size() > summarySize)
+        {
+            summaryKeys.remove(summaryKeys.size() - 1);
+            summaryPositions.remove(summaryPositions.size() - 1);
+        }
+        digest = null;
+    }
+
+    public String getPath()
+    {
+        return writer.getPath();
+    }
+
+    public void deleteFile(boolean val)
+    {
+        writer.deleteFile(val);
+    }
+
+    protected void doPrepare()
+    {
+        try
+        {
+            long summaryPosition = writer.getFilePointer();
+            writer.stream.writeInt(summaryKeys.size());
+            for (int i = 0; i < summaryKeys.size(); i++)
+            {
+                ByteBufferUtil.writeWithShortLength(summaryKeys.get(i), writer.stream);
+                writer.stream.writeLong(summaryPositions.get(i));
+            }
+            writer.stream.writeLong(summaryPosition);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+        writer.prepareToCommit();
+    }
+
+    protected Throwable doCommit(Throwable accumulate)
+    {
+        return writer.commit(accumulate);
+    }
+
+    protected Throwable doAbort(Throwable accumulate)
+    {
+        return writer.abort(accumulate);
+    }
+
+    /**
+     * Tracks the smallest local deletion time of a partition: that of its tombstones and of its expiring data,
+     * which is what decides whether validation purges anything from it.
+     */
+    private static class MinDeletionTimeCollector implements PartitionStatisticsCollector
+    {
+        int min;
+
+        void reset()
+        {
+            min = Integer.MAX_VALUE;
+        }
+
+        public void update(LivenessInfo info)
+        {
+            min = Math.min(min, info.localExpirationTime());
+        }
+
+        public void update(DeletionTime deletionTime)
+        {
+            min = Math.min(min, deletionTime.localDeletionTime());
+        }
+
+        public void update(Cell cell)
+        {
+            min = Math.min(min, cell.localDeletionTime());
+        }
+
+        public void updateColumnSetPerRow(long columnSetInRow)
+        {
+        }
+
+        public void updateHasLegacyCounterShards(boolean hasLegacyCounterShards)
+        {
+        }
+    }
+}
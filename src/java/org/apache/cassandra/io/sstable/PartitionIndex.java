@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.JVMStabilityInspector;
+import org.apache.cassandra.utils.concurrent.RefCounted;
+import org.apache.cassandra.utils.concurrent.SharedCloseableImpl;
+
+/**
+ * A memory mapped, byte-comparable trie mapping partition keys to the position of their entry in the primary index,
+ * written by {@link PartitionIndexBuilder}.
+ *
+ * Only the shortest prefix that distinguishes a key from its neighbours is stored, so a lookup walks at most a
+ * handful of nodes and yields a candidate position; the caller must check the key stored at that position, which
+ * it has to read anyway to get the index entry. A key that is not in the sstable either falls off the trie or
+ * lands on another key's entry.
+ *
+ * Nodes are written children first, so the root is the last node of the file, and never cross a page boundary:
+ *   [flags][childCount - 1]?[payload]?[childCount labels][childCount pointers]
+ * where flags hold whether the node has a payload and children, and the byte widths of the payload and pointers.
+ * Child pointers are stored as the distance back from the node. The file ends with the root position and the
+ * number of keys.
+ *
+ * Keys are the token's big-endian bytes with the sign bit flipped followed by the key itself, which sort in
+ * partition order for the Murmur3Partitioner; sstables of other partitioners don't get this index.
+ */
+public class PartitionIndex extends SharedCloseableImpl
+{
+    private static final Logger logger = LoggerFactory.getLogger(PartitionIndex.class);
+
+    public static final long NOT_FOUND = -1;
+
+    static final int PAGE_SIZE = 4096;
+    static final int FOOTER_SIZE = 16;
+
+    static final int HAS_PAYLOAD = 0x80;
+    static final int HAS_CHILDREN = 0x08;
+    static final int PAYLOAD_WIDTH_SHIFT = 4;
+    static final int WIDTH_MASK = 0x07;
+
+    // nodes never cross a page boundary, so they can't cross a segment boundary either
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private static final int TOKEN_SIZE = 8;
+
+    private final ByteBuffer[] segments;
+    private final long root;
+    private final long keyCount;
+
+    private PartitionIndex(ByteBuffer[] segments, long root, long keyCount, String path)
+    {
+        super(new Cleanup(segments, path));
+        this.segments = segments;
+        this.root = root;
+        this.keyCount = keyCount;
+    }
+
+    private PartitionIndex(PartitionIndex copy)
+    {
+        super(copy);
+        this.segments = copy.segments;
+        this.root = copy.root;
+        this.keyCount = copy.keyCount;
+    }
+
+    public static boolean supports(IPartitioner partitioner)
+    {
+        return partitioner instanceof Murmur3Partitioner;
+    }
+
+    public static PartitionIndex load(String path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ))
+        {
+            long length = channel.size();
+            if (length < FOOTER_SIZE)
+                throw new IOException(String.format("Partition index %s is truncated (%d bytes)", path, length));
+
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE);
+            while (footer.hasRemaining())
+            {
+                if (channel.read(footer, length - FOOTER_SIZE + footer.position()) < 0)
+                    throw new IOException("Unexpected end of partition index " + path);
+            }
+            footer.flip();
+            long root = footer.getLong();
+            long keyCount = footer.getLong();
+
+            long nodesLength = length - FOOTER_SIZE;
+            if (root < 0 || root >= nodesLength)
+                throw new IOException(String.format("Invalid root position %d in partition index %s", root, path));
+
+            ByteBuffer[] segments = new ByteBuffer[(int) ((nodesLength + SEGMENT_MASK) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++)
+            {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(nodesLength - start, 1L << SEGMENT_SHIFT));
+            }
+            return new PartitionIndex(segments, root, keyCount, path);
+        }
+    }
+
+    /**
+     * @return the primary index position of the only key of this sstable that can be equal to the given key,
+     * or NOT_FOUND if no key can be
+     */
+    public long get(DecoratedKey key)
+    {
+        byte[] bytes = encode(key);
+        long candidate = NOT_FOUND;
+        long node = root;
+        for (int depth = 0 ; ; depth++)
+        {
+            ByteBuffer segment = segments[(int) (node >>> SEGMENT_SHIFT)];
+            int offset = (int) (node & SEGMENT_MASK);
+            int flags = segment.get(offset++) & 0xFF;
+
+            int childCount = 0;
+            if ((flags & HAS_CHILDREN) != 0)
+                childCount = (segment.get(offset++) & 0xFF) + 1;
+
+            if ((flags & HAS_PAYLOAD) != 0)
+            {
+                int width = ((flags >>> PAYLOAD_WIDTH_SHIFT) & WIDTH_MASK) + 1;
+                candidate = readUnsigned(segment, offset, width);
+                offset += width;
+            }
+
+            if (childCount == 0 || depth == bytes.length)
+                return candidate;
+
+            int child = findLabel(segment, offset, childCount, bytes[depth] & 0xFF);
+            if (child < 0)
+                return candidate;
+
+            int width = (flags & WIDTH_MASK) + 1;
+            node -= readUnsigned(segment, offset + childCount + child * width, width);
+        }
+    }
+
+    private static int findLabel(ByteBuffer segment, int offset, int count, int label)
+    {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int midLabel = segment.get(offset + mid) & 0xFF;
+            if (midLabel < label)
+                low = mid + 1;
+            else if (midLabel > label)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private static long readUnsigned(ByteBuffer segment, int offset, int width)
+    {
+        long value = 0;
+        for (int i = 0; i < width; i++)
+            value = (value << 8) | (segment.get(offset + i) & 0xFF);
+        return value;
+    }
+
+    /**
+     * @return the number of keys in the index
+     */
+    public long size()
+    {
+        return keyCount;
+    }
+
+    public PartitionIndex sharedCopy()
+    {
+        return new PartitionIndex(this);
+    }
+
+    // flipping the sign bit makes the big-endian bytes of a signed long compare as unsigned bytes
+    static byte[] encode(DecoratedKey key)
+    {
+        ByteBuffer bytes = key.getKey();
+        byte[] encoded = new byte[TOKEN_SIZE + bytes.remaining()];
+        long value = (Long) key.getToken().getTokenValue() ^ Long.MIN_VALUE;
+        for (int i = TOKEN_SIZE - 1 ; i >= 0 ; i--)
+        {
+            encoded[i] = (byte) value;
+            value >>>= 8;
+        }
+        ByteBufferUtil.arrayCopy(bytes, bytes.position(), encoded, TOKEN_SIZE, bytes.remaining());
+        return encoded;
+    }
+
+    private static final class Cleanup implements RefCounted.Tidy
+    {
+        final ByteBuffer[] segments;
+        final String path;
+
+        Cleanup(ByteBuffer[] segments, String path)
+        {
+            this.segments = segments;
+            this.path = path;
+        }
+
+        public void tidy()
+        {
+            if (!FileUtils.isCleanerAvailable())
+                return;
+
+            try
+            {
+                for (ByteBuffer segment : segments)
+                    FileUtils.clean(segment);
+            }
+            catch (Exception e)
+            {
+                JVMStabilityInspector.inspectThrowable(e);
+                logger.error("Error while unmapping partition index {}", path, e);
+            }
+        }
+
+        public String name()
+        {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.io.util.SequentialWriter;
+import org.apache.cassandra.utils.concurrent.Transactional;
+
+import static org.apache.cassandra.io.sstable.PartitionIndex.*;
+
+/**
+ * Writes a {@link PartitionIndex} from keys added in partition order.
+ *
+ * Only the nodes on the path of the last key are kept in memory: a key's unique prefix is known once the
+ * following key is seen, and a node is written as soon as a key diverges from its path, so the writer needs
+ * memory proportional to the key length, not to the number of keys.
+ */
+public class PartitionIndexBuilder extends Transactional.AbstractTransactional implements Transactional
+{
+    private static final int MAX_NODE_SIZE = 2 + 8 + 256 + 256 * 8;
+
+    private final SequentialWriter writer;
+    private final byte[] nodeBuffer = new byte[MAX_NODE_SIZE];
+
+    // the nodes on the path of the last key added to the trie, indexed by depth
+    private final List<Node> path = new ArrayList<>();
+    private byte[] lastAdded = new byte[0];
+    private int lastAddedLength = 0;
+
+    // the key preceding the pending one, and the pending key which is added to the trie once we know its successor
+    private byte[] previous = new byte[0];
+    private byte[] pending;
+    private long pendingPosition;
+    private byte[] markedPending;
+    private long keyCount;
+
+    private boolean complete;
+
+    public PartitionIndexBuilder(String path)
+    {
+        this.writer = SequentialWriter.open(new File(path));
+        node(0).reset();
+    }
+
+    public void add(DecoratedKey key, long indexPosition)
+    {
+        byte[] bytes = encode(key);
+        if (pending != null)
+            addPending(lcp(pending, bytes));
+        pending = bytes;
+        pendingPosition = indexPosition;
+    }
+
+    public void mark()
+    {
+        markedPending = pending;
+    }
+
+    /**
+     * Forgets the key added since the last call to {@link #mark()}, if any. The marked key was then already added
+     * to the trie with a longer prefix than necessary, which is harmless.
+     */
+    public void resetAndTruncate()
+    {
+        if (pending != markedPending)
+            pending = null;
+    }
+
+    /**
+     * Writes the remaining nodes and the footer. Nothing can be added afterwards.
+     */
+    public void complete()
+    {
+        if (complete)
+            return;
+        complete = true;
+
+        if (pending != null)
+            addPending(-1);
+
+        try
+        {
+            for (int depth = lastAddedLength; depth > 0; depth--)
+                node(depth - 1).addChild(lastAdded[depth - 1], write(node(depth)));
+            long root = write(node(0));
+            writer.stream.writeLong(root);
+            writer.stream.writeLong(keyCount);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+        writer.sync();
+    }
+
+    public String getPath()
+    {
+        return writer.getPath();
+    }
+
+    public void deleteFile(boolean val)
+    {
+        writer.deleteFile(val);
+    }
+
+    private void addPending(int lcpWithNext)
+    {
+        byte[] key = pending;
+        int prefixLength = Math.min(key.length, Math.max(lcp(previous, key), lcpWithNext) + 1);
+        int common = Math.min(prefixLength, lcp(lastAdded, lastAddedLength, key, prefixLength));
+        assert common < prefixLength : "Keys must be added in order and only once";
+
+        try
+        {
+            for (int depth = lastAddedLength; depth > common; depth--)
+                node(depth - 1).addChild(lastAdded[depth - 1], write(node(depth)));
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, writer.getPath());
+        }
+
+        for (int depth = common + 1; depth <= prefixLength; depth++)
+            node(depth).reset();
+        node(prefixLength).payload = pendingPosition;
+
+        lastAdded = key;
+        lastAddedLength = prefixLength;
+        previous = key;
+        pending = null;
+        keyCount++;
+    }
+
+    private Node node(int depth)
+    {
+        while (path.size() <= depth)
+            path.add(new Node());
+        return path.get(depth);
+    }
+
+    private long write(Node node) throws IOException
+    {
+        long position = writer.getFilePointer();
+        int size = node.serialize(nodeBuffer, position);
+        if (position / PAGE_SIZE != (position + size - 1) / PAGE_SIZE)
+        {
+            // pad so that the node doesn't straddle two pages
+            long padding = PAGE_SIZE - position % PAGE_SIZE;
+            writer.write(new byte[(int) padding]);
+            position += padding;
+            size = node.serialize(nodeBuffer, position);
+        }
+        writer.write(nodeBuffer, 0, size);
+        return position;
+    }
+
+    private static int lcp(byte[] left, byte[] right)
+    {
+        return lcp(left, left.length, right, right.length);
+    }
+
+    private static int lcp(byte[] left, int leftLength, byte[] right, int rightLength)
+    {
+        int length = Math.min(leftLength, rightLength);
+        for (int i = 0; i < length; i++)
+        {
+            if (left[i] != right[i])
+                return i;
+        }
+        return length;
+    }
+
+    private static int width(long value)
+    {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 7) / 8);
+    }
+
+    private static int writeUnsigned(byte[] buffer, int offset, long value, int width)
+    {
+        for (int i = width - 1; i >= 0; i--)
+        {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+        return offset + width;
+    }
+
+    private static final class Node
+    {
+        final byte[] labels = new byte[256];
+        final long[] children = new long[256];
+        int childCount;
+        long payload;
+
+        void reset()
+        {
+            childCount = 0;
+            payload = NOT_FOUND;
+        }
+
+        void addChild(byte label, long position)
+        {
+            labels[childCount] = label;
+            children[childCount++] = position;
+        }
+
+        int serialize(byte[] buffer, long position)
+        {
+            int flags = 0;
+            int offset = 1;
+            if (childCount > 0)
+            {
+                flags |= HAS_CHILDREN;
+                buffer[offset++] = (byte) (childCount - 1);
+            }
+            if (payload != NOT_FOUND)
+            {
+                int width = width(payload);
+                flags |= HAS_PAYLOAD | ((width - 1) << PAYLOAD_WIDTH_SHIFT);
+                offset = writeUnsigned(buffer, offset, payload, width);
+            }
+            if (childCount > 0)
+            {
+                // children are always written before their parent, and the first one is the furthest back
+                int width = width(position - children[0]);
+                flags |= width - 1;
+                System.arraycopy(labels, 0, buffer, offset, childCount);
+                offset += childCount;
+                for (int i = 0; i < childCount; i++)
+                    offset = writeUnsigned(buffer, offset, position - children[i], width);
+            }
+            buffer[0] = (byte) flags;
+            return offset;
+        }
+    }
+
+    protected void doPrepare()
+    {
+        complete();
+        writer.prepareToCommit();
+    }
+
+    protected Throwable doCommit(Throwable accumulate)
+    {
+        return writer.commit(accumulate);
+    }
+
+    protected Throwable doAbort(Throwable accumulate)
+    {
+        return writer.abort(accumulate);
+    }
+}
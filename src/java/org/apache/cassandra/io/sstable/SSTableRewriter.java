@@ -68,6 +68,7 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
     private final List<SSTableWriter> writers = new ArrayList<>();
     private final boolean isOffline; // true for operations that are performed without Cassandra running (prevents updates of Tracker)
     private boolean keepOriginals; // true if we do not want to obsolete the originals
+    private boolean sharedTransaction; // true if the transaction is prepared and committed by its owner, not by us
 
     private SSTableWriter writer;
     private Map<DecoratedKey, RowIndexEntry> cachedKeys = new HashMap<>();
@@ -104,6 +105,18 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
         return this;
     }
 
+    /**
+     * Marks this rewriter as one of several writing into the same transaction, e.g. one per token sub-range of a
+     * compaction: it then only prepares, commits or aborts its own writers, and its owner drives the transaction.
+     * Early opening must be disabled, since moving the starts of the originals is not safe for concurrent rewriters.
+     */
+    public SSTableRewriter sharedTransaction(boolean val)
+    {
+        assert !val || preemptiveOpenInterval == Long.MAX_VALUE;
+        sharedTransaction = val;
+        return this;
+    }
+
     private static long calculateOpenInterval(boolean shouldOpenEarly)
     {
         long interval = DatabaseDescriptor.getSSTablePreempiveOpenIntervalInMB() * (1L << 20);
@@ -187,7 +200,8 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
         for (SSTableWriter writer : writers)
             accumulate = writer.abort(accumulate);
         // abort the lifecycle transaction
-        accumulate = transaction.abort(accumulate);
+        if (!sharedTransaction)
+            accumulate = transaction.abort(accumulate);
         return accumulate;
     }
 
@@ -196,7 +210,8 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
         for (SSTableWriter writer : writers)
             accumulate = writer.commit(accumulate);
 
-        accumulate = transaction.commit(accumulate);
+        if (!sharedTransaction)
+            accumulate = transaction.commit(accumulate);
         return accumulate;
     }
 
@@ -361,6 +376,10 @@ public class SSTableRewriter extends Transactional.AbstractTransactional impleme
             transaction.update(reader, false);
             preparedForCommit.add(reader);
         }
+
+        if (sharedTransaction)
+            return;
+
         transaction.checkpoint();
 
         if (throwLate)
@@ -189,6 +189,8 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
     protected SegmentedFile dfile;
     protected IndexSummary indexSummary;
     protected IFilter bf;
+    // trie of the partition keys, only present for sstables written in a format that has one
+    protected PartitionIndex partitionIndex;
 
     protected final RowIndexEntry.IndexSerializer rowIndexEntrySerializer;
 
@@ -559,12 +561,33 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                                       StatsMetadata sstableMetadata,
                                       OpenReason openReason,
                                       SerializationHeader header)
+    {
+        return internalOpen(desc, components, metadata, ifile, dfile, isummary, bf, null, maxDataAge, sstableMetadata, openReason, header);
+    }
+
+    /**
+     * Open a RowIndexedReader which already has its state initialized (by SSTableWriter), including its
+     * partition index if it has one.
+     */
+    public static SSTableReader internalOpen(Descriptor desc,
+                                      Set<Component> components,
+                                      CFMetaData metadata,
+                                      SegmentedFile ifile,
+                                      SegmentedFile dfile,
+                                      IndexSummary isummary,
+                                      IFilter bf,
+                                      PartitionIndex partitionIndex,
+                                      long maxDataAge,
+                                      StatsMetadata sstableMetadata,
+                                      OpenReason openReason,
+                                      SerializationHeader header)
     {
         assert desc != null && ifile != null && dfile != null && isummary != null && bf != null && sstableMetadata != null;
 
         SSTableReader reader = internalOpen(desc, components, metadata, maxDataAge, sstableMetadata, openReason, header);
 
         reader.bf = bf;
+        reader.partitionIndex = partitionIndex;
         reader.ifile = ifile;
         reader.dfile = dfile;
         reader.indexSummary = isummary;
@@ -683,7 +706,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         {
             // bf is enabled and fp chance matches the currently configured value.
             load(false, true);
-            loadBloomFilter(descriptor.version.hasOldBfHashOrder());
+            loadBloomFilter(descriptor.version.hasOldBfHashOrder(), descriptor.version.hasBlockedBloomFilter());
         }
     }
 
@@ -692,11 +715,11 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
      *
      * @throws IOException
      */
-    private void loadBloomFilter(boolean oldBfHashOrder) throws IOException
+    private void loadBloomFilter(boolean oldBfHashOrder, boolean blocked) throws IOException
     {
         try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(descriptor.filenameFor(Component.FILTER)))))
         {
-            bf = FilterFactory.deserialize(stream, true, oldBfHashOrder);
+            bf = FilterFactory.deserialize(stream, true, oldBfHashOrder, blocked);
         }
     }
 
@@ -721,6 +744,9 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
             if (components.contains(Component.PRIMARY_INDEX))
                 ifile = ibuilder.buildIndex(descriptor, indexSummary);
 
+            if (components.contains(Component.PARTITION_INDEX) && ifile != null)
+                partitionIndex = PartitionIndex.load(descriptor.filenameFor(Component.PARTITION_INDEX));
+
             dfile = dbuilder.buildData(descriptor, sstableMetadata);
 
             // Check for an index summary that was downsampled even though the serialization format doesn't support
@@ -768,6 +794,12 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                 indexSummary = null;
             }
 
+            if (partitionIndex != null)
+            {
+                partitionIndex.close();
+                partitionIndex = null;
+            }
+
             throw t;
         }
     }
@@ -796,7 +828,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                     : estimateRowsFromIndex(primaryIndex); // statistics is supposed to be optional
 
             if (recreateBloomFilter)
-                bf = FilterFactory.getFilter(estimatedKeys, metadata.params.bloomFilterFpChance, true, descriptor.version.hasOldBfHashOrder());
+                bf = FilterFactory.getFilter(estimatedKeys, metadata.params.bloomFilterFpChance, true, descriptor.version.hasOldBfHashOrder(), descriptor.version.hasBlockedBloomFilter());
 
             try (IndexSummaryBuilder summaryBuilder = summaryLoaded ? null : new IndexSummaryBuilder(estimatedKeys, metadata.params.minIndexInterval, samplingLevel))
             {
@@ -1061,6 +1093,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                                                  dfile.sharedCopy(),
                                                  newSummary,
                                                  bf.sharedCopy(),
+                                                 partitionIndex != null ? partitionIndex.sharedCopy() : null,
                                                  maxDataAge,
                                                  sstableMetadata,
                                                  reason,
@@ -1742,6 +1775,11 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return dfile.getSegment(position);
     }
 
+    public FileDataInput getIndexFileDataInput(long position)
+    {
+        return ifile.getSegment(position);
+    }
+
     /**
      * Tests if the sstable contains data newer than the given age param (in localhost currentMilli time).
      * This works in conjunction with maxDataAge which is an upper bound on the create of data in this sstable.
@@ -1946,7 +1984,9 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
     public RandomAccessReader openDataReader(RateLimiter limiter)
     {
         assert limiter != null;
-        return dfile.createThrottledReader(limiter);
+        return DatabaseDescriptor.getCompactionDirectIO()
+               ? dfile.createThrottledDirectReader(limiter)
+               : dfile.createThrottledReader(limiter);
     }
 
     public RandomAccessReader openDataReader()
@@ -1961,6 +2001,16 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         return null;
     }
 
+    /**
+     * @return the partition hashes of this sstable, or null if it was written without them
+     */
+    public PartitionHashes openPartitionHashes()
+    {
+        if (!components.contains(Component.PARTITION_HASHES))
+            return null;
+        return PartitionHashes.open(descriptor.filenameFor(Component.PARTITION_HASHES), getPartitioner());
+    }
+
     /**
      * @param component component to get timestamp.
      * @return last modified time for given component. 0 if given component does not exist or IO error occurs.
@@ -2069,6 +2119,8 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         ifile.addTo(identities);
         bf.addTo(identities);
         indexSummary.addTo(identities);
+        if (partitionIndex != null)
+            partitionIndex.addTo(identities);
 
     }
 
@@ -2087,6 +2139,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
         private final CFMetaData metadata;
         private IFilter bf;
         private IndexSummary summary;
+        private PartitionIndex partitionIndex;
 
         private SegmentedFile dfile;
         private SegmentedFile ifile;
@@ -2105,6 +2158,7 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
             this.setup = true;
             this.bf = reader.bf;
             this.summary = reader.indexSummary;
+            this.partitionIndex = reader.partitionIndex;
             this.dfile = reader.dfile;
             this.ifile = reader.ifile;
             // get a new reference to the shared descriptor-type tidy
@@ -2146,6 +2200,8 @@ public abstract class SSTableReader extends SSTable implements SelfRefCounted<SS
                         bf.close();
                     if (summary != null)
                         summary.close();
+                    if (partitionIndex != null)
+                        partitionIndex.close();
                     if (runOnClose != null)
                         runOnClose.run();
                     if (dfile != null)
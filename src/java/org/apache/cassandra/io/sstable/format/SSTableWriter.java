@@ -27,6 +27,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Sets;
 
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.RowIndexEntry;
 import org.apache.cassandra.db.SerializationHeader;
@@ -34,6 +35,7 @@ import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.PartitionIndex;
 import org.apache.cassandra.io.sstable.SSTable;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
 import org.apache.cassandra.io.sstable.metadata.MetadataComponent;
@@ -75,7 +77,7 @@ public abstract class SSTableWriter extends SSTable implements Transactional
                             MetadataCollector metadataCollector, 
                             SerializationHeader header)
     {
-        super(descriptor, components(metadata), metadata);
+        super(descriptor, components(descriptor, metadata), metadata);
         this.keyCount = keyCount;
         this.repairedAt = repairedAt;
         this.metadataCollector = metadataCollector;
@@ -124,7 +126,7 @@ public abstract class SSTableWriter extends SSTable implements Transactional
         return create(Descriptor.fromFilename(filename), keyCount, repairedAt, 0, header, txn);
     }
 
-    private static Set<Component> components(CFMetaData metadata)
+    private static Set<Component> components(Descriptor descriptor, CFMetaData metadata)
     {
         Set<Component> components = new HashSet<Component>(Arrays.asList(Component.DATA,
                 Component.PRIMARY_INDEX,
@@ -136,6 +138,12 @@ public abstract class SSTableWriter extends SSTable implements Transactional
         if (metadata.params.bloomFilterFpChance < 1.0)
             components.add(Component.FILTER);
 
+        if (descriptor.version.hasPartitionIndex() && PartitionIndex.supports(metadata.partitioner))
+            components.add(Component.PARTITION_INDEX);
+
+        if (DatabaseDescriptor.getRepairPartitionHashesEnabled() && !metadata.isIndex())
+            components.add(Component.PARTITION_HASHES);
+
         if (metadata.params.compression.isEnabled())
         {
             components.add(Component.COMPRESSION_INFO);
@@ -62,6 +62,12 @@ public abstract class Version
 
     public abstract boolean hasOldBfHashOrder();
 
+    public abstract boolean hasBlockedBloomFilter();
+
+    public abstract boolean hasPartitionIndex();
+
+    public abstract boolean hasIndexInfoOffsets();
+
     public String getVersion()
     {
         return version;
@@ -110,8 +110,12 @@ public class BigFormat implements SSTableFormat
     // we always incremented the major version.
     static class BigVersion extends Version
     {
-        public static final String current_version = "ma";
+        public static final String current_version = "xc";
         public static final String earliest_supported_version = "jb";
+        // The versions after "ma" that are specific to this build use their own major version, so that upstream
+        // nodes, which accept any version of their own major versions, refuse them rather than reading them as the
+        // unrelated changes upstream made under the same letters, and so that upstream sstables aren't taken for them.
+        private static final char last_upstream_major_version = 'm';
 
         // jb (2.0.1): switch from crc32 to adler32 for compression checksums
         //             checksum the compressed data
@@ -122,6 +126,9 @@ public class BigFormat implements SSTableFormat
         // la (2.2.0): new file name format
         // ma (3.0.0): swap bf hash order
         //             store rows natively
+        // xa: based on ma, cache line blocked bloom filter
+        // xb: trie partition index (Partitions.db), for the Murmur3Partitioner
+        // xc: offsets of the column index entries, for binary search in the index file
 
         private final boolean isLatestVersion;
         private final boolean hasSamplingLevel;
@@ -137,6 +144,9 @@ public class BigFormat implements SSTableFormat
          * have no 'static' bits caused by using the same upper bits for both bloom filter and token distribution.
          */
         private final boolean hasOldBfHashOrder;
+        private final boolean hasBlockedBloomFilter;
+        private final boolean hasPartitionIndex;
+        private final boolean hasIndexInfoOffsets;
 
         BigVersion(String version)
         {
@@ -153,6 +163,9 @@ public class BigFormat implements SSTableFormat
 
             hasOldBfHashOrder = version.compareTo("ma") < 0;
             storeRows = version.compareTo("ma") >= 0;
+            hasBlockedBloomFilter = version.compareTo("xa") >= 0;
+            hasPartitionIndex = version.compareTo("xb") >= 0;
+            hasIndexInfoOffsets = version.compareTo("xc") >= 0;
             correspondingMessagingVersion = storeRows
                                           ? MessagingService.VERSION_30
                                           : MessagingService.VERSION_21;
@@ -200,6 +213,24 @@ public class BigFormat implements SSTableFormat
             return hasOldBfHashOrder;
         }
 
+        @Override
+        public boolean hasBlockedBloomFilter()
+        {
+            return hasBlockedBloomFilter;
+        }
+
+        @Override
+        public boolean hasPartitionIndex()
+        {
+            return hasPartitionIndex;
+        }
+
+        @Override
+        public boolean hasIndexInfoOffsets()
+        {
+            return hasIndexInfoOffsets;
+        }
+
         @Override
         public boolean hasNewFileName()
         {
@@ -221,13 +252,14 @@ public class BigFormat implements SSTableFormat
         @Override
         public boolean isCompatible()
         {
-            return version.compareTo(earliest_supported_version) >= 0 && version.charAt(0) <= current_version.charAt(0);
+            return version.compareTo(earliest_supported_version) >= 0
+                   && (version.charAt(0) <= last_upstream_major_version || version.charAt(0) == current_version.charAt(0));
         }
 
         @Override
         public boolean isCompatibleForStreaming()
         {
-            return isCompatible() && version.charAt(0) == current_version.charAt(0);
+            return isCompatible() && (version.charAt(0) == last_upstream_major_version || version.charAt(0) == current_version.charAt(0));
         }
     }
 }
@@ -32,6 +32,7 @@ import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.CorruptSSTableException;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.PartitionIndex;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.metadata.StatsMetadata;
 import org.apache.cassandra.io.util.FileDataInput;
@@ -162,6 +163,9 @@ public class BigTableReader extends SSTableReader
             return null;
         }
 
+        if (op == Operator.EQ && partitionIndex != null && ifile != null)
+            return getExactPosition((DecoratedKey) key, updateCacheAndStats);
+
         int binarySearchResult = indexSummary.binarySearch(key);
         long sampledPosition = getIndexScanPositionFromBinarySearchResult(binarySearchResult, indexSummary);
         int sampledIndex = getIndexSummaryIndexFromBinarySearchResult(binarySearchResult);
@@ -238,7 +242,7 @@ public class BigTableReader extends SSTableReader
                         }
                         if (op == Operator.EQ && updateCacheAndStats)
                             bloomFilterTracker.addTruePositive();
-                        Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsIndex().size(), descriptor.generation);
+                        Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsCount(), descriptor.generation);
                         return indexEntry;
                     }
 
@@ -258,5 +262,44 @@ public class BigTableReader extends SSTableReader
         return null;
     }
 
+    /**
+     * Looks the key up in the partition index trie, which points straight at the only primary index entry that can
+     * match, instead of scanning the primary index from the nearest summary sample.
+     */
+    private RowIndexEntry<?> getExactPosition(DecoratedKey key, boolean updateCacheAndStats)
+    {
+        long indexPosition = partitionIndex.get(key);
+        if (indexPosition != PartitionIndex.NOT_FOUND)
+        {
+            String path = null;
+            try (FileDataInput in = ifile.getSegment(indexPosition))
+            {
+                path = in.getPath();
+                ByteBuffer indexKey = ByteBufferUtil.readWithShortLength(in);
+                if (indexKey.equals(key.getKey()))
+                {
+                    RowIndexEntry<?> indexEntry = rowIndexEntrySerializer.deserialize(in);
+                    if (updateCacheAndStats)
+                    {
+                        cacheKey(key, indexEntry);
+                        bloomFilterTracker.addTruePositive();
+                    }
+                    Tracing.trace("Partition index with {} entries found for sstable {}", indexEntry.columnsCount(), descriptor.generation);
+                    return indexEntry;
+                }
+            }
+            catch (IOException e)
+            {
+                markSuspect();
+                throw new CorruptSSTableException(e, path);
+            }
+        }
+
+        if (updateCacheAndStats)
+            bloomFilterTracker.addFalsePositive();
+        Tracing.trace("Partition index lookup complete (bloom filter false positive) for sstable {}", descriptor.generation);
+        return null;
+    }
+
 
 }
@@ -18,9 +18,12 @@
 package org.apache.cassandra.io.sstable.format.big;
 
 import java.io.*;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.compaction.OperationType;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
 import org.apache.cassandra.io.sstable.*;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
@@ -31,6 +34,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.rows.*;
+import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.io.FSWriteError;
 import org.apache.cassandra.io.compress.CompressedSequentialWriter;
 import org.apache.cassandra.io.sstable.metadata.MetadataCollector;
@@ -51,6 +55,13 @@ public class BigTableWriter extends SSTableWriter
     private static final Logger logger = LoggerFactory.getLogger(BigTableWriter.class);
 
     private final IndexWriter iwriter;
+    private static final Set<OperationType> COMPACTION_OPERATIONS = EnumSet.of(OperationType.COMPACTION,
+                                                                               OperationType.TOMBSTONE_COMPACTION,
+                                                                               OperationType.CLEANUP,
+                                                                               OperationType.SCRUB,
+                                                                               OperationType.UPGRADE_SSTABLES,
+                                                                               OperationType.ANTICOMPACTION);
+
     private final SegmentedFile.Builder dbuilder;
     private final SequentialWriter dataFile;
     private DecoratedKey lastWrittenKey;
@@ -80,10 +91,17 @@ public class BigTableWriter extends SSTableWriter
             dataFile = SequentialWriter.open(new File(getFilename()), new File(descriptor.filenameFor(Component.CRC)));
             dbuilder = SegmentedFile.getBuilder(DatabaseDescriptor.getDiskAccessMode(), false);
         }
+        // the output of compactions is read back cold, don't let writing it evict what reads rely on
+        if (DatabaseDescriptor.getCompactionDirectIO() && COMPACTION_OPERATIONS.contains(txn.opType()))
+            dataFile.setDropCacheBehind(true);
         iwriter = new IndexWriter(keyCount, dataFile);
 
         // txnLogs will delete if safe to do so (early readers)
         iwriter.indexFile.deleteFile(false);
+        if (iwriter.partitionIndex != null)
+            iwriter.partitionIndex.deleteFile(false);
+        if (iwriter.partitionHashes != null)
+            iwriter.partitionHashes.deleteFile(false);
         dataFile.deleteFile(false);
     }
 
@@ -148,7 +166,8 @@ public class BigTableWriter extends SSTableWriter
 
         long startPosition = beforeAppend(key);
 
-        try (StatsCollector withStats = new StatsCollector(iterator, metadataCollector))
+        UnfilteredRowIterator toWrite = iwriter.partitionHashes == null ? iterator : iwriter.partitionHashes.hashing(iterator);
+        try (StatsCollector withStats = new StatsCollector(toWrite, metadataCollector))
         {
             ColumnIndex index = ColumnIndex.writeAndBuildIndex(withStats, dataFile, header, descriptor.version);
 
@@ -259,6 +278,8 @@ public class BigTableWriter extends SSTableWriter
         // we must ensure the data is completely flushed to disk
         dataFile.sync();
         iwriter.indexFile.sync();
+        if (iwriter.partitionIndex != null)
+            iwriter.partitionIndex.complete();
 
         return openFinal(descriptor, SSTableReader.OpenReason.EARLY);
     }
@@ -281,6 +302,7 @@ public class BigTableWriter extends SSTableWriter
                                                            dfile,
                                                            indexSummary,
                                                            iwriter.bf.sharedCopy(),
+                                                           iwriter.openPartitionIndex(),
                                                            maxDataAge,
                                                            stats,
                                                            openReason,
@@ -370,6 +392,8 @@ public class BigTableWriter extends SSTableWriter
         public final SegmentedFile.Builder builder;
         public final IndexSummaryBuilder summary;
         public final IFilter bf;
+        public final PartitionIndexBuilder partitionIndex;
+        public final PartitionHashesWriter partitionHashes;
         private FileMark mark;
 
         IndexWriter(long keyCount, final SequentialWriter dataFile)
@@ -377,7 +401,13 @@ public class BigTableWriter extends SSTableWriter
             indexFile = SequentialWriter.open(new File(descriptor.filenameFor(Component.PRIMARY_INDEX)));
             builder = SegmentedFile.getBuilder(DatabaseDescriptor.getIndexAccessMode(), false);
             summary = new IndexSummaryBuilder(keyCount, metadata.params.minIndexInterval, Downsampling.BASE_SAMPLING_LEVEL);
-            bf = FilterFactory.getFilter(keyCount, metadata.params.bloomFilterFpChance, true, descriptor.version.hasOldBfHashOrder());
+            bf = FilterFactory.getFilter(keyCount, metadata.params.bloomFilterFpChance, true, descriptor.version.hasOldBfHashOrder(), descriptor.version.hasBlockedBloomFilter());
+            partitionIndex = components.contains(Component.PARTITION_INDEX)
+                           ? new PartitionIndexBuilder(descriptor.filenameFor(Component.PARTITION_INDEX))
+                           : null;
+            partitionHashes = components.contains(Component.PARTITION_HASHES)
+                            ? new PartitionHashesWriter(descriptor.filenameFor(Component.PARTITION_HASHES), metadata.partitionColumns())
+                            : null;
             // register listeners to be alerted when the data files are flushed
             indexFile.setPostFlushListener(new Runnable()
             {
@@ -415,6 +445,10 @@ public class BigTableWriter extends SSTableWriter
                 throw new FSWriteError(e, indexFile.getPath());
             }
             long indexEnd = indexFile.getFilePointer();
+            if (partitionIndex != null)
+                partitionIndex.add(key, indexStart);
+            if (partitionHashes != null)
+                partitionHashes.append(key);
 
             if (logger.isTraceEnabled())
                 logger.trace("wrote index entry: {} at {}", indexEntry, indexStart);
@@ -446,9 +480,32 @@ public class BigTableWriter extends SSTableWriter
             }
         }
 
+        /**
+         * Opens the partition index, which must have been completed.
+         * @return the partition index, or null if this sstable doesn't have one
+         */
+        PartitionIndex openPartitionIndex()
+        {
+            if (partitionIndex == null)
+                return null;
+
+            try
+            {
+                return PartitionIndex.load(partitionIndex.getPath());
+            }
+            catch (IOException e)
+            {
+                throw new FSReadError(e, partitionIndex.getPath());
+            }
+        }
+
         public void mark()
         {
             mark = indexFile.mark();
+            if (partitionIndex != null)
+                partitionIndex.mark();
+            if (partitionHashes != null)
+                partitionHashes.mark();
         }
 
         public void resetAndTruncate()
@@ -457,12 +514,21 @@ public class BigTableWriter extends SSTableWriter
             // we can't reset dbuilder either, but that is the last thing called in afterappend so
             // we assume that if that worked then we won't be trying to reset.
             indexFile.resetAndTruncate(mark);
+            if (partitionIndex != null)
+                partitionIndex.resetAndTruncate();
+            if (partitionHashes != null)
+                partitionHashes.resetAndTruncate();
         }
 
         protected void doPrepare()
         {
             flushBf();
 
+            if (partitionIndex != null)
+                partitionIndex.prepareToCommit();
+            if (partitionHashes != null)
+                partitionHashes.prepareToCommit();
+
             // truncate index file
             long position = iwriter.indexFile.getFilePointer();
             iwriter.indexFile.setDescriptor(descriptor).prepareToCommit();
@@ -478,11 +544,19 @@ public class BigTableWriter extends SSTableWriter
 
         protected Throwable doCommit(Throwable accumulate)
         {
+            if (partitionIndex != null)
+                accumulate = partitionIndex.commit(accumulate);
+            if (partitionHashes != null)
+                accumulate = partitionHashes.commit(accumulate);
             return indexFile.commit(accumulate);
         }
 
         protected Throwable doAbort(Throwable accumulate)
         {
+            if (partitionIndex != null)
+                accumulate = partitionIndex.abort(accumulate);
+            if (partitionHashes != null)
+                accumulate = partitionHashes.abort(accumulate);
             return indexFile.abort(accumulate);
         }
 
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.net.MessagingService;
+
+/**
+ * A local append-only log made of {@link AppendOnlyLogSegment}s, such as the paxos state log or the batchlog.
+ *
+ * Records are appended to the active segment, which is rolled over to a new one once it reaches the segment size.
+ * The owner of the log accounts for its live records, and deletes the segments that no longer hold any.
+ *
+ * Unless the commit log is synced periodically, writes are synced before they complete, see {@link #awaitSynced}.
+ */
+public final class AppendOnlyLog
+{
+    public static final long DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    private final File directory;
+    private final String prefix;
+    private final long segmentSize;
+    private final boolean syncEachWrite;
+
+    // all the segments, oldest first
+    private final ConcurrentSkipListMap<Long, AppendOnlyLogSegment> segments = new ConcurrentSkipListMap<>();
+    // the segment appended to; guarded by this
+    private AppendOnlyLogSegment active;
+
+    private AppendOnlyLog(File directory, String prefix, long segmentSize, boolean syncEachWrite)
+    {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentSize = segmentSize;
+        this.syncEachWrite = syncEachWrite;
+    }
+
+    /**
+     * Opens the log with the provided prefix in the directory, syncing writes the way the commit log does.
+     */
+    public static AppendOnlyLog open(File directory, String prefix)
+    {
+        return open(directory, prefix, DEFAULT_SEGMENT_SIZE, DatabaseDescriptor.getCommitLogSync() != Config.CommitLogSync.periodic);
+    }
+
+    /**
+     * Opens the log with the provided prefix in the directory, and starts a new segment to append to after the
+     * existing ones, which can then be replayed.
+     */
+    public static AppendOnlyLog open(File directory, String prefix, long segmentSize, boolean syncEachWrite)
+    {
+        AppendOnlyLog log = new AppendOnlyLog(directory, prefix, segmentSize, syncEachWrite);
+
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                AppendOnlyLogSegment segment = AppendOnlyLogSegment.open(file, prefix);
+                if (segment != null)
+                    log.segments.put(segment.id, segment);
+            }
+        }
+
+        long id = log.segments.isEmpty() ? 1 : log.segments.lastKey() + 1;
+        log.active = AppendOnlyLogSegment.create(directory, prefix, id, MessagingService.current_version);
+        log.segments.put(id, log.active);
+        return log;
+    }
+
+    /**
+     * @return whether the directory holds a log with the provided prefix
+     */
+    public static boolean exists(File directory, String prefix)
+    {
+        File[] files = directory.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.getName().startsWith(prefix + '-'))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    public interface RecordConsumer
+    {
+        void accept(AppendOnlyLogSegment segment, long position, int size, ByteBuffer record);
+    }
+
+    /**
+     * Hands every entry of the segments the log was opened with, oldest first, to the consumer.
+     */
+    public void replay(RecordConsumer consumer)
+    {
+        for (AppendOnlyLogSegment segment : inactiveSegments())
+            segment.replay((position, size, record) -> consumer.accept(segment, position, size, record));
+    }
+
+    /**
+     * Appends the record to the active segment, rolling it over first if it is full, without syncing it.
+     *
+     * @return the appended entry. It is counted as live, so that its segment isn't deleted before the caller is
+     * done with it, after which the caller has to release it.
+     */
+    public Appended append(ByteBuffer record)
+    {
+        synchronized (this)
+        {
+            if (active.length() >= segmentSize)
+            {
+                active.sync();
+                AppendOnlyLogSegment next = AppendOnlyLogSegment.create(directory, prefix, active.id + 1, MessagingService.current_version);
+                segments.put(next.id, next);
+                active = next;
+            }
+
+            Appended appended = new Appended(active, active.append(record), record.remaining() + AppendOnlyLogSegment.ENTRY_OVERHEAD_SIZE);
+            active.retain(appended.size);
+            return appended;
+        }
+    }
+
+    /**
+     * Waits for the appended entry to be synced, if writes are synced. This must not be called while holding a lock
+     * other writers need, so that the writers appending concurrently share syncs rather than syncing one by one.
+     */
+    public void awaitSynced(Appended appended)
+    {
+        if (syncEachWrite)
+            appended.segment.syncUpTo(appended.position + appended.size);
+    }
+
+    /**
+     * @return the segments no longer appended to, oldest first
+     */
+    public Collection<AppendOnlyLogSegment> inactiveSegments()
+    {
+        long activeId;
+        synchronized (this)
+        {
+            activeId = active.id;
+        }
+        return segments.headMap(activeId).values();
+    }
+
+    /**
+     * Deletes a segment holding no live record.
+     */
+    public void delete(AppendOnlyLogSegment segment)
+    {
+        segments.remove(segment.id);
+        segment.delete();
+    }
+
+    public int segmentCount()
+    {
+        return segments.size();
+    }
+
+    public synchronized void sync()
+    {
+        active.sync();
+    }
+
+    /**
+     * Syncs and closes the log.
+     */
+    public synchronized void close()
+    {
+        active.sync();
+        for (AppendOnlyLogSegment segment : segments.values())
+            segment.close();
+    }
+
+    /**
+     * Closes and deletes all the segments of the log.
+     */
+    public synchronized void deleteAll()
+    {
+        for (AppendOnlyLogSegment segment : segments.values())
+            segment.delete();
+        segments.clear();
+    }
+
+    /**
+     * An entry appended to the log.
+     */
+    public static final class Appended
+    {
+        public final AppendOnlyLogSegment segment;
+        public final long position;
+        // the size of the entry in the segment
+        public final int size;
+
+        private Appended(AppendOnlyLogSegment segment, long position, int size)
+        {
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.FSReadError;
+import org.apache.cassandra.io.FSWriteError;
+import org.apache.cassandra.utils.SyncUtil;
+
+import static org.apache.cassandra.utils.FBUtilities.updateChecksumInt;
+
+/**
+ * A segment of a local append-only log, such as the paxos state log or the batchlog: a file of entries framed like
+ * hints as
+ *
+ * [size][CRC32 of size][record][CRC32 of size and record]
+ *
+ * Entries are read back either all at once, when the log is loaded, or one at a time by position. A segment is
+ * only appended to until its owner rolls to the next one, and is deleted as a whole once none of its records is
+ * live; the owner accounts for the live records with {@link #retain} and {@link #release}.
+ *
+ * The file is named {@code <prefix>-<id>-<messaging version>.log}, the version being the one its records are
+ * serialized with.
+ */
+public final class AppendOnlyLogSegment
+{
+    private static final Logger logger = LoggerFactory.getLogger(AppendOnlyLogSegment.class);
+
+    public static final int ENTRY_OVERHEAD_SIZE = 12;
+
+    public final long id;
+    public final int messagingVersion;
+    private final File file;
+    private final FileChannel channel;
+    private final CRC32 checksum = new CRC32();
+
+    // the end of the entries appended so far; guarded by the owner for writes
+    private volatile long length;
+    // the end of the entries synced so far; guarded by syncLock for writes
+    private volatile long syncedLength;
+    private final Object syncLock = new Object();
+    // the total size of the entries the owner still references
+    private final AtomicLong liveSize = new AtomicLong();
+
+    private AppendOnlyLogSegment(long id, int messagingVersion, File file, FileChannel channel, long length)
+    {
+        this.id = id;
+        this.messagingVersion = messagingVersion;
+        this.file = file;
+        this.channel = channel;
+        this.length = length;
+    }
+
+    public static AppendOnlyLogSegment create(File directory, String prefix, long id, int messagingVersion)
+    {
+        File file = new File(directory, String.format("%s-%d-%d.log", prefix, id, messagingVersion));
+        try
+        {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new AppendOnlyLogSegment(id, messagingVersion, file, channel, 0);
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * Opens the existing segment file for reading, or returns null if the file isn't a segment with that prefix.
+     */
+    public static AppendOnlyLogSegment open(File file, String prefix)
+    {
+        Matcher matcher = Pattern.compile("^" + Pattern.quote(prefix) + "-(\\d+)-(\\d+)\\.log$").matcher(file.getName());
+        if (!matcher.matches())
+            return null;
+
+        try
+        {
+            FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            return new AppendOnlyLogSegment(Long.parseLong(matcher.group(1)), Integer.parseInt(matcher.group(2)), file, channel, channel.size());
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, file);
+        }
+    }
+
+    /**
+     * Appends the record, without syncing it.
+     *
+     * @return the position of its entry
+     */
+    public long append(ByteBuffer record)
+    {
+        int size = record.remaining();
+        ByteBuffer buffer = ByteBuffer.allocate(size + ENTRY_OVERHEAD_SIZE);
+        checksum.reset();
+        buffer.putInt(size);
+        updateChecksumInt(checksum, size);
+        buffer.putInt((int) checksum.getValue());
+        checksum.update(record.duplicate());
+        buffer.put(record.duplicate());
+        buffer.putInt((int) checksum.getValue());
+        buffer.flip();
+
+        long position = length;
+        try
+        {
+            while (buffer.hasRemaining())
+                channel.write(buffer, position + buffer.position());
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+        length = position + size + ENTRY_OVERHEAD_SIZE;
+        return position;
+    }
+
+    /**
+     * @return the record of the entry at the provided position, or null if the segment has been deleted since
+     * the position was obtained
+     */
+    public ByteBuffer read(long position)
+    {
+        try
+        {
+            ByteBuffer header = readFully(position, 8);
+            int size = header.getInt(0);
+            CRC32 crc = new CRC32();
+            updateChecksumInt(crc, size);
+            if (size < 0 || (header.getInt(4) & 0xffffffffL) != crc.getValue())
+                throw new IOException(String.format("Corrupted entry size at position %d", position));
+
+            ByteBuffer entry = readFully(position + 8, size + 4);
+            ByteBuffer record = (ByteBuffer) entry.duplicate().limit(size);
+            crc.update(record.duplicate());
+            if ((entry.getInt(size) & 0xffffffffL) != crc.getValue())
+                throw new IOException(String.format("Corrupted entry at position %d", position));
+            return record;
+        }
+        catch (ClosedChannelException e)
+        {
+            return null;
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, file);
+        }
+    }
+
+    public interface EntryConsumer
+    {
+        void accept(long position, int size, ByteBuffer record);
+    }
+
+    /**
+     * Hands every entry of the segment, in order, to the consumer. Reading stops at the first entry whose size is
+     * corrupted, typically a write torn by a crash; an entry whose record is corrupted is skipped.
+     */
+    public void replay(EntryConsumer consumer)
+    {
+        long position = 0;
+        try
+        {
+            while (position + 8 <= length)
+            {
+                ByteBuffer header = readFully(position, 8);
+                int size = header.getInt(0);
+                checksum.reset();
+                updateChecksumInt(checksum, size);
+                if (size < 0 || (header.getInt(4) & 0xffffffffL) != checksum.getValue() || position + size + ENTRY_OVERHEAD_SIZE > length)
+                {
+                    logger.warn("Corrupted or incomplete entry at position {} of log {}, skipping the rest of the file", position, file);
+                    return;
+                }
+
+                ByteBuffer entry = readFully(position + 8, size + 4);
+                ByteBuffer record = (ByteBuffer) entry.duplicate().limit(size);
+                checksum.update(record.duplicate());
+                if ((entry.getInt(size) & 0xffffffffL) == checksum.getValue())
+                    consumer.accept(position, size + ENTRY_OVERHEAD_SIZE, record);
+                else
+                    logger.warn("Corrupted entry at position {} of log {}, skipping it", position, file);
+
+                position += size + ENTRY_OVERHEAD_SIZE;
+            }
+        }
+        catch (IOException e)
+        {
+            throw new FSReadError(e, file);
+        }
+    }
+
+    private ByteBuffer readFully(long position, int size) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException(String.format("Unexpected end of file reading %d bytes at position %d", size, position));
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    public long length()
+    {
+        return length;
+    }
+
+    public long liveSize()
+    {
+        return liveSize.get();
+    }
+
+    public void retain(int size)
+    {
+        liveSize.addAndGet(size);
+    }
+
+    public void release(int size)
+    {
+        liveSize.addAndGet(-size);
+    }
+
+    public void sync()
+    {
+        syncUpTo(length);
+    }
+
+    /**
+     * Syncs the segment up to at least the provided position. This is meant to be called without holding the lock
+     * appends are made under: writers appending concurrently then share syncs, the one syncing covering all the
+     * entries appended so far and the others waiting for it, like with the group commit of the commit log.
+     */
+    public void syncUpTo(long position)
+    {
+        if (syncedLength >= position)
+            return;
+
+        synchronized (syncLock)
+        {
+            if (syncedLength >= position)
+                return;
+
+            long end = length;
+            force();
+            syncedLength = end;
+        }
+    }
+
+    private void force()
+    {
+        try
+        {
+            SyncUtil.force(channel, false);
+        }
+        catch (ClosedChannelException e)
+        {
+            // deleted since, there is nothing left to sync
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    public void close()
+    {
+        try
+        {
+            channel.close();
+        }
+        catch (IOException e)
+        {
+            throw new FSWriteError(e, file);
+        }
+    }
+
+    /**
+     * Closes and deletes the segment. Concurrent reads of the segment then return null.
+     */
+    public void delete()
+    {
+        close();
+        FileUtils.deleteWithConfirm(file);
+        logger.debug("Deleted log segment {}", file);
+    }
+
+    @Override
+    public String toString()
+    {
+        return file.getName();
+    }
+}
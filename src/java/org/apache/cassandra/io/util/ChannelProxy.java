@@ -27,6 +27,8 @@ import java.nio.file.StandardOpenOption;
 
 import org.apache.cassandra.io.FSReadError;
 import org.apache.cassandra.utils.CLibrary;
+import org.apache.cassandra.utils.memory.BufferPool;
+import org.apache.cassandra.utils.memory.MemoryUtil;
 import org.apache.cassandra.utils.concurrent.RefCounted;
 import org.apache.cassandra.utils.concurrent.SharedCloseableImpl;
 
@@ -36,13 +38,19 @@ import org.apache.cassandra.utils.concurrent.SharedCloseableImpl;
  * - implements reference counting
  * - exports only thread safe FileChannel operations
  * - wraps IO exceptions into runtime exceptions
+ * - optionally serves reads with direct I/O, see {@link #directCopy()}
  *
  * Tested by RandomAccessReaderTest.
  */
 public final class ChannelProxy extends SharedCloseableImpl
 {
+    /** Direct I/O requires buffer addresses, file offsets and lengths aligned to the file system block size */
+    private static final int DIRECT_IO_ALIGNMENT = 4096;
+
     private final String filePath;
     private final FileChannel channel;
+    // a descriptor opened with O_DIRECT that reads go through, or -1
+    private final int directFD;
 
     public static FileChannel openChannel(File file)
     {
@@ -68,10 +76,16 @@ public final class ChannelProxy extends SharedCloseableImpl
 
     public ChannelProxy(String filePath, FileChannel channel)
     {
-        super(new Cleanup(filePath, channel));
+        this(filePath, channel, -1);
+    }
+
+    private ChannelProxy(String filePath, FileChannel channel, int directFD)
+    {
+        super(new Cleanup(filePath, channel, directFD));
 
         this.filePath = filePath;
         this.channel = channel;
+        this.directFD = directFD;
     }
 
     public ChannelProxy(ChannelProxy copy)
@@ -80,17 +94,20 @@ public final class ChannelProxy extends SharedCloseableImpl
 
         this.filePath = copy.filePath;
         this.channel = copy.channel;
+        this.directFD = copy.directFD;
     }
 
     private final static class Cleanup implements RefCounted.Tidy
     {
         final String filePath;
         final FileChannel channel;
+        final int directFD;
 
-        protected Cleanup(String filePath, FileChannel channel)
+        protected Cleanup(String filePath, FileChannel channel, int directFD)
         {
             this.filePath = filePath;
             this.channel = channel;
+            this.directFD = directFD;
         }
 
         public String name()
@@ -100,6 +117,7 @@ public final class ChannelProxy extends SharedCloseableImpl
 
         public void tidy()
         {
+            CLibrary.tryCloseFD(directFD);
             try
             {
                 channel.close();
@@ -116,6 +134,25 @@ public final class ChannelProxy extends SharedCloseableImpl
         return new ChannelProxy(this);
     }
 
+    /**
+     * Open a new, independent, proxy for the same file whose reads bypass the page cache with O_DIRECT.
+     * The caller is responsible for closing it.
+     *
+     * @return the new proxy, or null if direct I/O isn't available for this file
+     */
+    public ChannelProxy directCopy()
+    {
+        int fd = CLibrary.tryOpenDirect(filePath);
+        if (fd < 0)
+            return null;
+        return new ChannelProxy(filePath, openChannel(new File(filePath)), fd);
+    }
+
+    public boolean isDirect()
+    {
+        return directFD >= 0;
+    }
+
     public String filePath()
     {
         return filePath;
@@ -125,7 +162,7 @@ public final class ChannelProxy extends SharedCloseableImpl
     {
         try
         {
-            return channel.read(buffer, position);
+            return directFD >= 0 ? readDirect(buffer, position) : channel.read(buffer, position);
         }
         catch (IOException e)
         {
@@ -133,6 +170,72 @@ public final class ChannelProxy extends SharedCloseableImpl
         }
     }
 
+    /**
+     * Reads the aligned blocks covering the requested range into page aligned buffers from the BufferPool,
+     * and copies the requested bytes out of them. Falls back to a buffered read if the pool can't provide
+     * an aligned buffer.
+     */
+    private int readDirect(ByteBuffer buffer, long position) throws IOException
+    {
+        // read straight into the destination if it's suitably aligned already
+        if (isAligned(buffer) && (position & (DIRECT_IO_ALIGNMENT - 1)) == 0 && (buffer.remaining() & (DIRECT_IO_ALIGNMENT - 1)) == 0)
+        {
+            int n = CLibrary.pread(directFD, buffer, position);
+            if (n == 0)
+                return -1;
+            buffer.position(buffer.position() + n);
+            return n;
+        }
+
+        int read = 0;
+        while (buffer.hasRemaining())
+        {
+            long alignedPosition = position & -DIRECT_IO_ALIGNMENT;
+            int skip = (int) (position - alignedPosition);
+            int length = Math.min(BufferPool.CHUNK_SIZE, roundUpToAlignment(skip + buffer.remaining()));
+
+            ByteBuffer aligned = BufferPool.get(length);
+            try
+            {
+                if (!isAligned(aligned))
+                {
+                    int n = channel.read(buffer, position);
+                    return n < 0 ? (read == 0 ? -1 : read) : read + n;
+                }
+
+                aligned.limit(length);
+                int n = CLibrary.pread(directFD, aligned, alignedPosition);
+                if (n <= skip)
+                    return read == 0 ? -1 : read;
+
+                aligned.position(skip).limit(Math.min(n, skip + buffer.remaining()));
+                int copied = aligned.remaining();
+                buffer.put(aligned);
+                read += copied;
+                position += copied;
+
+                // a short read means we've hit the end of the file
+                if (n < length)
+                    break;
+            }
+            finally
+            {
+                BufferPool.put(aligned);
+            }
+        }
+        return read;
+    }
+
+    private static boolean isAligned(ByteBuffer buffer)
+    {
+        return buffer.isDirect() && ((MemoryUtil.getAddress(buffer) + buffer.position()) & (DIRECT_IO_ALIGNMENT - 1)) == 0;
+    }
+
+    private static int roundUpToAlignment(int length)
+    {
+        return (length + DIRECT_IO_ALIGNMENT - 1) & -DIRECT_IO_ALIGNMENT;
+    }
+
     public long transferTo(long position, long count, WritableByteChannel target)
     {
         try
@@ -23,6 +23,7 @@ import java.util.TreeMap;
 
 import com.google.common.util.concurrent.RateLimiter;
 
+import org.apache.cassandra.cache.ChunkCache;
 import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.compress.CompressedRandomAccessReader;
@@ -109,6 +110,8 @@ public class CompressedSegmentedFile extends SegmentedFile implements ICompresse
         }
         public void tidy()
         {
+            if (ChunkCache.instance != null)
+                ChunkCache.instance.invalidateFile(name());
             super.tidy();
             metadata.close();
             if (chunkSegments != null)
@@ -174,6 +177,30 @@ public class CompressedSegmentedFile extends SegmentedFile implements ICompresse
         return CompressedThrottledReader.open(this, limiter);
     }
 
+    public RandomAccessReader createThrottledDirectReader(RateLimiter limiter)
+    {
+        final ChannelProxy direct = channel.directCopy();
+        if (direct == null)
+            return createThrottledReader(limiter);
+
+        // no file, so chunks are neither read from mmapped segments nor put in the chunk cache
+        return new CompressedThrottledReader(direct, metadata, null, limiter)
+        {
+            @Override
+            public void close()
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    direct.close();
+                }
+            }
+        };
+    }
+
     public CompressionMetadata getMetadata()
     {
         return metadata;
@@ -40,6 +40,7 @@ import org.apache.cassandra.utils.CLibrary;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.concurrent.RefCounted;
 import org.apache.cassandra.utils.concurrent.SharedCloseableImpl;
+import org.apache.cassandra.utils.memory.BufferPool;
 
 import static org.apache.cassandra.utils.Throwables.maybeFail;
 
@@ -125,6 +126,35 @@ public abstract class SegmentedFile extends SharedCloseableImpl
         return ThrottledReader.open(channel, bufferSize, length, limiter);
     }
 
+    /**
+     * @return a throttled reader whose reads bypass the page cache, or a regular throttled reader
+     * if direct I/O isn't available for this file
+     */
+    public RandomAccessReader createThrottledDirectReader(RateLimiter limiter)
+    {
+        assert limiter != null;
+        final ChannelProxy direct = channel.directCopy();
+        if (direct == null)
+            return createThrottledReader(limiter);
+
+        // there's no page cache read-ahead to rely on, so read in bigger chunks
+        return new ThrottledReader(direct, Math.max(bufferSize, BufferPool.CHUNK_SIZE), length, limiter)
+        {
+            @Override
+            public void close()
+            {
+                try
+                {
+                    super.close();
+                }
+                finally
+                {
+                    direct.close();
+                }
+            }
+        };
+    }
+
     public FileDataInput getSegment(long position)
     {
         RandomAccessReader reader = createReader();
@@ -68,6 +68,11 @@ public class SequentialWriter extends OutputStream implements WritableByteChanne
     private int trickleFsyncByteInterval;
     private int bytesSinceTrickleFsync = 0;
 
+    // whether to sync and evict written data from the page cache as we go, see setDropCacheBehind()
+    private boolean dropCacheBehind;
+    private int bytesSinceCacheDrop = 0;
+    private long droppedCacheBefore = 0;
+
     public final DataOutputPlus stream;
     protected long lastFlushOffset;
 
@@ -305,6 +310,13 @@ public class SequentialWriter extends OutputStream implements WritableByteChanne
                 }
             }
 
+            if (dropCacheBehind)
+            {
+                bytesSinceCacheDrop += buffer.position();
+                if (bytesSinceCacheDrop >= trickleFsyncByteInterval)
+                    dropCacheBehindInternal();
+            }
+
             // Remember that we wrote, so we don't write it again on next flush().
             resetBuffer();
 
@@ -312,6 +324,28 @@ public class SequentialWriter extends OutputStream implements WritableByteChanne
         }
     }
 
+    /**
+     * Sync the written data and evict it from the page cache every trickle_fsync_interval_in_kb, and once the
+     * file is complete, so that writing a large file doesn't push more useful data out of the page cache.
+     */
+    public void setDropCacheBehind(boolean dropCacheBehind)
+    {
+        this.dropCacheBehind = dropCacheBehind;
+    }
+
+    private void dropCacheBehindInternal()
+    {
+        // only clean pages can be evicted
+        syncDataOnlyInternal();
+        long onDisk = getOnDiskFilePointer();
+        // the file may have been truncated since our last drop
+        droppedCacheBefore = Math.min(droppedCacheBefore, onDisk);
+        if (onDisk > droppedCacheBefore)
+            CLibrary.trySkipCache(CLibrary.getfd(channel), droppedCacheBefore, onDisk - droppedCacheBefore, filePath);
+        droppedCacheBefore = onDisk;
+        bytesSinceCacheDrop = 0;
+    }
+
     public void setPostFlushListener(Runnable runPostFlush)
     {
         assert this.runPostFlush == null;
@@ -499,6 +533,10 @@ public class SequentialWriter extends OutputStream implements WritableByteChanne
 
     public void releaseFileHandle()
     {
+        // evict whatever was written since the last drop, now that it's all been synced
+        if (dropCacheBehind && channel.isOpen())
+            dropCacheBehindInternal();
+
         try
         {
             channel.close();
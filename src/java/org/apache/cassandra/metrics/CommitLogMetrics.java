@@ -19,6 +19,7 @@ package org.apache.cassandra.metrics;
 
 
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.Timer;
 import org.apache.cassandra.db.commitlog.AbstractCommitLogService;
 import org.apache.cassandra.db.commitlog.CommitLogSegmentManager;
@@ -42,11 +43,14 @@ public class CommitLogMetrics
     public final Timer waitingOnSegmentAllocation;
     /** The time spent waiting on CL sync; for Periodic this is only occurs when the sync is lagging its sync interval */
     public final Timer waitingOnCommit;
+    /** Mutations read from the commit log and submitted for replay on startup; its rates give the replay throughput */
+    public final Meter replayedMutations;
     
     public CommitLogMetrics()
     {
         waitingOnSegmentAllocation = Metrics.timer(factory.createMetricName("WaitingOnSegmentAllocation"));
         waitingOnCommit = Metrics.timer(factory.createMetricName("WaitingOnCommit"));
+        replayedMutations = Metrics.meter(factory.createMetricName("ReplayedMutations"));
     }
 
     public void attach(final AbstractCommitLogService service, final CommitLogSegmentManager allocator)
@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+/**
+ * The sending half of a connection to a peer, as used by {@link OutboundTcpConnectionPool}: either a
+ * thread per connection ({@link OutboundTcpConnection}) or a channel on a shared event loop
+ * ({@link OutboundNettyConnection}).
+ */
+public interface IOutboundConnection
+{
+    void start();
+
+    /**
+     * Queue a message for sending; never blocks.
+     */
+    void enqueue(MessageOut<?> message, int id);
+
+    /**
+     * Drop the backlog and close the connection; if {@code destroy} is true the connection will not be reopened.
+     */
+    void closeSocket(boolean destroy);
+
+    /**
+     * Close the connection once the messages queued so far have been sent; it is reopened on demand.
+     */
+    void softCloseSocket();
+
+    int getTargetVersion();
+
+    int getPendingMessages();
+
+    long getCompletedMesssages();
+
+    long getDroppedMessages();
+}
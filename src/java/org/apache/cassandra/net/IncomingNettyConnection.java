@@ -0,0 +1,317 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Checksum;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.DecoderException;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import net.jpountz.xxhash.XXHashFactory;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.UnknownColumnFamilyException;
+import org.apache.cassandra.io.util.DataInputBuffer;
+
+/**
+ * The receiving half of a messaging connection on the netty transport. The accept thread reads the connection
+ * header as usual, then hands the socket to an event loop which completes the handshake and decodes each message
+ * once all of its bytes have arrived, instead of parking a thread per connection in a blocking read.
+ *
+ * Compressed connections carry the block format of LZ4BlockOutputStream, which is decoded here block by block.
+ */
+public class IncomingNettyConnection extends ByteToMessageDecoder implements Closeable
+{
+    private static final Logger logger = LoggerFactory.getLogger(IncomingNettyConnection.class);
+
+    // the block format written by net.jpountz.lz4.LZ4BlockOutputStream
+    private static final byte[] LZ4_MAGIC = "LZ4Block".getBytes(StandardCharsets.US_ASCII);
+    private static final int LZ4_HEADER_LENGTH = LZ4_MAGIC.length + 1 + 4 + 4 + 4;
+    private static final int LZ4_METHOD_RAW = 0x10;
+    private static final int LZ4_METHOD_LZ4 = 0x20;
+    private static final int LZ4_MAX_BLOCK_SIZE = 1 << 25;
+
+    private final int version;
+    private final boolean compressed;
+    private final Set<Closeable> group;
+    private Channel channel;
+    public InetAddress from;
+
+    private LZ4FastDecompressor decompressor;
+    private Checksum checksum;
+    private ByteBuf decompressed;
+    private byte[] block;
+
+    /**
+     * @return true if the message connection on this socket can be handed to the netty transport: encrypted
+     * sockets have no channel to hand over, and peers older than 2.1 compress with Snappy, which only the thread
+     * per connection transport decodes
+     */
+    static boolean accepts(int version, Socket socket)
+    {
+        return DatabaseDescriptor.getInternodeMessagingTransport() == Config.InternodeMessagingTransport.netty
+               && socket.getChannel() != null
+               && version >= MessagingService.VERSION_21;
+    }
+
+    public IncomingNettyConnection(int version, boolean compressed, Socket socket, Set<Closeable> group) throws IOException
+    {
+        this(version, compressed, group);
+        channel = new NioSocketChannel(socket.getChannel());
+        channel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+        if (DatabaseDescriptor.getInternodeRecvBufferSize() != null)
+            ((NioSocketChannel) channel).config().setReceiveBufferSize(DatabaseDescriptor.getInternodeRecvBufferSize());
+        channel.pipeline().addLast(this);
+        MessagingService.instance().eventLoopGroup().register(channel);
+    }
+
+    @VisibleForTesting
+    IncomingNettyConnection(int version, boolean compressed, Set<Closeable> group)
+    {
+        assert version <= MessagingService.current_version;
+        this.version = version;
+        this.compressed = compressed;
+        this.group = group;
+        if (compressed)
+        {
+            decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+            checksum = XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum();
+            decompressed = PooledByteBufAllocator.DEFAULT.directBuffer();
+            block = new byte[1 << 14];
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception
+    {
+        channel = ctx.channel();
+        // handshake (true) endpoint versions
+        // if this version is < the MS version the other node is trying
+        // to connect with, the other node will disconnect
+        ctx.writeAndFlush(ctx.alloc().buffer(4).writeInt(MessagingService.current_version), ctx.voidPromise());
+        super.channelActive(ctx);
+    }
+
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception
+    {
+        if (from == null && !readHandshake(in))
+            return;
+
+        ByteBuf messages = in;
+        if (compressed)
+        {
+            decompress(in);
+            messages = decompressed;
+        }
+
+        while (readMessage(messages))
+            ;
+
+        if (compressed)
+            decompressed.discardSomeReadBytes();
+    }
+
+    private boolean readHandshake(ByteBuf in) throws IOException
+    {
+        // max version, then the sender's compact endpoint
+        if (in.readableBytes() < 5)
+            return false;
+        int addressLength = in.getByte(in.readerIndex() + 4);
+        if (in.readableBytes() < 5 + addressLength)
+            return false;
+
+        int maxVersion = in.readInt();
+        byte[] address = new byte[in.readByte()];
+        in.readBytes(address);
+        from = InetAddress.getByAddress(address);
+        // record the (true) version of the endpoint
+        MessagingService.instance().setVersion(from, maxVersion);
+        logger.debug("Set version for {} to {} (will use {})", from, maxVersion, MessagingService.instance().getVersion(from));
+        return true;
+    }
+
+    private void decompress(ByteBuf in) throws IOException
+    {
+        while (in.readableBytes() >= LZ4_HEADER_LENGTH)
+        {
+            int start = in.readerIndex();
+            for (int i = 0; i < LZ4_MAGIC.length; i++)
+            {
+                if (in.getByte(start + i) != LZ4_MAGIC[i])
+                    throw new IOException("Stream is corrupted");
+            }
+
+            int method = in.getByte(start + LZ4_MAGIC.length) & 0xF0;
+            int compressedLength = Integer.reverseBytes(in.getInt(start + LZ4_MAGIC.length + 1));
+            int originalLength = Integer.reverseBytes(in.getInt(start + LZ4_MAGIC.length + 5));
+            int check = Integer.reverseBytes(in.getInt(start + LZ4_MAGIC.length + 9));
+            if (originalLength < 0 || originalLength > LZ4_MAX_BLOCK_SIZE || compressedLength < 0
+                || (method == LZ4_METHOD_RAW && compressedLength != originalLength)
+                || (method != LZ4_METHOD_RAW && method != LZ4_METHOD_LZ4))
+                throw new IOException("Stream is corrupted");
+
+            if (in.readableBytes() < LZ4_HEADER_LENGTH + compressedLength)
+                return;
+
+            int dataStart = start + LZ4_HEADER_LENGTH;
+            if (originalLength > 0)
+            {
+                if (block.length < originalLength)
+                    block = new byte[originalLength];
+
+                if (method == LZ4_METHOD_RAW)
+                {
+                    in.getBytes(dataStart, block, 0, originalLength);
+                }
+                else
+                {
+                    int read = decompressor.decompress(in.nioBuffer(dataStart, compressedLength), 0, ByteBuffer.wrap(block), 0, originalLength);
+                    if (read != compressedLength)
+                        throw new IOException("Stream is corrupted");
+                }
+
+                checksum.reset();
+                checksum.update(block, 0, originalLength);
+                if ((int) checksum.getValue() != check)
+                    throw new IOException("Stream is corrupted");
+
+                decompressed.writeBytes(block, 0, originalLength);
+            }
+            // else an end of stream marker
+            in.skipBytes(LZ4_HEADER_LENGTH + compressedLength);
+        }
+    }
+
+    private boolean readMessage(ByteBuf buf) throws IOException
+    {
+        if (buf.readableBytes() < 4)
+            return false;
+        MessagingService.validateMagic(buf.getInt(buf.readerIndex()));
+
+        int length = messageLength(buf);
+        if (length < 0)
+            return false;
+
+        DataInputBuffer in = new DataInputBuffer(buf.nioBuffer(buf.readerIndex() + 4, length - 4), false);
+        buf.skipBytes(length);
+        IncomingTcpConnection.receiveMessage(in, version);
+        return true;
+    }
+
+    /**
+     * @return the length of the message at the reader index of {@code buf}, including its magic, id and timestamp,
+     * or -1 if it has not been received in full
+     */
+    @VisibleForTesting
+    static int messageLength(ByteBuf buf)
+    {
+        int start = buf.readerIndex();
+        long end = buf.writerIndex();
+        // magic, id, timestamp, then the sender's compact endpoint
+        long index = start + 12;
+        if (index + 1 > end)
+            return -1;
+        index += 1 + buf.getByte((int) index);
+
+        // verb and parameter count
+        if (index + 8 > end)
+            return -1;
+        int parameterCount = buf.getInt((int) index + 4);
+        index += 8;
+        for (int i = 0; i < parameterCount; i++)
+        {
+            if (index + 2 > end)
+                return -1;
+            index += 2 + buf.getUnsignedShort((int) index);
+            if (index + 4 > end)
+                return -1;
+            index += 4 + buf.getInt((int) index);
+        }
+
+        // payload size, then the payload
+        if (index + 4 > end)
+            return -1;
+        index += 4 + buf.getInt((int) index);
+        return index > end ? -1 : (int) (index - start);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception
+    {
+        super.channelInactive(ctx);
+        close();
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx)
+    {
+        if (decompressed != null)
+        {
+            decompressed.release();
+            decompressed = null;
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+    {
+        if (cause instanceof DecoderException && cause.getCause() != null)
+            cause = cause.getCause();
+
+        if (cause instanceof UnknownColumnFamilyException)
+            logger.warn("UnknownColumnFamilyException reading from socket; closing", cause);
+        else if (cause instanceof IOException)
+            logger.debug("IOException reading from socket; closing", cause);
+        else
+            logger.error("Unexpected error reading from {}; closing", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+
+    @Override
+    public void close()
+    {
+        try
+        {
+            if (channel != null)
+                channel.close();
+        }
+        finally
+        {
+            group.remove(this);
+        }
+    }
+}
@@ -36,10 +36,13 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
 
 import org.cliffc.high_scale_lib.NonBlockingHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.cassandra.concurrent.NamedThreadFactory;
 import org.apache.cassandra.concurrent.ScheduledExecutors;
 import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
@@ -66,6 +69,7 @@ import org.apache.cassandra.repair.messages.RepairMessage;
 import org.apache.cassandra.security.SSLFactory;
 import org.apache.cassandra.service.*;
 import org.apache.cassandra.service.paxos.Commit;
+import org.apache.cassandra.service.paxos.PrepareAndRead;
 import org.apache.cassandra.service.paxos.PrepareResponse;
 import org.apache.cassandra.tracing.TraceState;
 import org.apache.cassandra.tracing.Tracing;
@@ -82,7 +86,8 @@ public final class MessagingService implements MessagingServiceMBean
     public static final int VERSION_21 = 8;
     public static final int VERSION_22 = 9;
     public static final int VERSION_30 = 10;
-    public static final int current_version = VERSION_30;
+    public static final int VERSION_31 = 11;
+    public static final int current_version = VERSION_31;
 
     public static final String FAILURE_CALLBACK_PARAM = "CAL_BAC";
     public static final byte[] ONE_BYTE = new byte[1];
@@ -137,8 +142,8 @@ public final class MessagingService implements MessagingServiceMBean
         BATCHLOG_MUTATION,
         MATERIALIZED_VIEW_MUTATION,
         // remember to add new verbs at the end, since we serialize by ordinal
-        UNUSED_1,
-        UNUSED_2,
+        AGGREGATE_READ,
+        PAXOS_PREPARE_AND_READ,
         UNUSED_3,
         ;
     }
@@ -154,11 +159,13 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.PAXOS_PREPARE, Stage.MUTATION);
         put(Verb.PAXOS_PROPOSE, Stage.MUTATION);
         put(Verb.PAXOS_COMMIT, Stage.MUTATION);
+        put(Verb.PAXOS_PREPARE_AND_READ, Stage.MUTATION);
 
         put(Verb.READ, Stage.READ);
         put(Verb.RANGE_SLICE, Stage.READ);
         put(Verb.INDEX_SCAN, Stage.READ);
         put(Verb.PAGED_RANGE, Stage.READ);
+        put(Verb.AGGREGATE_READ, Stage.READ);
 
         put(Verb.REQUEST_RESPONSE, Stage.REQUEST_RESPONSE);
         put(Verb.INTERNAL_RESPONSE, Stage.INTERNAL_RESPONSE);
@@ -187,8 +194,6 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.SNAPSHOT, Stage.MISC);
         put(Verb.ECHO, Stage.GOSSIP);
 
-        put(Verb.UNUSED_1, Stage.INTERNAL_RESPONSE);
-        put(Verb.UNUSED_2, Stage.INTERNAL_RESPONSE);
         put(Verb.UNUSED_3, Stage.INTERNAL_RESPONSE);
     }};
 
@@ -211,6 +216,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.MATERIALIZED_VIEW_MUTATION, Mutation.serializer);
         put(Verb.READ_REPAIR, Mutation.serializer);
         put(Verb.READ, ReadCommand.serializer);
+        put(Verb.AGGREGATE_READ, AggregateReadCommand.serializer);
         //put(Verb.RANGE_SLICE, ReadCommand.legacyRangeSliceCommandSerializer);
         //put(Verb.PAGED_RANGE, ReadCommand.legacyPagedRangeCommandSerializer);
         put(Verb.BOOTSTRAP_TOKEN, BootStrapper.StringSerializer.instance);
@@ -227,6 +233,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.PAXOS_PREPARE, Commit.serializer);
         put(Verb.PAXOS_PROPOSE, Commit.serializer);
         put(Verb.PAXOS_COMMIT, Commit.serializer);
+        put(Verb.PAXOS_PREPARE_AND_READ, PrepareAndRead.serializer);
     }};
 
     /**
@@ -242,6 +249,7 @@ public final class MessagingService implements MessagingServiceMBean
         put(Verb.RANGE_SLICE, ReadResponse.legacyRangeSliceReplySerializer);
         put(Verb.PAGED_RANGE, ReadResponse.legacyRangeSliceReplySerializer);
         put(Verb.READ, ReadResponse.serializer);
+        put(Verb.AGGREGATE_READ, AggregateReadResponse.serializer);
         put(Verb.TRUNCATE, TruncateResponse.serializer);
         put(Verb.SNAPSHOT, null);
 
@@ -252,6 +260,7 @@ public final class MessagingService implements MessagingServiceMBean
 
         put(Verb.PAXOS_PREPARE, PrepareResponse.serializer);
         put(Verb.PAXOS_PROPOSE, BooleanSerializer.serializer);
+        put(Verb.PAXOS_PREPARE_AND_READ, PrepareResponse.serializer);
     }};
 
     /* This records all the results mapped by message Id */
@@ -292,6 +301,9 @@ public final class MessagingService implements MessagingServiceMBean
     private final List<SocketThread> socketThreads = Lists.newArrayList();
     private final SimpleCondition listenGate;
 
+    // shared by every connection using the netty transport; created on first use
+    private volatile EventLoopGroup eventLoopGroup;
+
     /**
      * Verbs it's okay to drop if the request has been queued longer than the request timeout.  These
      * all correspond to client requests or something triggered by them; we don't want to
@@ -304,6 +316,7 @@ public final class MessagingService implements MessagingServiceMBean
                                                                    Verb.COUNTER_MUTATION,
                                                                    Verb.READ_REPAIR,
                                                                    Verb.READ,
+                                                                   Verb.AGGREGATE_READ,
                                                                    Verb.RANGE_SLICE,
                                                                    Verb.PAGED_RANGE,
                                                                    Verb.REQUEST_RESPONSE);
@@ -565,6 +578,21 @@ public final class MessagingService implements MessagingServiceMBean
         connectionManagers.remove(to);
     }
 
+    EventLoopGroup eventLoopGroup()
+    {
+        EventLoopGroup group = eventLoopGroup;
+        if (group == null)
+        {
+            synchronized (this)
+            {
+                group = eventLoopGroup;
+                if (group == null)
+                    eventLoopGroup = group = new NioEventLoopGroup(0, new NamedThreadFactory("MessagingService-EventLoop"));
+            }
+        }
+        return group;
+    }
+
     public OutboundTcpConnectionPool getConnectionPool(InetAddress to)
     {
         OutboundTcpConnectionPool cp = connectionManagers.get(to);
@@ -582,7 +610,7 @@ public final class MessagingService implements MessagingServiceMBean
     }
 
 
-    public OutboundTcpConnection getConnection(InetAddress to, MessageOut msg)
+    public IOutboundConnection getConnection(InetAddress to, MessageOut msg)
     {
         return getConnectionPool(to).getConnection(msg);
     }
@@ -734,7 +762,7 @@ public final class MessagingService implements MessagingServiceMBean
                 return;
 
         // get pooled connection (really, connection queue)
-        OutboundTcpConnection connection = getConnection(to, message);
+        IOutboundConnection connection = getConnection(to, message);
 
         // write it
         connection.enqueue(message, id);
@@ -779,6 +807,15 @@ public final class MessagingService implements MessagingServiceMBean
         {
             throw new IOError(e);
         }
+
+        synchronized (this)
+        {
+            if (eventLoopGroup != null)
+            {
+                eventLoopGroup.shutdownGracefully();
+                eventLoopGroup = null;
+            }
+        }
     }
 
     public void receive(MessageIn message, int id, long timestamp, boolean isCrossNodeTimestamp)
@@ -867,6 +904,17 @@ public final class MessagingService implements MessagingServiceMBean
         return getVersion(InetAddress.getByName(endpoint));
     }
 
+    /**
+     * @return the lowest messaging version of the given endpoints, as {@link #getVersion(InetAddress)} knows them.
+     */
+    public int getMinVersion(Iterable<InetAddress> endpoints)
+    {
+        int version = MessagingService.current_version;
+        for (InetAddress endpoint : endpoints)
+            version = Math.min(version, getVersion(endpoint));
+        return version;
+    }
+
     public int getRawVersion(InetAddress endpoint)
     {
         Integer v = versions.get(endpoint);
@@ -967,13 +1015,20 @@ public final class MessagingService implements MessagingServiceMBean
                     MessagingService.validateMagic(in.readInt());
                     int header = in.readInt();
                     boolean isStream = MessagingService.getBits(header, 3, 1) == 1;
+                    boolean compressed = MessagingService.getBits(header, 2, 1) == 1;
                     int version = MessagingService.getBits(header, 15, 8);
                     logger.debug("Connection version {} from {}", version, socket.getInetAddress());
                     socket.setSoTimeout(0);
 
+                    if (!isStream && IncomingNettyConnection.accepts(version, socket))
+                    {
+                        connections.add(new IncomingNettyConnection(version, compressed, socket, connections));
+                        continue;
+                    }
+
                     Thread thread = isStream
                                   ? new IncomingStreamingConnection(version, socket, connections)
-                                  : new IncomingTcpConnection(version, MessagingService.getBits(header, 2, 1) == 1, socket, connections);
+                                  : new IncomingTcpConnection(version, compressed, socket, connections);
                     thread.start();
                     connections.add((Closeable) thread);
                 }
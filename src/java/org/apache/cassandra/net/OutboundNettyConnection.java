@@ -0,0 +1,705 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Checksum;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.util.concurrent.ScheduledFuture;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.util.DataOutputBufferFixed;
+import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.io.util.WrappedDataOutputStreamPlus;
+import org.apache.cassandra.net.OutboundTcpConnection.QueuedMessage;
+import org.apache.cassandra.net.OutboundTcpConnection.RetriedQueuedMessage;
+import org.apache.cassandra.utils.CoalescingStrategies;
+import org.apache.cassandra.utils.CoalescingStrategies.CoalescingStrategy;
+import org.apache.cassandra.utils.CoalescingStrategies.DeferringParker;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.JVMStabilityInspector;
+import org.apache.cassandra.utils.NanoTimeToCurrentTimeMillis;
+
+/**
+ * An outbound connection driven by a netty event loop instead of a dedicated thread, speaking the same protocol
+ * as {@link OutboundTcpConnection}.
+ *
+ * Messages are serialized straight into pooled direct buffers (or through an LZ4 block stream when the
+ * connection is compressed) and flushed in batches shaped by the configured coalescing strategy: rather than
+ * parking, the strategy's wait becomes a delayed flush. The backlog is only drained while the channel is
+ * writable, so a peer that falls behind backs up into this connection's queue, where droppable messages expire,
+ * rather than into unbounded socket buffers.
+ *
+ * Apart from the backlog and the counters, all state is confined to the connection's event loop.
+ */
+public class OutboundNettyConnection implements IOutboundConnection
+{
+    private static final Logger logger = LoggerFactory.getLogger(OutboundNettyConnection.class);
+
+    private static final String PREFIX = Config.PROPERTY_PREFIX;
+
+    /*
+     * Bytes queued on the channel above which the backlog stops being drained, and below which draining resumes
+     */
+    private static final String HIGH_WATER_MARK_PROPERTY = PREFIX + "otc_netty_high_water_mark";
+    private static final int HIGH_WATER_MARK = Integer.getInteger(HIGH_WATER_MARK_PROPERTY, 1024 * 1024);
+    private static final String LOW_WATER_MARK_PROPERTY = PREFIX + "otc_netty_low_water_mark";
+    private static final int LOW_WATER_MARK = Integer.getInteger(LOW_WATER_MARK_PROPERTY, 512 * 1024);
+
+    private static final int DRAIN_BATCH_SIZE = 128;
+    private static final int MAX_BACKLOG_BEFORE_EXPIRY = 1024;
+
+    // magic, id and timestamp precede each serialized message
+    private static final int MESSAGE_PREFIX_SIZE = 12;
+
+    private final OutboundTcpConnectionPool poolReference;
+    private final EventLoop eventLoop;
+    private final DeferringParker parker = new DeferringParker();
+    private final CoalescingStrategy cs;
+
+    // only ever consumed on the event loop, and only when non-empty, so the coalescing strategy never blocks on it
+    private final BlockingQueue<QueuedMessage> backlog = new LinkedBlockingQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final List<QueuedMessage> drainedMessages = new ArrayList<>(DRAIN_BATCH_SIZE);
+    private int drainedIndex;
+
+    // messages that must not be lost, written since the last flush; they are retried if the flush fails
+    private final List<QueuedMessage> unflushedRetries = new ArrayList<>();
+    private boolean unflushed;
+    private boolean flushScheduled;
+
+    private Channel channel;
+    private boolean connected;
+    private long connectStartNanos = -1;
+    private DataOutputStreamPlus compressedOut;
+    private final CompressedBlockSink compressedBlocks = new CompressedBlockSink();
+
+    private volatile boolean isStopped = false;
+    private volatile long completed;
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile int currentMsgBufferCount = 0;
+    private volatile int targetVersion = MessagingService.current_version;
+
+    private final Runnable drainTask = new Runnable()
+    {
+        public void run()
+        {
+            drain();
+        }
+    };
+
+    private final Runnable flushTask = new Runnable()
+    {
+        public void run()
+        {
+            flushScheduled = false;
+            flush();
+        }
+    };
+
+    private final Runnable reconnectTask = new Runnable()
+    {
+        public void run()
+        {
+            if (channel == null && !isStopped)
+                connect();
+        }
+    };
+
+    public OutboundNettyConnection(OutboundTcpConnectionPool pool)
+    {
+        this.poolReference = pool;
+        this.eventLoop = MessagingService.instance().eventLoopGroup().next();
+        cs = CoalescingStrategies.newCoalescingStrategy(DatabaseDescriptor.getOtcCoalescingStrategy(),
+                                                        DatabaseDescriptor.getOtcCoalescingWindow(),
+                                                        parker,
+                                                        logger,
+                                                        pool.endPoint().getHostAddress());
+    }
+
+    public void start()
+    {
+        // the channel is opened when the first message is queued
+    }
+
+    public void enqueue(MessageOut<?> message, int id)
+    {
+        backlog.add(new QueuedMessage(message, id));
+        scheduleDrain();
+    }
+
+    public void closeSocket(final boolean destroy)
+    {
+        isStopped = destroy;
+        eventLoop.execute(new Runnable()
+        {
+            public void run()
+            {
+                backlog.clear();
+                drainedMessages.clear();
+                drainedIndex = 0;
+                currentMsgBufferCount = 0;
+                unflushedRetries.clear();
+                disconnect(false);
+            }
+        });
+    }
+
+    public void softCloseSocket()
+    {
+        enqueue(OutboundTcpConnection.CLOSE_SENTINEL, -1);
+    }
+
+    public int getTargetVersion()
+    {
+        return targetVersion;
+    }
+
+    public int getPendingMessages()
+    {
+        return backlog.size() + currentMsgBufferCount;
+    }
+
+    public long getCompletedMesssages()
+    {
+        return completed;
+    }
+
+    public long getDroppedMessages()
+    {
+        return dropped.get();
+    }
+
+    private InetAddress endPoint()
+    {
+        return poolReference.endPoint();
+    }
+
+    private void scheduleDrain()
+    {
+        if (drainScheduled.compareAndSet(false, true))
+            eventLoop.execute(drainTask);
+    }
+
+    /**
+     * Writes one coalesced batch of messages, and reschedules itself if more are waiting so that a busy connection
+     * does not starve the others sharing its event loop.
+     */
+    private void drain()
+    {
+        drainScheduled.set(false);
+        if (isStopped)
+        {
+            backlog.clear();
+            return;
+        }
+
+        long flushDelay = 0;
+        if (drainedIndex == drainedMessages.size())
+        {
+            drainedMessages.clear();
+            drainedIndex = 0;
+            if (backlog.isEmpty())
+                return;
+            if (connected && !channel.isWritable())
+            {
+                // the peer is not keeping up: leave the backlog where it is until channelWritabilityChanged
+                if (backlog.size() > MAX_BACKLOG_BEFORE_EXPIRY)
+                    expireMessages();
+                return;
+            }
+
+            try
+            {
+                cs.coalesce(backlog, drainedMessages, DRAIN_BATCH_SIZE);
+            }
+            catch (InterruptedException e)
+            {
+                throw new AssertionError(e);
+            }
+            flushDelay = parker.takeDeferred();
+        }
+
+        while (drainedIndex < drainedMessages.size())
+        {
+            if (!connected)
+            {
+                if (channel == null)
+                    connect();
+                // resumed once the handshake completes
+                break;
+            }
+            if (!channel.isWritable())
+                break;
+
+            QueuedMessage qm = drainedMessages.get(drainedIndex++);
+            currentMsgBufferCount = drainedMessages.size() - drainedIndex;
+            if (qm.message == OutboundTcpConnection.CLOSE_SENTINEL)
+            {
+                flush();
+                disconnect(true);
+                continue;
+            }
+            write(qm);
+        }
+
+        if (unflushed && !flushScheduled)
+        {
+            if (flushDelay > 0)
+            {
+                flushScheduled = true;
+                eventLoop.schedule(flushTask, flushDelay, TimeUnit.NANOSECONDS);
+            }
+            else
+            {
+                flush();
+            }
+        }
+
+        if (connected && channel.isWritable() && !backlog.isEmpty())
+            scheduleDrain();
+    }
+
+    private void write(QueuedMessage qm)
+    {
+        if (qm.isTimedOut(TimeUnit.MILLISECONDS.toNanos(qm.message.getTimeout()), System.nanoTime()))
+        {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        try
+        {
+            OutboundTcpConnection.traceOutgoing(qm.message, endPoint());
+
+            long timestampMillis = NanoTimeToCurrentTimeMillis.convert(qm.timestampNanos);
+            if (compressedOut != null)
+            {
+                writeInternal(compressedOut, qm.message, qm.id, timestampMillis);
+            }
+            else
+            {
+                int size = MESSAGE_PREFIX_SIZE + qm.message.serializedSize(targetVersion);
+                ByteBuf buf = channel.alloc().directBuffer(size, size);
+                try
+                {
+                    DataOutputBufferFixed out = new DataOutputBufferFixed(buf.nioBuffer(0, size));
+                    writeInternal(out, qm.message, qm.id, timestampMillis);
+                    assert out.getLength() == size : String.format("Serialized %d bytes but expected %d for %s", out.getLength(), size, qm.message);
+                    buf.writerIndex(size);
+                }
+                catch (Throwable t)
+                {
+                    buf.release();
+                    throw t;
+                }
+                channel.write(buf, channel.voidPromise());
+            }
+
+            unflushed = true;
+            if (qm.shouldRetry())
+                unflushedRetries.add(qm);
+            completed++;
+        }
+        catch (Throwable t)
+        {
+            JVMStabilityInspector.inspectThrowable(t);
+            // nothing here touches the network, so this is a programming error; don't silence it
+            logger.error("error writing to {}", endPoint(), t);
+            disconnect(false);
+        }
+    }
+
+    private void writeInternal(DataOutputPlus out, MessageOut<?> message, int id, long timestamp) throws IOException
+    {
+        out.writeInt(MessagingService.PROTOCOL_MAGIC);
+        out.writeInt(id);
+        // int cast cuts off the high-order half of the timestamp, which we can assume remains
+        // the same between now and when the recipient reconstructs it.
+        out.writeInt((int) timestamp);
+        message.serialize(out, targetVersion);
+    }
+
+    private void flush()
+    {
+        if (!unflushed || channel == null)
+            return;
+        unflushed = false;
+
+        ChannelPromise promise = channel.voidPromise();
+        if (!unflushedRetries.isEmpty())
+        {
+            final List<QueuedMessage> retries = new ArrayList<>(unflushedRetries);
+            unflushedRetries.clear();
+            promise = channel.newPromise();
+            promise.addListener(new ChannelFutureListener()
+            {
+                public void operationComplete(ChannelFuture future)
+                {
+                    if (future.isSuccess())
+                        return;
+                    // if the message was important, such as a repair acknowledgement, put it back on the queue
+                    // to retry after re-connecting.  See CASSANDRA-5393
+                    requeue(retries);
+                }
+            });
+        }
+
+        if (compressedOut != null)
+        {
+            try
+            {
+                compressedOut.flush();
+            }
+            catch (IOException e)
+            {
+                // the block sink only ever writes to memory
+                throw new AssertionError(e);
+            }
+            ByteBuf blocks = compressedBlocks.take();
+            channel.write(blocks == null ? Unpooled.EMPTY_BUFFER : blocks, promise);
+        }
+        else if (promise != channel.voidPromise())
+        {
+            // completes once everything written before it has been sent, or fails with the channel
+            channel.write(Unpooled.EMPTY_BUFFER, promise);
+        }
+        channel.flush();
+    }
+
+    private void requeue(List<QueuedMessage> retries)
+    {
+        for (QueuedMessage qm : retries)
+        {
+            if (qm.shouldRetry())
+                backlog.add(new RetriedQueuedMessage(qm));
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * @param graceful if true, close once everything already flushed has been sent
+     */
+    private void disconnect(boolean graceful)
+    {
+        if (channel == null)
+            return;
+
+        Channel closing = channel;
+        channel = null;
+        connected = false;
+        connectStartNanos = -1;
+        releaseCompression();
+
+        if (!unflushedRetries.isEmpty())
+        {
+            List<QueuedMessage> retries = new ArrayList<>(unflushedRetries);
+            unflushedRetries.clear();
+            requeue(retries);
+        }
+        unflushed = false;
+
+        if (graceful)
+            closing.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+        else
+            closing.close();
+    }
+
+    private void releaseCompression()
+    {
+        compressedOut = null;
+        ByteBuf blocks = compressedBlocks.take();
+        if (blocks != null)
+            blocks.release();
+    }
+
+    private void connect()
+    {
+        if (logger.isDebugEnabled())
+            logger.debug("attempting to connect to {}", endPoint());
+
+        if (connectStartNanos < 0)
+            connectStartNanos = System.nanoTime();
+        targetVersion = MessagingService.instance().getVersion(endPoint());
+        // peers older than 2.1 expect Snappy, which is only implemented for the thread per connection transport;
+        // compression is the sender's choice, so we simply don't compress for them
+        boolean compress = OutboundTcpConnection.shouldCompressConnection(endPoint())
+                           && targetVersion >= MessagingService.VERSION_21;
+
+        Bootstrap bootstrap = new Bootstrap().group(eventLoop)
+                                             .channel(NioSocketChannel.class)
+                                             .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                                             .option(ChannelOption.SO_KEEPALIVE, true)
+                                             .option(ChannelOption.TCP_NODELAY, OutboundTcpConnection.isLocalDC(endPoint())
+                                                                                ? OutboundTcpConnection.INTRADC_TCP_NODELAY
+                                                                                : DatabaseDescriptor.getInterDCTcpNoDelay())
+                                             .option(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, HIGH_WATER_MARK)
+                                             .option(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, LOW_WATER_MARK)
+                                             .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) DatabaseDescriptor.getRpcTimeout())
+                                             .handler(new Handler(compress));
+        if (DatabaseDescriptor.getInternodeSendBufferSize() != null)
+            bootstrap.option(ChannelOption.SO_SNDBUF, DatabaseDescriptor.getInternodeSendBufferSize());
+
+        ChannelFuture future = bootstrap.connect(endPoint(), DatabaseDescriptor.getStoragePort());
+        channel = future.channel();
+        future.addListener(new ChannelFutureListener()
+        {
+            public void operationComplete(ChannelFuture future)
+            {
+                if (!future.isSuccess() && future.channel() == channel)
+                {
+                    if (logger.isTraceEnabled())
+                        logger.trace("unable to connect to " + endPoint(), future.cause());
+                    connectionFailed();
+                }
+            }
+        });
+    }
+
+    private void connectionFailed()
+    {
+        channel = null;
+        connected = false;
+        releaseCompression();
+
+        if (!isStopped && System.nanoTime() - connectStartNanos < TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getRpcTimeout()))
+        {
+            eventLoop.schedule(reconnectTask, OutboundTcpConnection.OPEN_RETRY_DELAY, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        // clear out the queue, else gossip messages back up.
+        connectStartNanos = -1;
+        backlog.clear();
+        drainedMessages.clear();
+        drainedIndex = 0;
+        currentMsgBufferCount = 0;
+    }
+
+    private void handshakeCompleted(Channel ch, int maxTargetVersion, boolean compress)
+    {
+        MessagingService.instance().setVersion(endPoint(), maxTargetVersion);
+        if (targetVersion > maxTargetVersion)
+        {
+            logger.debug("Target max version is {}; will reconnect with that version", maxTargetVersion);
+            ch.close();
+            return;
+        }
+
+        if (targetVersion < maxTargetVersion && targetVersion < MessagingService.current_version)
+        {
+            logger.trace("Detected higher max version {} (using {}); will reconnect when queued messages are done",
+                         maxTargetVersion, targetVersion);
+            softCloseSocket();
+        }
+
+        byte[] address = FBUtilities.getBroadcastAddress().getAddress();
+        ByteBuf buf = ch.alloc().buffer(4 + 1 + address.length);
+        buf.writeInt(MessagingService.current_version);
+        buf.writeByte(address.length);
+        buf.writeBytes(address);
+        ch.writeAndFlush(buf, ch.voidPromise());
+
+        if (compress)
+        {
+            LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+            Checksum checksum = XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum();
+            compressedOut = new WrappedDataOutputStreamPlus(new LZ4BlockOutputStream(compressedBlocks,
+                                                                                     1 << 14,  // 16k block size
+                                                                                     compressor,
+                                                                                     checksum,
+                                                                                     true)); // no async flushing
+        }
+
+        connected = true;
+        connectStartNanos = -1;
+        drain();
+    }
+
+    private void expireMessages()
+    {
+        Iterator<QueuedMessage> iter = backlog.iterator();
+        long nowNanos = System.nanoTime();
+        while (iter.hasNext())
+        {
+            QueuedMessage qm = iter.next();
+            if (!qm.isTimedOut(TimeUnit.MILLISECONDS.toNanos(qm.message.getTimeout()), nowNanos))
+                return;
+            iter.remove();
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Performs the handshake once connected, then tracks the channel's writability and lifetime.
+     */
+    private final class Handler extends ByteToMessageDecoder
+    {
+        private final boolean compress;
+        private boolean handshaken;
+        private ScheduledFuture<?> handshakeTimeout;
+
+        Handler(boolean compress)
+        {
+            this.compress = compress;
+        }
+
+        @Override
+        public void channelActive(final ChannelHandlerContext ctx) throws Exception
+        {
+            logger.info("Handshaking version with {}", endPoint());
+            ByteBuf buf = ctx.alloc().buffer(8);
+            buf.writeInt(MessagingService.PROTOCOL_MAGIC);
+            buf.writeInt(OutboundTcpConnection.header(targetVersion, compress));
+            ctx.writeAndFlush(buf, ctx.voidPromise());
+
+            handshakeTimeout = ctx.executor().schedule(new Runnable()
+            {
+                public void run()
+                {
+                    // no version is returned, so disconnect and try again: we will either get a different
+                    // target version or if the same version the handshake will finally succeed
+                    logger.info("Cannot handshake version with {}", endPoint());
+                    if (DatabaseDescriptor.getSeeds().contains(endPoint()))
+                        logger.warn("Seed gossip version is unknown; will not connect with that version");
+                    ctx.close();
+                }
+            }, OutboundTcpConnection.WAIT_FOR_VERSION_MAX_TIME, TimeUnit.MILLISECONDS);
+            super.channelActive(ctx);
+        }
+
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out)
+        {
+            if (handshaken || in.readableBytes() < 4)
+            {
+                // nothing further is expected from the peer on this connection
+                if (handshaken)
+                    in.skipBytes(in.readableBytes());
+                return;
+            }
+
+            handshaken = true;
+            handshakeTimeout.cancel(false);
+            int maxTargetVersion = in.readInt();
+            if (ctx.channel() == channel)
+                handshakeCompleted(ctx.channel(), maxTargetVersion, compress);
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception
+        {
+            if (ctx.channel() == channel && ctx.channel().isWritable())
+                scheduleDrain();
+            super.channelWritabilityChanged(ctx);
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception
+        {
+            if (handshakeTimeout != null)
+                handshakeTimeout.cancel(false);
+
+            if (ctx.channel() == channel)
+            {
+                if (connected)
+                {
+                    disconnect(false);
+                    scheduleDrain();
+                }
+                else
+                {
+                    connectionFailed();
+                }
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+        {
+            if (logger.isDebugEnabled())
+                logger.debug("error writing to {}", endPoint(), cause);
+            ctx.close();
+        }
+    }
+
+    /**
+     * Collects the blocks emitted by the LZ4 stream of a compressed connection until they are flushed.
+     */
+    private final class CompressedBlockSink extends OutputStream
+    {
+        private ByteBuf blocks;
+
+        public void write(int b)
+        {
+            blocks().writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len)
+        {
+            blocks().writeBytes(b, off, len);
+        }
+
+        private ByteBuf blocks()
+        {
+            if (blocks == null)
+                blocks = channel.alloc().directBuffer();
+            return blocks;
+        }
+
+        ByteBuf take()
+        {
+            ByteBuf taken = blocks;
+            blocks = null;
+            return taken;
+        }
+    }
+}
@@ -42,8 +42,8 @@ public class OutboundTcpConnectionPool
     // pointer for the real Address.
     private final InetAddress id;
     private final CountDownLatch started;
-    public final OutboundTcpConnection smallMessages;
-    public final OutboundTcpConnection largeMessages;
+    public final IOutboundConnection smallMessages;
+    public final IOutboundConnection largeMessages;
     // pointer to the reset Address.
     private InetAddress resetEndpoint;
     private ConnectionMetrics metrics;
@@ -54,15 +54,24 @@ public class OutboundTcpConnectionPool
         resetEndpoint = SystemKeyspace.getPreferredIP(remoteEp);
         started = new CountDownLatch(1);
 
-        smallMessages = new OutboundTcpConnection(this);
-        largeMessages = new OutboundTcpConnection(this);
+        smallMessages = newConnection();
+        largeMessages = newConnection();
+    }
+
+    private IOutboundConnection newConnection()
+    {
+        // encrypted connections need an SSLSocket, which only the thread per connection transport provides
+        if (DatabaseDescriptor.getInternodeMessagingTransport() == Config.InternodeMessagingTransport.netty
+            && !isEncryptedChannel(endPoint()))
+            return new OutboundNettyConnection(this);
+        return new OutboundTcpConnection(this);
     }
 
     /**
      * returns the appropriate connection based on message type.
      * returns null if a connection could not be established.
      */
-    OutboundTcpConnection getConnection(MessageOut msg)
+    IOutboundConnection getConnection(MessageOut msg)
     {
         return msg.payloadSize(smallMessages.getTargetVersion()) > LARGE_MESSAGE_THRESHOLD
                ? largeMessages
@@ -71,13 +80,13 @@ public class OutboundTcpConnectionPool
 
     void reset()
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { smallMessages, largeMessages })
+        for (IOutboundConnection conn : new IOutboundConnection[] { smallMessages, largeMessages })
             conn.closeSocket(false);
     }
 
     public void resetToNewerVersion(int version)
     {
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { smallMessages, largeMessages })
+        for (IOutboundConnection conn : new IOutboundConnection[] { smallMessages, largeMessages })
         {
             if (version > conn.getTargetVersion())
                 conn.softCloseSocket();
@@ -93,7 +102,7 @@ public class OutboundTcpConnectionPool
     {
         SystemKeyspace.updatePreferredIP(id, remoteEP);
         resetEndpoint = remoteEP;
-        for (OutboundTcpConnection conn : new OutboundTcpConnection[] { smallMessages, largeMessages })
+        for (IOutboundConnection conn : new IOutboundConnection[] { smallMessages, largeMessages })
             conn.softCloseSocket();
 
         // release previous metrics and create new one with reset address
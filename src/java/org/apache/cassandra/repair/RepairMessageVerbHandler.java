@@ -107,7 +107,7 @@ public class RepairMessageVerbHandler implements IVerbHandler<RepairMessage>
                     // trigger read-only compaction
                     ColumnFamilyStore store = Keyspace.open(desc.keyspace).getColumnFamilyStore(desc.columnFamily);
 
-                    Validator validator = new Validator(desc, message.from, validationRequest.gcBefore);
+                    Validator validator = new Validator(desc, message.from, validationRequest.gcBefore, validationRequest.digestVersion);
                     CompactionManager.instance.submitValidation(store, validator);
                     break;
 
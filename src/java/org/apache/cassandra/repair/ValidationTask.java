@@ -35,12 +35,14 @@ public class ValidationTask extends AbstractFuture<TreeResponse> implements Runn
     private final RepairJobDesc desc;
     private final InetAddress endpoint;
     private final int gcBefore;
+    private final int digestVersion;
 
-    public ValidationTask(RepairJobDesc desc, InetAddress endpoint, int gcBefore)
+    public ValidationTask(RepairJobDesc desc, InetAddress endpoint, int gcBefore, int digestVersion)
     {
         this.desc = desc;
         this.endpoint = endpoint;
         this.gcBefore = gcBefore;
+        this.digestVersion = digestVersion;
     }
 
     /**
@@ -48,7 +50,7 @@ public class ValidationTask extends AbstractFuture<TreeResponse> implements Runn
      */
     public void run()
     {
-        ValidationRequest request = new ValidationRequest(desc, gcBefore);
+        ValidationRequest request = new ValidationRequest(desc, gcBefore, digestVersion);
         MessagingService.instance().sendOneWay(request.createMessage(), endpoint);
     }
 
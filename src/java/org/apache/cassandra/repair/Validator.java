@@ -39,6 +39,7 @@ import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.MerkleTree;
 import org.apache.cassandra.utils.MerkleTree.RowHash;
+import org.apache.cassandra.utils.Murmur3Digest;
 
 /**
  * Handles the building of a merkle tree for a column family.
@@ -55,6 +56,8 @@ public class Validator implements Runnable
     public final RepairJobDesc desc;
     public final InetAddress initiator;
     public final int gcBefore;
+    // the messaging version of the least recent node taking part in the repair, which decides how partitions are hashed
+    public final int digestVersion;
 
     // null when all rows with the min token have been consumed
     private long validated;
@@ -67,10 +70,16 @@ public class Validator implements Runnable
     private DecoratedKey lastKey;
 
     public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore)
+    {
+        this(desc, initiator, gcBefore, MessagingService.current_version);
+    }
+
+    public Validator(RepairJobDesc desc, InetAddress initiator, int gcBefore, int digestVersion)
     {
         this.desc = desc;
         this.initiator = initiator;
         this.gcBefore = gcBefore;
+        this.digestVersion = digestVersion;
         validated = 0;
         range = null;
         ranges = null;
@@ -124,10 +133,36 @@ public class Validator implements Runnable
      */
     public void add(UnfilteredRowIterator partition)
     {
-        assert desc.range.contains(partition.partitionKey().getToken()) : partition.partitionKey().getToken() + " is not contained in " + desc.range;
-        assert lastKey == null || lastKey.compareTo(partition.partitionKey()) < 0
-               : "partition " + partition.partitionKey() + " received out of order wrt " + lastKey;
-        lastKey = partition.partitionKey();
+        moveTo(partition.partitionKey());
+
+        // case 3 must be true: mix in the hashed row
+        RowHash rowHash = rowHash(partition);
+        if (rowHash != null)
+        {
+            range.addHash(rowHash);
+        }
+    }
+
+    /**
+     * Called (in order, along with {@link #add(UnfilteredRowIterator)}) for every partition whose hash is known
+     * without reading it, see {@link org.apache.cassandra.io.sstable.PartitionHashes}.
+     *
+     * @param key the partition key
+     * @param rowHash the hash of the partition, as {@link #add(UnfilteredRowIterator)} would compute it
+     */
+    public void add(DecoratedKey key, RowHash rowHash)
+    {
+        moveTo(key);
+        validated++;
+        range.addHash(rowHash);
+    }
+
+    private void moveTo(DecoratedKey key)
+    {
+        assert desc.range.contains(key.getToken()) : key.getToken() + " is not contained in " + desc.range;
+        assert lastKey == null || lastKey.compareTo(key) < 0
+               : "partition " + key + " received out of order wrt " + lastKey;
+        lastKey = key;
 
         if (range == null)
             range = ranges.next();
@@ -139,16 +174,9 @@ public class Validator implements Runnable
             range.ensureHashInitialised();
             range = ranges.next();
         }
-
-        // case 3 must be true: mix in the hashed row
-        RowHash rowHash = rowHash(partition);
-        if (rowHash != null)
-        {
-            range.addHash(rowHash);
-        }
     }
 
-    static class CountingDigest extends MessageDigest
+    public static class CountingDigest extends MessageDigest
     {
         private long count;
         private MessageDigest underlying;
@@ -159,6 +187,11 @@ public class Validator implements Runnable
             this.underlying = underlying;
         }
 
+        public long count()
+        {
+            return count;
+        }
+
         @Override
         protected void engineUpdate(byte input)
         {
@@ -187,11 +220,20 @@ public class Validator implements Runnable
 
     }
 
+    /**
+     * @return whether partitions are hashed with {@link Murmur3Digest}, which every node taking part in the repair
+     * knows, rather than with SHA-256
+     */
+    public boolean usesFastDigest()
+    {
+        return digestVersion >= MessagingService.VERSION_31;
+    }
+
     private MerkleTree.RowHash rowHash(UnfilteredRowIterator partition)
     {
         validated++;
         // MerkleTree uses XOR internally, so we want lots of output bits here
-        CountingDigest digest = new CountingDigest(FBUtilities.newMessageDigest("SHA-256"));
+        CountingDigest digest = new CountingDigest(usesFastDigest() ? new Murmur3Digest() : FBUtilities.newMessageDigest("SHA-256"));
         UnfilteredRowIterators.digest(partition, digest);
         // only return new hash for merkle tree in case digest was updated - see CASSANDRA-8979
         return digest.count > 0
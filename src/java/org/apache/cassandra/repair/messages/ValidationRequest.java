@@ -22,6 +22,7 @@ import java.io.IOException;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.RepairJobDesc;
 
 /**
@@ -34,11 +35,14 @@ public class ValidationRequest extends RepairMessage
     public static MessageSerializer serializer = new ValidationRequestSerializer();
 
     public final int gcBefore;
+    // the lowest messaging version of the nodes taking part in the repair, see Validator
+    public final int digestVersion;
 
-    public ValidationRequest(RepairJobDesc desc, int gcBefore)
+    public ValidationRequest(RepairJobDesc desc, int gcBefore, int digestVersion)
     {
         super(Type.VALIDATION_REQUEST, desc);
         this.gcBefore = gcBefore;
+        this.digestVersion = digestVersion;
     }
 
     @Override
@@ -46,6 +50,7 @@ public class ValidationRequest extends RepairMessage
     {
         return "ValidationRequest{" +
                 "gcBefore=" + gcBefore +
+                ", digestVersion=" + digestVersion +
                 "} " + super.toString();
     }
 
@@ -56,13 +61,13 @@ public class ValidationRequest extends RepairMessage
         if (o == null || getClass() != o.getClass()) return false;
 
         ValidationRequest that = (ValidationRequest) o;
-        return gcBefore == that.gcBefore;
+        return gcBefore == that.gcBefore && digestVersion == that.digestVersion;
     }
 
     @Override
     public int hashCode()
     {
-        return gcBefore;
+        return 31 * gcBefore + digestVersion;
     }
 
     public static class ValidationRequestSerializer implements MessageSerializer<ValidationRequest>
@@ -71,18 +76,25 @@ public class ValidationRequest extends RepairMessage
         {
             RepairJobDesc.serializer.serialize(message.desc, out, version);
             out.writeInt(message.gcBefore);
+            if (version >= MessagingService.VERSION_31)
+                out.writeUnsignedVInt(message.digestVersion);
         }
 
         public ValidationRequest deserialize(DataInputPlus dis, int version) throws IOException
         {
             RepairJobDesc desc = RepairJobDesc.serializer.deserialize(dis, version);
-            return new ValidationRequest(desc, dis.readInt());
+            int gcBefore = dis.readInt();
+            // an older initiator expects its own digest
+            int digestVersion = version >= MessagingService.VERSION_31 ? (int) dis.readUnsignedVInt() : version;
+            return new ValidationRequest(desc, gcBefore, digestVersion);
         }
 
         public long serializedSize(ValidationRequest message, int version)
         {
             long size = RepairJobDesc.serializer.serializedSize(message.desc, version);
             size += TypeSizes.sizeof(message.gcBefore);
+            if (version >= MessagingService.VERSION_31)
+                size += TypeSizes.sizeofUnsignedVInt(message.digestVersion);
             return size;
         }
     }
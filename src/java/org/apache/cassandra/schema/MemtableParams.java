@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.schema;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import org.apache.cassandra.exceptions.ConfigurationException;
+
+import static java.lang.String.format;
+
+// CQL: {'type' : 'SKIPLIST'|'TRIE'}
+public final class MemtableParams
+{
+    public enum Option
+    {
+        TYPE;
+
+        @Override
+        public String toString()
+        {
+            return name().toLowerCase();
+        }
+    }
+
+    public enum Type
+    {
+        /**
+         * Partitions are kept in an on-heap ConcurrentSkipListMap.
+         */
+        SKIPLIST,
+
+        /**
+         * Partitions are indexed by a byte-comparable trie held in native memory; only usable
+         * with the Murmur3Partitioner, tables of other partitioners fall back to SKIPLIST.
+         */
+        TRIE
+    }
+
+    public static final MemtableParams SKIPLIST = new MemtableParams(Type.SKIPLIST);
+    public static final MemtableParams TRIE = new MemtableParams(Type.TRIE);
+
+    static final MemtableParams DEFAULT = SKIPLIST;
+
+    public final Type type;
+
+    private MemtableParams(Type type)
+    {
+        this.type = type;
+    }
+
+    public static MemtableParams fromMap(Map<String, String> map)
+    {
+        Map<String, String> copy = new HashMap<>(map);
+
+        String type = copy.remove(Option.TYPE.toString());
+
+        if (!copy.isEmpty())
+        {
+            throw new ConfigurationException(format("Invalid memtable sub-options %s: only '%s' is allowed",
+                                                    copy.keySet(),
+                                                    Option.TYPE));
+        }
+
+        return type == null ? DEFAULT : forType(typeFromString(type));
+    }
+
+    public static MemtableParams forType(Type type)
+    {
+        return type == Type.TRIE ? TRIE : SKIPLIST;
+    }
+
+    public Map<String, String> asMap()
+    {
+        return ImmutableMap.of(Option.TYPE.toString(), type.name());
+    }
+
+    private static Type typeFromString(String value)
+    {
+        try
+        {
+            return Type.valueOf(value.toUpperCase());
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new ConfigurationException(format("Invalid value '%s' for memtable sub-option '%s': only '%s' and '%s' are allowed",
+                                                    value,
+                                                    Option.TYPE,
+                                                    Type.SKIPLIST,
+                                                    Type.TRIE));
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return format("{'%s' : '%s'}", Option.TYPE, type);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o)
+            return true;
+
+        if (!(o instanceof MemtableParams))
+            return false;
+
+        return type == ((MemtableParams) o).type;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hashCode(type);
+    }
+}
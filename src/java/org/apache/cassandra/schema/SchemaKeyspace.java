@@ -103,6 +103,7 @@ public final class SchemaKeyspace
                 + "gc_grace_seconds int,"
                 + "id uuid,"
                 + "max_index_interval int,"
+                + "memtable map<text, text>,"
                 + "memtable_flush_period_in_ms int,"
                 + "min_index_interval int,"
                 + "read_repair_chance double,"
@@ -853,6 +854,11 @@ public final class SchemaKeyspace
              .map("caching", params.caching.asMap())
              .map("compaction", params.compaction.asMap())
              .map("compression", params.compression.asMap());
+
+        // Nodes that predate the memtable option don't know its column, and would reject or drop the schema mutations
+        // holding it and disagree on the schema digest: it is only written when it isn't the default.
+        if (!params.memtable.equals(MemtableParams.DEFAULT))
+            adder.map("memtable", params.memtable.asMap());
     }
 
     public static Mutation makeUpdateTableMutation(KeyspaceMetadata keyspace,
@@ -865,6 +871,10 @@ public final class SchemaKeyspace
 
         addTableToSchemaMutation(newTable, timestamp, false, mutation);
 
+        // the default memtable option isn't written, so reverting to it has to remove the previous one
+        if (!newTable.params.memtable.equals(oldTable.params.memtable) && newTable.params.memtable.equals(MemtableParams.DEFAULT))
+            new RowUpdateBuilder(Tables, timestamp, mutation).clustering(newTable.cfName).resetCollection("memtable").build();
+
         MapDifference<ByteBuffer, ColumnDefinition> columnDiff = Maps.difference(oldTable.getColumnMetadata(),
                                                                                  newTable.getColumnMetadata());
 
@@ -1071,6 +1081,10 @@ public final class SchemaKeyspace
 
     private static TableParams createTableParamsFromRow(UntypedResultSet.Row row)
     {
+        MemtableParams memtable = row.has("memtable")
+                                ? MemtableParams.fromMap(row.getTextMap("memtable"))
+                                : MemtableParams.SKIPLIST;
+
         return TableParams.builder()
                           .bloomFilterFpChance(row.getDouble("bloom_filter_fp_chance"))
                           .caching(CachingParams.fromMap(row.getTextMap("caching")))
@@ -1081,6 +1095,7 @@ public final class SchemaKeyspace
                           .defaultTimeToLive(row.getInt("default_time_to_live"))
                           .gcGraceSeconds(row.getInt("gc_grace_seconds"))
                           .maxIndexInterval(row.getInt("max_index_interval"))
+                          .memtable(memtable)
                           .memtableFlushPeriodInMs(row.getInt("memtable_flush_period_in_ms"))
                           .minIndexInterval(row.getInt("min_index_interval"))
                           .readRepairChance(row.getDouble("read_repair_chance"))
@@ -39,6 +39,7 @@ public final class TableParams
         DEFAULT_TIME_TO_LIVE,
         GC_GRACE_SECONDS,
         MAX_INDEX_INTERVAL,
+        MEMTABLE,
         MEMTABLE_FLUSH_PERIOD_IN_MS,
         MIN_INDEX_INTERVAL,
         READ_REPAIR_CHANCE,
@@ -73,6 +74,7 @@ public final class TableParams
     public final CachingParams caching;
     public final CompactionParams compaction;
     public final CompressionParams compression;
+    public final MemtableParams memtable;
 
     private TableParams(Builder builder)
     {
@@ -91,6 +93,7 @@ public final class TableParams
         caching = builder.caching;
         compaction = builder.compaction;
         compression = builder.compression;
+        memtable = builder.memtable;
     }
 
     public static Builder builder()
@@ -109,6 +112,7 @@ public final class TableParams
                             .defaultTimeToLive(params.defaultTimeToLive)
                             .gcGraceSeconds(params.gcGraceSeconds)
                             .maxIndexInterval(params.maxIndexInterval)
+                            .memtable(params.memtable)
                             .memtableFlushPeriodInMs(params.memtableFlushPeriodInMs)
                             .minIndexInterval(params.minIndexInterval)
                             .readRepairChance(params.readRepairChance)
@@ -191,7 +195,8 @@ public final class TableParams
             && speculativeRetry.equals(p.speculativeRetry)
             && caching.equals(p.caching)
             && compaction.equals(p.compaction)
-            && compression.equals(p.compression);
+            && compression.equals(p.compression)
+            && memtable.equals(p.memtable);
     }
 
     @Override
@@ -209,7 +214,8 @@ public final class TableParams
                                 speculativeRetry,
                                 caching,
                                 compaction,
-                                compression);
+                                compression,
+                                memtable);
     }
 
     @Override
@@ -229,6 +235,7 @@ public final class TableParams
                           .add(Option.CACHING.toString(), caching)
                           .add(Option.COMPACTION.toString(), compaction)
                           .add(Option.COMPRESSION.toString(), compression)
+                          .add(Option.MEMTABLE.toString(), memtable)
                           .toString();
     }
 
@@ -247,6 +254,7 @@ public final class TableParams
         private CachingParams caching = CachingParams.DEFAULT;
         private CompactionParams compaction = CompactionParams.DEFAULT;
         private CompressionParams compression = CompressionParams.DEFAULT;
+        private MemtableParams memtable = MemtableParams.DEFAULT;
 
         public Builder()
         {
@@ -334,5 +342,11 @@ public final class TableParams
             compression = val;
             return this;
         }
+
+        public Builder memtable(MemtableParams val)
+        {
+            memtable = val;
+            return this;
+        }
     }
 }
@@ -67,6 +67,8 @@ public abstract class AbstractReadExecutor
     {
         this.command = command;
         this.targetReplicas = targetReplicas;
+        // every replica we may ask for a digest, including the one we may speculate on, has to digest the same way
+        command.setDigestVersion(MessagingService.instance().getMinVersion(targetReplicas));
         this.handler = new ReadCallback(new DigestResolver(keyspace, command, consistencyLevel, targetReplicas.size()), consistencyLevel, command, targetReplicas);
         this.traceState = Tracing.instance.get();
     }
@@ -19,13 +19,18 @@ package org.apache.cassandra.service;
 
 import java.net.InetAddress;
 import java.util.Collection;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.concurrent.DebuggableScheduledThreadPoolExecutor;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.db.Keyspace;
@@ -40,6 +45,16 @@ public abstract class AbstractWriteResponseHandler<T> implements IAsyncCallbackW
 {
     protected static final Logger logger = LoggerFactory.getLogger( AbstractWriteResponseHandler.class );
 
+    /**
+     * Fails the futures returned by toFuture() once the write timeout elapses. Completed writes cancel their
+     * timeout task, so we remove cancelled tasks eagerly rather than letting them pile up for the full timeout.
+     */
+    private static final DebuggableScheduledThreadPoolExecutor timeouts = new DebuggableScheduledThreadPoolExecutor("WriteTimeouts");
+    static
+    {
+        timeouts.setRemoveOnCancelPolicy(true);
+    }
+
     private final SimpleCondition condition = new SimpleCondition();
     protected final Keyspace keyspace;
     protected final long start;
@@ -51,6 +66,7 @@ public abstract class AbstractWriteResponseHandler<T> implements IAsyncCallbackW
     private static final AtomicIntegerFieldUpdater<AbstractWriteResponseHandler> failuresUpdater
         = AtomicIntegerFieldUpdater.newUpdater(AbstractWriteResponseHandler.class, "failures");
     private volatile int failures = 0;
+    private volatile SettableFuture<Void> future;
 
     /**
      * @param callback A callback to be called when the write is successful.
@@ -73,22 +89,68 @@ public abstract class AbstractWriteResponseHandler<T> implements IAsyncCallbackW
 
     public void get() throws WriteTimeoutException, WriteFailureException
     {
-        long requestTimeout = writeType == WriteType.COUNTER
-                            ? DatabaseDescriptor.getCounterWriteRpcTimeout()
-                            : DatabaseDescriptor.getWriteRpcTimeout();
-
-        long timeout = TimeUnit.MILLISECONDS.toNanos(requestTimeout) - (System.nanoTime() - start);
-
         boolean success;
         try
         {
-            success = condition.await(timeout, TimeUnit.NANOSECONDS);
+            success = condition.await(remainingTimeout(), TimeUnit.NANOSECONDS);
         }
         catch (InterruptedException ex)
         {
             throw new AssertionError(ex);
         }
 
+        RequestExecutionException e = outcome(success);
+        if (e != null)
+            throw e;
+    }
+
+    /**
+     * Non-blocking counterpart of get(): the returned future completes once enough replicas have acknowledged
+     * the write, and fails with the exception get() would have thrown on timeout or on too many failures.
+     * May be called at most once per handler.
+     */
+    public ListenableFuture<Void> toFuture()
+    {
+        assert future == null;
+        final SettableFuture<Void> f = SettableFuture.create();
+        future = f;
+        // we may have been signalled before the future was published, in which case nobody else will complete it
+        if (condition.isSignaled())
+        {
+            complete(f, true);
+            return f;
+        }
+
+        final ScheduledFuture<?> timeout = timeouts.schedule(() -> complete(f, condition.isSignaled()),
+                                                             remainingTimeout(),
+                                                             TimeUnit.NANOSECONDS);
+        f.addListener(() -> timeout.cancel(false), MoreExecutors.directExecutor());
+        return f;
+    }
+
+    private long remainingTimeout()
+    {
+        long requestTimeout = writeType == WriteType.COUNTER
+                            ? DatabaseDescriptor.getCounterWriteRpcTimeout()
+                            : DatabaseDescriptor.getWriteRpcTimeout();
+
+        return TimeUnit.MILLISECONDS.toNanos(requestTimeout) - (System.nanoTime() - start);
+    }
+
+    private void complete(SettableFuture<Void> f, boolean success)
+    {
+        RequestExecutionException e = outcome(success);
+        if (e == null)
+            f.set(null);
+        else
+            f.setException(e);
+    }
+
+    /**
+     * @return the exception the write should fail with, or null if it succeeded
+     */
+    private RequestExecutionException outcome(boolean success)
+    {
         if (!success)
         {
             int blockedFor = totalBlockFor();
@@ -98,13 +160,13 @@ public abstract class AbstractWriteResponseHandler<T> implements IAsyncCallbackW
             // avoid sending confusing info to the user (see CASSANDRA-6491).
             if (acks >= blockedFor)
                 acks = blockedFor - 1;
-            throw new WriteTimeoutException(writeType, consistencyLevel, acks, blockedFor);
+            return new WriteTimeoutException(writeType, consistencyLevel, acks, blockedFor);
         }
 
         if (totalBlockFor() + failures > totalEndpoints())
-        {
-            throw new WriteFailureException(consistencyLevel, ackCount(), failures, totalBlockFor(), writeType);
-        }
+            return new WriteFailureException(consistencyLevel, ackCount(), failures, totalBlockFor(), writeType);
+
+        return null;
     }
 
     /** 
@@ -151,6 +213,10 @@ public abstract class AbstractWriteResponseHandler<T> implements IAsyncCallbackW
         condition.signalAll();
         if (callback != null)
             callback.run();
+
+        SettableFuture<Void> f = future;
+        if (f != null)
+            complete(f, true);
     }
 
     @Override
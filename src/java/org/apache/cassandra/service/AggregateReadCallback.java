@@ -0,0 +1,275 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.Stage;
+import org.apache.cassandra.concurrent.StageManager;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.exceptions.ReadFailureException;
+import org.apache.cassandra.exceptions.ReadTimeoutException;
+import org.apache.cassandra.metrics.ReadRepairMetrics;
+import org.apache.cassandra.net.IAsyncCallbackWithFailure;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.tracing.TraceState;
+import org.apache.cassandra.tracing.Tracing;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.concurrent.SimpleCondition;
+
+/**
+ * The callback of an {@link AggregateReadCommand}, which collects the aggregate states computed by one of the
+ * replicas and the digests of the page sent by the other replicas, in responses to normal digest reads.
+ */
+public class AggregateReadCallback implements IAsyncCallbackWithFailure<Object>
+{
+    protected static final Logger logger = LoggerFactory.getLogger(AggregateReadCallback.class);
+
+    private final SimpleCondition condition = new SimpleCondition();
+    private final long start;
+    private final int blockfor;
+    private final List<InetAddress> endpoints;
+    private final InetAddress aggregatingEndpoint;
+    private final AggregateReadCommand command;
+    private final ConsistencyLevel consistencyLevel;
+    private final Keyspace keyspace;
+
+    private final Map<InetAddress, ByteBuffer> digests = new ConcurrentHashMap<>();
+    private volatile AggregateReadResponse aggregates;
+    private volatile boolean aggregatingEndpointFailed;
+
+    private static final AtomicIntegerFieldUpdater<AggregateReadCallback> receivedUpdater
+            = AtomicIntegerFieldUpdater.newUpdater(AggregateReadCallback.class, "received");
+    private volatile int received = 0;
+    private static final AtomicIntegerFieldUpdater<AggregateReadCallback> failuresUpdater
+            = AtomicIntegerFieldUpdater.newUpdater(AggregateReadCallback.class, "failures");
+    private volatile int failures = 0;
+
+    public AggregateReadCallback(AggregateReadCommand command,
+                                 ConsistencyLevel consistencyLevel,
+                                 Keyspace keyspace,
+                                 List<InetAddress> endpoints,
+                                 InetAddress aggregatingEndpoint)
+    {
+        assert endpoints.contains(aggregatingEndpoint);
+        this.command = command;
+        this.consistencyLevel = consistencyLevel;
+        this.keyspace = keyspace;
+        this.blockfor = consistencyLevel.blockFor(keyspace);
+        this.endpoints = endpoints;
+        this.aggregatingEndpoint = aggregatingEndpoint;
+        this.start = System.nanoTime();
+    }
+
+    private void awaitResults() throws ReadFailureException, ReadTimeoutException
+    {
+        long time = TimeUnit.MILLISECONDS.toNanos(command.pageCommand.getTimeout()) - (System.nanoTime() - start);
+        boolean signaled;
+        try
+        {
+            signaled = condition.await(time, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException ex)
+        {
+            throw new AssertionError(ex);
+        }
+
+        // the page is then read normally, which fails or times out on its own if needs be
+        if (aggregatingEndpointFailed || (aggregates != null && !aggregates.isAggregated()))
+            return;
+
+        boolean failed = blockfor + failures > endpoints.size();
+        if (signaled && !failed)
+            return;
+
+        String gotAggregates = aggregates == null ? " (without aggregates)" : "";
+        if (Tracing.isTracing())
+            Tracing.trace("{}; received {} of {} responses{}", new Object[]{ (failed ? "Failed" : "Timed out"), received, blockfor, gotAggregates });
+        else if (logger.isDebugEnabled())
+            logger.debug("{}; received {} of {} responses{}", new Object[]{ (failed ? "Failed" : "Timed out"), received, blockfor, gotAggregates });
+
+        throw failed
+            ? new ReadFailureException(consistencyLevel, received, failures, blockfor, aggregates != null)
+            : new ReadTimeoutException(consistencyLevel, received, blockfor, aggregates != null);
+    }
+
+    /**
+     * Waits for the aggregates and for enough digests to satisfy the consistency level.
+     *
+     * @return the response of the aggregating replica, or <code>null</code> if it failed or couldn't compute the
+     * aggregates, or if the digests of the replicas don't match, in which case the page must be read, and repaired,
+     * normally
+     */
+    public AggregateReadResponse get() throws ReadFailureException, ReadTimeoutException
+    {
+        awaitResults();
+
+        if (aggregatingEndpointFailed)
+        {
+            Tracing.trace("Aggregate read failed on {}, reading the rows of the page", aggregatingEndpoint);
+            return null;
+        }
+
+        AggregateReadResponse response = aggregates;
+        if (!response.isAggregated())
+        {
+            Tracing.trace("Aggregates not computed by {}, reading the rows of the page", aggregatingEndpoint);
+            return null;
+        }
+
+        for (ByteBuffer digest : digests.values())
+        {
+            if (!digest.equals(response.digest))
+            {
+                Tracing.trace("Digest mismatch on aggregate read, reading the rows of the page");
+                return null;
+            }
+        }
+
+        if (logger.isDebugEnabled())
+            logger.debug("Aggregate read: {} ms.", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return response;
+    }
+
+    public void response(MessageIn<Object> message)
+    {
+        ByteBuffer digest;
+        if (message.payload instanceof AggregateReadResponse)
+        {
+            aggregates = (AggregateReadResponse) message.payload;
+            if (!aggregates.isAggregated())
+            {
+                condition.signalAll();
+                return;
+            }
+            digest = aggregates.digest;
+        }
+        else
+        {
+            digest = ((ReadResponse) message.payload).digest(command.pageCommand);
+        }
+        digests.put(message.from, digest);
+
+        int n = waitingFor(message.from)
+              ? receivedUpdater.incrementAndGet(this)
+              : received;
+        if (n >= blockfor && aggregates != null && aggregates.isAggregated())
+        {
+            condition.signalAll();
+            // kick off a background digest comparison once all the replicas contacted for read repair have answered
+            if (blockfor < endpoints.size() && n == endpoints.size())
+            {
+                TraceState traceState = Tracing.instance.get();
+                if (traceState != null)
+                    traceState.trace("Initiating read-repair");
+                StageManager.getStage(Stage.READ_REPAIR).execute(new AsyncRepairRunner(traceState));
+            }
+        }
+    }
+
+    public void response(Object result)
+    {
+        MessageIn<Object> message = MessageIn.create(FBUtilities.getBroadcastAddress(),
+                                                     result,
+                                                     Collections.<String, byte[]>emptyMap(),
+                                                     MessagingService.Verb.INTERNAL_RESPONSE,
+                                                     MessagingService.current_version);
+        response(message);
+    }
+
+    /**
+     * @return true if the message counts towards the blockfor threshold
+     */
+    private boolean waitingFor(InetAddress from)
+    {
+        return consistencyLevel.isDatacenterLocal()
+             ? DatabaseDescriptor.getLocalDataCenter().equals(DatabaseDescriptor.getEndpointSnitch().getDatacenter(from))
+             : true;
+    }
+
+    public boolean isLatencyForSnitch()
+    {
+        return true;
+    }
+
+    @Override
+    public void onFailure(InetAddress from)
+    {
+        if (from.equals(aggregatingEndpoint))
+        {
+            aggregatingEndpointFailed = true;
+            condition.signalAll();
+            return;
+        }
+
+        int n = waitingFor(from)
+              ? failuresUpdater.incrementAndGet(this)
+              : failures;
+
+        if (blockfor + n > endpoints.size())
+            condition.signalAll();
+    }
+
+    private class AsyncRepairRunner implements Runnable
+    {
+        private final TraceState traceState;
+
+        public AsyncRepairRunner(TraceState traceState)
+        {
+            this.traceState = traceState;
+        }
+
+        public void run()
+        {
+            ByteBuffer expected = aggregates.digest;
+            for (ByteBuffer digest : digests.values())
+            {
+                if (!digest.equals(expected))
+                {
+                    if (traceState != null)
+                        traceState.trace("Digest mismatch on aggregate read");
+                    logger.debug("Digest mismatch on aggregate read of {}", command);
+
+                    ReadRepairMetrics.repairedBackground.mark();
+
+                    ReadCommand readCommand = command.pageCommand;
+                    DataResolver repairResolver = new DataResolver(keyspace, readCommand, consistencyLevel, endpoints.size());
+                    AsyncRepairCallback repairHandler = new AsyncRepairCallback(repairResolver, endpoints.size());
+
+                    MessageOut<ReadCommand> message = readCommand.createMessage();
+                    for (InetAddress endpoint : endpoints)
+                        MessagingService.instance().sendRR(message, endpoint, repairHandler);
+                    return;
+                }
+            }
+        }
+    }
+}
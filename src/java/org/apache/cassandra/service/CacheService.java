@@ -66,6 +66,9 @@ public class CacheService implements CacheServiceMBean
 
     public static final String MBEAN_NAME = "org.apache.cassandra.db:type=Caches";
 
+    // the expected average size of a row cache entry, used to size the row cache admission sketch
+    private static final int EXPECTED_ROW_CACHE_ENTRY_SIZE = 1024;
+
     public static enum CacheType
     {
         KEY_CACHE("KeyCache"),
@@ -91,6 +94,10 @@ public class CacheService implements CacheServiceMBean
     public final AutoSavingCache<RowCacheKey, IRowCacheEntry> rowCache;
     public final AutoSavingCache<CounterCacheKey, ClockAndCount> counterCache;
 
+    // estimates how often partitions are read through the row cache, to only admit the hot ones; sized from the
+    // row cache capacity once admission is first used, and again whenever the capacity changes
+    private volatile FrequencySketch rowCacheAdmission;
+
     private CacheService()
     {
         MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
@@ -283,6 +290,38 @@ public class CacheService implements CacheServiceMBean
         }
     }
 
+    /**
+     * Records a read of the partition through the row cache.
+     *
+     * @return whether the partition has been read often enough recently to be cached if it missed the row cache,
+     * per row_cache_admission_frequency
+     */
+    public boolean recordRowCacheRead(RowCacheKey key)
+    {
+        int minFrequency = DatabaseDescriptor.getRowCacheAdmissionFrequency();
+        if (minFrequency == 0)
+            return true;
+
+        FrequencySketch sketch = rowCacheAdmission();
+        sketch.increment(key);
+        return sketch.frequency(key) >= minFrequency;
+    }
+
+    private FrequencySketch rowCacheAdmission()
+    {
+        FrequencySketch sketch = rowCacheAdmission;
+        if (sketch == null)
+        {
+            synchronized (this)
+            {
+                sketch = rowCacheAdmission;
+                if (sketch == null)
+                    rowCacheAdmission = sketch = new FrequencySketch(rowCache.getCapacity() / EXPECTED_ROW_CACHE_ENTRY_SIZE);
+            }
+        }
+        return sketch;
+    }
+
     public void invalidateRowCache()
     {
         rowCache.clear();
@@ -324,6 +363,11 @@ public class CacheService implements CacheServiceMBean
             throw new RuntimeException("capacity should not be negative.");
 
         rowCache.setCapacity(capacity * 1024 * 1024);
+        synchronized (this)
+        {
+            // recreated for the new capacity on next use
+            rowCacheAdmission = null;
+        }
     }
 
 
@@ -444,7 +488,8 @@ public class CacheService implements CacheServiceMBean
         public void serialize(KeyCacheKey key, DataOutputPlus out) throws IOException
         {
             RowIndexEntry entry = CacheService.instance.keyCache.getInternal(key);
-            if (entry == null)
+            // entries that only point to their column index in the sstable are cheap to reload on the next read
+            if (entry == null || !entry.isColumnsIndexInMemory())
                 return;
 
             CFMetaData cfm = Schema.instance.getCFMetaData(key.cfId);
@@ -62,6 +62,7 @@ import org.apache.cassandra.metrics.DefaultNameFactory;
 import org.apache.cassandra.metrics.StorageMetrics;
 import org.apache.cassandra.schema.LegacySchemaMigrator;
 import org.apache.cassandra.cql3.functions.ThreadAwareSecurityManager;
+import org.apache.cassandra.service.paxos.PaxosState;
 import org.apache.cassandra.thrift.ThriftServer;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.*;
@@ -282,6 +283,9 @@ public class CassandraDaemon //wxc 2015-9-14:16:44:49 Main方法放到Daemon类
             throw new RuntimeException(e);
         }
 
+        // load the paxos state, now that system.paxos is replayed
+        PaxosState.startup();
+
         // enable auto compaction
         for (Keyspace keyspace : Keyspace.all())
         {
@@ -27,9 +27,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
 import com.google.common.cache.CacheLoader;
 import com.google.common.collect.*;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.apache.cassandra.db.view.MaterializedViewManager;
@@ -43,6 +48,7 @@ import org.apache.cassandra.concurrent.Stage;
 import org.apache.cassandra.concurrent.StageManager;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.ReadRepairDecision;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.db.rows.*;
@@ -82,6 +88,10 @@ public class StorageProxy implements StorageProxyMBean
     public static final StorageProxy instance = new StorageProxy();
 
     private static volatile int maxHintsInProgress = 128 * FBUtilities.getAvailableProcessors();
+    // Writes completed asynchronously don't hold a request thread while waiting on replicas, so they are bounded
+    // separately, to as many as native_transport_max_threads threads could have been waiting on. Once they are all
+    // outstanding, request threads block on new ones, which pushes back on clients as parked threads used to.
+    private static final Semaphore asyncWritePermits = new Semaphore(DatabaseDescriptor.getNativeTransportMaxThreads());
     private static final CacheLoader<InetAddress, AtomicInteger> hintsInProgress = new CacheLoader<InetAddress, AtomicInteger>()
     {
         public AtomicInteger load(InetAddress inetAddress)
@@ -218,6 +228,8 @@ public class StorageProxy implements StorageProxyMBean
             CFMetaData metadata = Schema.instance.getCFMetaData(keyspaceName, cfName);
 
             long timeout = TimeUnit.MILLISECONDS.toNanos(DatabaseDescriptor.getCasContentionTimeout());
+            // only the first attempt is optimistic: once it contended, the next one likely will too
+            boolean optimistic = DatabaseDescriptor.isOptimisticCasEnabled();
             while (System.nanoTime() - start < timeout)
             {
                 // for simplicity, we'll do a single liveness check at the start of each attempt
@@ -225,19 +237,36 @@ public class StorageProxy implements StorageProxyMBean
                 List<InetAddress> liveEndpoints = p.left;
                 int requiredParticipants = p.right;
 
-                final Pair<UUID, Integer> pair = beginAndRepairPaxos(start, key, metadata, liveEndpoints, requiredParticipants, consistencyForPaxos, consistencyForCommit, true, state);
-                final UUID ballot = pair.left;
-                contentions += pair.right;
-
-                // read the current values and check they validate the conditions
-                Tracing.trace("Reading existing values for CAS precondition");
-                SinglePartitionReadCommand readCommand = request.readCommand(FBUtilities.nowInSeconds());
-                ConsistencyLevel readConsistency = consistencyForPaxos == ConsistencyLevel.LOCAL_SERIAL ? ConsistencyLevel.LOCAL_QUORUM : ConsistencyLevel.QUORUM;
+                UUID ballot = null;
+                FilteredPartition current = null;
+                if (optimistic && canPrepareAndRead(metadata, key, liveEndpoints))
+                {
+                    // read the current values along with the prepare, saving the read round trip if uncontended
+                    ballot = UUIDGen.getTimeUUIDFromMicros(state.getTimestamp());
+                    SinglePartitionReadCommand<?> readCommand = request.readCommand(FBUtilities.nowInSeconds());
+                    Tracing.trace("Preparing {} and reading existing values for CAS precondition", ballot);
+                    PrepareCallback summary = prepareAndReadPaxos(Commit.newPrepare(key, metadata, ballot), readCommand, liveEndpoints, requiredParticipants, consistencyForPaxos);
+                    if (!summary.promised)
+                        contentions++;
+                    current = uncontendedReadResult(summary, readCommand);
+                }
+                optimistic = false;
 
-                FilteredPartition current;
-                try (RowIterator rowIter = readOne(readCommand, readConsistency))
+                if (current == null)
                 {
-                    current = FilteredPartition.create(rowIter);
+                    final Pair<UUID, Integer> pair = beginAndRepairPaxos(start, key, metadata, liveEndpoints, requiredParticipants, consistencyForPaxos, consistencyForCommit, true, state);
+                    ballot = pair.left;
+                    contentions += pair.right;
+
+                    // read the current values and check they validate the conditions
+                    Tracing.trace("Reading existing values for CAS precondition");
+                    SinglePartitionReadCommand readCommand = request.readCommand(FBUtilities.nowInSeconds());
+                    ConsistencyLevel readConsistency = consistencyForPaxos == ConsistencyLevel.LOCAL_SERIAL ? ConsistencyLevel.LOCAL_QUORUM : ConsistencyLevel.QUORUM;
+
+                    try (RowIterator rowIter = readOne(readCommand, readConsistency))
+                    {
+                        current = FilteredPartition.create(rowIter);
+                    }
                 }
 
                 if (!request.appliesTo(current))
@@ -344,6 +373,43 @@ public class StorageProxy implements StorageProxyMBean
         return Pair.create(liveEndpoints, requiredParticipants);
     }
 
+    /**
+     * Whether the replicas of the partition can read it along with the prepare. The read is only as good as a quorum
+     * read if the paxos participants are all natural endpoints, so not during range movements.
+     */
+    private static boolean canPrepareAndRead(CFMetaData metadata, DecoratedKey key, List<InetAddress> liveEndpoints)
+    {
+        return StorageService.instance.getTokenMetadata().pendingEndpointsFor(key.getToken(), metadata.ksName).isEmpty()
+            && MessagingService.instance().getMinVersion(liveEndpoints) >= MessagingService.VERSION_31;
+    }
+
+    /**
+     * @return the current values read along with an uncontended prepare, that is one promised by all the replicas
+     * that replied, with no paxos round left to finish and the most recent commit learned by all those replicas, or
+     * null if the regular paxos round has to be run instead.
+     */
+    private static FilteredPartition uncontendedReadResult(PrepareCallback summary, SinglePartitionReadCommand<?> readCommand)
+    {
+        if (!summary.promised)
+        {
+            Tracing.trace("Some replicas have already promised a higher ballot than ours; falling back to a regular paxos round");
+            return null;
+        }
+
+        Commit inProgress = summary.mostRecentInProgressCommitWithUpdate;
+        if ((!inProgress.update.isEmpty() && inProgress.isAfter(summary.mostRecentCommit))
+            || !Iterables.isEmpty(summary.replicasMissingMostRecentCommit()))
+        {
+            Tracing.trace("Some previous paxos round isn't complete on all replicas; falling back to a regular paxos round");
+            return null;
+        }
+
+        FilteredPartition current = summary.readResult(readCommand);
+        if (current == null)
+            Tracing.trace("Replicas don't agree on the existing values; falling back to a regular paxos round");
+        return current;
+    }
+
     /**
      * begin a Paxos session by sending a prepare request and completing any in-progress requests seen in the replies
      *
@@ -466,6 +532,17 @@ public class StorageProxy implements StorageProxyMBean
         return callback;
     }
 
+    private static PrepareCallback prepareAndReadPaxos(Commit toPrepare, SinglePartitionReadCommand<?> readCommand, List<InetAddress> endpoints, int requiredParticipants, ConsistencyLevel consistencyForPaxos)
+    throws WriteTimeoutException
+    {
+        PrepareCallback callback = new PrepareCallback(toPrepare.update.partitionKey(), toPrepare.update.metadata(), requiredParticipants, consistencyForPaxos);
+        MessageOut<PrepareAndRead> message = new MessageOut<PrepareAndRead>(MessagingService.Verb.PAXOS_PREPARE_AND_READ, new PrepareAndRead(toPrepare, readCommand), PrepareAndRead.serializer);
+        for (InetAddress target : endpoints)
+            MessagingService.instance().sendRR(message, target, callback);
+        callback.await();
+        return callback;
+    }
+
     private static boolean proposePaxos(Commit proposal, List<InetAddress> endpoints, int requiredParticipants, boolean timeoutIfPartial, ConsistencyLevel consistencyLevel)
     throws WriteTimeoutException
     {
@@ -564,37 +641,136 @@ public class StorageProxy implements StorageProxyMBean
             }
             else
             {
-                if (ex instanceof WriteFailureException)
+                markWriteError(ex);
+                throw ex;
+            }
+        }
+        catch (UnavailableException e)
+        {
+            writeMetrics.unavailables.mark();
+            Tracing.trace("Unavailable");
+            throw e;
+        }
+        catch (OverloadedException e)
+        {
+            writeMetrics.unavailables.mark();
+            Tracing.trace("Overloaded");
+            throw e;
+        }
+        finally
+        {
+            writeMetrics.addNano(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Non-blocking version of mutate(): the mutations are sent the same way, but instead of parking the calling
+     * thread until enough replicas have answered, the returned future is completed once they have (or failed with
+     * the WriteTimeoutException/WriteFailureException mutate() would have thrown). Errors detected before anything
+     * is sent, like UnavailableException, are still thrown directly.
+     *
+     * The calling thread blocks while the maximum number of asynchronous writes are outstanding.
+     *
+     * @param mutations the mutations to be applied across the replicas
+     * @param consistency_level the consistency level for the operation
+     */
+    public static ListenableFuture<Void> mutateAsync(final Collection<? extends IMutation> mutations, final ConsistencyLevel consistency_level)
+    throws UnavailableException, OverloadedException
+    {
+        Tracing.trace("Determining replicas for mutation");
+        final String localDataCenter = DatabaseDescriptor.getEndpointSnitch().getDatacenter(FBUtilities.getBroadcastAddress());
+
+        asyncWritePermits.acquireUninterruptibly();
+        final long startTime = System.nanoTime();
+        List<ListenableFuture<Void>> futures = new ArrayList<>(mutations.size());
+
+        boolean sent = false;
+        try
+        {
+            for (IMutation mutation : mutations)
+            {
+                if (mutation instanceof CounterMutation)
                 {
-                    writeMetrics.failures.mark();
-                    WriteFailureException fe = (WriteFailureException)ex;
-                    Tracing.trace("Write failure; received {} of {} required replies, failed {} requests",
-                                  fe.received, fe.blockFor, fe.failures);
+                    futures.add(mutateCounter((CounterMutation)mutation, localDataCenter).toFuture());
                 }
                 else
                 {
-                    writeMetrics.timeouts.mark();
-                    WriteTimeoutException te = (WriteTimeoutException)ex;
-                    Tracing.trace("Write timeout; received {} of {} required replies", te.received, te.blockFor);
+                    WriteType wt = mutations.size() <= 1 ? WriteType.SIMPLE : WriteType.UNLOGGED_BATCH;
+                    futures.add(performWrite(mutation, consistency_level, localDataCenter, standardWritePerformer, null, wt).toFuture());
                 }
-                throw ex;
             }
+            sent = true;
         }
         catch (UnavailableException e)
         {
             writeMetrics.unavailables.mark();
             Tracing.trace("Unavailable");
+            writeMetrics.addNano(System.nanoTime() - startTime);
             throw e;
         }
         catch (OverloadedException e)
         {
             writeMetrics.unavailables.mark();
             Tracing.trace("Overloaded");
+            writeMetrics.addNano(System.nanoTime() - startTime);
             throw e;
         }
         finally
         {
-            writeMetrics.addNano(System.nanoTime() - startTime);
+            if (!sent)
+                asyncWritePermits.release();
+        }
+
+        final SettableFuture<Void> result = SettableFuture.create();
+        Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<Void>>()
+        {
+            public void onSuccess(List<Void> ignored)
+            {
+                asyncWritePermits.release();
+                writeMetrics.addNano(System.nanoTime() - startTime);
+                result.set(null);
+            }
+
+            public void onFailure(Throwable t)
+            {
+                asyncWritePermits.release();
+                writeMetrics.addNano(System.nanoTime() - startTime);
+                if (t instanceof WriteTimeoutException || t instanceof WriteFailureException)
+                {
+                    if (consistency_level == ConsistencyLevel.ANY)
+                    {
+                        hintMutations(mutations);
+                        result.set(null);
+                        return;
+                    }
+                    markWriteError((RequestExecutionException) t);
+                }
+                result.setException(t);
+            }
+        });
+        return result;
+    }
+
+    @VisibleForTesting
+    public static int getAvailableAsyncWritePermits()
+    {
+        return asyncWritePermits.availablePermits();
+    }
+
+    private static void markWriteError(RequestExecutionException ex)
+    {
+        if (ex instanceof WriteFailureException)
+        {
+            writeMetrics.failures.mark();
+            WriteFailureException fe = (WriteFailureException)ex;
+            Tracing.trace("Write failure; received {} of {} required replies, failed {} requests",
+                          fe.received, fe.blockFor, fe.failures);
+        }
+        else
+        {
+            writeMetrics.timeouts.mark();
+            WriteTimeoutException te = (WriteTimeoutException)ex;
+            Tracing.trace("Write timeout; received {} of {} required replies", te.received, te.blockFor);
         }
     }
 
@@ -670,7 +846,7 @@ public class StorageProxy implements StorageProxyMBean
                 wrappers.add(wrapper);
 
                 //Apply to local batchlog memtable in this thread
-                BatchlogManager.getBatchlogMutationFor(mutations, batchUUID, MessagingService.current_version).apply();
+                BatchlogManager.instance.apply(BatchlogManager.getBatchlogMutationFor(mutations, batchUUID, MessagingService.current_version));
             }
 
             // now actually perform the writes and wait for them to complete
@@ -721,6 +897,31 @@ public class StorageProxy implements StorageProxyMBean
         }
     }
 
+    /**
+     * Asynchronous counterpart of mutateWithTriggers(). Only plain writes take the non-blocking path; mutations
+     * that fire triggers, update materialized views or must be applied atomically go through the batchlog, which
+     * still blocks, so those are executed synchronously and an already completed future is returned.
+     */
+    @SuppressWarnings("unchecked")
+    public static ListenableFuture<Void> mutateWithTriggersAsync(Collection<? extends IMutation> mutations,
+                                                                 ConsistencyLevel consistencyLevel,
+                                                                 boolean mutateAtomically)
+    throws WriteTimeoutException, WriteFailureException, UnavailableException, OverloadedException, InvalidRequestException
+    {
+        Collection<Mutation> augmented = TriggerExecutor.instance.execute(mutations);
+
+        boolean updatesView = MaterializedViewManager.updatesAffectView(mutations, true);
+
+        if (augmented != null)
+            mutateAtomically(augmented, consistencyLevel, updatesView);
+        else if (mutateAtomically || updatesView)
+            mutateAtomically((Collection<Mutation>) mutations, consistencyLevel, updatesView);
+        else
+            return mutateAsync(mutations, consistencyLevel);
+
+        return Futures.immediateFuture(null);
+    }
+
     /**
      * See mutate. Adds additional steps before and after writing a batch.
      * Before writing the batch (but after doing availability check against the FD for the row replicas):
@@ -1178,7 +1379,7 @@ public class StorageProxy implements StorageProxyMBean
         assert ttl > 0;
         UUID hostId = StorageService.instance.getTokenMetadata().getHostId(target);
         assert hostId != null : "Missing host ID for " + target.getHostAddress();
-        HintedHandOffManager.instance.hintFor(mutation, now, ttl, hostId).apply();
+        HintedHandOffManager.instance.write(mutation, now, ttl, hostId);
         StorageMetrics.totalHints.inc();
     }
 
@@ -1226,7 +1427,10 @@ public class StorageProxy implements StorageProxyMBean
             {
                 try
                 {
-                    mutation.apply();
+                    if (stage == Stage.BATCHLOG_MUTATION)
+                        BatchlogManager.instance.apply(mutation);
+                    else
+                        mutation.apply();
                     responseHandler.response(null);
                 }
                 catch (Exception ex)
@@ -1513,6 +1717,115 @@ public class StorageProxy implements StorageProxyMBean
         }
     }
 
+    /**
+     * Reads the states of the native aggregates of a page of a single partition, having them computed by one of the
+     * replicas read, which is sent an <code>AggregateReadCommand</code>, while the other replicas are sent digest
+     * reads of the page as for a normal read.
+     *
+     * @return the response of the aggregating replica, or <code>null</code> if none of the replicas to read can
+     * compute the aggregates or if the replicas don't agree on the page data, in which case the page must be read
+     * normally, which repairs it if needs be
+     */
+    public static AggregateReadResponse readAggregates(AggregateReadCommand command, ConsistencyLevel consistencyLevel)
+    throws UnavailableException, ReadFailureException, ReadTimeoutException
+    {
+        // Let the normal read path reject the read
+        if (StorageService.instance.isBootstrapMode())
+            return null;
+
+        long start = System.nanoTime();
+        ReadCommand readCommand = command.pageCommand;
+        Keyspace keyspace = Keyspace.open(command.metadata().ksName);
+        // The reads falling back to the normal read are only accounted for by the latter
+        boolean fallsBack = false;
+        try
+        {
+            List<InetAddress> allReplicas = getLiveSortedEndpoints(keyspace, command.command.partitionKey());
+            ReadRepairDecision repairDecision = command.metadata().newReadRepairDecision();
+            List<InetAddress> targetReplicas = consistencyLevel.filterForQuery(keyspace, allReplicas, repairDecision);
+
+            // Throw UAE early if we don't have enough replicas.
+            consistencyLevel.assureSufficientLiveNodes(keyspace, targetReplicas);
+
+            InetAddress aggregatingReplica = null;
+            for (InetAddress replica : targetReplicas.subList(0, consistencyLevel.blockFor(keyspace)))
+            {
+                if (canDoLocalRequest(replica)
+                    || (MessagingService.instance().knowsVersion(replica) && MessagingService.instance().getVersion(replica) >= MessagingService.VERSION_31))
+                {
+                    aggregatingReplica = replica;
+                    break;
+                }
+            }
+
+            if (aggregatingReplica == null)
+            {
+                fallsBack = true;
+                return null;
+            }
+
+            if (repairDecision != ReadRepairDecision.NONE)
+            {
+                Tracing.trace("Read-repair {}", repairDecision);
+                ReadRepairMetrics.attempted.mark();
+            }
+
+            AggregateReadCallback handler = new AggregateReadCallback(command, consistencyLevel, keyspace, targetReplicas, aggregatingReplica);
+            readCommand.setDigestVersion(MessagingService.instance().getMinVersion(targetReplicas));
+            ReadCommand digestCommand = readCommand.copy().setIsDigestQuery(true);
+            MessageOut<?> digestMessage = null;
+            for (InetAddress replica : targetReplicas)
+            {
+                boolean aggregates = replica.equals(aggregatingReplica);
+                Tracing.trace("reading {} from {}", aggregates ? "aggregates" : "digest", replica);
+                if (canDoLocalRequest(replica))
+                {
+                    StageManager.getStage(Stage.READ).maybeExecuteImmediately(aggregates
+                                                                              ? new LocalAggregateReadRunnable(command, handler)
+                                                                              : new LocalAggregateReadRunnable(digestCommand, handler));
+                }
+                else if (aggregates)
+                {
+                    MessagingService.instance().sendRRWithFailure(command.createMessage(), replica, handler);
+                }
+                else
+                {
+                    if (digestMessage == null)
+                        digestMessage = digestCommand.createMessage();
+                    MessagingService.instance().sendRRWithFailure(digestMessage, replica, handler);
+                }
+            }
+
+            AggregateReadResponse response = handler.get();
+            fallsBack = response == null;
+            return response;
+        }
+        catch (UnavailableException e)
+        {
+            readMetrics.unavailables.mark();
+            throw e;
+        }
+        catch (ReadTimeoutException e)
+        {
+            readMetrics.timeouts.mark();
+            throw e;
+        }
+        catch (ReadFailureException e)
+        {
+            readMetrics.failures.mark();
+            throw e;
+        }
+        finally
+        {
+            if (!fallsBack)
+            {
+                long latency = System.nanoTime() - start;
+                readMetrics.addNano(latency);
+                keyspace.getColumnFamilyStore(command.metadata().cfId).metric.coordinatorReadLatency.update(latency, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
     /**
      * This function executes local and remote reads, and blocks for the results:
      *
@@ -1687,6 +2000,60 @@ public class StorageProxy implements StorageProxyMBean
         }
     }
 
+    /**
+     * Executes locally either an <code>AggregateReadCommand</code> or a digest read, for an aggregate read.
+     */
+    static class LocalAggregateReadRunnable extends DroppableRunnable
+    {
+        private final AggregateReadCommand command;
+        private final ReadCommand digestCommand;
+        private final AggregateReadCallback handler;
+        private final long start = System.nanoTime();
+
+        LocalAggregateReadRunnable(AggregateReadCommand command, AggregateReadCallback handler)
+        {
+            super(MessagingService.Verb.AGGREGATE_READ);
+            this.command = command;
+            this.digestCommand = null;
+            this.handler = handler;
+        }
+
+        LocalAggregateReadRunnable(ReadCommand digestCommand, AggregateReadCallback handler)
+        {
+            super(MessagingService.Verb.READ);
+            this.command = null;
+            this.digestCommand = digestCommand;
+            this.handler = handler;
+        }
+
+        protected void runMayThrow() throws Exception
+        {
+            try
+            {
+                if (command != null)
+                {
+                    handler.response(command.execute());
+                }
+                else
+                {
+                    try (ReadOrderGroup orderGroup = digestCommand.startOrderGroup(); UnfilteredPartitionIterator iterator = digestCommand.executeLocally(orderGroup))
+                    {
+                        handler.response(digestCommand.createResponse(iterator));
+                    }
+                }
+                MessagingService.instance().addLatency(FBUtilities.getBroadcastAddress(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            catch (Throwable t)
+            {
+                handler.onFailure(FBUtilities.getBroadcastAddress());
+                if (t instanceof TombstoneOverwhelmingException)
+                    logger.error(t.getMessage());
+                else
+                    throw t;
+            }
+        }
+    }
+
     public static List<InetAddress> getLiveSortedEndpoints(Keyspace keyspace, ByteBuffer key)
     {
         return getLiveSortedEndpoints(keyspace, StorageService.instance.getTokenMetadata().decorateKey(key));
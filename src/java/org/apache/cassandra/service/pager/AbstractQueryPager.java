@@ -75,6 +75,24 @@ abstract class AbstractQueryPager implements QueryPager
         return new PagerIterator(nextPageReadCommand(pageSize).executeInternal(orderGroup), limits.forPaging(pageSize), command.nowInSec());
     }
 
+    /**
+     * Returns the command reading the next page, for the reads that need more than the rows of the page, like their
+     * digest. The rows it reads must then be paged by <code>nextPage</code>, with the same page size.
+     */
+    public ReadCommand nextPageCommand(int pageSize)
+    {
+        assert !isExhausted();
+        return nextPageReadCommand(Math.min(pageSize, remaining));
+    }
+
+    /**
+     * Returns the rows of the next page, out of the rows read by the command returned by <code>nextPageCommand</code>.
+     */
+    public PartitionIterator nextPage(PartitionIterator rows, int pageSize)
+    {
+        return new PagerIterator(rows, limits.forPaging(Math.min(pageSize, remaining)), command.nowInSec());
+    }
+
     private class PagerIterator extends CountingPartitionIterator
     {
         private final DataLimits pageLimits;
@@ -20,21 +20,37 @@
  */
 package org.apache.cassandra.service.paxos;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.Striped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import org.apache.cassandra.concurrent.ScheduledExecutors;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
 import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.*;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.utils.UUIDGen;
 
+import static org.apache.cassandra.cql3.QueryProcessor.executeInternalWithPaging;
+
 public class PaxosState
 {
+    private static final Logger logger = LoggerFactory.getLogger(PaxosState.class);
+
     private static final Striped<Lock> LOCKS = Striped.lazyWeakLock(DatabaseDescriptor.getConcurrentWriters() * 1024);
 
+    // the paxos state log, if paxos_state_log_enabled when started up; the state is kept in system.paxos otherwise
+    private static volatile PaxosStateStore store;
+
     private final Commit promised;
     private final Commit accepted;
     private final Commit mostRecentCommit;
@@ -54,6 +70,119 @@ public class PaxosState
         this.mostRecentCommit = mostRecentCommit;
     }
 
+    /**
+     * Opens the paxos state log if it is enabled, and moves the paxos state left in system.paxos or in the log to
+     * whichever of them is in use.
+     */
+    public static void startup()
+    {
+        File directory = DatabaseDescriptor.getPaxosStateDirectory();
+        ColumnFamilyStore table = Keyspace.open(SystemKeyspace.NAME).getColumnFamilyStore(SystemKeyspace.PAXOS);
+        if (DatabaseDescriptor.isPaxosStateLogEnabled())
+        {
+            PaxosStateStore opened = PaxosStateStore.open(directory);
+            if (!table.isEmpty())
+                migrateToLog(opened, table);
+
+            ScheduledExecutors.optionalTasks.scheduleWithFixedDelay(opened::maintain, 1, 1, TimeUnit.MINUTES);
+            if (DatabaseDescriptor.getCommitLogSync() == Config.CommitLogSync.periodic)
+            {
+                long period = DatabaseDescriptor.getCommitLogSyncPeriod();
+                ScheduledExecutors.scheduledTasks.scheduleWithFixedDelay(opened::sync, period, period, TimeUnit.MILLISECONDS);
+            }
+            store = opened;
+        }
+        else
+        {
+            PaxosStateStore opened = store;
+            store = null;
+            if (opened == null && PaxosStateStore.exists(directory))
+                opened = PaxosStateStore.open(directory);
+            if (opened != null)
+                migrateToTable(opened);
+        }
+    }
+
+    private static void migrateToLog(PaxosStateStore log, ColumnFamilyStore table)
+    {
+        logger.info("Moving the paxos state of system.{} to {}", SystemKeyspace.PAXOS, DatabaseDescriptor.getPaxosStateDirectory());
+        String query = String.format("SELECT row_key, cf_id FROM %s.%s", SystemKeyspace.NAME, SystemKeyspace.PAXOS);
+        for (UntypedResultSet.Row row : executeInternalWithPaging(query, 1000))
+        {
+            CFMetaData metadata = Schema.instance.getCFMetaData(row.getUUID("cf_id"));
+            if (metadata == null)
+                continue;
+
+            PaxosState state = SystemKeyspace.loadPaxosState(metadata.decorateKey(row.getBytes("row_key")), metadata);
+            if (!isEmpty(state.promised))
+                log.savePromise(state.promised);
+            if (!isEmpty(state.accepted))
+                log.saveProposal(state.accepted);
+            if (!isEmpty(state.mostRecentCommit))
+                log.saveCommit(state.mostRecentCommit);
+        }
+        log.sync();
+        table.truncateBlocking();
+    }
+
+    private static void migrateToTable(PaxosStateStore log)
+    {
+        logger.info("Moving the paxos state of {} to system.{}", DatabaseDescriptor.getPaxosStateDirectory(), SystemKeyspace.PAXOS);
+        log.forEach(state -> {
+            if (!isEmpty(state.promised))
+                SystemKeyspace.savePaxosPromise(state.promised);
+            if (!isEmpty(state.accepted))
+                SystemKeyspace.savePaxosProposal(state.accepted);
+            if (!isEmpty(state.mostRecentCommit))
+                SystemKeyspace.savePaxosCommit(state.mostRecentCommit);
+        });
+        Keyspace.open(SystemKeyspace.NAME).getColumnFamilyStore(SystemKeyspace.PAXOS).forceBlockingFlush();
+        log.deleteAll();
+    }
+
+    private static boolean isEmpty(Commit commit)
+    {
+        return UUIDGen.unixTimestamp(commit.ballot) == 0;
+    }
+
+    /**
+     * Syncs the paxos state log, if in use.
+     */
+    public static void shutdown()
+    {
+        if (store != null)
+            store.sync();
+    }
+
+    @VisibleForTesting
+    static PaxosStateStore store()
+    {
+        return store;
+    }
+
+    @VisibleForTesting
+    Commit promised()
+    {
+        return promised;
+    }
+
+    @VisibleForTesting
+    Commit accepted()
+    {
+        return accepted;
+    }
+
+    @VisibleForTesting
+    Commit mostRecentCommit()
+    {
+        return mostRecentCommit;
+    }
+
+    private static PaxosState load(DecoratedKey key, CFMetaData metadata)
+    {
+        return store == null ? SystemKeyspace.loadPaxosState(key, metadata) : store.load(key, metadata);
+    }
+
     public static PrepareResponse prepare(Commit toPrepare)
     {
         long start = System.nanoTime();
@@ -63,11 +192,14 @@ public class PaxosState
             lock.lock();
             try
             {
-                PaxosState state = SystemKeyspace.loadPaxosState(toPrepare.update.partitionKey(), toPrepare.update.metadata());
+                PaxosState state = load(toPrepare.update.partitionKey(), toPrepare.update.metadata());
                 if (toPrepare.isAfter(state.promised))
                 {
                     Tracing.trace("Promising ballot {}", toPrepare.ballot);
-                    SystemKeyspace.savePaxosPromise(toPrepare);
+                    if (store == null)
+                        SystemKeyspace.savePaxosPromise(toPrepare);
+                    else
+                        store.savePromise(toPrepare);
                     return new PrepareResponse(true, state.accepted, state.mostRecentCommit);
                 }
                 else
@@ -98,16 +230,22 @@ public class PaxosState
             lock.lock();
             try
             {
-                PaxosState state = SystemKeyspace.loadPaxosState(proposal.update.partitionKey(), proposal.update.metadata());
-                if (proposal.hasBallot(state.promised.ballot) || proposal.isAfter(state.promised))
+                // only the promise matters here, the log doesn't even need to read the updates
+                Commit promised = store == null
+                                ? SystemKeyspace.loadPaxosState(proposal.update.partitionKey(), proposal.update.metadata()).promised
+                                : store.loadPromise(proposal.update.partitionKey(), proposal.update.metadata());
+                if (proposal.hasBallot(promised.ballot) || proposal.isAfter(promised))
                 {
                     Tracing.trace("Accepting proposal {}", proposal);
-                    SystemKeyspace.savePaxosProposal(proposal);
+                    if (store == null)
+                        SystemKeyspace.savePaxosProposal(proposal);
+                    else
+                        store.saveProposal(proposal);
                     return true;
                 }
                 else
                 {
-                    Tracing.trace("Rejecting proposal for {} because inProgress is now {}", proposal, state.promised);
+                    Tracing.trace("Rejecting proposal for {} because inProgress is now {}", proposal, promised);
                     return false;
                 }
             }
@@ -145,7 +283,10 @@ public class PaxosState
                 Tracing.trace("Not committing proposal {} as ballot timestamp predates last truncation time", proposal);
             }
             // We don't need to lock, we're just blindly updating
-            SystemKeyspace.savePaxosCommit(proposal);
+            if (store == null)
+                SystemKeyspace.savePaxosCommit(proposal);
+            else
+                store.saveCommit(proposal);
         }
         finally
         {
@@ -0,0 +1,524 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service.paxos;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.io.util.AppendOnlyLog;
+import org.apache.cassandra.io.util.AppendOnlyLogSegment;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.UUIDGen;
+import org.apache.cassandra.utils.UUIDSerializer;
+
+/**
+ * Keeps the paxos state of partitions in memory, backed by an {@link AppendOnlyLog}, instead of in the system.paxos
+ * table.
+ *
+ * Every promise, proposal and commit is appended to the log as a record, and the in-memory state of its partition
+ * then references that record: the ballots are kept in memory, the updates are read back from the log when a
+ * prepare needs them. Records reconcile the way the system.paxos cells they replace do, by ballot timestamp, so
+ * their order in the log doesn't matter and loading the store is a matter of replaying every segment.
+ *
+ * Like the system.paxos cells, records expire after {@link SystemKeyspace#paxosTtl}. Expired or superseded records
+ * are no longer referenced, and {@link #maintain} deletes the segments with no live record left, first moving
+ * the live records of mostly dead segments to the current one. Nothing is ever compacted but those records.
+ */
+public final class PaxosStateStore
+{
+    private static final Logger logger = LoggerFactory.getLogger(PaxosStateStore.class);
+
+    private static final String SEGMENT_PREFIX = "paxos";
+
+    private static final byte PROMISE = 0;
+    private static final byte PROPOSAL = 1;
+    private static final byte COMMIT = 2;
+
+    private final AppendOnlyLog log;
+    private final ConcurrentMap<Key, State> states = new ConcurrentHashMap<>();
+
+    private PaxosStateStore(AppendOnlyLog log)
+    {
+        this.log = log;
+    }
+
+    /**
+     * Loads the store from the log in the provided directory.
+     */
+    public static PaxosStateStore open(File directory)
+    {
+        return load(AppendOnlyLog.open(directory, SEGMENT_PREFIX), directory);
+    }
+
+    static PaxosStateStore open(File directory, long segmentSize, boolean syncEachWrite)
+    {
+        return load(AppendOnlyLog.open(directory, SEGMENT_PREFIX, segmentSize, syncEachWrite), directory);
+    }
+
+    private static PaxosStateStore load(AppendOnlyLog log, File directory)
+    {
+        PaxosStateStore store = new PaxosStateStore(log);
+
+        int nowInSec = FBUtilities.nowInSeconds();
+        log.replay((segment, position, size, record) -> {
+            Key key = Key.fromRecord(record);
+            Ref ref = Ref.fromRecord(segment, position, size, record);
+            if (ref.expiresAt > nowInSec)
+                store.apply(key, ref);
+        });
+        logger.debug("Loaded the paxos state of {} partitions from {}", store.states.size(), directory);
+
+        store.maintain();
+        return store;
+    }
+
+    /**
+     * @return whether the directory holds a paxos state log
+     */
+    public static boolean exists(File directory)
+    {
+        return AppendOnlyLog.exists(directory, SEGMENT_PREFIX);
+    }
+
+    public void savePromise(Commit promise)
+    {
+        save(PROMISE, promise);
+    }
+
+    public void saveProposal(Commit proposal)
+    {
+        save(PROPOSAL, proposal);
+    }
+
+    public void saveCommit(Commit commit)
+    {
+        save(COMMIT, commit);
+    }
+
+    private void save(byte kind, Commit commit)
+    {
+        int expiresAt = FBUtilities.nowInSeconds() + SystemKeyspace.paxosTtl(commit.update.metadata());
+        AppendOnlyLog.Appended appended = log.append(serialize(kind, commit, expiresAt));
+        log.awaitSynced(appended);
+        Ref ref = new Ref(kind, appended, commit.ballot, expiresAt);
+        apply(new Key(commit.update.metadata().cfId, ByteBufferUtil.clone(commit.update.partitionKey().getKey())), ref);
+        ref.segment.release(ref.size);
+    }
+
+    private void apply(Key key, Ref ref)
+    {
+        states.compute(key, (k, before) -> {
+            State after = State.merge(before, ref);
+            State.account(before, after);
+            return after;
+        });
+    }
+
+    /**
+     * @return the paxos state of the partition
+     */
+    public PaxosState load(DecoratedKey key, CFMetaData metadata)
+    {
+        Key k = new Key(metadata.cfId, key.getKey());
+        while (true)
+        {
+            State state = states.get(k);
+            if (state == null)
+                return new PaxosState(key, metadata);
+
+            int nowInSec = FBUtilities.nowInSeconds();
+            Commit promised = promise(state.promised, key, metadata, nowInSec);
+            Commit accepted = state.accepted != null && state.accepted.kind == COMMIT
+                            ? Commit.emptyCommit(key, metadata) // cleared by a commit
+                            : read(state.accepted, key, metadata, nowInSec);
+            Commit mostRecentCommit = read(state.mostRecentCommit, key, metadata, nowInSec);
+
+            // a record can only be missing if maintain() moved it to another segment meanwhile
+            if (accepted != null && mostRecentCommit != null)
+                return new PaxosState(promised, accepted, mostRecentCommit);
+        }
+    }
+
+    /**
+     * @return the ballot promised for the partition, as the empty commit {@link #load} would return it
+     */
+    public Commit loadPromise(DecoratedKey key, CFMetaData metadata)
+    {
+        State state = states.get(new Key(metadata.cfId, key.getKey()));
+        return promise(state == null ? null : state.promised, key, metadata, FBUtilities.nowInSeconds());
+    }
+
+    private static Commit promise(Ref ref, DecoratedKey key, CFMetaData metadata, int nowInSec)
+    {
+        return ref != null && ref.expiresAt > nowInSec
+             ? new Commit(ref.ballot, new PartitionUpdate(metadata, key, metadata.partitionColumns(), 1))
+             : Commit.emptyCommit(key, metadata);
+    }
+
+    /**
+     * @return the proposal or commit referenced, or null if its segment has been deleted
+     */
+    private static Commit read(Ref ref, DecoratedKey key, CFMetaData metadata, int nowInSec)
+    {
+        if (ref == null || ref.expiresAt <= nowInSec)
+            return Commit.emptyCommit(key, metadata);
+
+        ByteBuffer record = ref.segment.read(ref.position);
+        if (record == null)
+            return null;
+
+        // the update follows the kind, table id, key, ballot and expiration time
+        record.position(record.position() + 1 + 16 + 2 + key.getKey().remaining() + 16 + 4);
+        return new Commit(ref.ballot, PartitionUpdate.fromBytes(record, ref.segment.messagingVersion, key));
+    }
+
+    private static ByteBuffer serialize(byte kind, Commit commit, int expiresAt)
+    {
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            out.writeByte(kind);
+            UUIDSerializer.serializer.serialize(commit.update.metadata().cfId, out, MessagingService.current_version);
+            ByteBufferUtil.writeWithShortLength(commit.update.partitionKey().getKey(), out);
+            UUIDSerializer.serializer.serialize(commit.ballot, out, MessagingService.current_version);
+            out.writeInt(expiresAt);
+            if (kind != PROMISE)
+                out.write(PartitionUpdate.toBytes(commit.update, MessagingService.current_version));
+            return out.buffer();
+        }
+        catch (IOException e)
+        {
+            throw new AssertionError(e); // can't happen when writing to a buffer
+        }
+    }
+
+    /**
+     * Forgets the expired state, and deletes the segments that are no longer needed, moving the few live records of
+     * a segment to the current one if that lets it be deleted. Meant to be called periodically.
+     */
+    public void maintain()
+    {
+        maintain(FBUtilities.nowInSeconds());
+    }
+
+    @VisibleForTesting
+    void maintain(int nowInSec)
+    {
+        for (Key key : states.keySet())
+        {
+            states.computeIfPresent(key, (k, before) -> {
+                State after = before.expire(nowInSec);
+                State.account(before, after);
+                return after;
+            });
+        }
+
+        for (AppendOnlyLogSegment segment : log.inactiveSegments())
+        {
+            if (segment.liveSize() > 0 && segment.liveSize() * 2 < segment.length())
+            {
+                moveLiveRecords(segment);
+                // the moved records must be durable before their former segment is deleted
+                sync();
+            }
+
+            if (segment.liveSize() == 0)
+                log.delete(segment);
+        }
+    }
+
+    private void moveLiveRecords(AppendOnlyLogSegment segment)
+    {
+        for (Key key : states.keySet())
+        {
+            states.computeIfPresent(key, (k, before) -> {
+                if (!before.references(segment))
+                    return before;
+
+                // a commit record may be referenced both as the accepted proposal and as the most recent commit
+                Map<Ref, Ref> moved = new IdentityHashMap<>();
+                State after = new State(move(before.promised, segment, moved),
+                                        move(before.accepted, segment, moved),
+                                        move(before.mostRecentCommit, segment, moved));
+                State.account(before, after);
+                for (Ref ref : moved.values())
+                    ref.segment.release(ref.size);
+                return after;
+            });
+        }
+    }
+
+    private Ref move(Ref ref, AppendOnlyLogSegment segment, Map<Ref, Ref> moved)
+    {
+        if (ref == null || ref.segment != segment)
+            return ref;
+
+        return moved.computeIfAbsent(ref, r -> new Ref(r.kind, log.append(r.segment.read(r.position)), r.ballot, r.expiresAt));
+    }
+
+    /**
+     * Hands the state of every partition of a live table to the consumer.
+     */
+    void forEach(Consumer<PaxosState> consumer)
+    {
+        for (Key key : states.keySet())
+        {
+            CFMetaData metadata = Schema.instance.getCFMetaData(key.cfId);
+            if (metadata != null)
+                consumer.accept(load(metadata.decorateKey(key.key), metadata));
+        }
+    }
+
+    /**
+     * @return the number of partitions with some paxos state
+     */
+    int size()
+    {
+        return states.size();
+    }
+
+    /**
+     * @return the number of segments of the log
+     */
+    int segmentCount()
+    {
+        return log.segmentCount();
+    }
+
+    public void sync()
+    {
+        log.sync();
+    }
+
+    /**
+     * Syncs and closes the log.
+     */
+    public void close()
+    {
+        log.close();
+    }
+
+    /**
+     * Closes and deletes the log, and forgets all the paxos state.
+     */
+    public void deleteAll()
+    {
+        states.clear();
+        log.deleteAll();
+    }
+
+    private static final class Key
+    {
+        final UUID cfId;
+        final ByteBuffer key;
+
+        Key(UUID cfId, ByteBuffer key)
+        {
+            this.cfId = cfId;
+            this.key = key;
+        }
+
+        static Key fromRecord(ByteBuffer record)
+        {
+            ByteBuffer in = record.duplicate();
+            in.position(in.position() + 1);
+            UUID cfId = new UUID(in.getLong(), in.getLong());
+            // don't keep the whole record around
+            return new Key(cfId, ByteBufferUtil.clone(ByteBufferUtil.readBytesWithShortLength(in)));
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+
+            Key that = (Key) o;
+            return cfId.equals(that.cfId) && key.equals(that.key);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * cfId.hashCode() + key.hashCode();
+        }
+    }
+
+    /**
+     * A live record of the log.
+     */
+    private static final class Ref
+    {
+        final byte kind;
+        final AppendOnlyLogSegment segment;
+        final long position;
+        // the size of its entry in the segment
+        final int size;
+        final UUID ballot;
+        final int expiresAt;
+
+        Ref(byte kind, AppendOnlyLogSegment segment, long position, int size, UUID ballot, int expiresAt)
+        {
+            this.kind = kind;
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+            this.ballot = ballot;
+            this.expiresAt = expiresAt;
+        }
+
+        Ref(byte kind, AppendOnlyLog.Appended appended, UUID ballot, int expiresAt)
+        {
+            this(kind, appended.segment, appended.position, appended.size, ballot, expiresAt);
+        }
+
+        static Ref fromRecord(AppendOnlyLogSegment segment, long position, int size, ByteBuffer record)
+        {
+            ByteBuffer in = record.duplicate();
+            byte kind = in.get();
+            in.position(in.position() + 16);
+            ByteBufferUtil.readBytesWithShortLength(in);
+            UUID ballot = new UUID(in.getLong(), in.getLong());
+            return new Ref(kind, segment, position, size, ballot, in.getInt());
+        }
+
+        long timestamp()
+        {
+            return UUIDGen.microsTimestamp(ballot);
+        }
+
+        /**
+         * @return whether this record overrides the current one, as a cell written at the timestamp of its ballot
+         * would
+         */
+        boolean supersedes(Ref current)
+        {
+            return current == null || timestamp() >= current.timestamp();
+        }
+    }
+
+    /**
+     * The paxos state of a partition, as references to the records holding it. Each one stands for the
+     * corresponding system.paxos cells; an accepted proposal erased by a commit is a reference to that commit.
+     */
+    private static final class State
+    {
+        final Ref promised;
+        final Ref accepted;
+        final Ref mostRecentCommit;
+
+        State(Ref promised, Ref accepted, Ref mostRecentCommit)
+        {
+            this.promised = promised;
+            this.accepted = accepted;
+            this.mostRecentCommit = mostRecentCommit;
+        }
+
+        static State merge(State state, Ref ref)
+        {
+            Ref promised = state == null ? null : state.promised;
+            Ref accepted = state == null ? null : state.accepted;
+            Ref mostRecentCommit = state == null ? null : state.mostRecentCommit;
+            switch (ref.kind)
+            {
+                case PROMISE:
+                    if (ref.supersedes(promised))
+                        promised = ref;
+                    break;
+                case PROPOSAL:
+                    if (ref.supersedes(accepted))
+                        accepted = ref;
+                    break;
+                case COMMIT:
+                    if (ref.supersedes(accepted))
+                        accepted = ref;
+                    if (ref.supersedes(mostRecentCommit))
+                        mostRecentCommit = ref;
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown paxos state record kind " + ref.kind);
+            }
+            return new State(promised, accepted, mostRecentCommit);
+        }
+
+        /**
+         * @return the state without its expired records, or null if they all are
+         */
+        State expire(int nowInSec)
+        {
+            Ref promised = live(this.promised, nowInSec);
+            Ref accepted = live(this.accepted, nowInSec);
+            Ref mostRecentCommit = live(this.mostRecentCommit, nowInSec);
+            if (promised == null && accepted == null && mostRecentCommit == null)
+                return null;
+            if (promised == this.promised && accepted == this.accepted && mostRecentCommit == this.mostRecentCommit)
+                return this;
+            return new State(promised, accepted, mostRecentCommit);
+        }
+
+        private static Ref live(Ref ref, int nowInSec)
+        {
+            return ref != null && ref.expiresAt > nowInSec ? ref : null;
+        }
+
+        boolean references(AppendOnlyLogSegment segment)
+        {
+            return (promised != null && promised.segment == segment)
+                || (accepted != null && accepted.segment == segment)
+                || (mostRecentCommit != null && mostRecentCommit.segment == segment);
+        }
+
+        /**
+         * Updates the live size of the segments for the state replacing another.
+         */
+        static void account(State before, State after)
+        {
+            account(before == null ? null : before.promised, after == null ? null : after.promised);
+            account(before == null ? null : before.accepted, after == null ? null : after.accepted);
+            account(before == null ? null : before.mostRecentCommit, after == null ? null : after.mostRecentCommit);
+        }
+
+        private static void account(Ref before, Ref after)
+        {
+            if (before == after)
+                return;
+            if (before != null)
+                before.segment.release(before.size);
+            if (after != null)
+                after.segment.retain(after.size);
+        }
+    }
+}
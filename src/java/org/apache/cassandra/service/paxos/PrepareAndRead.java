@@ -0,0 +1,76 @@
+package org.apache.cassandra.service.paxos;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+import java.io.IOException;
+
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+
+/**
+ * A prepare that also asks the replica to read the partition once it has promised, so the coordinator of a CAS
+ * gets the current values its condition applies to along with the promises. Sent as PAXOS_PREPARE_AND_READ.
+ */
+public class PrepareAndRead
+{
+    public static final IVersionedSerializer<PrepareAndRead> serializer = new PrepareAndReadSerializer();
+
+    public final Commit toPrepare;
+    public final SinglePartitionReadCommand<?> read;
+
+    public PrepareAndRead(Commit toPrepare, SinglePartitionReadCommand<?> read)
+    {
+        assert toPrepare.update.partitionKey().equals(read.partitionKey());
+        this.toPrepare = toPrepare;
+        this.read = read;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("PrepareAndRead(%s, %s)", toPrepare, read);
+    }
+
+    private static class PrepareAndReadSerializer implements IVersionedSerializer<PrepareAndRead>
+    {
+        public void serialize(PrepareAndRead prepare, DataOutputPlus out, int version) throws IOException
+        {
+            Commit.serializer.serialize(prepare.toPrepare, out, version);
+            ReadCommand.serializer.serialize(prepare.read, out, version);
+        }
+
+        public PrepareAndRead deserialize(DataInputPlus in, int version) throws IOException
+        {
+            Commit toPrepare = Commit.serializer.deserialize(in, version);
+            SinglePartitionReadCommand<?> read = (SinglePartitionReadCommand<?>) ReadCommand.serializer.deserialize(in, version);
+            return new PrepareAndRead(toPrepare, read);
+        }
+
+        public long serializedSize(PrepareAndRead prepare, int version)
+        {
+            return Commit.serializer.serializedSize(prepare.toPrepare, version)
+                 + ReadCommand.serializer.serializedSize(prepare.read, version);
+        }
+    }
+}
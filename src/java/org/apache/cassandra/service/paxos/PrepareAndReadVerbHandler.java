@@ -0,0 +1,63 @@
+package org.apache.cassandra.service.paxos;
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.db.ReadOrderGroup;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
+import org.apache.cassandra.net.IVerbHandler;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.tracing.Tracing;
+
+public class PrepareAndReadVerbHandler implements IVerbHandler<PrepareAndRead>
+{
+    private static final Logger logger = LoggerFactory.getLogger(PrepareAndReadVerbHandler.class);
+
+    public void doVerb(MessageIn<PrepareAndRead> message, int id)
+    {
+        PrepareAndRead prepare = message.payload;
+        PrepareResponse response = PaxosState.prepare(prepare.toPrepare);
+
+        // Without the read, the coordinator falls back to reading separately. So does a bootstrapping node, which
+        // can't serve reads, and so does a failed read, which the separate read will then report properly.
+        if (response.promised && !StorageService.instance.isBootstrapMode())
+        {
+            try (ReadOrderGroup opGroup = prepare.read.startOrderGroup(); UnfilteredPartitionIterator iterator = prepare.read.executeLocally(opGroup))
+            {
+                response = response.withRead(prepare.read.createResponse(iterator));
+            }
+            catch (RuntimeException e)
+            {
+                logger.debug("Failed to read {} along with the prepare of {}", prepare.read, prepare.toPrepare, e);
+            }
+        }
+
+        MessageOut<PrepareResponse> reply = new MessageOut<PrepareResponse>(MessagingService.Verb.REQUEST_RESPONSE, response, PrepareResponse.serializer);
+        Tracing.trace("Enqueuing response to {}", message.from);
+        MessagingService.instance().sendReply(reply, id, message.from);
+    }
+}
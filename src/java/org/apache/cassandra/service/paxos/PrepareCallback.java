@@ -30,6 +30,12 @@ import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.ReadResponse;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.partitions.FilteredPartition;
+import org.apache.cassandra.db.partitions.PartitionIterators;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterators;
+import org.apache.cassandra.db.rows.RowIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +52,8 @@ public class PrepareCallback extends AbstractPaxosCallback<PrepareResponse>
     public Commit mostRecentInProgressCommitWithUpdate;
 
     private final Map<InetAddress, Commit> commitsByReplica = new ConcurrentHashMap<InetAddress, Commit>();
+    // the data read along with the prepare, by the replicas that promised; see PrepareAndRead
+    private final Map<InetAddress, ReadResponse> readsByReplica = new ConcurrentHashMap<InetAddress, ReadResponse>();
 
     public PrepareCallback(DecoratedKey key, CFMetaData metadata, int targets, ConsistencyLevel consistency)
     {
@@ -76,6 +84,8 @@ public class PrepareCallback extends AbstractPaxosCallback<PrepareResponse>
         }
 
         commitsByReplica.put(message.from, response.mostRecentCommit);
+        if (response.read != null)
+            readsByReplica.put(message.from, response.read);
         if (response.mostRecentCommit.isAfter(mostRecentCommit))
             mostRecentCommit = response.mostRecentCommit;
 
@@ -87,6 +97,41 @@ public class PrepareCallback extends AbstractPaxosCallback<PrepareResponse>
         latch.countDown();
     }
 
+    /**
+     * @return the current values of the partition read by the replicas along with their promise, or null if some
+     * replica didn't send its read or if the replicas don't agree on the values. Only meaningful once promised.
+     */
+    public synchronized FilteredPartition readResult(SinglePartitionReadCommand<?> command)
+    {
+        ReadResponse data = null;
+        ByteBuffer digest = null;
+        for (InetAddress replica : commitsByReplica.keySet())
+        {
+            ReadResponse read = readsByReplica.get(replica);
+            if (read == null)
+                return null;
+
+            ByteBuffer newDigest = read.digest(command);
+            if (digest == null)
+            {
+                data = read;
+                digest = newDigest;
+            }
+            else if (!digest.equals(newDigest))
+            {
+                return null;
+            }
+        }
+
+        if (data == null)
+            return null;
+
+        try (RowIterator rows = PartitionIterators.getOnlyElement(UnfilteredPartitionIterators.filter(data.makeIterator(command.metadata()), command.nowInSec()), command))
+        {
+            return FilteredPartition.create(rows);
+        }
+    }
+
     public Iterable<InetAddress> replicasMissingMostRecentCommit()
     {
         return Iterables.filter(commitsByReplica.keySet(), new Predicate<InetAddress>()
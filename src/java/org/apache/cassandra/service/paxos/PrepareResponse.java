@@ -24,6 +24,7 @@ package org.apache.cassandra.service.paxos;
 import java.io.IOException;
 import java.util.UUID;
 
+import org.apache.cassandra.db.ReadResponse;
 import org.apache.cassandra.db.TypeSizes;
 import org.apache.cassandra.db.rows.SerializationHelper;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
@@ -47,7 +48,15 @@ public class PrepareResponse
     public final Commit inProgressCommit;
     public final Commit mostRecentCommit;
 
+    // the data read by the replica once it promised, if asked to through PAXOS_PREPARE_AND_READ; null otherwise
+    public final ReadResponse read;
+
     public PrepareResponse(boolean promised, Commit inProgressCommit, Commit mostRecentCommit)
+    {
+        this(promised, inProgressCommit, mostRecentCommit, null);
+    }
+
+    public PrepareResponse(boolean promised, Commit inProgressCommit, Commit mostRecentCommit, ReadResponse read)
     {
         assert inProgressCommit.update.partitionKey().equals(mostRecentCommit.update.partitionKey());
         assert inProgressCommit.update.metadata() == mostRecentCommit.update.metadata();
@@ -55,6 +64,12 @@ public class PrepareResponse
         this.promised = promised;
         this.mostRecentCommit = mostRecentCommit;
         this.inProgressCommit = inProgressCommit;
+        this.read = read;
+    }
+
+    public PrepareResponse withRead(ReadResponse read)
+    {
+        return new PrepareResponse(promised, inProgressCommit, mostRecentCommit, read);
     }
 
     @Override
@@ -79,6 +94,13 @@ public class PrepareResponse
             {
                 Commit.serializer.serialize(response.mostRecentCommit, out, version);
             }
+
+            if (version >= MessagingService.VERSION_31)
+            {
+                out.writeBoolean(response.read != null);
+                if (response.read != null)
+                    ReadResponse.serializer.serialize(response.read, out, version);
+            }
         }
 
         public PrepareResponse deserialize(DataInputPlus in, int version) throws IOException
@@ -96,7 +118,11 @@ public class PrepareResponse
             {
                 mostRecent = Commit.serializer.deserialize(in, version);
             }
-            return new PrepareResponse(success, inProgress, mostRecent);
+
+            ReadResponse read = null;
+            if (version >= MessagingService.VERSION_31 && in.readBoolean())
+                read = ReadResponse.serializer.deserialize(in, version);
+            return new PrepareResponse(success, inProgress, mostRecent, read);
         }
 
         public long serializedSize(PrepareResponse response, int version)
@@ -113,6 +139,13 @@ public class PrepareResponse
             {
                 size += Commit.serializer.serializedSize(response.mostRecentCommit, version);
             }
+
+            if (version >= MessagingService.VERSION_31)
+            {
+                size += TypeSizes.sizeof(response.read != null);
+                if (response.read != null)
+                    size += ReadResponse.serializer.serializedSize(response.read, version);
+            }
             return size;
         }
     }
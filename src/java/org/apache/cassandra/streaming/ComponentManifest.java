@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableList;
+
+import org.apache.cassandra.db.TypeSizes;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.DataInputPlus;
+import org.apache.cassandra.io.util.DataOutputPlus;
+
+/**
+ * The components of an sstable that is streamed verbatim, in the order they are sent, along with their sizes.
+ */
+public class ComponentManifest
+{
+    public static final IVersionedSerializer<ComponentManifest> serializer = new ComponentManifestSerializer();
+
+    /**
+     * The components we send. The summary is left out: it can be rewritten in place by index summary
+     * redistribution while we are streaming, and the receiver rebuilds it from the primary index when
+     * it opens the sstable.
+     */
+    private static final List<Component> STREAMED_COMPONENTS = ImmutableList.of(Component.DATA,
+                                                                                 Component.PRIMARY_INDEX,
+                                                                                 Component.PARTITION_INDEX,
+                                                                                 Component.PARTITION_HASHES,
+                                                                                 Component.STATS,
+                                                                                 Component.COMPRESSION_INFO,
+                                                                                 Component.FILTER,
+                                                                                 Component.DIGEST,
+                                                                                 Component.CRC,
+                                                                                 Component.TOC);
+
+    private final LinkedHashMap<Component, Long> components;
+
+    public ComponentManifest(Map<Component, Long> components)
+    {
+        this.components = new LinkedHashMap<>(components);
+    }
+
+    public static ComponentManifest create(SSTableReader sstable)
+    {
+        LinkedHashMap<Component, Long> components = new LinkedHashMap<>();
+        for (Component component : STREAMED_COMPONENTS)
+        {
+            File file = new File(sstable.descriptor.filenameFor(component));
+            if (file.exists())
+                components.put(component, file.length());
+        }
+        return new ComponentManifest(components);
+    }
+
+    public List<Component> components()
+    {
+        return new ArrayList<>(components.keySet());
+    }
+
+    public long sizeOf(Component component)
+    {
+        Long size = components.get(component);
+        if (size == null)
+            throw new IllegalArgumentException("Component " + component + " is not present in the manifest");
+        return size;
+    }
+
+    public long totalSize()
+    {
+        long size = 0;
+        for (long componentSize : components.values())
+            size += componentSize;
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) return true;
+        if (!(o instanceof ComponentManifest)) return false;
+        return components.equals(((ComponentManifest) o).components);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return components.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ComponentManifest(" + components + ')';
+    }
+
+    static class ComponentManifestSerializer implements IVersionedSerializer<ComponentManifest>
+    {
+        public void serialize(ComponentManifest manifest, DataOutputPlus out, int version) throws IOException
+        {
+            if (manifest == null)
+            {
+                out.writeInt(-1);
+                return;
+            }
+
+            out.writeInt(manifest.components.size());
+            for (Map.Entry<Component, Long> entry : manifest.components.entrySet())
+            {
+                out.writeUTF(entry.getKey().name());
+                out.writeLong(entry.getValue());
+            }
+        }
+
+        public ComponentManifest deserialize(DataInputPlus in, int version) throws IOException
+        {
+            int count = in.readInt();
+            if (count < 0)
+                return null;
+
+            LinkedHashMap<Component, Long> components = new LinkedHashMap<>(count);
+            for (int i = 0; i < count; i++)
+                components.put(Component.parse(in.readUTF()), in.readLong());
+            return new ComponentManifest(components);
+        }
+
+        public long serializedSize(ComponentManifest manifest, int version)
+        {
+            if (manifest == null)
+                return TypeSizes.sizeof(-1);
+
+            long size = TypeSizes.sizeof(manifest.components.size());
+            for (Map.Entry<Component, Long> entry : manifest.components.entrySet())
+            {
+                size += TypeSizes.sizeof(entry.getKey().name());
+                size += TypeSizes.sizeof(entry.getValue());
+            }
+            return size;
+        }
+    }
+}
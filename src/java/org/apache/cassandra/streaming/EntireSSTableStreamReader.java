@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.common.base.Throwables;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Directories;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.Descriptor;
+import org.apache.cassandra.io.sstable.SSTable;
+import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.sstable.format.Version;
+import org.apache.cassandra.streaming.messages.FileMessageHeader;
+import org.apache.cassandra.utils.Pair;
+import org.apache.cassandra.utils.SyncUtil;
+
+/**
+ * Receives the component files of an sstable sent by {@link EntireSSTableStreamWriter} and writes them straight
+ * to a new sstable in one of the data directories of the table.
+ */
+public class EntireSSTableStreamReader
+{
+    private static final Logger logger = LoggerFactory.getLogger(EntireSSTableStreamReader.class);
+
+    private final UUID cfId;
+    private final ComponentManifest manifest;
+    private final StreamSession session;
+    private final Version inputVersion;
+    private final long repairedAt;
+    private final SSTableFormat.Type format;
+    private final int sstableLevel;
+
+    private long bytesRead;
+
+    public EntireSSTableStreamReader(FileMessageHeader header, StreamSession session)
+    {
+        assert header.isEntireSSTable();
+        this.session = session;
+        this.cfId = header.cfId;
+        this.manifest = header.components;
+        this.inputVersion = header.version;
+        this.repairedAt = header.repairedAt;
+        this.format = header.format;
+        this.sstableLevel = header.sstableLevel;
+    }
+
+    /**
+     * @param channel where this reads data from
+     * @return the SSTable transferred, opened and tracked as new by the receiving transaction
+     * @throws IOException if reading the remote sstable fails. Will throw an RTE if local write fails.
+     */
+    public SSTableReader read(ReadableByteChannel channel) throws IOException
+    {
+        long totalSize = manifest.totalSize();
+        logger.debug("reading entire sstable from {}, repairedAt = {}, level = {}", session.peer, repairedAt, sstableLevel);
+
+        Pair<String, String> kscf = Schema.instance.getCF(cfId);
+        if (kscf == null)
+        {
+            // schema was dropped during streaming
+            throw new IOException("CF " + cfId + " was dropped during streaming");
+        }
+        ColumnFamilyStore cfs = Keyspace.open(kscf.left).getColumnFamilyStore(kscf.right);
+
+        Directories.DataDirectory localDir = cfs.directories.getWriteableLocation(totalSize);
+        if (localDir == null)
+            throw new IOException("Insufficient disk space to store " + totalSize + " bytes");
+        Descriptor desc = Descriptor.fromFilename(cfs.getSSTablePath(cfs.directories.getLocationForDisk(localDir), format));
+        if (!desc.version.equals(inputVersion))
+            throw new IOException(String.format("Can't receive entire sstable of version %s, local version is %s", inputVersion, desc.version));
+
+        Set<Component> components = new HashSet<>(manifest.components());
+        // the summary is not streamed, it is rebuilt (and saved) when the sstable is opened
+        components.add(Component.SUMMARY);
+        SSTable sstable = new SSTable(desc, components, cfs.metadata) {};
+
+        LifecycleTransaction txn = session.getTransaction(cfId);
+        txn.trackNew(sstable);
+        try
+        {
+            for (Component component : manifest.components())
+                writeComponent(channel, desc, component, totalSize);
+
+            desc.getMetadataSerializer().mutateRepairedAt(desc, repairedAt);
+            desc.getMetadataSerializer().mutateLevel(desc, sstableLevel);
+
+            return SSTableReader.open(desc, components, cfs.metadata);
+        }
+        catch (Throwable e)
+        {
+            // stops tracking the sstable and removes whatever we wrote of it
+            txn.untrackNew(sstable);
+            drain(channel, totalSize - bytesRead);
+            if (e instanceof IOException)
+                throw (IOException) e;
+            else
+                throw Throwables.propagate(e);
+        }
+    }
+
+    private void writeComponent(ReadableByteChannel in, Descriptor desc, Component component, long totalSize) throws IOException
+    {
+        long length = manifest.sizeOf(component);
+        File file = new File(desc.filenameFor(component));
+        logger.trace("[Stream #{}] Receiving {} ({} bytes)", session.planId(), file, length);
+
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+        {
+            long position = 0;
+            while (position < length)
+            {
+                long toTransfer = Math.min(EntireSSTableStreamWriter.CHUNK_SIZE, length - position);
+                long transferred = out.transferFrom(in, position, toTransfer);
+                // the socket channel blocks, so nothing transferred means we reached the end of the stream
+                if (transferred == 0)
+                    throw new EOFException(String.format("Reached end of stream with %d bytes of %s left to read", length - position, file));
+                position += transferred;
+                bytesRead += transferred;
+                session.progress(desc, ProgressInfo.Direction.IN, bytesRead, totalSize);
+            }
+            SyncUtil.force(out, true);
+        }
+    }
+
+    private static void drain(ReadableByteChannel in, long toSkip) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(EntireSSTableStreamWriter.CHUNK_SIZE, Math.max(toSkip, 0)));
+        while (toSkip > 0)
+        {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), toSkip));
+            int read = in.read(buffer);
+            if (read < 0)
+                break;
+            toSkip -= read;
+        }
+    }
+}
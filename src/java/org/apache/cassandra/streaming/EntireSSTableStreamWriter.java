@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.streaming;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.io.sstable.Component;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.ChannelProxy;
+import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.streaming.StreamManager.StreamRateLimiter;
+import org.apache.cassandra.utils.Throwables;
+
+/**
+ * Streams the component files of an sstable verbatim, so that the receiver can add them to its table without
+ * deserializing anything. The files are handed to the socket with {@link java.nio.channels.FileChannel#transferTo},
+ * which lets the kernel move the bytes without copying them through the heap when the connection is not encrypted.
+ */
+public class EntireSSTableStreamWriter
+{
+    private static final Logger logger = LoggerFactory.getLogger(EntireSSTableStreamWriter.class);
+
+    public static final int CHUNK_SIZE = 1 << 20;
+
+    private final SSTableReader sstable;
+    private final ComponentManifest manifest;
+    private final StreamRateLimiter limiter;
+    private final StreamSession session;
+
+    public EntireSSTableStreamWriter(SSTableReader sstable, ComponentManifest manifest, StreamSession session)
+    {
+        this.sstable = sstable;
+        this.manifest = manifest;
+        this.session = session;
+        this.limiter = StreamManager.getRateLimiter(session.peer);
+    }
+
+    /**
+     * Stream every component listed in the manifest, in order, to the given output.
+     *
+     * @param out where this writes data to
+     * @throws IOException on any I/O error
+     */
+    public void write(DataOutputStreamPlus out) throws IOException
+    {
+        long totalSize = manifest.totalSize();
+        logger.debug("[Stream #{}] Streaming entire sstable {} to {}, {} bytes", session.planId(), sstable.descriptor, session.peer, totalSize);
+
+        // open every component before sending anything, so that a component replaced concurrently (like
+        // the stats on a repairedAt change) is sent as it was, consistently with the other components
+        List<ChannelProxy> channels = new ArrayList<>();
+        try
+        {
+            for (Component component : manifest.components())
+            {
+                ChannelProxy channel = new ChannelProxy(sstable.descriptor.filenameFor(component));
+                channels.add(channel);
+                if (channel.size() != manifest.sizeOf(component))
+                    throw new IOException(String.format("%s changed size from %d to %d bytes before it could be streamed",
+                                                        channel.filePath(), manifest.sizeOf(component), channel.size()));
+            }
+
+            long progress = 0L;
+            for (ChannelProxy channel : channels)
+            {
+                long length = channel.size();
+                long bytesTransferred = 0;
+                while (bytesTransferred < length)
+                {
+                    final long position = bytesTransferred;
+                    final int toTransfer = (int) Math.min(CHUNK_SIZE, length - bytesTransferred);
+                    limiter.acquire(toTransfer);
+                    long lastWrite = out.applyToChannel(wbc -> channel.transferTo(position, toTransfer, wbc));
+                    bytesTransferred += lastWrite;
+                    progress += lastWrite;
+                    session.progress(sstable.descriptor, ProgressInfo.Direction.OUT, progress, totalSize);
+                }
+            }
+        }
+        finally
+        {
+            Throwable fail = null;
+            for (ChannelProxy channel : channels)
+                fail = channel.close(fail);
+            Throwables.maybeFail(fail);
+        }
+    }
+}
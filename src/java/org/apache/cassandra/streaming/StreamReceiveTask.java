@@ -70,6 +70,9 @@ public class StreamReceiveTask extends StreamTask
     //  holds references to SSTables received
     protected Collection<SSTableWriter> sstables;
 
+    // sstables whose component files were received as is, already opened and tracked by txn
+    protected Collection<SSTableReader> entireSSTables;
+
     public StreamReceiveTask(StreamSession session, UUID cfId, int totalFiles, long totalSize)
     {
         super(session, cfId);
@@ -79,6 +82,7 @@ public class StreamReceiveTask extends StreamTask
         // this should be revisited at a later date, so that LifecycleTransaction manages all sstable state changes
         this.txn = LifecycleTransaction.offline(OperationType.STREAM, Schema.instance.getCFMetaData(cfId));
         this.sstables = new ArrayList<>(totalFiles);
+        this.entireSSTables = new ArrayList<>();
     }
 
     /**
@@ -94,7 +98,31 @@ public class StreamReceiveTask extends StreamTask
         assert cfId.equals(sstable.metadata.cfId);
 
         sstables.add(sstable);
-        if (sstables.size() == totalFiles)
+        maybeComplete();
+    }
+
+    /**
+     * Process an sstable whose component files were received as is.
+     *
+     * @param sstable SSTable received, opened from its transferred files.
+     */
+    public synchronized void received(SSTableReader sstable)
+    {
+        if (done)
+        {
+            sstable.selfRef().release();
+            return;
+        }
+
+        assert cfId.equals(sstable.metadata.cfId);
+
+        entireSSTables.add(sstable);
+        maybeComplete();
+    }
+
+    private void maybeComplete()
+    {
+        if (sstables.size() + entireSSTables.size() == totalFiles)
         {
             done = true;
             executor.submit(new OnCompletionRunnable(this));
@@ -129,6 +157,7 @@ public class StreamReceiveTask extends StreamTask
                 for (SSTableWriter writer : task.sstables)
                     writer.abort();
                 task.sstables.clear();
+                task.releaseEntireSSTables();
                 task.txn.abort();
                 return;
             }
@@ -144,8 +173,14 @@ public class StreamReceiveTask extends StreamTask
                     readers.add(reader);
                     task.txn.update(reader, false);
                 }
+                for (SSTableReader reader : task.entireSSTables)
+                {
+                    readers.add(reader);
+                    task.txn.update(reader, false);
+                }
 
                 task.sstables.clear();
+                task.entireSSTables.clear();
 
                 try (Refs<SSTableReader> refs = Refs.ref(readers))
                 {
@@ -213,7 +248,16 @@ public class StreamReceiveTask extends StreamTask
         done = true;
         for (SSTableWriter writer : sstables)
             writer.abort();
+        releaseEntireSSTables();
         txn.abort();
         sstables.clear();
     }
+
+    private void releaseEntireSSTables()
+    {
+        // the files are tracked as new by txn, so they are removed when it is aborted
+        for (SSTableReader reader : entireSSTables)
+            reader.selfRef().release();
+        entireSSTables.clear();
+    }
 }
@@ -43,6 +43,7 @@ import org.apache.cassandra.gms.*;
 import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.Descriptor;
 import org.apache.cassandra.metrics.StreamingMetrics;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.streaming.messages.*;
 import org.apache.cassandra.utils.FBUtilities;
@@ -202,6 +203,15 @@ public class StreamSession implements IEndpointStateChangeSubscriber
         return keepSSTableLevel;
     }
 
+    /**
+     * @return whether the peer is known to accept sstables sent as their component files, which nodes understand
+     * since messaging version {@link MessagingService#VERSION_31}
+     */
+    public boolean canStreamEntireSSTables()
+    {
+        return MessagingService.instance().knowsVersion(peer) && MessagingService.instance().getVersion(peer) >= MessagingService.VERSION_31;
+    }
+
     public boolean isIncremental()
     {
         return isIncremental;
@@ -463,6 +473,7 @@ public class StreamSession implements IEndpointStateChangeSubscriber
                 break;
 
             case FILE:
+            case ENTIRE_SSTABLE_FILE:
                 receive((IncomingFileMessage) message);
                 break;
 
@@ -575,7 +586,11 @@ public class StreamSession implements IEndpointStateChangeSubscriber
         metrics.incomingBytes.inc(headerSize);
         // send back file received message
         handler.sendMessage(new ReceivedMessage(message.header.cfId, message.header.sequenceNumber));
-        receivers.get(message.header.cfId).received(message.sstable);
+        StreamReceiveTask task = receivers.get(message.header.cfId);
+        if (message.header.isEntireSSTable())
+            task.received(message.entireSSTable);
+        else
+            task.received(message.sstable);
     }
 
     public void progress(Descriptor desc, ProgressInfo.Direction direction, long bytes, long total)
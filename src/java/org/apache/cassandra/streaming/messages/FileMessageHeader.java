@@ -33,6 +33,7 @@ import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataOutputPlus;
 import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.streaming.ComponentManifest;
 import org.apache.cassandra.streaming.compress.CompressionInfo;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.UUIDSerializer;
@@ -43,6 +44,8 @@ import org.apache.cassandra.utils.UUIDSerializer;
 public class FileMessageHeader
 {
     public static IVersionedSerializer<FileMessageHeader> serializer = new FileMessageHeaderSerializer();
+    /** Serializes the header of an entire sstable, followed by its component manifest */
+    public static IVersionedSerializer<FileMessageHeader> entireSSTableSerializer = new EntireSSTableHeaderSerializer();
 
     public final UUID cfId;
     public final int sequenceNumber;
@@ -57,6 +60,8 @@ public class FileMessageHeader
     public final long repairedAt;
     public final int sstableLevel;
     public final SerializationHeader.Component header;
+    /** Components of the sstable when it is transferred as a whole, null otherwise */
+    public final ComponentManifest components;
 
     public FileMessageHeader(UUID cfId,
                              int sequenceNumber,
@@ -67,7 +72,8 @@ public class FileMessageHeader
                              CompressionInfo compressionInfo,
                              long repairedAt,
                              int sstableLevel,
-                             SerializationHeader.Component header)
+                             SerializationHeader.Component header,
+                             ComponentManifest components)
     {
         this.cfId = cfId;
         this.sequenceNumber = sequenceNumber;
@@ -79,6 +85,15 @@ public class FileMessageHeader
         this.repairedAt = repairedAt;
         this.sstableLevel = sstableLevel;
         this.header = header;
+        this.components = components;
+    }
+
+    /**
+     * @return true if the sstable's component files are transferred verbatim rather than its partitions
+     */
+    public boolean isEntireSSTable()
+    {
+        return components != null;
     }
 
     /**
@@ -87,7 +102,11 @@ public class FileMessageHeader
     public long size()
     {
         long size = 0;
-        if (compressionInfo != null)
+        if (components != null)
+        {
+            size = components.totalSize();
+        }
+        else if (compressionInfo != null)
         {
             // calculate total length of transferring chunks
             for (CompressionMetadata.Chunk chunk : compressionInfo.chunks)
@@ -112,6 +131,7 @@ public class FileMessageHeader
         sb.append(", estimated keys: ").append(estimatedKeys);
         sb.append(", transfer size: ").append(size());
         sb.append(", compressed?: ").append(compressionInfo != null);
+        sb.append(", entire sstable?: ").append(components != null);
         sb.append(", repairedAt: ").append(repairedAt);
         sb.append(", level: ").append(sstableLevel);
         sb.append(')');
@@ -187,7 +207,7 @@ public class FileMessageHeader
                                                  ? SerializationHeader.serializer.deserialize(sstableVersion, in)
                                                  : null;
 
-            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, format, estimatedKeys, sections, compressionInfo, repairedAt, sstableLevel, header);
+            return new FileMessageHeader(cfId, sequenceNumber, sstableVersion, format, estimatedKeys, sections, compressionInfo, repairedAt, sstableLevel, header, null);
         }
 
         public long serializedSize(FileMessageHeader header, int version)
@@ -216,4 +236,41 @@ public class FileMessageHeader
             return size;
         }
     }
+
+    /**
+     * The header of an {@link StreamMessage.Type#ENTIRE_SSTABLE_FILE} message. Only peers that support entire
+     * sstable streaming are sent that message type, so the manifest leaves the header of {@link StreamMessage.Type#FILE}
+     * messages as older nodes expect it.
+     */
+    static class EntireSSTableHeaderSerializer implements IVersionedSerializer<FileMessageHeader>
+    {
+        public void serialize(FileMessageHeader header, DataOutputPlus out, int version) throws IOException
+        {
+            assert header.components != null;
+            serializer.serialize(header, out, version);
+            ComponentManifest.serializer.serialize(header.components, out, version);
+        }
+
+        public FileMessageHeader deserialize(DataInputPlus in, int version) throws IOException
+        {
+            FileMessageHeader header = serializer.deserialize(in, version);
+            ComponentManifest components = ComponentManifest.serializer.deserialize(in, version);
+            return new FileMessageHeader(header.cfId,
+                                         header.sequenceNumber,
+                                         header.version,
+                                         header.format,
+                                         header.estimatedKeys,
+                                         header.sections,
+                                         header.compressionInfo,
+                                         header.repairedAt,
+                                         header.sstableLevel,
+                                         header.header,
+                                         components);
+        }
+
+        public long serializedSize(FileMessageHeader header, int version)
+        {
+            return serializer.serializedSize(header, version) + ComponentManifest.serializer.serializedSize(header.components, version);
+        }
+    }
 }
@@ -22,10 +22,13 @@ import java.io.IOException;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.SSTableWriter;
 import org.apache.cassandra.io.util.DataInputPlus;
 import org.apache.cassandra.io.util.DataInputPlus.DataInputStreamPlus;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.streaming.EntireSSTableStreamReader;
 import org.apache.cassandra.streaming.StreamReader;
 import org.apache.cassandra.streaming.StreamSession;
 import org.apache.cassandra.streaming.compress.CompressedStreamReader;
@@ -36,18 +39,30 @@ import org.apache.cassandra.utils.JVMStabilityInspector;
  */
 public class IncomingFileMessage extends StreamMessage
 {
-    public static Serializer<IncomingFileMessage> serializer = new Serializer<IncomingFileMessage>()
+    public static Serializer<IncomingFileMessage> serializer = new IncomingFileMessageSerializer(FileMessageHeader.serializer);
+    public static Serializer<IncomingFileMessage> entireSSTableSerializer = new IncomingFileMessageSerializer(FileMessageHeader.entireSSTableSerializer);
+
+    private static class IncomingFileMessageSerializer implements Serializer<IncomingFileMessage>
     {
+        private final IVersionedSerializer<FileMessageHeader> headerSerializer;
+
+        private IncomingFileMessageSerializer(IVersionedSerializer<FileMessageHeader> headerSerializer)
+        {
+            this.headerSerializer = headerSerializer;
+        }
+
         @SuppressWarnings("resource")
         public IncomingFileMessage deserialize(ReadableByteChannel in, int version, StreamSession session) throws IOException
         {
             DataInputPlus input = new DataInputStreamPlus(Channels.newInputStream(in));
-            FileMessageHeader header = FileMessageHeader.serializer.deserialize(input, version);
-            StreamReader reader = header.compressionInfo == null ? new StreamReader(header, session)
-                    : new CompressedStreamReader(header, session);
-
+            FileMessageHeader header = headerSerializer.deserialize(input, version);
             try
             {
+                if (header.isEntireSSTable())
+                    return new IncomingFileMessage(new EntireSSTableStreamReader(header, session).read(in), header);
+
+                StreamReader reader = header.compressionInfo == null ? new StreamReader(header, session)
+                        : new CompressedStreamReader(header, session);
                 return new IncomingFileMessage(reader.read(in), header);
             }
             catch (IOException eof)
@@ -77,10 +92,13 @@ public class IncomingFileMessage extends StreamMessage
         {
             throw new UnsupportedOperationException("Not allowed to call serialize on an incoming file");
         }
-    };
+    }
 
     public FileMessageHeader header;
+    /** The sstable being written from the streamed partitions, null if the sstable was streamed entirely */
     public SSTableWriter sstable;
+    /** The sstable received from its component files, null unless the header is for an entire sstable */
+    public SSTableReader entireSSTable;
 
     public IncomingFileMessage(SSTableWriter sstable, FileMessageHeader header)
     {
@@ -89,10 +107,18 @@ public class IncomingFileMessage extends StreamMessage
         this.sstable = sstable;
     }
 
+    public IncomingFileMessage(SSTableReader entireSSTable, FileMessageHeader header)
+    {
+        super(Type.ENTIRE_SSTABLE_FILE);
+        this.header = header;
+        this.entireSSTable = entireSSTable;
+    }
+
     @Override
     public String toString()
     {
-        return "File (" + header + ", file: " + sstable.getFilename() + ")";
+        String filename = entireSSTable == null ? sstable.getFilename() : entireSSTable.getFilename();
+        return "File (" + header + ", file: " + filename + ")";
     }
 }
 
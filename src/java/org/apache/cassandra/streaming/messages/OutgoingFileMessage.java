@@ -21,9 +21,14 @@ import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
 import java.util.List;
 
+import com.google.common.annotations.VisibleForTesting;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.io.compress.CompressionMetadata;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.DataOutputStreamPlus;
+import org.apache.cassandra.streaming.ComponentManifest;
+import org.apache.cassandra.streaming.EntireSSTableStreamWriter;
 import org.apache.cassandra.streaming.StreamSession;
 import org.apache.cassandra.streaming.StreamWriter;
 import org.apache.cassandra.streaming.compress.CompressedStreamWriter;
@@ -55,15 +60,21 @@ public class OutgoingFileMessage extends StreamMessage
     private final String filename;
     private boolean completed = false;
 
-    public OutgoingFileMessage(Ref<SSTableReader> ref, int sequenceNumber, long estimatedKeys, List<Pair<Long, Long>> sections, long repairedAt, boolean keepSSTableLevel)
+    /**
+     * @param peerSupportsEntireSSTables whether the receiver can be sent the sstable's component files verbatim
+     */
+    public OutgoingFileMessage(Ref<SSTableReader> ref, int sequenceNumber, long estimatedKeys, List<Pair<Long, Long>> sections, long repairedAt, boolean keepSSTableLevel, boolean peerSupportsEntireSSTables)
     {
-        super(Type.FILE);
+        super(peerSupportsEntireSSTables && shouldStreamEntireSSTable(ref.get(), sections) ? Type.ENTIRE_SSTABLE_FILE : Type.FILE);
         this.ref = ref;
 
         SSTableReader sstable = ref.get();
         filename = sstable.getFilename();
+        ComponentManifest components = null;
         CompressionInfo compressionInfo = null;
-        if (sstable.compression)
+        if (type == Type.ENTIRE_SSTABLE_FILE)
+            components = ComponentManifest.create(sstable);
+        else if (sstable.compression)
         {
             CompressionMetadata meta = sstable.getCompressionMetadata();
             compressionInfo = new CompressionInfo(meta.getChunksForSections(sections), meta.parameters);
@@ -77,7 +88,32 @@ public class OutgoingFileMessage extends StreamMessage
                                             compressionInfo,
                                             repairedAt,
                                             keepSSTableLevel ? sstable.getSSTableLevel() : 0,
-                                            sstable.header == null ? null : sstable.header.toComponent());
+                                            sstable.header == null ? null : sstable.header.toComponent(),
+                                            components);
+    }
+
+    /**
+     * An sstable can be sent as is when the sections to transfer span its whole data file, i.e. when all of its
+     * partitions belong to the receiver, and the receiver would write it in the same format anyway.
+     */
+    @VisibleForTesting
+    static boolean shouldStreamEntireSSTable(SSTableReader sstable, List<Pair<Long, Long>> sections)
+    {
+        if (!DatabaseDescriptor.streamEntireSSTables())
+            return false;
+
+        if (!sstable.descriptor.version.equals(sstable.descriptor.getFormat().getLatestVersion()))
+            return false;
+
+        // sections are sorted and don't overlap since they come from normalized ranges
+        long position = 0;
+        for (Pair<Long, Long> section : sections)
+        {
+            if (section.left != position)
+                return false;
+            position = section.right;
+        }
+        return position == sstable.uncompressedLength();
     }
 
     public synchronized void serialize(DataOutputStreamPlus out, int version, StreamSession session) throws IOException
@@ -87,9 +123,15 @@ public class OutgoingFileMessage extends StreamMessage
             return;
         }
 
-        FileMessageHeader.serializer.serialize(header, out, version);
-
         final SSTableReader reader = ref.get();
+        if (header.isEntireSSTable())
+        {
+            FileMessageHeader.entireSSTableSerializer.serialize(header, out, version);
+            new EntireSSTableStreamWriter(reader, header.components, session).write(out);
+            return;
+        }
+
+        FileMessageHeader.serializer.serialize(header, out, version);
         StreamWriter writer = header.compressionInfo == null ?
                                       new StreamWriter(reader, header.sections, session) :
                                       new CompressedStreamWriter(reader, header.sections,
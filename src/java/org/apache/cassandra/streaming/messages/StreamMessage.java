@@ -79,7 +79,9 @@ public abstract class StreamMessage
         RECEIVED(3, 4, ReceivedMessage.serializer),
         RETRY(4, 4, RetryMessage.serializer),
         COMPLETE(5, 1, CompleteMessage.serializer),
-        SESSION_FAILED(6, 5, SessionFailedMessage.serializer);
+        SESSION_FAILED(6, 5, SessionFailedMessage.serializer),
+        // only sent to peers that support entire sstable streaming, see StreamSession#canStreamEntireSSTables
+        ENTIRE_SSTABLE_FILE(7, 0, IncomingFileMessage.entireSSTableSerializer, OutgoingFileMessage.serializer);
 
         public static Type get(byte type)
         {
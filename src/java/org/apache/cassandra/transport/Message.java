@@ -39,12 +39,19 @@ import io.netty.handler.codec.MessageToMessageEncoder;
 
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.cassandra.service.ClientWarn;
 import org.apache.cassandra.transport.messages.*;
+import org.apache.cassandra.exceptions.RequestExecutionException;
+import org.apache.cassandra.exceptions.RequestValidationException;
 import org.apache.cassandra.service.QueryState;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 
 /**
@@ -211,6 +218,56 @@ public abstract class Message
 
         public abstract Response execute(QueryState queryState);
 
+        /**
+         * Asynchronous variant of execute(), for requests that would otherwise park the executing thread while
+         * waiting on other nodes. By default the request is executed synchronously.
+         */
+        public ListenableFuture<Response> executeAsync(QueryState queryState)
+        {
+            return Futures.immediateFuture(execute(queryState));
+        }
+
+        /**
+         * Tracing sessions are bound to the thread executing the request, so requests that may end up being
+         * traced have to use the synchronous path.
+         */
+        protected boolean mayBeTraced()
+        {
+            return tracingRequested || StorageService.instance.getTraceProbability() != 0;
+        }
+
+        /**
+         * Converts the future result of an asynchronously processed statement into the future response to this
+         * request, turning failures into error messages the same way the synchronous path does.
+         */
+        protected static ListenableFuture<Response> toResponse(ListenableFuture<ResultMessage> future, final boolean skipMetadata)
+        {
+            final SettableFuture<Response> response = SettableFuture.create();
+            Futures.addCallback(future, new FutureCallback<ResultMessage>()
+            {
+                public void onSuccess(ResultMessage result)
+                {
+                    if (skipMetadata && result instanceof ResultMessage.Rows)
+                        ((ResultMessage.Rows)result).result.metadata.setSkipMetadata();
+                    response.set(result);
+                }
+
+                public void onFailure(Throwable t)
+                {
+                    response.set(toError(t));
+                }
+            });
+            return response;
+        }
+
+        protected static Response toError(Throwable t)
+        {
+            JVMStabilityInspector.inspectThrowable(t);
+            if (!((t instanceof RequestValidationException) || (t instanceof RequestExecutionException)))
+                logger.error("Unexpected error during query", t);
+            return ErrorMessage.fromException(t);
+        }
+
         public void setTracingRequested()
         {
             this.tracingRequested = true;
@@ -482,17 +539,44 @@ public abstract class Message
 
         private static final ConcurrentMap<EventLoop, Flusher> flusherLookup = new ConcurrentHashMap<>();
 
+        // if not null, the executors requests are handed to by this handler, rather than by the pipeline
+        private final RequestShards shards;
+
         public Dispatcher()
+        {
+            this(null);
+        }
+
+        public Dispatcher(RequestShards shards)
         {
             super(false);
+            this.shards = shards;
         }
 
         @Override
-        public void channelRead0(ChannelHandlerContext ctx, Request request)
+        public void channelRead0(final ChannelHandlerContext ctx, final Request request)
+        {
+            if (shards == null)
+            {
+                process(ctx, request);
+                return;
+            }
+
+            shards.executorFor(ctx.channel(), request).execute(new Runnable()
+            {
+                public void run()
+                {
+                    process(ctx, request);
+                }
+            });
+        }
+
+        private void process(final ChannelHandlerContext ctx, final Request request)
         {
 
-            final Response response;
+            final ListenableFuture<Response> future;
             final ServerConnection connection;
+            final List<String> warnings;
 
             try
             {
@@ -504,17 +588,13 @@ public abstract class Message
                 QueryState qstate = connection.validateNewMessage(request.type, connection.getVersion(), request.getStreamId());
 
                 logger.debug("Received: {}, v={}", request, connection.getVersion());
-                response = request.execute(qstate);
-                response.setStreamId(request.getStreamId());
-                response.setWarnings(ClientWarn.getWarnings());
-                response.attach(connection);
-                connection.applyStateTransition(request.type, response.type);
+                future = request.executeAsync(qstate);
+                // warnings are raised while the request is being set up on this thread, so collect them now
+                warnings = ClientWarn.getWarnings();
             }
             catch (Throwable t)
             {
-                JVMStabilityInspector.inspectThrowable(t);
-                UnexpectedChannelExceptionHandler handler = new UnexpectedChannelExceptionHandler(ctx.channel(), true);
-                flush(new FlushItem(ctx, ErrorMessage.fromException(t, handler).setStreamId(request.getStreamId()), request.getSourceFrame()));
+                flushError(ctx, request, t);
                 return;
             }
             finally
@@ -522,8 +602,41 @@ public abstract class Message
                 ClientWarn.resetWarnings();
             }
 
-            logger.debug("Responding: {}, v={}", response, connection.getVersion());
-            flush(new FlushItem(ctx, response, request.getSourceFrame()));
+            // the response is written from whichever thread completes the request, which for requests waiting
+            // on replicas is the thread handling the last needed acknowledgement (or the request timeout)
+            Futures.addCallback(future, new FutureCallback<Response>()
+            {
+                public void onSuccess(Response response)
+                {
+                    try
+                    {
+                        response.setStreamId(request.getStreamId());
+                        response.setWarnings(warnings);
+                        response.attach(connection);
+                        connection.applyStateTransition(request.type, response.type);
+                    }
+                    catch (Throwable t)
+                    {
+                        flushError(ctx, request, t);
+                        return;
+                    }
+
+                    logger.debug("Responding: {}, v={}", response, connection.getVersion());
+                    flush(new FlushItem(ctx, response, request.getSourceFrame()));
+                }
+
+                public void onFailure(Throwable t)
+                {
+                    flushError(ctx, request, t);
+                }
+            });
+        }
+
+        private void flushError(ChannelHandlerContext ctx, Request request, Throwable t)
+        {
+            JVMStabilityInspector.inspectThrowable(t);
+            UnexpectedChannelExceptionHandler handler = new UnexpectedChannelExceptionHandler(ctx.channel(), true);
+            flush(new FlushItem(ctx, ErrorMessage.fromException(t, handler).setStreamId(request.getStreamId()), request.getSourceFrame()));
         }
 
         private void flush(FlushItem item)
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.transport;
+
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.cassandra.concurrent.TracingAwareExecutorService;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.transport.messages.ExecuteMessage;
+
+import static org.apache.cassandra.concurrent.SharedExecutorPool.SHARED;
+
+/**
+ * Executors that native transport requests are routed to by the token of the partition they touch, so that the
+ * memtable and cache accesses for a token range are made from the same few threads rather than from any of the
+ * native transport threads. Requests for which the token can't be told without executing them (anything but
+ * prepared statements restricting the whole partition key) are routed by connection.
+ */
+public class RequestShards
+{
+    private static final Logger logger = LoggerFactory.getLogger(RequestShards.class);
+
+    private final static int MAX_QUEUED_REQUESTS = 128;
+    private final static String THREAD_FACTORY_ID = "Native-Transport-Requests-";
+
+    private final TracingAwareExecutorService[] shards;
+
+    public RequestShards(int count)
+    {
+        assert count > 0;
+        shards = new TracingAwareExecutorService[count];
+        int threadsPerShard = Math.max(1, DatabaseDescriptor.getNativeTransportMaxThreads() / count);
+        for (int i = 0; i < count; i++)
+            shards[i] = SHARED.newExecutor(threadsPerShard, MAX_QUEUED_REQUESTS, "transport", THREAD_FACTORY_ID + i);
+    }
+
+    public TracingAwareExecutorService executorFor(Channel channel, Message.Request request)
+    {
+        Token token = routingToken(request);
+        int shard = token == null
+                  ? (channel.hashCode() & Integer.MAX_VALUE) % shards.length
+                  : shardOf(token, shards.length);
+        return shards[shard];
+    }
+
+    /**
+     * @return the token to route the request by, or null to route it by connection. This is called on the event
+     * loop before the request is validated, so a request that can't be routed is routed by connection, and fails
+     * when it is executed, from where the error is sent back to the client.
+     */
+    private static Token routingToken(Message.Request request)
+    {
+        if (!(request instanceof ExecuteMessage))
+            return null;
+
+        try
+        {
+            return ((ExecuteMessage) request).routingToken();
+        }
+        catch (RuntimeException e)
+        {
+            logger.trace("Routing {} by connection as its token can't be told", request, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the shard of the token, splitting the Murmur3 token ring into {@code count} contiguous ranges, and
+     * hashing the tokens of other partitioners
+     */
+    static int shardOf(Token token, int count)
+    {
+        if (!(token instanceof Murmur3Partitioner.LongToken))
+            return (token.hashCode() & Integer.MAX_VALUE) % count;
+
+        // offset the token so the ring starts at 0, and halve it to fit in a positive long
+        long offset = (((Long) token.getTokenValue()) ^ Long.MIN_VALUE) >>> 1;
+        return (int) (offset / (Long.MAX_VALUE / count + 1));
+    }
+
+    public void shutdown()
+    {
+        for (TracingAwareExecutorService shard : shards)
+            shard.shutdown();
+    }
+}
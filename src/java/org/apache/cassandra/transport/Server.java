@@ -87,6 +87,9 @@ public class Server implements CassandraDaemon.Server
 
     private EventLoopGroup workerGroup;
     private EventExecutor eventExecutorGroup;
+    // set instead of the above if requests are routed to executors by token
+    private RequestShards requestShards;
+    private Message.Dispatcher shardedDispatcher;
 
     public Server(InetSocketAddress socket)
     {
@@ -134,7 +137,17 @@ public class Server implements CassandraDaemon.Server
     private void run()
     {
         // Configure the server.
-        eventExecutorGroup = new RequestThreadPoolExecutor();//wxc 2015-8-8:18:42:05 ExecutorʽֳGroup
+        int shards = DatabaseDescriptor.getNativeTransportRequestShards();
+        if (shards > 0)
+        {
+            requestShards = new RequestShards(shards);
+            shardedDispatcher = new Message.Dispatcher(requestShards);
+            logger.info("Routing native transport requests by token to {} executors", shards);
+        }
+        else
+        {
+            eventExecutorGroup = new RequestThreadPoolExecutor();//wxc 2015-8-8:18:42:05 ExecutorʽֳGroup
+        }
 
         boolean hasEpoll = enableEpoll ? Epoll.isAvailable() : false;//wxc 2015-8-8:18:43:48 isAvailableʵ֣ жһ쳣 û쳣ֿáڹ˾JMQòƿʽжϡ
         if (hasEpoll)
@@ -202,8 +215,17 @@ public class Server implements CassandraDaemon.Server
         workerGroup.shutdownGracefully();
         workerGroup = null;
 
-        eventExecutorGroup.shutdown();
-        eventExecutorGroup = null;
+        if (requestShards != null)
+        {
+            requestShards.shutdown();
+            requestShards = null;
+            shardedDispatcher = null;
+        }
+        else
+        {
+            eventExecutorGroup.shutdown();
+            eventExecutorGroup = null;
+        }
         logger.info("Stop listening for CQL clients");
 
         StorageService.instance.setRpcReady(false);
@@ -294,7 +316,10 @@ public class Server implements CassandraDaemon.Server
             pipeline.addLast("messageDecoder", messageDecoder);
             pipeline.addLast("messageEncoder", messageEncoder);
 
-            pipeline.addLast(server.eventExecutorGroup, "executor", dispatcher);
+            if (server.requestShards != null)
+                pipeline.addLast("executor", server.shardedDispatcher);
+            else
+                pipeline.addLast(server.eventExecutorGroup, "executor", dispatcher);
         }
     }
 
@@ -22,18 +22,26 @@ import java.util.List;
 import java.util.UUID;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.buffer.ByteBuf;
 
+import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.cql3.CQLStatement;
 import org.apache.cassandra.cql3.QueryHandler;
 import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.cql3.statements.ModificationStatement;
 import org.apache.cassandra.cql3.statements.ParsedStatement;
+import org.apache.cassandra.cql3.statements.SelectStatement;
 import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.PreparedQueryNotFoundException;
 import org.apache.cassandra.service.ClientState;
 import org.apache.cassandra.service.QueryState;
 import org.apache.cassandra.tracing.Tracing;
 import org.apache.cassandra.transport.*;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.JVMStabilityInspector;
 import org.apache.cassandra.utils.MD5Digest;
 import org.apache.cassandra.utils.UUIDGen;
@@ -91,6 +99,10 @@ public class ExecuteMessage extends Message.Request
     public final MD5Digest statementId;
     public final QueryOptions options;
 
+    // the statement executed, once the options have been prepared for it; set by routingToken() on the event loop
+    // so that the statement isn't looked up and the options prepared again when the message is executed
+    private ParsedStatement.Prepared prepared;
+
     public ExecuteMessage(MD5Digest statementId, QueryOptions options)
     {
         super(Message.Type.EXECUTE);
@@ -98,16 +110,91 @@ public class ExecuteMessage extends Message.Request
         this.options = options;
     }
 
-    public Message.Response execute(QueryState state)
+    /**
+     * @return the token of the partition the statement is executed against if it can be told from the bound
+     * values, that is if they include the whole partition key, or null otherwise
+     */
+    public Token routingToken()
+    {
+        ParsedStatement.Prepared prepared = prepare(ClientState.getCQLQueryHandler());
+        if (prepared == null || prepared.partitionKeyBindIndexes == null)
+            return null;
+
+        CFMetaData cfm;
+        if (prepared.statement instanceof ModificationStatement)
+            cfm = ((ModificationStatement) prepared.statement).cfm;
+        else if (prepared.statement instanceof SelectStatement)
+            cfm = ((SelectStatement) prepared.statement).cfm;
+        else
+            return null;
+
+        List<ByteBuffer> values = options.getValues();
+        ByteBuffer[] components = new ByteBuffer[prepared.partitionKeyBindIndexes.length];
+        for (int i = 0; i < components.length; i++)
+        {
+            int index = prepared.partitionKeyBindIndexes[i];
+            if (index >= values.size())
+                return null;
+
+            ByteBuffer value = values.get(index);
+            if (value == null || value == ByteBufferUtil.UNSET_BYTE_BUFFER)
+                return null;
+            components[i] = value;
+        }
+
+        ByteBuffer key = components.length == 1 ? components[0] : CompositeType.build(components);
+        return cfm.partitioner.getToken(key);
+    }
+
+    /**
+     * @return the statement executed, after preparing the options for it, or null if it isn't prepared
+     */
+    private ParsedStatement.Prepared prepare(QueryHandler handler)
     {
+        if (prepared == null)
+        {
+            ParsedStatement.Prepared statement = handler.getPrepared(statementId);
+            if (statement == null)
+                return null;
+
+            options.prepare(statement.boundNames);
+            prepared = statement;
+        }
+        return prepared;
+    }
+
+    public ListenableFuture<Message.Response> executeAsync(QueryState state)
+    {
+        if (mayBeTraced())
+            return super.executeAsync(state);
+
         try
         {
             QueryHandler handler = ClientState.getCQLQueryHandler();
-            ParsedStatement.Prepared prepared = handler.getPrepared(statementId);
+            ParsedStatement.Prepared prepared = prepare(handler);
             if (prepared == null)
                 throw new PreparedQueryNotFoundException(statementId);
 
-            options.prepare(prepared.boundNames);
+            if (options.getPageSize() == 0)
+                throw new ProtocolException("The page size cannot be 0");
+
+            return toResponse(handler.processPreparedAsync(prepared.statement, state, options, getCustomPayload()),
+                              options.skipMetadata());
+        }
+        catch (Exception e)
+        {
+            return Futures.immediateFuture(toError(e));
+        }
+    }
+
+    public Message.Response execute(QueryState state)
+    {
+        try
+        {
+            QueryHandler handler = ClientState.getCQLQueryHandler();
+            ParsedStatement.Prepared prepared = prepare(handler);
+            if (prepared == null)
+                throw new PreparedQueryNotFoundException(statementId);
             CQLStatement statement = prepared.statement;
 
             if (options.getPageSize() == 0)
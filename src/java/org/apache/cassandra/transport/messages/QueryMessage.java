@@ -22,6 +22,8 @@ import java.util.Collections;
 import java.util.UUID;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.netty.buffer.ByteBuf;
 
 import org.apache.cassandra.cql3.QueryOptions;
@@ -90,6 +92,25 @@ public class QueryMessage extends Message.Request
         this.options = options;
     }
 
+    public ListenableFuture<Message.Response> executeAsync(QueryState state)
+    {
+        if (mayBeTraced())
+            return super.executeAsync(state);
+
+        try
+        {
+            if (options.getPageSize() == 0)
+                throw new ProtocolException("The page size cannot be 0");
+
+            return toResponse(ClientState.getCQLQueryHandler().processAsync(query, state, options, getCustomPayload()),
+                              options.skipMetadata());
+        }
+        catch (Exception e)
+        {
+            return Futures.immediateFuture(toError(e));
+        }
+    }
+
     public Message.Response execute(QueryState state)
     {
         try
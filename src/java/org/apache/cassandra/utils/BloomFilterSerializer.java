@@ -52,6 +52,28 @@ final class BloomFilterSerializer
         return new BloomFilter(hashes, bs, oldBfHashOrder);
     }
 
+    public static void serialize(BlockedBloomFilter bf, DataOutputPlus out) throws IOException
+    {
+        out.writeInt(BlockedBloomFilter.BITS_PER_BLOCK);
+        bf.bitset.serialize(out);
+    }
+
+    @SuppressWarnings("resource")
+    public static BlockedBloomFilter deserializeBlocked(DataInput in, boolean offheap) throws IOException
+    {
+        int blockSize = in.readInt();
+        if (blockSize != BlockedBloomFilter.BITS_PER_BLOCK)
+            throw new IOException(String.format("Unexpected blocked bloom filter block size %d, expected %d", blockSize, BlockedBloomFilter.BITS_PER_BLOCK));
+        IBitSet bs = offheap ? OffHeapBitSet.deserialize(in) : OpenBitSet.deserialize(in);
+
+        return new BlockedBloomFilter(bs);
+    }
+
+    public static long serializedSize(BlockedBloomFilter bf)
+    {
+        return TypeSizes.sizeof(BlockedBloomFilter.BITS_PER_BLOCK) + bf.bitset.serializedSize();
+    }
+
     /**
      * Calculates a serialized size of the given Bloom Filter
      * @param bf Bloom filter to calculate serialized size
@@ -20,6 +20,7 @@ package org.apache.cassandra.utils;
 import java.io.FileDescriptor;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
@@ -32,6 +33,8 @@ import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 
+import org.apache.cassandra.utils.memory.MemoryUtil;
+
 public final class CLibrary
 {
     private static final Logger logger = LoggerFactory.getLogger(CLibrary.class);
@@ -85,6 +88,7 @@ public final class CLibrary
     private static native int fcntl(int fd, int command, long flags) throws LastErrorException;
     private static native int posix_fadvise(int fd, long offset, int len, int flag) throws LastErrorException;
     private static native int open(String path, int flags) throws LastErrorException;
+    private static native long pread(int fd, Pointer buf, long count, long offset) throws LastErrorException;
     private static native int fsync(int fd) throws LastErrorException;
     private static native int close(int fd) throws LastErrorException;
     private static native Pointer strerror(int errnum) throws LastErrorException;
@@ -246,6 +250,64 @@ public final class CLibrary
         return fd;
     }
 
+    /**
+     * Open a file for reading with O_DIRECT, bypassing the page cache.
+     *
+     * @return the file descriptor, or -1 if JNA is unavailable, this isn't Linux, or the file system
+     * doesn't support direct I/O
+     */
+    public static int tryOpenDirect(String path)
+    {
+        if (!System.getProperty("os.name").toLowerCase().contains("linux"))
+            return -1;
+
+        try
+        {
+            return open(path, O_RDONLY | O_DIRECT);
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            // JNA is unavailable just skipping Direct I/O
+        }
+        catch (RuntimeException e)
+        {
+            if (!(e instanceof LastErrorException))
+                throw e;
+
+            logger.debug(String.format("open(%s, O_RDONLY|O_DIRECT) failed, errno (%d).", path, errno(e)));
+        }
+
+        return -1;
+    }
+
+    /**
+     * Read from {@code fd} at {@code position} into the remaining bytes of the direct {@code buffer},
+     * without moving the buffer's position. For a descriptor opened with {@link #tryOpenDirect(String)}
+     * the buffer address, position and length must all be aligned to the file system block size.
+     *
+     * @return the number of bytes read, 0 at the end of the file
+     */
+    public static int pread(int fd, ByteBuffer buffer, long position) throws IOException
+    {
+        assert buffer.isDirect();
+        try
+        {
+            Pointer address = new Pointer(MemoryUtil.getAddress(buffer) + buffer.position());
+            return (int) pread(fd, address, buffer.remaining(), position);
+        }
+        catch (UnsatisfiedLinkError e)
+        {
+            throw new IOException("pread unavailable", e);
+        }
+        catch (RuntimeException e)
+        {
+            if (!(e instanceof LastErrorException))
+                throw e;
+
+            throw new IOException(String.format("pread(%d, %d, %d) failed, errno (%d).", fd, buffer.remaining(), position, errno(e)), e);
+        }
+    }
+
     public static void trySync(int fd)
     {
         if (fd == -1)
@@ -217,10 +217,53 @@ public class CoalescingStrategies
 
     }
 
-    @VisibleForTesting
-    interface Parker
+    public interface Parker
     {
         void park(long nanos);
+
+        /**
+         * Parks for the window a strategy only waits for once woken by the first message of a batch, when that
+         * message was already waiting instead. By default the caller is assumed to be sending a backlog and
+         * doesn't park.
+         */
+        default void parkIfWoken(long nanos)
+        {
+        }
+    }
+
+    /**
+     * A Parker for callers that must never block, such as a netty event loop. Instead of parking it accumulates
+     * the time the strategy asked to wait, so the caller can defer its flush by that long and let more messages
+     * join the batch in the meantime.
+     */
+    public static class DeferringParker implements Parker
+    {
+        private long deferred;
+
+        public void park(long nanos)
+        {
+            deferred += nanos;
+        }
+
+        /**
+         * Non-blocking callers never wait for the first message of a batch, they are woken once it is there, so
+         * the window starts now.
+         */
+        @Override
+        public void parkIfWoken(long nanos)
+        {
+            park(nanos);
+        }
+
+        /**
+         * @return the nanos requested since the last call, resetting the total
+         */
+        public long takeDeferred()
+        {
+            long nanos = deferred;
+            deferred = 0;
+            return nanos;
+        }
     }
 
     private static final Parker PARKER = new Parker()
@@ -453,6 +496,10 @@ public class CoalescingStrategies
                 parker.park(coalesceWindow);
                 input.drainTo(out, maxItems - 1);
             }
+            else
+            {
+                parker.parkIfWoken(coalesceWindow);
+            }
             debugTimestamps(out);
         }
 
@@ -491,12 +538,11 @@ public class CoalescingStrategies
         }
     }
 
-    @VisibleForTesting
-    static CoalescingStrategy newCoalescingStrategy(String strategy,
-                                                    int coalesceWindow,
-                                                    Parker parker,
-                                                    Logger logger,
-                                                    String displayName)
+    public static CoalescingStrategy newCoalescingStrategy(String strategy,
+                                                           int coalesceWindow,
+                                                           Parker parker,
+                                                           Logger logger,
+                                                           String displayName)
     {
         String classname = null;
         String strategyCleaned = strategy.trim().toUpperCase();
@@ -37,12 +37,26 @@ public class FilterFactory
 
     public static void serialize(IFilter bf, DataOutputPlus output) throws IOException
     {
-        BloomFilterSerializer.serialize((BloomFilter) bf, output);
+        if (bf instanceof BlockedBloomFilter)
+            BloomFilterSerializer.serialize((BlockedBloomFilter) bf, output);
+        else
+            BloomFilterSerializer.serialize((BloomFilter) bf, output);
     }
 
     public static IFilter deserialize(DataInput input, boolean offheap, boolean oldBfHashOrder) throws IOException
     {
-        return BloomFilterSerializer.deserialize(input, offheap, oldBfHashOrder);
+        return deserialize(input, offheap, oldBfHashOrder, false);
+    }
+
+    /**
+     * @param blocked whether the serialized filter is a {@link BlockedBloomFilter}, which depends on the
+     *                sstable version it was written with
+     */
+    public static IFilter deserialize(DataInput input, boolean offheap, boolean oldBfHashOrder, boolean blocked) throws IOException
+    {
+        return blocked
+             ? BloomFilterSerializer.deserializeBlocked(input, offheap)
+             : BloomFilterSerializer.deserialize(input, offheap, oldBfHashOrder);
     }
 
     /**
@@ -69,10 +83,25 @@ public class FilterFactory
      *         filter.
      */
     public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap, boolean oldBfHashOrder)
+    {
+        return getFilter(numElements, maxFalsePosProbability, offheap, oldBfHashOrder, false);
+    }
+
+    /**
+     * @return The smallest filter that can provide the given false positive probability rate for the given
+     *         number of elements, a {@link BlockedBloomFilter} if {@code blocked} is set.
+     */
+    @SuppressWarnings("resource")
+    public static IFilter getFilter(long numElements, double maxFalsePosProbability, boolean offheap, boolean oldBfHashOrder, boolean blocked)
     {
         assert maxFalsePosProbability <= 1.0 : "Invalid probability";
         if (maxFalsePosProbability == 1.0)
             return new AlwaysPresentFilter();
+        if (blocked)
+        {
+            long numBits = BlockedBloomFilter.bitsFor(numElements, maxFalsePosProbability);
+            return new BlockedBloomFilter(offheap ? new OffHeapBitSet(numBits) : new OpenBitSet(numBits));
+        }
         int bucketsPerElement = BloomCalculations.maxBucketsPerElement(numElements);
         BloomCalculations.BloomSpecification spec = BloomCalculations.computeBloomSpec(bucketsPerElement, maxFalsePosProbability);
         return createFilter(spec.K, numElements, spec.bucketsPerElement, offheap, oldBfHashOrder);
@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * A streaming, 128 bit MurmurHash 3 (x64 variant, seed 0) exposed as a {@link MessageDigest}, so that it can be
+ * handed to the digest methods of the storage engine in place of MD5 where a non-cryptographic hash will do.
+ *
+ * Unlike {@link MurmurHash#hash3_x64_128}, which has to keep its sign bug for Murmur3Partitioner, this is the
+ * reference algorithm. Instances are not thread safe.
+ */
+public class Murmur3Digest extends MessageDigest
+{
+    public static final String ALGORITHM = "Murmur3_x64_128";
+    public static final int DIGEST_LENGTH = 16;
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long length;
+
+    // the bytes of an incomplete block, waiting for more input
+    private final byte[] buffer = new byte[16];
+    private int buffered;
+
+    public Murmur3Digest()
+    {
+        super(ALGORITHM);
+    }
+
+    @Override
+    protected int engineGetDigestLength()
+    {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    protected void engineUpdate(byte input)
+    {
+        buffer[buffered++] = input;
+        length++;
+        if (buffered == 16)
+        {
+            mixBlock(getLong(buffer, 0), getLong(buffer, 8));
+            buffered = 0;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+        length += len;
+        int end = offset + len;
+
+        if (buffered > 0)
+        {
+            int n = Math.min(16 - buffered, len);
+            System.arraycopy(input, offset, buffer, buffered, n);
+            buffered += n;
+            offset += n;
+            if (buffered < 16)
+                return;
+            mixBlock(getLong(buffer, 0), getLong(buffer, 8));
+            buffered = 0;
+        }
+
+        for (; end - offset >= 16; offset += 16)
+            mixBlock(getLong(input, offset), getLong(input, offset + 8));
+
+        buffered = end - offset;
+        System.arraycopy(input, offset, buffer, 0, buffered);
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input)
+    {
+        if (input.hasArray())
+        {
+            engineUpdate(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            input.position(input.limit());
+            return;
+        }
+
+        int position = input.position();
+        int limit = input.limit();
+        while (buffered > 0 && position < limit)
+            engineUpdate(input.get(position++));
+
+        length += (limit - position) & ~15;
+        boolean bigEndian = input.order() == ByteOrder.BIG_ENDIAN;
+        for (; limit - position >= 16; position += 16)
+        {
+            long k1 = input.getLong(position);
+            long k2 = input.getLong(position + 8);
+            if (bigEndian)
+            {
+                k1 = Long.reverseBytes(k1);
+                k2 = Long.reverseBytes(k2);
+            }
+            mixBlock(k1, k2);
+        }
+
+        while (position < limit)
+            engineUpdate(input.get(position++));
+        input.position(limit);
+    }
+
+    @Override
+    @SuppressWarnings("fallthrough") // the tail bytes are mixed in by falling through from the highest one
+    protected byte[] engineDigest()
+    {
+        long k1 = 0;
+        long k2 = 0;
+        switch (buffered)
+        {
+            case 15: k2 ^= (buffer[14] & 0xffL) << 48;
+            case 14: k2 ^= (buffer[13] & 0xffL) << 40;
+            case 13: k2 ^= (buffer[12] & 0xffL) << 32;
+            case 12: k2 ^= (buffer[11] & 0xffL) << 24;
+            case 11: k2 ^= (buffer[10] & 0xffL) << 16;
+            case 10: k2 ^= (buffer[9] & 0xffL) << 8;
+            case  9: k2 ^= (buffer[8] & 0xffL);
+                k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; h2 ^= k2;
+
+            case  8: k1 ^= (buffer[7] & 0xffL) << 56;
+            case  7: k1 ^= (buffer[6] & 0xffL) << 48;
+            case  6: k1 ^= (buffer[5] & 0xffL) << 40;
+            case  5: k1 ^= (buffer[4] & 0xffL) << 32;
+            case  4: k1 ^= (buffer[3] & 0xffL) << 24;
+            case  3: k1 ^= (buffer[2] & 0xffL) << 16;
+            case  2: k1 ^= (buffer[1] & 0xffL) << 8;
+            case  1: k1 ^= (buffer[0] & 0xffL);
+                k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; h1 ^= k1;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix(h1);
+        h2 = fmix(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        byte[] digest = new byte[DIGEST_LENGTH];
+        putLong(digest, 0, h1);
+        putLong(digest, 8, h2);
+        engineReset();
+        return digest;
+    }
+
+    @Override
+    protected void engineReset()
+    {
+        h1 = 0;
+        h2 = 0;
+        length = 0;
+        buffered = 0;
+    }
+
+    private void mixBlock(long k1, long k2)
+    {
+        k1 *= C1; k1 = Long.rotateLeft(k1, 31); k1 *= C2; h1 ^= k1;
+
+        h1 = Long.rotateLeft(h1, 27); h1 += h2; h1 = h1 * 5 + 0x52dce729;
+
+        k2 *= C2; k2 = Long.rotateLeft(k2, 33); k2 *= C1; h2 ^= k2;
+
+        h2 = Long.rotateLeft(h2, 31); h2 += h1; h2 = h2 * 5 + 0x38495ab5;
+    }
+
+    private static long fmix(long k)
+    {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] bytes, int offset)
+    {
+        return (bytes[offset] & 0xffL)
+             | (bytes[offset + 1] & 0xffL) << 8
+             | (bytes[offset + 2] & 0xffL) << 16
+             | (bytes[offset + 3] & 0xffL) << 24
+             | (bytes[offset + 4] & 0xffL) << 32
+             | (bytes[offset + 5] & 0xffL) << 40
+             | (bytes[offset + 6] & 0xffL) << 48
+             | (bytes[offset + 7] & 0xffL) << 56;
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value)
+    {
+        for (int i = 0; i < 8; i++)
+            bytes[offset + i] = (byte) (value >>> (8 * i));
+    }
+}
@@ -126,6 +126,12 @@ public abstract class MemoryUtil
             putLongByByte(address, l);
     }
 
+    public static void setIntOrdered(long address, int l)
+    {
+        assert (address & 3) == 0;
+        unsafe.putOrderedInt(null, address, l);
+    }
+
     public static byte getByte(long address)
     {
         return unsafe.getByte(address);
@@ -141,6 +147,12 @@ public abstract class MemoryUtil
         return UNALIGNED ? unsafe.getInt(address) : getIntByByte(address);
     }
 
+    public static int getIntVolatile(long address)
+    {
+        assert (address & 3) == 0;
+        return unsafe.getIntVolatile(null, address);
+    }
+
     public static long getLong(long address)
     {
         return UNALIGNED ? unsafe.getLong(address) : getLongByByte(address);
@@ -0,0 +1,601 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.memory;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A byte-comparable trie mapping byte[] keys to non-negative int values, whose nodes are stored in
+ * native memory pages.
+ *
+ * The trie supports a single writer and any number of concurrent readers without locking: a node is
+ * fully written before it is published, either by an ordered write of its pointer into its (already
+ * visible) parent, or by a volatile write of the root. Values are only ever added, never replaced or
+ * removed, which matches how memtables use it.
+ *
+ * Three kinds of node exist, all 4-byte aligned:
+ *   - BRANCH: [header: type|childCount][value][childCount * (label, child pointer)], children sorted by label
+ *   - DENSE:  [header: type][value][256 child pointers, indexed by label]
+ *   - LEAF:   [header: type|suffixLength][value][suffix bytes]
+ * A BRANCH is copied whenever a child is added, so once it reaches SPARSE_MAX_CHILDREN it is converted to a
+ * DENSE node, to which children are added in place.
+ * A node's own value (if any) sorts before all of its children, so an in-order walk visits keys in
+ * unsigned lexicographic order with prefixes first.
+ *
+ * Nodes are never freed individually; everything is released at once by {@link #discard()}.
+ */
+public class NativeTrie
+{
+    public static final int NO_VALUE = -1;
+
+    private static final int PAGE_SHIFT = 17;
+    static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // pointers are positive ints, so this bounds a trie to 2GB of nodes
+    private static final int MAX_PAGES = Integer.MAX_VALUE >>> PAGE_SHIFT;
+
+    private static final int TYPE_BRANCH = 1;
+    private static final int TYPE_LEAF = 2;
+    private static final int TYPE_DENSE = 3;
+    private static final int NULL = 0;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 8;
+    private static final int SPARSE_MAX_CHILDREN = 16;
+    private static final int DENSE_SIZE = HEADER_SIZE + 256 * 4;
+
+    private volatile long[] pages = new long[16];
+    private int pageCount;
+    // the next free pointer; 0 is reserved as null, so start just past it
+    private int allocationPointer = HEADER_SIZE;
+    private long wasted;
+
+    private volatile int root = NULL;
+    private volatile boolean discarded;
+
+    // writer-only state: the value already present when a put() finds its key
+    private int existing;
+
+    /**
+     * @return the value associated with the key, or NO_VALUE if there is none
+     */
+    public int get(byte[] key)
+    {
+        int node = root;
+        int depth = 0;
+        while (node != NULL)
+        {
+            // re-read the page table for every node, as it may have grown since the node's pointer was published
+            long address = address(pages, node);
+            int header = MemoryUtil.getInt(address);
+            if (type(header) == TYPE_LEAF)
+            {
+                int length = size(header);
+                if (length != key.length - depth)
+                    return NO_VALUE;
+                for (int i = 0 ; i < length ; i++)
+                    if (MemoryUtil.getByte(address + HEADER_SIZE + i) != key[depth + i])
+                        return NO_VALUE;
+                return MemoryUtil.getInt(address + 4);
+            }
+
+            if (depth == key.length)
+                return MemoryUtil.getIntVolatile(address + 4);
+
+            long slot = childSlot(address, header, key[depth] & 0xFF);
+            if (slot < 0)
+                return NO_VALUE;
+            node = MemoryUtil.getIntVolatile(slot);
+            depth++;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Associates the value with the key if it is not already present. Must only be called by one thread at a time.
+     *
+     * @return the value already present for the key, or NO_VALUE if the provided value was added
+     */
+    public int putIfAbsent(byte[] key, int value)
+    {
+        assert value >= 0;
+        assert !discarded;
+        existing = NO_VALUE;
+        int newRoot = insert(root, key, 0, value);
+        if (newRoot != root)
+            root = newRoot;
+        return existing;
+    }
+
+    /**
+     * @return the number of bytes of native memory held by this trie
+     */
+    public long sizeOffHeap()
+    {
+        return (long) pageCount * PAGE_SIZE;
+    }
+
+    /**
+     * @return the number of bytes held by nodes that have been superseded by a copy
+     */
+    public long wastedBytes()
+    {
+        return wasted;
+    }
+
+    /**
+     * Frees all native memory; the trie must not be accessed by any reader or writer afterwards.
+     */
+    public void discard()
+    {
+        discarded = true;
+        long[] pages = this.pages;
+        for (int i = 0 ; i < pageCount ; i++)
+            MemoryUtil.free(pages[i]);
+        pageCount = 0;
+    }
+
+    /**
+     * Returns the values of all keys between the provided bounds, in key order. A null bound is unbounded.
+     */
+    public Cursor cursor(Bound left, Bound right)
+    {
+        return new Cursor(left, right);
+    }
+
+    private int insert(int node, byte[] key, int depth, int value)
+    {
+        if (node == NULL)
+            return newLeaf(key, depth, value);
+
+        long address = address(pages, node);
+        int header = MemoryUtil.getInt(address);
+        if (type(header) == TYPE_LEAF)
+            return insertIntoLeaf(node, address, size(header), key, depth, value);
+
+        int childCount = size(header);
+        if (depth == key.length)
+        {
+            int current = MemoryUtil.getInt(address + 4);
+            if (current != NO_VALUE)
+                existing = current;
+            else
+                MemoryUtil.setIntOrdered(address + 4, value);
+            return node;
+        }
+
+        int label = key[depth] & 0xFF;
+        long slot = childSlot(address, header, label);
+        if (slot >= 0)
+        {
+            int child = MemoryUtil.getInt(slot);
+            int newChild = insert(child, key, depth + 1, value);
+            if (newChild != child)
+                MemoryUtil.setIntOrdered(slot, newChild);
+            return node;
+        }
+
+        // copy the branch with room for the new child; the copy is published by our caller
+        int leaf = newLeaf(key, depth + 1, value);
+        if (childCount == SPARSE_MAX_CHILDREN)
+            return copyToDense(node, childCount, label, leaf);
+
+        int insertAt = -1 - findChild(address, childCount, label);
+        int copy = allocate(HEADER_SIZE + (childCount + 1) * ENTRY_SIZE);
+        long[] pages = this.pages;
+        long copyAddress = address(pages, copy);
+        address = address(pages, node);
+        MemoryUtil.setInt(copyAddress, header(TYPE_BRANCH, childCount + 1));
+        MemoryUtil.setInt(copyAddress + 4, MemoryUtil.getInt(address + 4));
+        long from = address + HEADER_SIZE;
+        long to = copyAddress + HEADER_SIZE;
+        MemoryUtil.setBytes(from, to, insertAt * ENTRY_SIZE);
+        MemoryUtil.setInt(to + insertAt * ENTRY_SIZE, label);
+        MemoryUtil.setInt(to + insertAt * ENTRY_SIZE + 4, leaf);
+        MemoryUtil.setBytes(from + insertAt * ENTRY_SIZE, to + (insertAt + 1) * ENTRY_SIZE, (childCount - insertAt) * ENTRY_SIZE);
+        wasted += HEADER_SIZE + childCount * ENTRY_SIZE;
+        return copy;
+    }
+
+    private int copyToDense(int node, int childCount, int label, int leaf)
+    {
+        int dense = allocate(DENSE_SIZE);
+        long[] pages = this.pages;
+        long denseAddress = address(pages, dense);
+        long address = address(pages, node);
+        MemoryUtil.setInt(denseAddress, header(TYPE_DENSE, 0));
+        MemoryUtil.setInt(denseAddress + 4, MemoryUtil.getInt(address + 4));
+        for (int i = 0 ; i < 256 ; i++)
+            MemoryUtil.setInt(denseAddress + HEADER_SIZE + i * 4, NULL);
+        for (int i = 0 ; i < childCount ; i++)
+        {
+            long entry = address + HEADER_SIZE + i * ENTRY_SIZE;
+            MemoryUtil.setInt(denseAddress + HEADER_SIZE + MemoryUtil.getInt(entry) * 4, MemoryUtil.getInt(entry + 4));
+        }
+        MemoryUtil.setInt(denseAddress + HEADER_SIZE + label * 4, leaf);
+        wasted += HEADER_SIZE + childCount * ENTRY_SIZE;
+        return dense;
+    }
+
+    private int insertIntoLeaf(int node, long address, int suffixLength, byte[] key, int depth, int value)
+    {
+        byte[] suffix = new byte[suffixLength];
+        MemoryUtil.getBytes(address + HEADER_SIZE, suffix, 0, suffixLength);
+        int leafValue = MemoryUtil.getInt(address + 4);
+        int keyLength = key.length - depth;
+
+        int common = 0;
+        while (common < suffixLength && common < keyLength && suffix[common] == key[depth + common])
+            common++;
+
+        if (common == suffixLength && common == keyLength)
+        {
+            existing = leafValue;
+            return node;
+        }
+
+        // the node where the two keys diverge; at most one of them can end here
+        int branchValue = common == suffixLength ? leafValue : common == keyLength ? value : NO_VALUE;
+        int childCount = (common < suffixLength ? 1 : 0) + (common < keyLength ? 1 : 0);
+        int oldChild = common < suffixLength ? newLeaf(suffix, common + 1, leafValue) : NULL;
+        int newChild = common < keyLength ? newLeaf(key, depth + common + 1, value) : NULL;
+
+        int branch = allocate(HEADER_SIZE + childCount * ENTRY_SIZE);
+        long branchAddress = address(pages, branch);
+        MemoryUtil.setInt(branchAddress, header(TYPE_BRANCH, childCount));
+        MemoryUtil.setInt(branchAddress + 4, branchValue);
+        long entry = branchAddress + HEADER_SIZE;
+        if (childCount == 1)
+        {
+            int label = oldChild != NULL ? suffix[common] & 0xFF : key[depth + common] & 0xFF;
+            writeEntry(entry, label, oldChild != NULL ? oldChild : newChild);
+        }
+        else
+        {
+            int oldLabel = suffix[common] & 0xFF;
+            int newLabel = key[depth + common] & 0xFF;
+            boolean oldFirst = oldLabel < newLabel;
+            writeEntry(entry, oldFirst ? oldLabel : newLabel, oldFirst ? oldChild : newChild);
+            writeEntry(entry + ENTRY_SIZE, oldFirst ? newLabel : oldLabel, oldFirst ? newChild : oldChild);
+        }
+
+        // chain single-child branches for the shared prefix, bottom up
+        int child = branch;
+        for (int i = common - 1 ; i >= 0 ; i--)
+        {
+            int chain = allocate(HEADER_SIZE + ENTRY_SIZE);
+            long chainAddress = address(pages, chain);
+            MemoryUtil.setInt(chainAddress, header(TYPE_BRANCH, 1));
+            MemoryUtil.setInt(chainAddress + 4, NO_VALUE);
+            writeEntry(chainAddress + HEADER_SIZE, suffix[i] & 0xFF, child);
+            child = chain;
+        }
+        wasted += align(HEADER_SIZE + suffixLength);
+        return child;
+    }
+
+    private static void writeEntry(long address, int label, int child)
+    {
+        MemoryUtil.setInt(address, label);
+        MemoryUtil.setInt(address + 4, child);
+    }
+
+    private int newLeaf(byte[] key, int from, int value)
+    {
+        int length = key.length - from;
+        int leaf = allocate(HEADER_SIZE + length);
+        long address = address(pages, leaf);
+        MemoryUtil.setInt(address, header(TYPE_LEAF, length));
+        MemoryUtil.setInt(address + 4, value);
+        MemoryUtil.setBytes(key, from, address + HEADER_SIZE, length);
+        return leaf;
+    }
+
+    private int allocate(int size)
+    {
+        size = align(size);
+        assert size <= PAGE_SIZE;
+        int offset = allocationPointer & PAGE_MASK;
+        int page = allocationPointer >>> PAGE_SHIFT;
+        if (offset + size > PAGE_SIZE)
+        {
+            wasted += PAGE_SIZE - offset;
+            page++;
+            offset = 0;
+        }
+        if (page >= pageCount)
+            addPage(page);
+        int pointer = (page << PAGE_SHIFT) | offset;
+        allocationPointer = pointer + size;
+        return pointer;
+    }
+
+    private void addPage(int page)
+    {
+        if (page >= MAX_PAGES)
+            throw new IllegalStateException("Trie exceeded its maximum size of " + ((long) MAX_PAGES * PAGE_SIZE) + " bytes");
+
+        long[] pages = this.pages;
+        if (page == pages.length)
+            pages = Arrays.copyOf(pages, pages.length * 2);
+        pages[page] = MemoryUtil.allocate(PAGE_SIZE);
+        pageCount = page + 1;
+        // publish the (possibly new) page table before any node living in the page can be published
+        this.pages = pages;
+    }
+
+    /**
+     * @return the address of the pointer to the child with the provided label, or -1 if a BRANCH has no such child
+     * (a DENSE node always has a slot, but it may hold NULL)
+     */
+    private static long childSlot(long address, int header, int label)
+    {
+        if (type(header) == TYPE_DENSE)
+            return address + HEADER_SIZE + label * 4;
+
+        int index = findChild(address, size(header), label);
+        return index < 0 ? -1 : address + HEADER_SIZE + index * ENTRY_SIZE + 4;
+    }
+
+    private static int findChild(long address, int childCount, int label)
+    {
+        long entries = address + HEADER_SIZE;
+        int low = 0;
+        int high = childCount - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            int midLabel = MemoryUtil.getInt(entries + mid * ENTRY_SIZE);
+            if (midLabel < label)
+                low = mid + 1;
+            else if (midLabel > label)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -(low + 1);
+    }
+
+    private static long address(long[] pages, int pointer)
+    {
+        return pages[pointer >>> PAGE_SHIFT] + (pointer & PAGE_MASK);
+    }
+
+    private static int align(int size)
+    {
+        return (size + 3) & ~3;
+    }
+
+    private static int header(int type, int size)
+    {
+        return (type << 24) | size;
+    }
+
+    private static int type(int header)
+    {
+        return header >>> 24;
+    }
+
+    private static int size(int header)
+    {
+        return header & 0xFFFFFF;
+    }
+
+    /**
+     * A position in the key space: either exactly a key, or just before/after all keys starting with a prefix.
+     */
+    public static final class Bound
+    {
+        public final byte[] bytes;
+        // -1: before all keys prefixed by bytes, 0: exactly bytes, 1: after all keys prefixed by bytes
+        public final int side;
+        public final boolean inclusive;
+
+        public Bound(byte[] bytes, int side, boolean inclusive)
+        {
+            assert side >= -1 && side <= 1;
+            this.bytes = bytes;
+            this.side = side;
+            this.inclusive = inclusive;
+        }
+
+        int compareTo(byte[] key, int keyLength)
+        {
+            int length = Math.min(keyLength, bytes.length);
+            for (int i = 0 ; i < length ; i++)
+            {
+                int cmp = (bytes[i] & 0xFF) - (key[i] & 0xFF);
+                if (cmp != 0)
+                    return cmp;
+            }
+            if (bytes.length > keyLength)
+                return 1;
+            // bytes is a prefix of the key
+            if (side != 0)
+                return side;
+            return bytes.length == keyLength ? 0 : -1;
+        }
+    }
+
+    /**
+     * Walks the trie in key order using an explicit stack, skipping directly to the left bound.
+     */
+    public final class Cursor
+    {
+        private final Bound left;
+        private final Bound right;
+
+        private int[] nodes = new int[16];
+        // per frame: -1 if the node's own value is still to be visited, otherwise the next child index
+        private int[] nextChild = new int[16];
+        private boolean[] onLeftPath = new boolean[16];
+        private int top = -1;
+        private byte[] path = new byte[64];
+
+        private int next = NO_VALUE;
+        private boolean exhausted;
+
+        private Cursor(Bound left, Bound right)
+        {
+            this.left = left;
+            this.right = right;
+            int root = NativeTrie.this.root;
+            if (root != NULL)
+                push(root, left != null);
+        }
+
+        public boolean hasNext()
+        {
+            if (next != NO_VALUE)
+                return true;
+            if (exhausted)
+                return false;
+            next = computeNext();
+            if (next == NO_VALUE)
+                exhausted = true;
+            return next != NO_VALUE;
+        }
+
+        public int next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            int value = next;
+            next = NO_VALUE;
+            return value;
+        }
+
+        private int computeNext()
+        {
+            assert !discarded;
+            while (top >= 0)
+            {
+                int depth = top;
+                long address = address(pages, nodes[top]);
+                int header = MemoryUtil.getInt(address);
+
+                if (type(header) == TYPE_LEAF)
+                {
+                    top--;
+                    int length = size(header);
+                    ensurePathCapacity(depth + length);
+                    MemoryUtil.getBytes(address + HEADER_SIZE, path, depth, length);
+                    int value = visit(depth + length, MemoryUtil.getInt(address + 4));
+                    if (value != NO_VALUE || exhausted)
+                        return value;
+                    continue;
+                }
+
+                boolean isDense = type(header) == TYPE_DENSE;
+                int childCount = isDense ? 256 : size(header);
+                if (nextChild[top] < 0)
+                {
+                    // on a strict prefix of the left bound, both the node's own value and any child
+                    // labelled below the bound's next byte sort before the bound, so skip straight past them
+                    if (onLeftPath[top] && depth < left.bytes.length)
+                    {
+                        int leftLabel = left.bytes[depth] & 0xFF;
+                        int index = isDense ? leftLabel : findChild(address, childCount, leftLabel);
+                        nextChild[top] = index >= 0 ? index : -1 - index;
+                        continue;
+                    }
+
+                    // otherwise the node's own value comes first
+                    nextChild[top] = 0;
+                    int value = visit(depth, MemoryUtil.getIntVolatile(address + 4));
+                    if (value != NO_VALUE || exhausted)
+                        return value;
+                    continue;
+                }
+
+                int index = nextChild[top]++;
+                if (index >= childCount)
+                {
+                    top--;
+                    continue;
+                }
+
+                int label;
+                int child;
+                if (isDense)
+                {
+                    label = index;
+                    child = MemoryUtil.getIntVolatile(address + HEADER_SIZE + index * 4);
+                    if (child == NULL)
+                        continue;
+                }
+                else
+                {
+                    long entry = address + HEADER_SIZE + index * ENTRY_SIZE;
+                    label = MemoryUtil.getInt(entry);
+                    child = MemoryUtil.getIntVolatile(entry + 4);
+                }
+                boolean childOnLeftPath = onLeftPath[top] && depth < left.bytes.length && label == (left.bytes[depth] & 0xFF);
+                ensurePathCapacity(depth + 1);
+                path[depth] = (byte) label;
+                push(child, childOnLeftPath);
+            }
+            return NO_VALUE;
+        }
+
+        // returns the value if it lies within the bounds, NO_VALUE otherwise (marking the cursor exhausted past the right bound)
+        private int visit(int keyLength, int value)
+        {
+            if (value == NO_VALUE)
+                return NO_VALUE;
+
+            if (left != null)
+            {
+                int cmp = left.compareTo(path, keyLength);
+                if (cmp > 0 || (cmp == 0 && !left.inclusive))
+                    return NO_VALUE;
+            }
+            if (right != null)
+            {
+                int cmp = right.compareTo(path, keyLength);
+                if (cmp < 0 || (cmp == 0 && !right.inclusive))
+                {
+                    exhausted = true;
+                    top = -1;
+                    return NO_VALUE;
+                }
+            }
+            return value;
+        }
+
+        private void push(int node, boolean isOnLeftPath)
+        {
+            if (++top == nodes.length)
+            {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                nextChild = Arrays.copyOf(nextChild, top * 2);
+                onLeftPath = Arrays.copyOf(onLeftPath, top * 2);
+            }
+            nodes[top] = node;
+            nextChild[top] = -1;
+            onLeftPath[top] = isOnLeftPath;
+        }
+
+        private void ensurePathCapacity(int length)
+        {
+            if (length > path.length)
+                path = Arrays.copyOf(path, Math.max(length, path.length * 2));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.utils.btree.BTree;
+import org.apache.cassandra.utils.btree.UpdateFunction;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Building, updating and searching the BTree that backs rows and partitions in memtables.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Benchmark)
+public class BTreeBench
+{
+    private static final Comparator<Integer> CMP = Integer::compare;
+
+    @Param({"16", "1024", "65536"})
+    private int size;
+
+    // the proportion of the tree's size that an update inserts
+    @Param({"0.01"})
+    private double updateRatio;
+
+    private List<Integer> sorted;
+    private List<Integer> updates;
+    private Integer[] lookups;
+    private Object[] btree;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        sorted = new ArrayList<>(size);
+        // even values only, so updates can insert the odd ones
+        for (int i = 0; i < size; i++)
+            sorted.add(i * 2);
+        btree = BTree.build(sorted, UpdateFunction.<Integer>noOp());
+
+        int updateSize = Math.max(1, (int) (size * updateRatio));
+        updates = new ArrayList<>(updateSize);
+        int stride = Math.max(1, size / updateSize);
+        for (int i = 0; i < updateSize; i++)
+            updates.add(i * stride * 2 + 1);
+
+        lookups = new Integer[1024];
+        for (int i = 0; i < lookups.length; i++)
+            lookups[i] = random.nextInt(size * 2);
+    }
+
+    @Benchmark
+    public Object[] build()
+    {
+        return BTree.build(sorted, UpdateFunction.<Integer>noOp());
+    }
+
+    @Benchmark
+    public Object[] update()
+    {
+        return BTree.update(btree, CMP, updates, UpdateFunction.<Integer>noOp());
+    }
+
+    @Benchmark
+    public Integer find()
+    {
+        return BTree.find(btree, CMP, lookups[next++ & (lookups.length - 1)]);
+    }
+
+    @Benchmark
+    public Integer ceil()
+    {
+        return BTree.ceil(btree, CMP, lookups[next++ & (lookups.length - 1)]);
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh)
+    {
+        Iterator<Integer> iter = BTree.iterator(btree);
+        while (iter.hasNext())
+            bh.consume(iter.next());
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.io.compress.BufferType;
+import org.apache.cassandra.utils.memory.BufferPool;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Allocation and release of buffers through the BufferPool used by the readers of sstables.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(4)
+@State(Scope.Thread)
+public class BufferPoolBench
+{
+    @Param({"4096", "65536"})
+    private int size;
+
+    // how many buffers each thread holds at a time, so that chunks are not always recycled straight away
+    @Param({"1", "16"})
+    private int held;
+
+    private ByteBuffer[] buffers;
+    private int next;
+
+    @Setup
+    public void setup()
+    {
+        buffers = new ByteBuffer[held];
+        for (int i = 0; i < held; i++)
+            buffers[i] = BufferPool.get(size, BufferType.OFF_HEAP);
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        for (ByteBuffer buffer : buffers)
+            BufferPool.put(buffer);
+    }
+
+    @Benchmark
+    public ByteBuffer getAndPut()
+    {
+        int i = next++ % held;
+        BufferPool.put(buffers[i]);
+        buffers[i] = BufferPool.get(size, BufferType.OFF_HEAP);
+        return buffers[i];
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.compaction.CompactionController;
+import org.apache.cassandra.db.compaction.CompactionIterator;
+import org.apache.cassandra.db.compaction.OperationType;
+import org.apache.cassandra.db.rows.UnfilteredRowIterator;
+import org.apache.cassandra.io.sstable.ISSTableScanner;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.UUIDGen;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A full pass of CompactionIterator over synthetic sstables, without writing the result out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 4, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx1G")
+@Threads(1)
+@State(Scope.Benchmark)
+public class CompactionIteratorBench
+{
+    private static final String KEYSPACE = "CompactionIteratorBench";
+
+    @Param({"2", "8"})
+    private int sstableCount;
+
+    @Param({"1000"})
+    private int partitionsPerSSTable;
+
+    @Param({"10"})
+    private int rowsPerPartition;
+
+    // whether every sstable holds the same partitions (true) or each its own (false)
+    @Param({"true", "false"})
+    private boolean overlapping;
+
+    private ColumnFamilyStore cfs;
+    private Set<SSTableReader> sstables;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        String table = "t" + sstableCount + (overlapping ? "_overlapping" : "_disjoint");
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, table));
+        cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(table);
+        cfs.disableAutoCompaction();
+
+        long timestamp = FBUtilities.timestampMicros();
+        for (int s = 0; s < sstableCount; s++)
+        {
+            for (int p = 0; p < partitionsPerSSTable; p++)
+            {
+                int key = overlapping ? p : s * partitionsPerSSTable + p;
+                Mutation mutation = new Mutation(KEYSPACE, Util.dk("key" + key));
+                for (int r = 0; r < rowsPerPartition; r++)
+                    new RowUpdateBuilder(cfs.metadata, timestamp + s, mutation).clustering("row" + r).add("val", "value" + s).build();
+                mutation.applyUnsafe();
+            }
+            cfs.forceBlockingFlush();
+        }
+        sstables = cfs.getLiveSSTables();
+    }
+
+    @Benchmark
+    public void compact(Blackhole bh)
+    {
+        int nowInSec = FBUtilities.nowInSeconds();
+        List<ISSTableScanner> scanners = new ArrayList<>(sstables.size());
+        for (SSTableReader sstable : sstables)
+            scanners.add(sstable.getScanner());
+
+        try (CompactionController controller = new CompactionController(cfs, sstables, cfs.gcBefore(nowInSec));
+             CompactionIterator iterator = new CompactionIterator(OperationType.COMPACTION, scanners, controller, nowInSec, UUIDGen.getTimeUUID()))
+        {
+            while (iterator.hasNext())
+            {
+                try (UnfilteredRowIterator partition = iterator.next())
+                {
+                    while (partition.hasNext())
+                        bh.consume(partition.next());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.commitlog.ReplayPosition;
+import org.apache.cassandra.db.index.SecondaryIndexManager;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.concurrent.OpOrder;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Concurrent inserts into a memtable, the way the write path applies them once the commit log is written.
+ * Few partitions means that writers contend on the same partitions.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx1G")
+@Threads(4)
+@State(Scope.Benchmark)
+public class MemtablePutBench
+{
+    private static final String KEYSPACE = "MemtablePutBench";
+    private static final String TABLE = "Standard1";
+
+    @Param({"1", "16", "100000"})
+    private int partitionCount;
+
+    private ColumnFamilyStore cfs;
+
+    @State(Scope.Thread)
+    public static class Updates
+    {
+        private static final int COUNT = 4096;
+
+        private PartitionUpdate[] updates;
+        private int next;
+
+        // built on first use rather than in a @Setup, as it needs the table set up by the benchmark state
+        PartitionUpdate next(MemtablePutBench bench)
+        {
+            if (updates == null)
+            {
+                updates = new PartitionUpdate[COUNT];
+                Random random = new Random();
+                long timestamp = FBUtilities.timestampMicros();
+                for (int i = 0; i < COUNT; i++)
+                {
+                    updates[i] = new RowUpdateBuilder(bench.cfs.metadata, timestamp + i, "key" + random.nextInt(bench.partitionCount))
+                                 .clustering("row" + random.nextInt(1000))
+                                 .add("val", "value" + i)
+                                 .buildUpdate();
+                }
+            }
+            return updates[next++ & (COUNT - 1)];
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE));
+        cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE);
+        cfs.disableAutoCompaction();
+    }
+
+    @TearDown(Level.Iteration)
+    public void truncate()
+    {
+        // keep every iteration inserting into a memtable of comparable size
+        cfs.truncateBlocking();
+    }
+
+    @Benchmark
+    public void put(Updates updates)
+    {
+        try (OpOrder.Group opGroup = Keyspace.writeOrder.start())
+        {
+            cfs.apply(updates.next(this), SecondaryIndexManager.nullUpdater, opGroup, ReplayPosition.NONE);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.utils.MergeIterator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Merging of sorted sources by MergeIterator.ManyToOne, the heart of reads and compactions over many sstables.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Thread)
+public class MergeIteratorBench
+{
+    @Param({"2", "8", "32"})
+    private int sourceCount;
+
+    @Param({"1000"})
+    private int sourceSize;
+
+    // the proportion of each source's values that also appear in the other sources
+    @Param({"0", "0.5"})
+    private double overlap;
+
+    private Integer[][] sources;
+
+    @Setup
+    public void setup()
+    {
+        Random random = new Random(0);
+        Integer[] shared = new Integer[(int) (sourceSize * overlap)];
+        for (int i = 0; i < shared.length; i++)
+            shared[i] = random.nextInt();
+
+        sources = new Integer[sourceCount][];
+        for (int s = 0; s < sourceCount; s++)
+        {
+            Integer[] source = Arrays.copyOf(shared, sourceSize);
+            for (int i = shared.length; i < sourceSize; i++)
+                source[i] = random.nextInt();
+            Arrays.sort(source);
+            sources[s] = source;
+        }
+    }
+
+    @Benchmark
+    public void merge(Blackhole bh)
+    {
+        List<Iterator<Integer>> iterators = new ArrayList<>(sourceCount);
+        for (Integer[] source : sources)
+            iterators.add(Arrays.asList(source).iterator());
+
+        try (MergeIterator<Integer, Integer> merged = MergeIterator.get(iterators, Integer::compare, new Counter()))
+        {
+            while (merged.hasNext())
+                bh.consume(merged.next());
+        }
+    }
+
+    private static class Counter extends MergeIterator.Reducer<Integer, Integer>
+    {
+        private Integer current;
+        private int count;
+
+        public void reduce(int idx, Integer value)
+        {
+            current = value;
+            count++;
+        }
+
+        protected Integer getReduced()
+        {
+            return current + count;
+        }
+
+        protected void onKeyChange()
+        {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.utils.MurmurHash;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * The hashes behind the Murmur3Partitioner (hash3_x64_128) and the bloom filters (hash2_64).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Thread)
+public class MurmurHashBench
+{
+    @Param({"8", "32", "256", "4096"})
+    private int keySize;
+
+    @Param({"false", "true"})
+    private boolean direct;
+
+    private ByteBuffer key;
+    private final long[] result = new long[2];
+
+    @Setup
+    public void setup() throws IOException
+    {
+        byte[] bytes = new byte[keySize];
+        new Random(0).nextBytes(bytes);
+        key = direct ? ByteBuffer.allocateDirect(keySize) : ByteBuffer.allocate(keySize);
+        key.put(bytes);
+        key.flip();
+    }
+
+    @Benchmark
+    public long[] hash3_x64_128()
+    {
+        MurmurHash.hash3_x64_128(key, key.position(), key.remaining(), 0, result);
+        return result;
+    }
+
+    @Benchmark
+    public long hash2_64()
+    {
+        return MurmurHash.hash2_64(key, key.position(), key.remaining(), 0);
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.SerializationHeader;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.*;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.DataOutputBufferFixed;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Serialization and deserialization of the rows of a partition, as done when writing and reading sstables.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Thread)
+@OperationsPerInvocation(UnfilteredSerializerBench.ROWS)
+public class UnfilteredSerializerBench
+{
+    static final int ROWS = 100;
+    private static final int VERSION = MessagingService.current_version;
+
+    @Param({"1", "10"})
+    private int columnCount;
+
+    @Param({"16", "512"})
+    private int valueSize;
+
+    private CFMetaData metadata;
+    private SerializationHeader header;
+    private SerializationHelper helper;
+    private List<Row> rows;
+    private ByteBuffer buffer;
+    private DataOutputBuffer out;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        CFMetaData.Builder builder = CFMetaData.Builder.create("microbench", "unfiltered")
+                                                       .addPartitionKey("key", BytesType.instance)
+                                                       .addClusteringColumn("name", Int32Type.instance);
+        for (int i = 0; i < columnCount; i++)
+            builder.addRegularColumn("val" + i, BytesType.instance);
+        metadata = builder.build();
+
+        Random random = new Random(0);
+        Mutation mutation = new Mutation(metadata.ksName, metadata.decorateKey(ByteBufferUtil.bytes("key")));
+        for (int r = 0; r < ROWS; r++)
+        {
+            RowUpdateBuilder row = new RowUpdateBuilder(metadata, 0, mutation).clustering(r);
+            for (int i = 0; i < columnCount; i++)
+            {
+                byte[] value = new byte[valueSize];
+                random.nextBytes(value);
+                row.add("val" + i, ByteBuffer.wrap(value));
+            }
+            row.build();
+        }
+        PartitionUpdate partition = mutation.getPartitionUpdate(metadata.cfId);
+
+        rows = new ArrayList<>(ROWS);
+        for (Row row : partition)
+            rows.add(row);
+        header = new SerializationHeader(metadata, partition.columns(), partition.stats());
+        helper = new SerializationHelper(metadata, VERSION, SerializationHelper.Flag.LOCAL);
+
+        DataOutputBuffer serializedRows = new DataOutputBuffer();
+        for (Row row : rows)
+            UnfilteredSerializer.serializer.serialize(row, header, serializedRows, VERSION);
+        UnfilteredSerializer.serializer.writeEndOfPartition(serializedRows);
+        serialized = serializedRows.toByteArray();
+
+        buffer = ByteBuffer.allocate(serialized.length);
+        out = new DataOutputBufferFixed(buffer);
+    }
+
+    @Benchmark
+    public DataOutputBuffer serialize() throws IOException
+    {
+        buffer.clear();
+        for (Row row : rows)
+            UnfilteredSerializer.serializer.serialize(row, header, out, VERSION);
+        UnfilteredSerializer.serializer.writeEndOfPartition(out);
+        return out;
+    }
+
+    @Benchmark
+    public long serializedSize()
+    {
+        long size = 0;
+        for (Row row : rows)
+            size += UnfilteredSerializer.serializer.serializedSize(row, header, VERSION);
+        return size;
+    }
+
+    @Benchmark
+    public void deserialize(Blackhole bh) throws IOException
+    {
+        DataInputBuffer in = new DataInputBuffer(serialized);
+        Row.Builder builder = BTreeBackedRow.sortedBuilder(header.columns().regulars);
+        Unfiltered unfiltered;
+        while ((unfiltered = UnfilteredSerializer.serializer.deserialize(in, header, helper, builder)) != null)
+            bh.consume(unfiltered);
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.test.microbench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.DataOutputBufferFixed;
+import org.apache.cassandra.utils.vint.VIntCoding;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Encoding and decoding of the variable length integers used throughout the 3.0 storage format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(value = 1,jvmArgsAppend = "-Xmx512M")
+@Threads(1)
+@State(Scope.Thread)
+@OperationsPerInvocation(VIntCodingBench.COUNT)
+public class VIntCodingBench
+{
+    static final int COUNT = 1024;
+
+    // the largest number of bytes a value takes once encoded
+    @Param({"1", "3", "9"})
+    private int maxEncodedSize;
+
+    private final long[] values = new long[COUNT];
+    private final ByteBuffer buffer = ByteBuffer.allocate(COUNT * 9);
+    private final DataOutputBuffer out = new DataOutputBufferFixed(buffer);
+    private byte[] encoded;
+    private byte[] encodedSigned;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        Random random = new Random(0);
+        long bound = maxEncodedSize >= 9 ? Long.MAX_VALUE : 1L << (7 * maxEncodedSize);
+        for (int i = 0; i < COUNT; i++)
+            values[i] = (random.nextLong() & Long.MAX_VALUE) % bound;
+
+        DataOutputBuffer unsigned = new DataOutputBuffer();
+        for (long value : values)
+            VIntCoding.writeUnsignedVInt(value, unsigned);
+        encoded = unsigned.toByteArray();
+
+        DataOutputBuffer signed = new DataOutputBuffer();
+        for (int i = 0; i < COUNT; i++)
+            VIntCoding.writeVInt((i & 1) == 0 ? values[i] : -values[i], signed);
+        encodedSigned = signed.toByteArray();
+    }
+
+    @Benchmark
+    public DataOutputBuffer writeUnsignedVInt() throws IOException
+    {
+        buffer.clear();
+        for (long value : values)
+            VIntCoding.writeUnsignedVInt(value, out);
+        return out;
+    }
+
+    @Benchmark
+    public void readUnsignedVInt(Blackhole bh) throws IOException
+    {
+        DataInputBuffer in = new DataInputBuffer(encoded);
+        for (int i = 0; i < COUNT; i++)
+            bh.consume(VIntCoding.readUnsignedVInt(in));
+    }
+
+    @Benchmark
+    public void readVInt(Blackhole bh) throws IOException
+    {
+        DataInputBuffer in = new DataInputBuffer(encodedSigned);
+        for (int i = 0; i < COUNT; i++)
+            bh.consume(VIntCoding.readVInt(in));
+    }
+
+    @Benchmark
+    public void computeUnsignedVIntSize(Blackhole bh)
+    {
+        for (long value : values)
+            bh.consume(VIntCoding.computeUnsignedVIntSize(value));
+    }
+}
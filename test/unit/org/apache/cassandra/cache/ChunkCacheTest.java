@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.cache;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ChunkCacheTest
+{
+    private static final int CHUNK_SIZE = 1024;
+
+    @Test
+    public void testReadAfterPut()
+    {
+        ChunkCache cache = new ChunkCache(100 * CHUNK_SIZE);
+        ByteBuffer target = ByteBuffer.allocate(CHUNK_SIZE);
+        assertFalse(cache.read("a-Data.db", 0, target));
+
+        cache.put("a-Data.db", 0, chunk((byte) 1, CHUNK_SIZE));
+        cache.put("a-Data.db", 300, chunk((byte) 2, CHUNK_SIZE / 2));
+
+        assertTrue(cache.read("a-Data.db", 300, target));
+        assertEquals(0, target.position());
+        assertEquals(CHUNK_SIZE / 2, target.limit());
+        assertEquals(2, target.get(CHUNK_SIZE / 2 - 1));
+
+        assertTrue(cache.read("a-Data.db", 0, target));
+        assertEquals(CHUNK_SIZE, target.limit());
+        assertEquals(1, target.get(0));
+
+        assertFalse(cache.read("b-Data.db", 0, target));
+        cache.clear();
+        assertEquals(0, cache.weightedSize());
+    }
+
+    @Test
+    public void testPutLeavesSourceUnchanged()
+    {
+        ChunkCache cache = new ChunkCache(100 * CHUNK_SIZE);
+        ByteBuffer source = chunk((byte) 3, CHUNK_SIZE);
+        source.position(10);
+        cache.put("a-Data.db", 0, source);
+        assertEquals(10, source.position());
+
+        ByteBuffer target = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        assertTrue(cache.read("a-Data.db", 0, target));
+        assertEquals(CHUNK_SIZE - 10, target.limit());
+        cache.clear();
+    }
+
+    @Test
+    public void testFrequentChunksSurviveScans()
+    {
+        ChunkCache cache = new ChunkCache(100 * CHUNK_SIZE);
+        ByteBuffer target = ByteBuffer.allocate(CHUNK_SIZE);
+
+        cache.put("hot-Data.db", 0, chunk((byte) 1, CHUNK_SIZE));
+        for (int i = 0; i < 10; i++)
+            cache.read("hot-Data.db", 0, target);
+
+        // a scan touching every chunk of a large file once, while the hot chunk keeps being read
+        for (int i = 0; i < 1000; i++)
+        {
+            if (i % 150 == 0)
+                cache.read("hot-Data.db", 0, target);
+            cache.read("cold-Data.db", i * CHUNK_SIZE, target);
+            cache.put("cold-Data.db", i * CHUNK_SIZE, chunk((byte) 2, CHUNK_SIZE));
+        }
+
+        assertTrue(cache.read("hot-Data.db", 0, target));
+        assertTrue(cache.weightedSize() <= cache.capacity());
+        cache.clear();
+    }
+
+    @Test
+    public void testInvalidateFile()
+    {
+        ChunkCache cache = new ChunkCache(100 * CHUNK_SIZE);
+        for (int i = 0; i < 50; i++)
+        {
+            cache.put("a-Data.db", i * CHUNK_SIZE, chunk((byte) 1, CHUNK_SIZE));
+            cache.put("b-Data.db", i * CHUNK_SIZE, chunk((byte) 1, CHUNK_SIZE));
+        }
+
+        cache.invalidateFile("a-Data.db");
+
+        ByteBuffer target = ByteBuffer.allocate(CHUNK_SIZE);
+        for (int i = 0; i < 50; i++)
+            assertFalse(cache.read("a-Data.db", i * CHUNK_SIZE, target));
+        assertTrue(cache.read("b-Data.db", 49 * CHUNK_SIZE, target));
+
+        // chunks cached again after the file was invalidated are dropped by the next invalidation
+        cache.put("a-Data.db", 0, chunk((byte) 2, CHUNK_SIZE));
+        assertTrue(cache.read("a-Data.db", 0, target));
+        cache.invalidateFile("a-Data.db");
+        assertFalse(cache.read("a-Data.db", 0, target));
+        cache.clear();
+    }
+
+    @Test
+    public void testReplace()
+    {
+        ChunkCache cache = new ChunkCache(100 * CHUNK_SIZE);
+        ChunkCache.Key key = new ChunkCache.Key("a-Data.db", 0);
+        RefCountedMemory first = new RefCountedMemory(CHUNK_SIZE);
+        RefCountedMemory second = new RefCountedMemory(CHUNK_SIZE);
+        RefCountedMemory third = new RefCountedMemory(CHUNK_SIZE);
+
+        assertFalse(cache.replace(key, first, second));
+        cache.put(key, first);
+        assertTrue(cache.replace(key, first, second));
+        assertSame(second, cache.get(key));
+        // the replaced chunk has been released
+        assertFalse(first.reference());
+
+        assertFalse(cache.replace(key, first, third));
+        assertSame(second, cache.get(key));
+        third.unreference();
+        cache.clear();
+    }
+
+    private static ByteBuffer chunk(byte value, int length)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; i++)
+            buffer.put(i, value);
+        return buffer;
+    }
+}
@@ -178,8 +178,8 @@ public abstract class CQLTester
 
     public static void cleanup()
     {
-        // clean up commitlog
-        String[] directoryNames = { DatabaseDescriptor.getCommitLogLocation(), };
+        // clean up commitlog and hints
+        String[] directoryNames = { DatabaseDescriptor.getCommitLogLocation(), DatabaseDescriptor.getHintsDirectory().getPath() };
         for (String dirName : directoryNames)
         {
             File dir = new File(dirName);
@@ -18,29 +18,53 @@
 package org.apache.cassandra.cql3.validation.operations;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.TimeZone;
 
 import org.apache.commons.lang3.time.DateUtils;
 
+import com.datastax.driver.core.SimpleStatement;
+
 import org.junit.Test;
 
+import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.cql3.CQLTester;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.cql3.UntypedResultSet.Row;
+import org.apache.cassandra.cql3.functions.FunctionName;
 import org.apache.cassandra.cql3.functions.UDAggregate;
+import org.apache.cassandra.db.AggregateReadCommand;
+import org.apache.cassandra.db.AggregateReadResponse;
+import org.apache.cassandra.db.ReadCommand;
+import org.apache.cassandra.db.ReadOrderGroup;
+import org.apache.cassandra.db.SinglePartitionReadCommand;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.apache.cassandra.exceptions.FunctionExecutionException;
 import org.apache.cassandra.exceptions.InvalidRequestException;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.schema.KeyspaceMetadata;
 import org.apache.cassandra.service.ClientState;
+import org.apache.cassandra.service.pager.PagingState;
 import org.apache.cassandra.transport.Event;
+import org.apache.cassandra.transport.Server;
 import org.apache.cassandra.transport.messages.ResultMessage;
+import org.apache.cassandra.utils.FBUtilities;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -92,6 +116,78 @@ public class AggregationTest extends CQLTester
         assertRows(execute("SELECT COUNT(b), count(c), count(e), count(f) FROM %s"), row(4L, 3L, 3L, 3L));
     }
 
+    @Test
+    public void testFunctionsOverManyRows() throws Throwable
+    {
+        createTable("CREATE TABLE %s (a int, b int, c bigint, d float, e double, f text, g smallint, h tinyint, primary key (a, b))");
+
+        // enough rows for the aggregates of columns to be computed over several batches of them
+        long sumB = 0, sumC = 0;
+        double sumE = 0;
+        float sumD = 0;
+        int sumG = 0, sumH = 0;
+        int countC = 0, countF = 0;
+        for (int i = 0; i < 2500; i++)
+        {
+            int b = i - 1000;
+            sumB += b;
+            if (i % 7 == 0)
+            {
+                execute("INSERT INTO %s (a, b) VALUES (1, ?)", b);
+                continue;
+            }
+
+            long c = (long) b * Integer.MAX_VALUE;
+            float d = b / 4f;
+            double e = b / 3d;
+            // empty strings are counted, unlike nulls
+            String f = i % 11 == 0 ? "" : Integer.toString(b);
+            short g = (short) (i % 11 - 5);
+            byte h = (byte) (i % 3 - 1);
+            execute("INSERT INTO %s (a, b, c, d, e, f, g, h) VALUES (1, ?, ?, ?, ?, ?, ?, ?)", b, c, d, e, f, g, h);
+            sumC += c;
+            sumD += d;
+            sumE += e;
+            sumG += g;
+            sumH += h;
+            countC++;
+            countF++;
+        }
+
+        // only native aggregates of numeric columns and counts, which are all computed a batch of rows at a time
+        String aggregates = "count(b), count(c), count(f), max(b), min(b), sum(b), avg(b), max(c), min(c), sum(c), avg(c), " +
+                            "max(d), min(d), sum(d), avg(d), max(e), min(e), sum(e), avg(e), " +
+                            "max(g), min(g), sum(g), avg(g), max(h), min(h), sum(h), avg(h)";
+        Object[] expected = row(2500L, (long) countC, (long) countF, 1499, -1000, (int) sumB, (int) sumB / 2500,
+                                1498L * Integer.MAX_VALUE, -999L * Integer.MAX_VALUE, sumC, sumC / countC,
+                                1498 / 4f, -999 / 4f, sumD, sumD / countC,
+                                1498 / 3d, -999 / 3d, sumE, sumE / countC,
+                                (short) 5, (short) -5, (short) sumG, (short) (sumG / countC),
+                                (byte) 1, (byte) -1, (byte) sumH, (byte) (sumH / countC));
+        assertRows(execute("SELECT " + aggregates + " FROM %s WHERE a = 1"), expected);
+        assertRows(execute("SELECT count(*) FROM %s WHERE a = 1"), row(2500L));
+
+        // selecting a column along with the aggregates adds their input one row at a time, which must agree
+        Object[] withColumn = new Object[expected.length + 1];
+        withColumn[0] = 1;
+        System.arraycopy(expected, 0, withColumn, 1, expected.length);
+        assertRows(execute("SELECT a, " + aggregates + " FROM %s WHERE a = 1"), withColumn);
+
+        // min and max of text values are computed one row at a time
+        assertRows(execute("SELECT count(f), max(f), min(f) FROM %s WHERE a = 1"), row((long) countF, "999", ""));
+
+        // empty numeric values can't be batched, so the rows holding them are added one at a time
+        for (int i = 0; i < 2500; i++)
+        {
+            if (i % 5 == 0)
+                execute("INSERT INTO %s (a, b, c) VALUES (2, ?, blobAsBigint(0x))", i);
+            else
+                execute("INSERT INTO %s (a, b, c) VALUES (2, ?, ?)", i, (long) i);
+        }
+        assertRows(execute("SELECT count(b), count(c), max(c) FROM %s WHERE a = 2"), row(2500L, 2500L, 2499L));
+        assertRows(execute("SELECT a, count(b), count(c), max(c) FROM %s WHERE a = 2"), row(2, 2500L, 2500L, 2499L));
+    }
+
     @Test
     public void testAggregateWithColumns() throws Throwable
     {
@@ -1570,4 +1666,154 @@ public class AggregationTest extends CQLTester
         assertRows(execute("SELECT " + aRNON + "(b) FROM %s"), row("fin"));
 
     }
+
+    @Test
+    public void testAggregatesComputedByReplica() throws Throwable
+    {
+        createTable("CREATE TABLE %s (a int, b int, c double, d bigint, s int static, primary key (a, b))");
+
+        for (int i = 0; i < 100; i++)
+            execute("INSERT INTO %s (a, b, c, d) VALUES (1, ?, ?, ?)", i, i / 2.0, (long) i);
+        execute("UPDATE %s SET s = 3 WHERE a = 1");
+        execute("INSERT INTO %s (a, s) VALUES (2, 7)");
+
+        for (int version = Server.VERSION_2; version <= maxProtocolVersion; version++)
+        {
+            assertRowsNet(version,
+                          executeNet(version, "SELECT count(b), sum(b), avg(c), max(d), min(b) FROM %s WHERE a = 1"),
+                          row(100L, 4950, 24.75, 99L, 0));
+            assertRowsNet(version,
+                          executeNet(version, "SELECT count(*) FROM %s WHERE a = 1 AND b >= 10 AND b < 20"),
+                          row(10L));
+            assertRowsNet(version,
+                          executeNet(version, "SELECT sum(d), max(s) FROM %s WHERE a = 1 AND b > 90"),
+                          row(855L, 3));
+
+            // A partition with only a static row counts as a row, unless the clustering columns are restricted
+            assertRowsNet(version, executeNet(version, "SELECT count(s), max(s) FROM %s WHERE a = 2"), row(1L, 7));
+            assertRowsNet(version, executeNet(version, "SELECT count(*) FROM %s WHERE a = 2 AND b = 1"), row(0L));
+            assertRowsNet(version, executeNet(version, "SELECT count(b), sum(b) FROM %s WHERE a = 3"), row(0L, 0));
+
+            // A partition with more rows than a page is aggregated page by page
+            SimpleStatement paged = new SimpleStatement(String.format("SELECT count(b), sum(b), avg(c), max(d), min(b), max(s) FROM %s.%s WHERE a = 1", KEYSPACE, currentTable()));
+            paged.setFetchSize(30);
+            assertRowsNet(version, sessionNet(version).execute(paged), row(100L, 4950, 24.75, 99L, 0, 3));
+            paged = new SimpleStatement(String.format("SELECT count(b), count(s), min(d) FROM %s.%s WHERE a = 1 AND b >= 5 AND b < 95", KEYSPACE, currentTable()));
+            paged.setFetchSize(7);
+            assertRowsNet(version, sessionNet(version).execute(paged), row(90L, 90L, 5L));
+            // The limit applies to the rows returned, not to the ones aggregated
+            paged = new SimpleStatement(String.format("SELECT count(b), sum(b) FROM %s.%s WHERE a = 1 LIMIT 25", KEYSPACE, currentTable()));
+            paged.setFetchSize(10);
+            assertRowsNet(version, sessionNet(version).execute(paged), row(100L, 4950));
+        }
+    }
+
+    @Test
+    public void testAggregateStatesMergedPageByPage() throws Throwable
+    {
+        createTable("CREATE TABLE %s (a int, b int, t tinyint, si smallint, v varint, d decimal, f float, primary key (a, b))");
+
+        for (int i = 0; i < 10; i++)
+            execute("INSERT INTO %s (a, b, t, si, v, d, f) VALUES (1, ?, ?, ?, ?, ?, ?)",
+                    i, (byte) i, (short) i, BigInteger.valueOf(i), BigDecimal.valueOf(i), (float) i);
+        execute("INSERT INTO %s (a, b) VALUES (1, 10)");
+
+        for (int fetchSize : new int[]{ 1, 3, 11, 100 })
+        {
+            SimpleStatement paged = new SimpleStatement(String.format("SELECT count(t), sum(t), avg(t), sum(si), avg(si), sum(v), avg(v), " +
+                                                                      "sum(d), avg(d), sum(f), avg(f), min(f), max(v) FROM %s.%s WHERE a = 1",
+                                                                      KEYSPACE, currentTable()));
+            paged.setFetchSize(fetchSize);
+            assertRowsNet(Server.CURRENT_VERSION,
+                          sessionNet(Server.CURRENT_VERSION).execute(paged),
+                          row(10L, (byte) 45, (byte) 4, (short) 45, (short) 4, BigInteger.valueOf(45), BigInteger.valueOf(4),
+                              BigDecimal.valueOf(45), BigDecimal.valueOf(4.5), 45f, 4.5f, 0f, BigInteger.valueOf(9)));
+        }
+    }
+
+    @Test
+    public void testAggregateReadCommand() throws Throwable
+    {
+        createTable("CREATE TABLE %s (a int, b int, c int, primary key (a, b))");
+
+        for (int i = 0; i < 10; i++)
+            execute("INSERT INTO %s (a, b, c) VALUES (1, ?, ?)", i, i * 2);
+
+        CFMetaData metadata = currentTableMetadata();
+        SinglePartitionReadCommand<?> readCommand = SinglePartitionReadCommand.fullPartitionRead(metadata,
+                                                                                                 FBUtilities.nowInSeconds(),
+                                                                                                 Int32Type.instance.decompose(1));
+        List<AggregateReadCommand.Aggregate> aggregates = Arrays.asList(new AggregateReadCommand.Aggregate(FunctionName.nativeFunction("countRows"),
+                                                                                                           Collections.<String>emptyList()),
+                                                                        new AggregateReadCommand.Aggregate(FunctionName.nativeFunction("sum"),
+                                                                                                           Collections.singletonList("c")));
+        AggregateReadCommand command = new AggregateReadCommand(readCommand, aggregates, true, null, 100, Server.CURRENT_VERSION);
+
+        DataOutputBuffer out = new DataOutputBuffer();
+        AggregateReadCommand.serializer.serialize(command, out, MessagingService.current_version);
+        AggregateReadCommand deserialized = AggregateReadCommand.serializer.deserialize(new DataInputBuffer(out.getData()),
+                                                                                        MessagingService.current_version);
+        assertEquals(aggregates, deserialized.aggregates);
+
+        // The partition fits in a page, so the states of the aggregates are those of the whole partition
+        AggregateReadResponse response = deserialized.execute();
+        assertEquals(Arrays.asList(LongType.instance.decompose(10L), Int32Type.instance.decompose(90)), response.states);
+        assertNull(response.pagingState);
+        assertEquals(digest(command.pageCommand), response.digest);
+
+        out = new DataOutputBuffer();
+        AggregateReadResponse.serializer.serialize(response, out, MessagingService.current_version);
+        assertEquals(out.getLength(), AggregateReadResponse.serializer.serializedSize(response, MessagingService.current_version));
+        AggregateReadResponse deserializedResponse = AggregateReadResponse.serializer.deserialize(new DataInputBuffer(out.getData()),
+                                                                                                  MessagingService.current_version);
+        assertEquals(response.states, deserializedResponse.states);
+        assertEquals(response.digest, deserializedResponse.digest);
+        assertNull(deserializedResponse.pagingState);
+
+        // Otherwise, the replica returns the states of a page and the paging state of the next one
+        long count = 0;
+        int sum = 0;
+        int pages = 0;
+        PagingState pagingState = null;
+        do
+        {
+            command = new AggregateReadCommand(readCommand, aggregates, true, pagingState, 4, Server.CURRENT_VERSION);
+            out = new DataOutputBuffer();
+            AggregateReadCommand.serializer.serialize(command, out, MessagingService.current_version);
+            deserialized = AggregateReadCommand.serializer.deserialize(new DataInputBuffer(out.getData()), MessagingService.current_version);
+
+            response = deserialized.execute();
+            assertEquals(digest(command.pageCommand), response.digest);
+            count += LongType.instance.compose(response.states.get(0));
+            sum += Int32Type.instance.compose(response.states.get(1));
+            pagingState = response.pagingState;
+            pages++;
+
+            out = new DataOutputBuffer();
+            AggregateReadResponse.serializer.serialize(response, out, MessagingService.current_version);
+            assertEquals(out.getLength(), AggregateReadResponse.serializer.serializedSize(response, MessagingService.current_version));
+            deserializedResponse = AggregateReadResponse.serializer.deserialize(new DataInputBuffer(out.getData()), MessagingService.current_version);
+            assertEquals(response.states, deserializedResponse.states);
+            assertEquals(pagingState == null, deserializedResponse.pagingState == null);
+        }
+        while (pagingState != null);
+        assertEquals(3, pages);
+        assertEquals(10L, count);
+        assertEquals(90, sum);
+
+        // Neither does it aggregate functions it doesn't know of
+        List<AggregateReadCommand.Aggregate> unknown = Collections.singletonList(new AggregateReadCommand.Aggregate(FunctionName.nativeFunction("unknown"),
+                                                                                                                   Collections.singletonList("c")));
+        assertFalse(new AggregateReadCommand(readCommand, unknown, true, null, 100, Server.CURRENT_VERSION).execute().isAggregated());
+    }
+
+    private static ByteBuffer digest(ReadCommand readCommand)
+    {
+        ReadCommand digestCommand = readCommand.copy().setIsDigestQuery(true);
+        try (ReadOrderGroup orderGroup = digestCommand.startOrderGroup();
+             UnfilteredPartitionIterator iterator = digestCommand.executeLocally(orderGroup))
+        {
+            return digestCommand.createResponse(iterator).digest(digestCommand);
+        }
+    }
 }
@@ -18,15 +18,30 @@
 
 package org.apache.cassandra.cql3.validation.operations;
 
+import java.net.InetAddress;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.Multiset;
 import org.junit.Test;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.SystemKeyspace;
 import org.apache.cassandra.exceptions.InvalidRequestException;
 import org.apache.cassandra.exceptions.SyntaxException;
+import org.apache.cassandra.net.IMessageSink;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessageOut;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.schema.SchemaKeyspace;
+import org.apache.cassandra.service.paxos.Commit;
+import org.apache.cassandra.transport.Server;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.UUIDGen;
 
 import static java.lang.String.format;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class InsertUpdateIfConditionTest extends CQLTester
@@ -883,4 +898,52 @@ public class InsertUpdateIfConditionTest extends CQLTester
                             KEYSPACE,
                             "mytype"));
     }
+
+    @Test
+    public void testOptimisticCas() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+
+        Multiset<MessagingService.Verb> sent = ConcurrentHashMultiset.create();
+        MessagingService.instance().addMessageSink(new IMessageSink()
+        {
+            public boolean allowOutgoingMessage(MessageOut message, int id, InetAddress to)
+            {
+                sent.add(message.verb);
+                return true;
+            }
+
+            public boolean allowIncomingMessage(MessageIn message, int id)
+            {
+                return true;
+            }
+        });
+        DatabaseDescriptor.setOptimisticCasEnabled(true);
+        try
+        {
+            // uncontended, the current values are read along with the prepare
+            assertTrue(executeNet(Server.CURRENT_VERSION, "INSERT INTO %s (k, v) VALUES (0, 0) IF NOT EXISTS").wasApplied());
+            assertFalse(executeNet(Server.CURRENT_VERSION, "INSERT INTO %s (k, v) VALUES (0, 1) IF NOT EXISTS").wasApplied());
+            assertFalse(executeNet(Server.CURRENT_VERSION, "UPDATE %s SET v = 2 WHERE k = 0 IF v = 1").wasApplied());
+            assertTrue(executeNet(Server.CURRENT_VERSION, "UPDATE %s SET v = 3 WHERE k = 0 IF v = 0").wasApplied());
+            assertEquals(4, sent.count(MessagingService.Verb.PAXOS_PREPARE_AND_READ));
+            assertEquals(0, sent.count(MessagingService.Verb.PAXOS_PREPARE));
+            assertRows(execute("SELECT * FROM %s"), row(0, 3));
+
+            // a higher ballot already promised makes it fall back to the regular paxos round
+            long ballotMillis = System.currentTimeMillis() + 1000;
+            SystemKeyspace.savePaxosPromise(Commit.newPrepare(currentTableMetadata().decorateKey(ByteBufferUtil.bytes(1)),
+                                                              currentTableMetadata(),
+                                                              UUIDGen.getTimeUUID(ballotMillis)));
+            assertTrue(executeNet(Server.CURRENT_VERSION, "INSERT INTO %s (k, v) VALUES (1, 1) IF NOT EXISTS").wasApplied());
+            assertEquals(5, sent.count(MessagingService.Verb.PAXOS_PREPARE_AND_READ));
+            assertTrue(sent.count(MessagingService.Verb.PAXOS_PREPARE) > 0);
+            assertRows(execute("SELECT * FROM %s WHERE k = 1"), row(1, 1));
+        }
+        finally
+        {
+            DatabaseDescriptor.setOptimisticCasEnabled(false);
+            MessagingService.instance().clearMessageSinks();
+        }
+    }
 }
@@ -18,8 +18,11 @@
 package org.apache.cassandra.db;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
 
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.db.rows.Row;
@@ -39,6 +42,7 @@ import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.UUIDType;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.locator.TokenMetadata;
 import org.apache.cassandra.net.MessagingService;
@@ -46,6 +50,7 @@ import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.UUIDGen;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import static org.apache.cassandra.utils.ByteBufferUtil.bytes;
@@ -165,6 +170,79 @@ public class BatchlogManagerTest
         assertEquals(500, result.one().getLong("count"));
     }
 
+    @Test
+    public void testReplayFromFiles() throws Exception
+    {
+        long initialAllBatches = BatchlogManager.instance.countAllBatches();
+        long initialReplayedBatches = BatchlogManager.instance.getTotalBatchesReplayed();
+
+        DatabaseDescriptor.setBatchlogFilesEnabled(true);
+        BatchlogManager.instance.openFiles();
+        try
+        {
+            CFMetaData cfm = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_STANDARD2).metadata;
+
+            // Half the batches ready to be replayed, half not.
+            List<UUID> notReady = new ArrayList<>();
+            for (int i = 0; i < 200; i++)
+            {
+                Mutation m = new RowUpdateBuilder(cfm, FBUtilities.timestampMicros(), "key" + i)
+                        .clustering("name" + i)
+                        .add("val", "val" + i)
+                        .build();
+
+                long timestamp = i < 100
+                               ? (System.currentTimeMillis() - DatabaseDescriptor.getWriteRpcTimeout() * 2) * 1000
+                               : Long.MAX_VALUE;
+
+                UUID id = UUIDGen.getTimeUUID();
+                if (i >= 100)
+                    notReady.add(id);
+                BatchlogManager.instance.apply(BatchlogManager.getBatchlogMutationFor(Collections.singleton(m),
+                                                                                      id,
+                                                                                      MessagingService.current_version,
+                                                                                      timestamp));
+            }
+
+            // the batches are stored in the files only
+            assertEquals(200, BatchlogManager.instance.countAllBatches() - initialAllBatches);
+            UntypedResultSet result = QueryProcessor.executeInternal(String.format("SELECT count(*) FROM %s.%s", SystemKeyspace.NAME, SystemKeyspace.BATCHLOG));
+            assertEquals(initialAllBatches, result.one().getLong("count"));
+
+            BatchlogManager.instance.startBatchlogReplay().get();
+
+            assertEquals(100, BatchlogManager.instance.countAllBatches() - initialAllBatches);
+            assertEquals(100, BatchlogManager.instance.getTotalBatchesReplayed() - initialReplayedBatches);
+            for (int i = 0; i < 200; i++)
+            {
+                result = QueryProcessor.executeInternal(String.format("SELECT * FROM \"%s\".\"%s\" WHERE key = 'key%d'", KEYSPACE1, CF_STANDARD2, i));
+                if (i < 100)
+                    assertEquals("val" + i, result.one().getString("val"));
+                else
+                    assertTrue(result.isEmpty());
+            }
+
+            // the batches acknowledged by their removal mutation are never replayed
+            for (UUID id : notReady)
+            {
+                BatchlogManager.instance.apply(new Mutation(PartitionUpdate.fullPartitionDelete(SystemKeyspace.Batchlog,
+                                                                                                UUIDType.instance.decompose(id),
+                                                                                                FBUtilities.timestampMicros(),
+                                                                                                FBUtilities.nowInSeconds())));
+            }
+            assertEquals(0, BatchlogManager.instance.countAllBatches() - initialAllBatches);
+        }
+        finally
+        {
+            DatabaseDescriptor.setBatchlogFilesEnabled(false);
+        }
+
+        // the files, disabled and drained, are deleted by the next replay
+        BatchlogManager.instance.startBatchlogReplay().get();
+        assertEquals(100, BatchlogManager.instance.getTotalBatchesReplayed() - initialReplayedBatches);
+        assertFalse(BatchlogStore.exists(DatabaseDescriptor.getBatchlogDirectory()));
+    }
+
     /*
     @Test
     public void testTruncatedReplay() throws InterruptedException, ExecutionException
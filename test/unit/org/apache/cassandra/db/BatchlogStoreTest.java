@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.UUIDGen;
+
+import static org.junit.Assert.*;
+
+public class BatchlogStoreTest
+{
+    private File directory;
+
+    @Before
+    public void createDirectory()
+    {
+        directory = new File(DatabaseDescriptor.getBatchlogDirectory(), "BatchlogStoreTest");
+        if (directory.exists())
+            FileUtils.deleteRecursive(directory);
+        FileUtils.createDirectory(directory);
+    }
+
+    @Test
+    public void testStoreAndRemove()
+    {
+        BatchlogStore store = BatchlogStore.open(directory, 1024 * 1024, false);
+        assertEquals(0, store.size());
+
+        UUID first = UUIDGen.getTimeUUID();
+        UUID second = UUIDGen.getTimeUUID();
+        store.store(first, 42, MessagingService.current_version, ByteBufferUtil.bytes("first"));
+        store.store(second, 43, MessagingService.VERSION_12, ByteBufferUtil.bytes("second"));
+        assertEquals(2, store.size());
+
+        Map<UUID, BatchlogStore.Entry> entries = entries(store);
+        assertEquals(42, entries.get(first).writtenAt);
+        assertEquals(MessagingService.current_version, entries.get(first).version);
+        assertEquals(ByteBufferUtil.bytes("first"), entries.get(first).data());
+        assertEquals(43, entries.get(second).writtenAt);
+        assertEquals(MessagingService.VERSION_12, entries.get(second).version);
+        assertEquals(ByteBufferUtil.bytes("second"), entries.get(second).data());
+
+        store.remove(first);
+        assertEquals(1, store.size());
+        assertFalse(entries(store).containsKey(first));
+
+        // removing a batch twice, or one never stored, is a no-op
+        store.remove(first);
+        store.remove(UUIDGen.getTimeUUID());
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testReplay() throws IOException
+    {
+        BatchlogStore store = BatchlogStore.open(directory, 1024, false);
+        for (int i = 0; i < 100; i++)
+        {
+            UUID id = new UUID(0, i);
+            store.store(id, i, MessagingService.current_version, ByteBufferUtil.bytes(i));
+            if (i % 2 == 0)
+                store.remove(id);
+        }
+        assertTrue(store.segmentCount() > 1);
+        store.close();
+
+        // a record torn by a crash is ignored
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        File last = files[0];
+        for (File file : files)
+            if (segmentId(file) > segmentId(last))
+                last = file;
+        try (FileOutputStream out = new FileOutputStream(last, true))
+        {
+            out.write(new byte[]{ 0, 0, 0, 42, 1, 2, 3 });
+        }
+
+        store = BatchlogStore.open(directory, 1024, false);
+        assertEquals(50, store.size());
+        Map<UUID, BatchlogStore.Entry> entries = entries(store);
+        for (int i = 0; i < 100; i++)
+        {
+            BatchlogStore.Entry entry = entries.get(new UUID(0, i));
+            if (i % 2 == 0)
+            {
+                assertNull(entry);
+            }
+            else
+            {
+                assertEquals(i, entry.writtenAt);
+                assertEquals(ByteBufferUtil.bytes(i), entry.data());
+            }
+        }
+        store.close();
+    }
+
+    @Test
+    public void testConcurrentSyncedStores() throws Exception
+    {
+        final BatchlogStore store = BatchlogStore.open(directory, 1024, true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++)
+        {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++)
+                {
+                    UUID id = new UUID(thread, i);
+                    store.store(id, i, MessagingService.current_version, ByteBufferUtil.bytes(i));
+                    if (i % 2 == 0)
+                        store.remove(id);
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+        assertTrue(store.segmentCount() > 1);
+        store.close();
+
+        BatchlogStore reopened = BatchlogStore.open(directory, 1024, true);
+        assertEquals(200, reopened.size());
+        Map<UUID, BatchlogStore.Entry> entries = entries(reopened);
+        for (int t = 0; t < 8; t++)
+        {
+            for (int i = 1; i < 50; i += 2)
+            {
+                BatchlogStore.Entry entry = entries.get(new UUID(t, i));
+                assertEquals(i, entry.writtenAt);
+                assertEquals(ByteBufferUtil.bytes(i), entry.data());
+            }
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testDeleteDeadSegments()
+    {
+        BatchlogStore store = BatchlogStore.open(directory, 1024, false);
+        UUID oldest = UUIDGen.getTimeUUID();
+        store.store(oldest, 0, MessagingService.current_version, ByteBuffer.allocate(1024));
+        for (int i = 0; i < 10; i++)
+        {
+            UUID id = UUIDGen.getTimeUUID();
+            store.store(id, 0, MessagingService.current_version, ByteBuffer.allocate(1024));
+            store.remove(id);
+        }
+        int segments = store.segmentCount();
+        assertTrue(segments > 2);
+
+        // segments are only deleted oldest first, so that removals don't outlive the batches they remove
+        store.deleteDeadSegments();
+        assertEquals(segments, store.segmentCount());
+
+        store.remove(oldest);
+        store.deleteDeadSegments();
+        assertEquals(1, store.segmentCount());
+        assertEquals(0, store.size());
+        store.close();
+
+        store = BatchlogStore.open(directory, 1024, false);
+        assertEquals(0, store.size());
+        store.deleteAll();
+        assertFalse(BatchlogStore.exists(directory));
+    }
+
+    private static Map<UUID, BatchlogStore.Entry> entries(BatchlogStore store)
+    {
+        Map<UUID, BatchlogStore.Entry> entries = new HashMap<>();
+        for (BatchlogStore.Entry entry : store.entries())
+            entries.put(entry.id, entry);
+        return entries;
+    }
+
+    private static long segmentId(File file)
+    {
+        // batchlog-<id>-<version>.log
+        return Long.parseLong(file.getName().split("-")[1]);
+    }
+}
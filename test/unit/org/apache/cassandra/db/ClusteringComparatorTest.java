@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.apache.cassandra.db.marshal.*;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.UUIDGen;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClusteringComparatorTest
+{
+    private final Random random = new Random();
+
+    @Test
+    public void testFixedWidthTypes()
+    {
+        testAgainstTypes(Int32Type.instance, LongType.instance);
+        testAgainstTypes(TimestampType.instance, ShortType.instance, ByteType.instance);
+    }
+
+    @Test
+    public void testReversedTypes()
+    {
+        testAgainstTypes(ReversedType.getInstance(Int32Type.instance), ReversedType.getInstance(UTF8Type.instance));
+        testAgainstTypes(ReversedType.getInstance(LongType.instance), ReversedType.getInstance(TimeUUIDType.instance));
+    }
+
+    @Test
+    public void testMixedTypes()
+    {
+        testAgainstTypes(UTF8Type.instance, Int32Type.instance, TimeUUIDType.instance);
+        testAgainstTypes(BytesType.instance, ReversedType.getInstance(TimestampType.instance), AsciiType.instance);
+    }
+
+    @Test
+    public void testEmptyValues()
+    {
+        ClusteringComparator comparator = new ClusteringComparator(ReversedType.getInstance(Int32Type.instance), LongType.instance);
+        Clustering empty = new Clustering(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER);
+        Clustering value = new Clustering(ByteBufferUtil.bytes(1), ByteBufferUtil.bytes(1L));
+        assertEquals(-1, Integer.signum(comparator.compare(empty, value)));
+        assertEquals(1, Integer.signum(comparator.compare(value, empty)));
+        assertEquals(0, comparator.compare(empty, new Clustering(ByteBufferUtil.EMPTY_BYTE_BUFFER, ByteBufferUtil.EMPTY_BYTE_BUFFER)));
+    }
+
+    // checks that the comparator orders random clusterings as their types do, component by component
+    private void testAgainstTypes(AbstractType<?>... types)
+    {
+        ClusteringComparator comparator = new ClusteringComparator(types);
+        for (int n = 0; n < 10000; n++)
+        {
+            ByteBuffer[] values1 = new ByteBuffer[types.length];
+            ByteBuffer[] values2 = new ByteBuffer[types.length];
+            for (int i = 0; i < types.length; i++)
+            {
+                values1[i] = randomValue(types[i]);
+                // share some components so that later ones get compared too
+                values2[i] = random.nextInt(3) == 0 ? values1[i].duplicate() : randomValue(types[i]);
+            }
+
+            int expected = 0;
+            for (int i = 0; i < types.length && expected == 0; i++)
+                expected = types[i].compare(values1[i], values2[i]);
+
+            assertEquals(Integer.signum(expected), Integer.signum(comparator.compare(new Clustering(values1), new Clustering(values2))));
+        }
+    }
+
+    private ByteBuffer randomValue(AbstractType<?> type)
+    {
+        if (type instanceof ReversedType)
+            return randomValue(((ReversedType<?>) type).baseType);
+        if (type instanceof Int32Type)
+            return ByteBufferUtil.bytes(random.nextInt(7) - 3 + (random.nextBoolean() ? 0 : random.nextInt()));
+        if (type instanceof LongType || type instanceof TimestampType)
+            return ByteBufferUtil.bytes(random.nextInt(7) - 3 + (random.nextBoolean() ? 0 : random.nextLong()));
+        if (type instanceof ShortType)
+            return ByteBufferUtil.bytes((short) random.nextInt());
+        if (type instanceof ByteType)
+            return ByteBuffer.wrap(new byte[]{ (byte) random.nextInt() });
+        if (type instanceof TimeUUIDType)
+            return ByteBuffer.wrap(UUIDGen.decompose(UUIDGen.getTimeUUID(random.nextInt(1000))));
+        if (type instanceof UTF8Type || type instanceof AsciiType)
+            return ByteBufferUtil.bytes(Integer.toString(random.nextInt(100)));
+
+        byte[] bytes = new byte[random.nextInt(4)];
+        random.nextBytes(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+}
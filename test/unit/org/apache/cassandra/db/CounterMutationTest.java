@@ -17,6 +17,14 @@
  */
 package org.apache.cassandra.db;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -28,6 +36,7 @@ import org.apache.cassandra.db.context.CounterContext;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.service.CacheService;
 import org.apache.cassandra.utils.ByteBufferUtil;
 
 import static org.junit.Assert.assertEquals;
@@ -65,6 +74,64 @@ public class CounterMutationTest
         addAndCheck(cfs, -3, 0);
     }
 
+    @Test
+    public void testConcurrentIncrements() throws Exception
+    {
+        final ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF1);
+        cfs.truncateBlocking();
+        ColumnDefinition cDef = cfs.metadata.getColumnDefinition(ByteBufferUtil.bytes("val"));
+        ColumnDefinition cDefTwo = cfs.metadata.getColumnDefinition(ByteBufferUtil.bytes("val2"));
+
+        final int writers = 8;
+        final int increments = 500;
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++)
+        {
+            // half the writers also update a second counter, which makes them miss one while holding another
+            final boolean both = w % 2 == 0;
+            futures.add(executor.submit(new Callable<Void>()
+            {
+                public Void call() throws WriteTimeoutException
+                {
+                    for (int i = 0; i < increments; i++)
+                    {
+                        RowUpdateBuilder builder = new RowUpdateBuilder(cfs.metadata, 5, "key1").clustering("cc").add("val", 1L);
+                        if (both)
+                            builder.add("val2", 1L);
+                        new CounterMutation(builder.build(), ConsistencyLevel.ONE).apply();
+                    }
+                    return null;
+                }
+            }));
+        }
+        // evicting the counter forces writers to alternate between updating the cache and reading with locks
+        Future<?> invalidator = executor.submit(new Runnable()
+        {
+            public void run()
+            {
+                while (!done.get())
+                {
+                    CacheService.instance.invalidateCounterCacheForCf(cfs.metadata.cfId);
+                    Thread.yield();
+                }
+            }
+        });
+        for (Future<?> future : futures)
+            future.get();
+        done.set(true);
+        invalidator.get();
+        executor.shutdown();
+
+        Row row = Util.getOnlyRow(Util.cmd(cfs).includeRow("cc").columns("val", "val2").build());
+        assertEquals(writers * increments, CounterContext.instance().total(row.getCell(cDef).value()));
+        assertEquals(writers / 2 * increments, CounterContext.instance().total(row.getCell(cDefTwo).value()));
+        // every increment got its own clock
+        assertEquals(writers * increments, CounterContext.instance().getLocalClockAndCount(row.getCell(cDef).value()).clock);
+        assertEquals(writers / 2 * increments, CounterContext.instance().getLocalClockAndCount(row.getCell(cDefTwo).value()).clock);
+    }
+
     private void addAndCheck(ColumnFamilyStore cfs, long toAdd, long expected)
     {
         ColumnDefinition cDef = cfs.metadata.getColumnDefinition(ByteBufferUtil.bytes("val"));
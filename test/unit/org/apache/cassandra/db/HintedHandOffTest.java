@@ -21,6 +21,7 @@
 package org.apache.cassandra.db;
 
 import java.net.InetAddress;
+import java.util.Collections;
 import java.util.Map;
 import java.util.UUID;
 
@@ -57,42 +58,45 @@ public class HintedHandOffTest
     }
 
     @Before
-    public void clearHints()
+    public void clearHints() throws Exception
     {
-        Keyspace systemKeyspace = Keyspace.open("system");
-        ColumnFamilyStore hintStore = systemKeyspace.getColumnFamilyStore(SystemKeyspace.HINTS);
-        hintStore.clearUnsafe();
+        HintedHandOffManager.instance.truncateAllHints();
     }
 
-    // Test compaction of hints column family. It shouldn't remove all columns on compaction.
     @Test
-    public void testCompactionOfHintsCF() throws Exception
+    public void testWriteHints() throws Exception
     {
-        // prepare hints column family
-        Keyspace systemKeyspace = Keyspace.open("system");
-        ColumnFamilyStore hintStore = systemKeyspace.getColumnFamilyStore(SystemKeyspace.HINTS);
-        hintStore.clearUnsafe();
-        hintStore.metadata.gcGraceSeconds(36000); // 10 hours
-        hintStore.disableAutoCompaction();
+        UUID hostId = UUID.randomUUID();
+        Mutation rm = mutation();
+        HintedHandOffManager.instance.write(rm, System.currentTimeMillis(), HintedHandOffManager.calculateHintTTL(rm), hostId);
 
-        // insert 1 hint
+        // hints are stored in the hints files, not in the legacy table
+        assertEquals(Collections.singletonList(hostId.toString()), HintedHandOffManager.instance.listEndpointsPendingHints());
+        assertEquals(0, getNoOfHints());
+    }
+
+    @Test
+    public void testMigrateLegacyHints() throws Exception
+    {
+        UUID hostId = UUID.randomUUID();
         Mutation rm = mutation();
         HintedHandOffManager.instance.hintFor(rm,
                                               System.currentTimeMillis(),
                                               HintedHandOffManager.calculateHintTTL(rm),
-                                              UUID.randomUUID())
+                                              hostId)
                                      .applyUnsafe();
+        assertEquals(1, getNoOfHints());
 
-        // flush data to disk
-        hintStore.forceBlockingFlush();
-        assertEquals(1, hintStore.getLiveSSTables().size());
+        HintedHandOffManager.instance.migrateLegacyHints();
 
-        // submit compaction
-        HintedHandOffManager.instance.compact();
+        assertEquals(0, getNoOfHints());
+        assertEquals(Collections.singletonList(hostId.toString()), HintedHandOffManager.instance.listEndpointsPendingHints());
 
-        // single row should not be removed because of gc_grace_seconds
-        // is 10 hours and there are no any tombstones in sstable
-        assertEquals(1, hintStore.getLiveSSTables().size());
+        // and back, as done to stream the hints when decommissioning
+        HintedHandOffManager.instance.moveHintsToLegacyTable();
+
+        assertEquals(1, getNoOfHints());
+        assertEquals(0, HintedHandOffManager.instance.listEndpointsPendingHints().size());
     }
 
     @Test
@@ -112,22 +116,16 @@ public class HintedHandOffTest
     {
         // insert 1 hint
         Mutation rm = mutation();
-        HintedHandOffManager.instance.hintFor(rm,
-                                              System.currentTimeMillis(),
-                                              HintedHandOffManager.calculateHintTTL(rm),
-                                              UUID.randomUUID())
-                                     .applyUnsafe();
+        HintedHandOffManager.instance.write(rm,
+                                            System.currentTimeMillis(),
+                                            HintedHandOffManager.calculateHintTTL(rm),
+                                            UUID.randomUUID());
 
-        assert getNoOfHints() == 1;
+        assert HintedHandOffManager.instance.listEndpointsPendingHints().size() == 1;
 
         HintedHandOffManager.instance.truncateAllHints();
 
-        while(getNoOfHints() > 0)
-        {
-            Thread.sleep(100);
-        }
-
-        assert getNoOfHints() == 0;
+        assert HintedHandOffManager.instance.listEndpointsPendingHints().isEmpty();
     }
 
     private Mutation mutation()
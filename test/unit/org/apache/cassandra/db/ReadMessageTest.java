@@ -21,6 +21,7 @@ package org.apache.cassandra.db;
 import static org.junit.Assert.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import com.google.common.base.Predicate;
 
@@ -32,6 +33,7 @@ import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.db.commitlog.CommitLogTestReplayer;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.partitions.UnfilteredPartitionIterator;
 import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.marshal.AsciiType;
 import org.apache.cassandra.db.marshal.BytesType;
@@ -139,14 +141,65 @@ public class ReadMessageTest
     }
 
     private ReadCommand serializeAndDeserializeReadMessage(ReadCommand rm) throws IOException
+    {
+        return serializeAndDeserializeReadMessage(rm, MessagingService.current_version);
+    }
+
+    private ReadCommand serializeAndDeserializeReadMessage(ReadCommand rm, int version) throws IOException
     {
         IVersionedSerializer<ReadCommand> rms = ReadCommand.serializer;
         DataOutputBuffer out = new DataOutputBuffer();
 
-        rms.serialize(rm, out, MessagingService.current_version);
+        rms.serialize(rm, out, version);
 
         DataInputPlus dis = new DataInputBuffer(out.getData());
-        return rms.deserialize(dis, MessagingService.current_version);
+        return rms.deserialize(dis, version);
+    }
+
+    @Test
+    public void testDigestVersion() throws IOException
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF);
+
+        new RowUpdateBuilder(cfs.metadata, 0, ByteBufferUtil.bytes("digestKey"))
+                .clustering("Column1")
+                .add("val", ByteBufferUtil.bytes("efgh"))
+                .build()
+                .apply();
+
+        ReadCommand command = Util.cmd(cfs, Util.dk("digestKey")).build().copy().setIsDigestQuery(true);
+        assertEquals(MessagingService.current_version, command.digestVersion());
+
+        // a command from an older node digests as that node does
+        assertEquals(MessagingService.VERSION_30, serializeAndDeserializeReadMessage(command, MessagingService.VERSION_30).digestVersion());
+        command.setDigestVersion(MessagingService.VERSION_30);
+        assertEquals(MessagingService.VERSION_30, serializeAndDeserializeReadMessage(command).digestVersion());
+        assertEquals(MessagingService.VERSION_30, command.copy().digestVersion());
+
+        ByteBuffer legacyDigest = digest(command);
+        command.setDigestVersion(MessagingService.current_version);
+        ByteBuffer digest = digest(command);
+        assertFalse(legacyDigest.equals(digest));
+    }
+
+    /**
+     * Digests the result of the given command both as a replica answering a digest request and as the coordinator
+     * digesting a data response would, checking that they agree.
+     */
+    private static ByteBuffer digest(ReadCommand command)
+    {
+        ByteBuffer digest;
+        try (ReadOrderGroup orderGroup = command.startOrderGroup();
+             UnfilteredPartitionIterator iterator = command.executeLocally(orderGroup))
+        {
+            digest = command.createResponse(iterator).digest(command);
+        }
+        try (ReadOrderGroup orderGroup = command.startOrderGroup();
+             UnfilteredPartitionIterator iterator = command.executeLocally(orderGroup))
+        {
+            assertEquals(digest, ReadResponse.createDataResponse(iterator).digest(command));
+        }
+        return digest;
     }
 
 
@@ -30,6 +30,7 @@ import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.Util;
 import org.apache.cassandra.cache.RowCacheKey;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.rows.*;
 import org.apache.cassandra.db.compaction.CompactionManager;
@@ -117,6 +118,43 @@ public class RowCacheTest
         cachedStore.truncateBlocking();
     }
 
+    @Test
+    public void testRowCacheAdmission() throws Exception
+    {
+        CompactionManager.instance.disableAutoCompaction();
+
+        Keyspace keyspace = Keyspace.open(KEYSPACE_CACHED);
+        ColumnFamilyStore cachedStore  = keyspace.getColumnFamilyStore(CF_CACHED);
+        CacheService.instance.invalidateRowCache();
+        CacheService.instance.setRowCacheCapacityInMB(1);
+        SchemaLoader.insertData(KEYSPACE_CACHED, CF_CACHED, 0, 10);
+
+        DecoratedKey hot = Util.dk("key0");
+        DecoratedKey cold = Util.dk("key1");
+        long startNotAdmitted = cachedStore.metric.rowCacheNotAdmitted.getCount();
+        DatabaseDescriptor.setRowCacheAdmissionFrequency(3);
+        try
+        {
+            // the hot partition is only cached by its third read, the partition read once is never cached
+            for (int i = 0; i < 2; i++)
+            {
+                Util.getAll(Util.cmd(cachedStore, hot).build());
+                assertEquals(0, CacheService.instance.rowCache.size());
+            }
+            Util.getAll(Util.cmd(cachedStore, cold).build());
+            Util.getAll(Util.cmd(cachedStore, hot).build());
+            assertEquals(1, CacheService.instance.rowCache.size());
+            assertTrue(CacheService.instance.rowCache.containsKey(new RowCacheKey(cachedStore.metadata.cfId, hot)));
+            assertEquals(startNotAdmitted + 3, cachedStore.metric.rowCacheNotAdmitted.getCount());
+        }
+        finally
+        {
+            DatabaseDescriptor.setRowCacheAdmissionFrequency(0);
+            CacheService.instance.setRowCacheCapacityInMB(0);
+            cachedStore.truncateBlocking();
+        }
+    }
+
     @Test
     public void testRowCache() throws Exception
     {
@@ -17,7 +17,9 @@
  */
 package org.apache.cassandra.db;
 
+import java.io.Closeable;
 import java.io.File;
+import java.util.List;
 
 import org.apache.cassandra.Util;
 import org.apache.cassandra.config.DatabaseDescriptor;
@@ -25,12 +27,17 @@ import org.apache.cassandra.cql3.CQLTester;
 import org.apache.cassandra.db.rows.EncodingStats;
 import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.io.sstable.IndexHelper;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.sstable.format.big.BigFormat;
 import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.io.util.SequentialWriter;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.utils.ByteBufferUtil;
 import org.junit.Test;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertTrue;
 
 public class RowIndexEntryTest extends CQLTester
@@ -38,8 +45,8 @@ public class RowIndexEntryTest extends CQLTester
     @Test
     public void testSerializedSize() throws Throwable
     {
-        String tableName = createTable("CREATE TABLE %s (a int, b text, c int, PRIMARY KEY(a, b))");
-        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE).getColumnFamilyStore(tableName);
+        createTable("CREATE TABLE %s (a int, b text, c int, PRIMARY KEY(a, b))");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
 
         final RowIndexEntry simple = new RowIndexEntry(123);
 
@@ -70,4 +77,50 @@ public class RowIndexEntryTest extends CQLTester
         serializer.serialize(withIndex, buffer);
         assertEquals(buffer.getLength(), serializer.serializedSize(withIndex));
     }
+
+    @Test
+    public void testColumnIndexReadFromIndexFile() throws Throwable
+    {
+        createTable("CREATE TABLE %s (a int, b int, c text, PRIMARY KEY(a, b))");
+        ColumnFamilyStore cfs = getCurrentColumnFamilyStore();
+
+        // enough data for a dozen column index blocks in partition 0, partition 1 isn't indexed
+        int rows = 12 * DatabaseDescriptor.getColumnIndexSize() / 100;
+        String value = new String(new char[100]).replace('\0', 'x');
+        for (int i = 0; i < rows; i++)
+            execute("INSERT INTO %s (a, b, c) VALUES (?, ?, ?)", 0, i, value);
+        execute("INSERT INTO %s (a, b, c) VALUES (?, ?, ?)", 1, 0, value);
+        flush();
+
+        int cacheSize = DatabaseDescriptor.getColumnIndexCacheSize();
+        try
+        {
+            DatabaseDescriptor.setColumnIndexCacheSize(0);
+            CacheService.instance.invalidateKeyCacheForCf(cfs.metadata.cfId);
+            SSTableReader sstable = cfs.getLiveSSTables().iterator().next();
+
+            RowIndexEntry indexed = sstable.getPosition(Util.dk(ByteBufferUtil.bytes(0)), SSTableReader.Operator.EQ);
+            assertTrue(indexed.isIndexed());
+            assertFalse(indexed.isColumnsIndexInMemory());
+            assertTrue(indexed.columnsCount() >= 10);
+            assertTrue(indexed.columnsIndex().isEmpty());
+            List<?> columnsIndex = indexed.columnsIndex(sstable);
+            assertEquals(indexed.columnsCount(), columnsIndex.size());
+            FileUtils.closeQuietly((Closeable) columnsIndex);
+            assertTrue(sstable.getPosition(Util.dk(ByteBufferUtil.bytes(1)), SSTableReader.Operator.EQ).isColumnsIndexInMemory());
+
+            for (int start : new int[]{ 0, rows / 3, rows - 10 })
+            {
+                assertRowCount(execute("SELECT * FROM %s WHERE a = 0 AND b >= ? AND b < ?", start, start + 10), 10);
+                assertRows(execute("SELECT b FROM %s WHERE a = 0 AND b >= ? LIMIT 1", start), row(start));
+                assertRows(execute("SELECT b FROM %s WHERE a = 0 AND b <= ? ORDER BY b DESC LIMIT 1", start), row(start));
+            }
+            assertRowCount(execute("SELECT * FROM %s WHERE a = 0"), rows);
+            assertRowCount(execute("SELECT * FROM %s WHERE a = 0 ORDER BY b DESC"), rows);
+        }
+        finally
+        {
+            DatabaseDescriptor.setColumnIndexCacheSize(cacheSize);
+        }
+    }
 }
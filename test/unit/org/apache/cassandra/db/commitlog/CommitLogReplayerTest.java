@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Predicate;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.schema.KeyspaceParams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommitLogReplayerTest
+{
+    private static final String KEYSPACE = "CommitLogReplayerTest";
+    private static final String TABLE = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema()
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE, 0, AsciiType.instance, BytesType.instance));
+    }
+
+    @Test
+    public void testParallelReplayKeepsPartitionOrder() throws Exception
+    {
+        CommitLog.instance.resetUnsafe(true);
+        CFMetaData cfm = Schema.instance.getCFMetaData(KEYSPACE, TABLE);
+
+        // large enough entries that the writes span several segments
+        int valueSize = DatabaseDescriptor.getCommitLogSegmentSize() / 8;
+        int count = 32;
+        for (int i = 0; i < count; i++)
+        {
+            ByteBuffer value = ByteBuffer.allocate(valueSize);
+            value.putInt(0, i);
+            CommitLog.instance.add(new RowUpdateBuilder(cfm, 0, "key" + (i % 4)).clustering("c").add("val", value).build());
+        }
+        CommitLog.instance.sync(true);
+
+        File[] files = new File(DatabaseDescriptor.getCommitLogLocation()).listFiles();
+        Arrays.sort(files, new CommitLogSegment.CommitLogSegmentFileComparator());
+        assertTrue(files.length > 2);
+
+        final Map<DecoratedKey, Integer> lastReplayed = new HashMap<>();
+        final AtomicInteger replayed = new AtomicInteger();
+        CommitLogTestReplayer replayer = new CommitLogTestReplayer(4, new Predicate<Mutation>()
+        {
+            public boolean apply(Mutation mutation)
+            {
+                if (!mutation.getKeyspaceName().equals(KEYSPACE))
+                    return true;
+
+                for (PartitionUpdate update : mutation.getPartitionUpdates())
+                {
+                    for (Row row : update)
+                    {
+                        int sequence = row.cells().iterator().next().value().getInt(0);
+                        Integer previous = lastReplayed.put(mutation.key(), sequence);
+                        if (previous != null && previous >= sequence)
+                            return false;
+                        replayed.incrementAndGet();
+                    }
+                }
+                return true;
+            }
+        });
+        replayer.recover(files);
+
+        assertEquals(count, replayed.get());
+    }
+}
@@ -26,9 +26,6 @@ import com.google.common.base.Predicate;
 import org.junit.Assert;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.db.Mutation;
-import org.apache.cassandra.db.rows.SerializationHelper;
-import org.apache.cassandra.io.util.DataInputBuffer;
-import org.apache.cassandra.io.util.NIODataInputStream;
 
 /**
  * Utility class for tests needing to examine the commitlog contents.
@@ -57,22 +54,15 @@ public class CommitLogTestReplayer extends CommitLogReplayer
         this.processor = processor;
     }
 
+    public CommitLogTestReplayer(int replayThreads, Predicate<Mutation> processor)
+    {
+        super(ReplayPosition.NONE, null, ReplayFilter.create(), replayThreads);
+        this.processor = processor;
+    }
+
     @Override
-    void replayMutation(byte[] inputBuffer, int size, final long entryLocation, final CommitLogDescriptor desc)
+    void replayMutation(Mutation mutation, final long entryLocation, final CommitLogDescriptor desc)
     {
-        NIODataInputStream bufIn = new DataInputBuffer(inputBuffer, 0, size);
-        Mutation mutation;
-        try
-        {
-            mutation = Mutation.serializer.deserialize(bufIn,
-                                                           desc.getMessagingVersion(),
-                                                           SerializationHelper.Flag.LOCAL);
-            Assert.assertTrue(processor.apply(mutation));
-        }
-        catch (IOException e)
-        {
-            // Test fails.
-            throw new AssertionError(e);
-        }
+        Assert.assertTrue(processor.apply(mutation));
     }
 }
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.db.commitlog;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.schema.KeyspaceParams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GroupCommitLogServiceTest
+{
+    private static final String KEYSPACE = "GroupCommitLogServiceTest";
+    private static final String TABLE = "Standard1";
+
+    @BeforeClass
+    public static void defineSchema()
+    {
+        DatabaseDescriptor.setCommitLogSync(Config.CommitLogSync.group);
+        DatabaseDescriptor.setCommitLogSyncGroupWindow(1.0);
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE, 0, AsciiType.instance, BytesType.instance));
+    }
+
+    @Test
+    public void testSyncDelay()
+    {
+        // nobody to wait for
+        assertEquals(0, GroupCommitLogService.syncDelay(0, 10, 1000, 1000));
+        // writers arrive too slowly to join within a sync
+        assertEquals(0, GroupCommitLogService.syncDelay(1, 2000, 1000, 5000));
+        assertEquals(0, GroupCommitLogService.syncDelay(4, 300, 1000, 5000));
+        // writers arrive quickly enough to double the group
+        assertEquals(400, GroupCommitLogService.syncDelay(4, 100, 1000, 5000));
+        // never wait for longer than the configured window
+        assertEquals(0, GroupCommitLogService.syncDelay(4, 100, 1000, 200));
+        assertEquals(150, GroupCommitLogService.syncDelay(3, 50, 1000, 200));
+    }
+
+    @Test
+    public void testConcurrentWritersAreSynced() throws Exception
+    {
+        assertTrue(CommitLog.instance.executor instanceof GroupCommitLogService);
+        final CFMetaData cfm = Schema.instance.getCFMetaData(KEYSPACE, TABLE);
+        long completed = CommitLog.instance.executor.getCompletedTasks();
+
+        final int writers = 8;
+        final int writes = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++)
+        {
+            final int writer = w;
+            futures.add(executor.submit(new Runnable()
+            {
+                public void run()
+                {
+                    for (int i = 0; i < writes; i++)
+                    {
+                        ReplayPosition position = CommitLog.instance.add(new RowUpdateBuilder(cfm, 0, "key" + writer).clustering("c" + i).add("val", ByteBuffer.allocate(100)).build());
+                        // the write must be synced by the time it's acknowledged
+                        CommitLogSegment segment = CommitLog.instance.allocator.allocatingFrom();
+                        if (segment.id == position.segment)
+                            assertTrue(segment.contentSize() >= position.position);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+
+        assertEquals(completed + writers * writes, CommitLog.instance.executor.getCompletedTasks());
+        assertEquals(0, CommitLog.instance.executor.getPendingTasks());
+    }
+}
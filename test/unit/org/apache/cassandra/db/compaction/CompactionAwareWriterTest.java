@@ -23,6 +23,7 @@ import java.util.*;
 import com.google.common.primitives.Longs;
 import org.junit.*;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.CQLTester;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.db.*;
@@ -32,6 +33,8 @@ import org.apache.cassandra.db.compaction.writers.MajorLeveledCompactionWriter;
 import org.apache.cassandra.db.compaction.writers.MaxSSTableSizeWriter;
 import org.apache.cassandra.db.compaction.writers.SplittingSizeTieredCompactionWriter;
 import org.apache.cassandra.db.lifecycle.LifecycleTransaction;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.io.sstable.ISSTableScanner;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
@@ -40,6 +43,7 @@ import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.UUIDGen;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class CompactionAwareWriterTest extends CQLTester
 {
@@ -168,6 +172,50 @@ public class CompactionAwareWriterTest extends CQLTester
         cfs.truncateBlocking();
     }
 
+    @Test
+    public void testSubRangeCompaction() throws Throwable
+    {
+        ColumnFamilyStore cfs = getColumnFamilyStore();
+        cfs.disableAutoCompaction();
+        int rowCount = 1000;
+        populate(rowCount);
+        // overwrite every other partition so that the compaction has something to merge
+        for (int i = 0; i < rowCount; i += 2)
+            execute(String.format("INSERT INTO %s.%s(k, t, v) VALUES (?, ?, ?)", KEYSPACE, TABLE), i, 0, ByteBuffer.allocate(10));
+        cfs.forceBlockingFlush();
+        assertEquals(2, cfs.getLiveSSTables().size());
+
+        int subRanges = DatabaseDescriptor.getCompactionSubRanges();
+        long minSubRangeSize = DatabaseDescriptor.getMinCompactionSubRangeSize();
+        DatabaseDescriptor.setCompactionSubRanges(4);
+        DatabaseDescriptor.setMinCompactionSubRangeSizeInMB(0);
+        int expectedSSTables;
+        try
+        {
+            LifecycleTransaction txn = cfs.getTracker().tryModify(cfs.getLiveSSTables(), OperationType.COMPACTION);
+            CompactionTask task = new CompactionTask(cfs, txn, cfs.gcBefore(FBUtilities.nowInSeconds()), false);
+            List<Range<Token>> ranges = task.getSubRanges(txn.originals(), SSTableReader.getTotalBytes(txn.originals()));
+            assertTrue(ranges.toString(), ranges.size() > 1 && ranges.size() <= 4);
+            expectedSSTables = ranges.size();
+            task.execute(null);
+        }
+        finally
+        {
+            DatabaseDescriptor.setCompactionSubRanges(subRanges);
+            DatabaseDescriptor.setMinCompactionSubRangeSizeInMB((int) (minSubRangeSize >> 20));
+        }
+
+        // one sstable per sub-range, covering disjoint token ranges
+        List<SSTableReader> sstables = new ArrayList<>(cfs.getLiveSSTables());
+        assertEquals(expectedSSTables, sstables.size());
+        Collections.sort(sstables, SSTableReader.sstableComparator);
+        for (int i = 1; i < sstables.size(); i++)
+            assertTrue(sstables.get(i - 1).last.compareTo(sstables.get(i).first) < 0);
+        assertEquals(rowCount, SSTableReader.getApproximateKeyCount(sstables), rowCount / 10);
+        validateData(cfs, rowCount);
+        cfs.truncateBlocking();
+    }
+
     private int compact(ColumnFamilyStore cfs, LifecycleTransaction txn, CompactionAwareWriter writer)
     {
         assert txn.originals().size() == 1;
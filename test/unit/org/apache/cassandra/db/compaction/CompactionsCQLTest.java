@@ -19,10 +19,12 @@ package org.apache.cassandra.db.compaction;
 
 import org.junit.Test;
 
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.cql3.CQLTester;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Keyspace;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -141,6 +143,38 @@ public class CompactionsCQLTest extends CQLTester
         assertTrue(minorWasTriggered(KEYSPACE, currentTable()));
     }
 
+    @Test
+    public void testCompactionDirectIO() throws Throwable
+    {
+        boolean directIO = DatabaseDescriptor.getCompactionDirectIO();
+        DatabaseDescriptor.setCompactionDirectIO(true);
+        try
+        {
+            for (String compression : new String[]{ "{'class': 'LZ4Compressor'}", "{'enabled': false}" })
+            {
+                createTable("CREATE TABLE %s (k int, c int, v text, PRIMARY KEY (k, c)) WITH compression = " + compression);
+                getCurrentColumnFamilyStore().disableAutoCompaction();
+                for (int i = 0; i < 4; i++)
+                {
+                    for (int k = 0; k < 50; k++)
+                        for (int c = 0; c < 20; c++)
+                            execute("INSERT INTO %s (k, c, v) VALUES (?, ?, ?)", k, c, "value" + i + "_" + k + "_" + c);
+                    flush();
+                }
+                getCurrentColumnFamilyStore().forceMajorCompaction();
+                assertEquals(1, getCurrentColumnFamilyStore().getLiveSSTables().size());
+
+                assertRowCount(execute("SELECT * FROM %s"), 50 * 20);
+                for (int k = 0; k < 50; k += 7)
+                    assertRows(execute("SELECT v FROM %s WHERE k = ? AND c = 3", k), row("value3_" + k + "_3"));
+            }
+        }
+        finally
+        {
+            DatabaseDescriptor.setCompactionDirectIO(directIO);
+        }
+    }
+
     public boolean minorWasTriggered(String keyspace, String cf) throws Throwable
     {
         UntypedResultSet res = execute("SELECT * FROM system.compaction_history");
@@ -0,0 +1,193 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.hints;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.*;
+
+public class HintsStoreTest
+{
+    private static final String KEYSPACE = "HintsStoreTest";
+    private static final String TABLE = "Standard1";
+
+    private File directory;
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE));
+    }
+
+    @Before
+    public void createDirectory()
+    {
+        directory = new File(DatabaseDescriptor.getHintsDirectory(), "HintsStoreTest");
+        if (directory.exists())
+            FileUtils.deleteRecursive(directory);
+        FileUtils.createDirectory(directory);
+    }
+
+    @Test
+    public void testWriteAndRead()
+    {
+        HintsStore store = HintsStore.create(UUID.randomUUID(), directory, 1024 * 1024);
+        assertFalse(store.hasHints());
+
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++)
+            store.write(new Hint(mutation(i), now, 3600));
+        assertTrue(store.hasHints());
+
+        // the file being written isn't dispatched until complete
+        assertNull(store.poll());
+        store.closeWriter();
+
+        HintsDescriptor descriptor = store.poll();
+        assertNotNull(descriptor);
+        List<Hint> hints = readAll(store, descriptor, 0);
+        assertEquals(100, hints.size());
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals(ByteBufferUtil.bytes("key" + i), hints.get(i).mutation.key().getKey());
+            assertEquals(now, hints.get(i).creationTime);
+            assertEquals(3600, hints.get(i).ttl);
+        }
+
+        store.delete(descriptor);
+        assertFalse(store.hasHints());
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testRollFiles()
+    {
+        UUID hostId = UUID.randomUUID();
+        HintsStore store = HintsStore.create(hostId, directory, 4096);
+        for (int i = 0; i < 200; i++)
+            store.write(new Hint(mutation(i), System.currentTimeMillis(), 3600));
+        store.closeWriter();
+
+        // all files are found again, in order, after a restart
+        Map<UUID, HintsStore> stores = HintsStore.loadAll(directory, 4096);
+        assertEquals(1, stores.size());
+        store = stores.get(hostId);
+        assertTrue(directory.list().length > 1);
+
+        int read = 0;
+        HintsDescriptor descriptor;
+        while ((descriptor = store.poll()) != null)
+        {
+            for (Hint hint : readAll(store, descriptor, 0))
+                assertEquals(ByteBufferUtil.bytes("key" + read++), hint.mutation.key().getKey());
+            store.delete(descriptor);
+        }
+        assertEquals(200, read);
+    }
+
+    @Test
+    public void testResumeFromDispatchPosition()
+    {
+        HintsStore store = HintsStore.create(UUID.randomUUID(), directory, 1024 * 1024);
+        for (int i = 0; i < 10; i++)
+            store.write(new Hint(mutation(i), System.currentTimeMillis(), 3600));
+        store.closeWriter();
+
+        HintsDescriptor descriptor = store.poll();
+        try (HintsReader reader = HintsReader.open(store.file(descriptor), descriptor, 0))
+        {
+            for (int i = 0; i < 4; i++)
+                assertNotNull(reader.readHint());
+            store.markDispatched(descriptor, reader.position());
+        }
+        store.offerFirst(descriptor);
+
+        descriptor = store.poll();
+        List<Hint> hints = readAll(store, descriptor, store.dispatchPosition(descriptor));
+        assertEquals(6, hints.size());
+        assertEquals(ByteBufferUtil.bytes("key4"), hints.get(0).mutation.key().getKey());
+    }
+
+    @Test
+    public void testTornWrite() throws Exception
+    {
+        HintsStore store = HintsStore.create(UUID.randomUUID(), directory, 1024 * 1024);
+        for (int i = 0; i < 10; i++)
+            store.write(new Hint(mutation(i), System.currentTimeMillis(), 3600));
+        store.closeWriter();
+
+        HintsDescriptor descriptor = store.poll();
+        File file = store.file(descriptor);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"))
+        {
+            raf.setLength(raf.length() - 5);
+        }
+
+        assertEquals(9, readAll(store, descriptor, 0).size());
+    }
+
+    @Test
+    public void testExpiredHints()
+    {
+        long now = System.currentTimeMillis();
+        assertTrue(new Hint(mutation(0), now, 10).isLive(now + 9999));
+        assertFalse(new Hint(mutation(0), now, 10).isLive(now + 10000));
+    }
+
+    private static List<Hint> readAll(HintsStore store, HintsDescriptor descriptor, long position)
+    {
+        List<Hint> hints = new ArrayList<>();
+        try (HintsReader reader = HintsReader.open(store.file(descriptor), descriptor, position))
+        {
+            Hint hint;
+            while ((hint = reader.readHint()) != null)
+                hints.add(hint);
+        }
+        return hints;
+    }
+
+    private static Mutation mutation(int i)
+    {
+        return new RowUpdateBuilder(Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).metadata, 0, "key" + i)
+               .clustering("col")
+               .add("val", "value" + i)
+               .build();
+    }
+}
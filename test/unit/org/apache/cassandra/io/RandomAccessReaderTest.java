@@ -4,11 +4,14 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
+import org.junit.Assume;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -43,6 +46,58 @@ public class RandomAccessReaderTest
         testReadImpl(1000, 0, 5122);
     }
 
+    @Test
+    public void testDirectRead() throws IOException
+    {
+        final File f = File.createTempFile("testDirectRead", "1");
+        // not a multiple of the direct I/O alignment, nor of the pooled buffer size
+        byte[] expected = new byte[300 * 1024 + 123];
+        new Random(42).nextBytes(expected);
+
+        SequentialWriter writer = SequentialWriter.open(f);
+        writer.write(expected);
+        writer.finish();
+
+        try (ChannelProxy channel = new ChannelProxy(f);
+             ChannelProxy direct = channel.directCopy())
+        {
+            Assume.assumeTrue("direct I/O is unavailable", direct != null);
+            assertTrue(direct.isDirect());
+            assertEquals(expected.length, direct.size());
+
+            // unaligned, aligned and past-the-end reads, into heap and direct buffers
+            int[][] reads = { { 0, 4096 }, { 0, 100 }, { 4095, 2 }, { 4096, 65536 }, { 7, 70000 },
+                              { 100000, 200000 }, { expected.length - 10, 4096 }, { expected.length, 10 } };
+            for (int[] read : reads)
+            {
+                for (ByteBuffer buffer : new ByteBuffer[]{ ByteBuffer.allocate(read[1]), ByteBuffer.allocateDirect(read[1]) })
+                {
+                    int n = direct.read(buffer, read[0]);
+                    int expectedLength = Math.min(read[1], expected.length - read[0]);
+                    if (expectedLength == 0)
+                    {
+                        assertEquals(-1, n);
+                        continue;
+                    }
+                    assertEquals(expectedLength, n);
+                    assertEquals(n, buffer.position());
+                    buffer.flip();
+                    for (int i = 0; i < n; i++)
+                        assertEquals(expected[read[0] + i], buffer.get(i));
+                }
+            }
+
+            RandomAccessReader reader = RandomAccessReader.open(direct, 65536, -1L);
+            byte[] b = new byte[expected.length];
+            reader.readFully(b);
+            assertArrayEquals(expected, b);
+            reader.seek(12345);
+            reader.readFully(b, 0, 1000);
+            assertArrayEquals(Arrays.copyOfRange(expected, 12345, 13345), Arrays.copyOf(b, 1000));
+            reader.close();
+        }
+    }
+
     private void testReadImpl(int numIterations, int skipIterations) throws IOException
     {
         testReadImpl(numIterations, skipIterations, RandomAccessReader.DEFAULT_BUFFER_SIZE);
@@ -27,6 +27,7 @@ import org.junit.Test;
 
 import org.apache.cassandra.db.Directories;
 import org.apache.cassandra.io.sstable.format.SSTableFormat;
+import org.apache.cassandra.io.sstable.format.Version;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.Pair;
 
@@ -157,5 +158,25 @@ public class DescriptorTest
         }
     }
 
+    @Test
+    public void testVersionCompatibility()
+    {
+        SSTableFormat format = SSTableFormat.Type.BIG.info;
+        for (String version : new String[]{ "jb", "ka", "la", "ma", "xa", "xb", "xc" })
+            Assert.assertTrue(version, format.getVersion(version).isCompatible());
+        Assert.assertTrue(format.getVersion("ma").isCompatibleForStreaming());
+        Assert.assertTrue(format.getLatestVersion().isCompatibleForStreaming());
+        Assert.assertFalse(format.getVersion("la").isCompatibleForStreaming());
+
+        // the versions of later upstream releases aren't taken for those of this build
+        for (String version : new String[]{ "na", "nb", "oa" })
+            Assert.assertFalse(version, format.getVersion(version).isCompatible());
+        for (String version : new String[]{ "mb", "mc", "md" })
+        {
+            Version v = format.getVersion(version);
+            Assert.assertFalse(version, v.hasBlockedBloomFilter() || v.hasPartitionIndex() || v.hasIndexInfoOffsets());
+        }
+    }
+
 
 }
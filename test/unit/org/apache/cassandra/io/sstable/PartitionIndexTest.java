@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.io.sstable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.BufferDecoratedKey;
+import org.apache.cassandra.db.DecoratedKey;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.service.CacheService;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionIndexTest extends CQLTester
+{
+    private static List<DecoratedKey> randomKeys(Random random, int count)
+    {
+        List<DecoratedKey> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+        {
+            byte[] bytes = new byte[1 + random.nextInt(20)];
+            random.nextBytes(bytes);
+            keys.add(Murmur3Partitioner.instance.decorateKey(ByteBuffer.wrap(bytes)));
+        }
+        Collections.sort(keys);
+        // drop duplicates
+        for (int i = keys.size() - 1; i > 0; i--)
+        {
+            if (keys.get(i).equals(keys.get(i - 1)))
+                keys.remove(i);
+        }
+        return keys;
+    }
+
+    private static DecoratedKey key(long token, String key)
+    {
+        return new BufferDecoratedKey(new Murmur3Partitioner.LongToken(token), ByteBufferUtil.bytes(key));
+    }
+
+    private static PartitionIndex build(List<DecoratedKey> keys) throws IOException
+    {
+        File file = FileUtils.createTempFile("partitionIndexTest", ".db");
+        file.deleteOnExit();
+        try (PartitionIndexBuilder builder = new PartitionIndexBuilder(file.getPath()))
+        {
+            for (int i = 0; i < keys.size(); i++)
+                builder.add(keys.get(i), i);
+            builder.finish();
+        }
+        return PartitionIndex.load(file.getPath());
+    }
+
+    /**
+     * The index only stores unique prefixes, so a missing key may still map to a position, but never to the position
+     * of an equal key.
+     */
+    private static void assertAbsent(PartitionIndex index, List<DecoratedKey> keys, DecoratedKey key)
+    {
+        long position = index.get(key);
+        assertTrue(position == PartitionIndex.NOT_FOUND || keys.get((int) position).compareTo(key) != 0);
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        try (PartitionIndex index = build(Collections.<DecoratedKey>emptyList()))
+        {
+            assertEquals(0, index.size());
+            assertEquals(PartitionIndex.NOT_FOUND, index.get(key(0, "a")));
+        }
+    }
+
+    @Test
+    public void testRandomKeys() throws IOException
+    {
+        Random random = new Random(42);
+        List<DecoratedKey> keys = randomKeys(random, 100000);
+        try (PartitionIndex index = build(keys))
+        {
+            assertEquals(keys.size(), index.size());
+            for (int i = 0; i < keys.size(); i++)
+                assertEquals(i, index.get(keys.get(i)));
+
+            for (DecoratedKey missing : randomKeys(random, 10000))
+            {
+                if (Collections.binarySearch(keys, missing) < 0)
+                    assertAbsent(index, keys, missing);
+            }
+        }
+    }
+
+    @Test
+    public void testSharedTokens() throws IOException
+    {
+        // keys with the same token, some being prefixes of others
+        List<DecoratedKey> keys = new ArrayList<>();
+        for (String k : new String[]{ "a", "ab", "abc", "abd", "b" })
+            keys.add(key(Long.MIN_VALUE, k));
+        for (String k : new String[]{ "", "x", "xy", "xyz" })
+            keys.add(key(-1, k));
+        keys.add(key(0, "z"));
+        for (String k : new String[]{ "m", "mm", "mmm" })
+            keys.add(key(Long.MAX_VALUE, k));
+
+        try (PartitionIndex index = build(keys))
+        {
+            for (int i = 0; i < keys.size(); i++)
+                assertEquals(i, index.get(keys.get(i)));
+
+            for (DecoratedKey missing : new DecoratedKey[]{ key(Long.MIN_VALUE, "abcd"), key(Long.MIN_VALUE, "aa"),
+                                                            key(-1, "xx"), key(-1, "xyzz"), key(0, ""), key(0, "zz"),
+                                                            key(1, "z"), key(Long.MAX_VALUE, "") })
+                assertAbsent(index, keys, missing);
+        }
+    }
+
+    @Test
+    public void testResetAndTruncate() throws IOException
+    {
+        List<DecoratedKey> keys = randomKeys(new Random(7), 1000);
+        File file = FileUtils.createTempFile("partitionIndexTest", ".db");
+        file.deleteOnExit();
+        try (PartitionIndexBuilder builder = new PartitionIndexBuilder(file.getPath()))
+        {
+            for (int i = 0; i < keys.size(); i++)
+            {
+                builder.mark();
+                // every third key is first added with a key that is later rolled back
+                if (i % 3 == 0 && i + 1 < keys.size())
+                {
+                    builder.add(keys.get(i + 1), -2);
+                    builder.resetAndTruncate();
+                }
+                builder.add(keys.get(i), i);
+            }
+            builder.finish();
+        }
+
+        try (PartitionIndex index = PartitionIndex.load(file.getPath()))
+        {
+            assertEquals(keys.size(), index.size());
+            for (int i = 0; i < keys.size(); i++)
+                assertEquals(i, index.get(keys.get(i)));
+        }
+    }
+
+    @Test
+    public void testPointReads() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k int PRIMARY KEY, v int)");
+        for (int i = 0; i < 2000; i += 2)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, i);
+        flush();
+        for (int i = 1; i < 2000; i += 2)
+            execute("INSERT INTO %s (k, v) VALUES (?, ?)", i, i);
+        flush();
+
+        for (SSTableReader sstable : getCurrentColumnFamilyStore().getLiveSSTables())
+            assertTrue(new File(sstable.descriptor.filenameFor(Component.PARTITION_INDEX)).exists());
+        assertPointReads();
+
+        compact();
+        assertEquals(1, getCurrentColumnFamilyStore().getLiveSSTables().size());
+        assertPointReads();
+    }
+
+    private void assertPointReads() throws Throwable
+    {
+        CacheService.instance.invalidateKeyCacheForCf(getCurrentColumnFamilyStore().metadata.cfId);
+        for (int i = 0; i < 2000; i++)
+            assertRows(execute("SELECT v FROM %s WHERE k = ?", i), row(i));
+        for (int i = 2000; i < 2100; i++)
+            assertEmpty(execute("SELECT v FROM %s WHERE k = ?", i));
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Sets;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.xxhash.XXHashFactory;
+
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.gms.EchoMessage;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.utils.FBUtilities;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NettyMessagingTest
+{
+    private static final String PAYLOAD = "payload";
+
+    private static Config.InternodeCompression compression;
+    private final Map<Integer, byte[]> received = new ConcurrentHashMap<>();
+    private volatile CountDownLatch expected;
+
+    @BeforeClass
+    public static void setUp() throws Exception
+    {
+        compression = DatabaseDescriptor.internodeCompression();
+        DatabaseDescriptor.setInternodeMessagingTransport(Config.InternodeMessagingTransport.netty);
+        MessagingService.instance().listen(FBUtilities.getLocalAddress());
+    }
+
+    @AfterClass
+    public static void tearDown()
+    {
+        MessagingService.instance().shutdown();
+        DatabaseDescriptor.setInternodeMessagingTransport(Config.InternodeMessagingTransport.threads);
+        DatabaseDescriptor.setInternodeCompression(compression);
+    }
+
+    @After
+    public void resetConnections()
+    {
+        MessagingService.instance().clearMessageSinks();
+        MessagingService.instance().destroyConnectionPool(FBUtilities.getBroadcastAddress());
+    }
+
+    private void recordEchoes(int count)
+    {
+        expected = new CountDownLatch(count);
+        MessagingService.instance().addMessageSink(new IMessageSink()
+        {
+            public boolean allowOutgoingMessage(MessageOut message, int id, InetAddress to)
+            {
+                return true;
+            }
+
+            public boolean allowIncomingMessage(MessageIn message, int id)
+            {
+                if (message.verb != MessagingService.Verb.ECHO)
+                    return true;
+                received.put(id, (byte[]) message.parameters.get(PAYLOAD));
+                expected.countDown();
+                return false;
+            }
+        });
+    }
+
+    private static MessageOut<EchoMessage> echo(byte[] payload)
+    {
+        return new MessageOut<>(MessagingService.Verb.ECHO, EchoMessage.instance, EchoMessage.serializer).withParameter(PAYLOAD, payload);
+    }
+
+    private static byte[] payload(Random random, int size)
+    {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private void roundTrip(Config.InternodeCompression compression) throws Exception
+    {
+        DatabaseDescriptor.setInternodeCompression(compression);
+        OutboundTcpConnectionPool pool = MessagingService.instance().getConnectionPool(FBUtilities.getBroadcastAddress());
+        assertTrue(pool.smallMessages instanceof OutboundNettyConnection);
+
+        Random random = new Random(42);
+        int count = 2000;
+        recordEchoes(count);
+        Map<Integer, byte[]> sent = new ConcurrentHashMap<>();
+        for (int i = 0; i < count; i++)
+        {
+            // mostly small messages, with the occasional one spanning many socket reads and compressed blocks
+            byte[] payload = payload(random, i % 100 == 0 ? 256 * 1024 : random.nextInt(512));
+            MessagingService.instance().sendOneWay(echo(payload), i, FBUtilities.getBroadcastAddress());
+            sent.put(i, payload);
+        }
+
+        assertTrue(expected.await(30, TimeUnit.SECONDS));
+        assertEquals(sent.keySet(), received.keySet());
+        for (Map.Entry<Integer, byte[]> entry : sent.entrySet())
+            assertArrayEquals(entry.getValue(), received.get(entry.getKey()));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        roundTrip(Config.InternodeCompression.none);
+    }
+
+    @Test
+    public void testCompressedRoundTrip() throws Exception
+    {
+        roundTrip(Config.InternodeCompression.all);
+    }
+
+    @Test
+    public void testMessageSinkDropsOutgoing() throws Exception
+    {
+        recordEchoes(1);
+        MessagingService.instance().addMessageSink(new IMessageSink()
+        {
+            public boolean allowOutgoingMessage(MessageOut message, int id, InetAddress to)
+            {
+                return ((byte[]) message.parameters.get(PAYLOAD)).length > 0;
+            }
+
+            public boolean allowIncomingMessage(MessageIn message, int id)
+            {
+                return true;
+            }
+        });
+
+        MessagingService.instance().sendOneWay(echo(new byte[0]), 1, FBUtilities.getBroadcastAddress());
+        MessagingService.instance().sendOneWay(echo(new byte[]{ 1 }), 2, FBUtilities.getBroadcastAddress());
+        assertTrue(expected.await(30, TimeUnit.SECONDS));
+        assertEquals(1, received.size());
+        assertTrue(received.containsKey(2));
+    }
+
+    /**
+     * Feeds a stream written the way {@link OutboundTcpConnection} writes it to the netty decoder a byte at a time.
+     */
+    @Test
+    public void testDecodeLegacyCompressedStream() throws Exception
+    {
+        Random random = new Random(7);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream handshake = new DataOutputStream(bytes);
+        handshake.writeInt(MessagingService.current_version);
+        CompactEndpointSerializationHelper.serialize(FBUtilities.getBroadcastAddress(), handshake);
+        handshake.flush();
+
+        LZ4BlockOutputStream lz4 = new LZ4BlockOutputStream(bytes,
+                                                            1 << 14,
+                                                            LZ4Factory.fastestInstance().fastCompressor(),
+                                                            XXHashFactory.fastestInstance().newStreamingHash32(OutboundTcpConnection.LZ4_HASH_SEED).asChecksum(),
+                                                            true);
+        int count = 20;
+        byte[][] payloads = new byte[count][];
+        for (int i = 0; i < count; i++)
+        {
+            payloads[i] = payload(random, i * 3000);
+            DataOutputBuffer out = new DataOutputBuffer();
+            out.writeInt(MessagingService.PROTOCOL_MAGIC);
+            out.writeInt(i);
+            out.writeInt((int) System.currentTimeMillis());
+            echo(payloads[i]).serialize(out, MessagingService.current_version);
+            lz4.write(out.getData(), 0, out.getLength());
+            if (i % 5 == 0)
+                lz4.flush();
+        }
+        lz4.close();
+
+        recordEchoes(count);
+        IncomingNettyConnection connection = new IncomingNettyConnection(MessagingService.current_version, true, Sets.<Closeable>newConcurrentHashSet());
+        EmbeddedChannel channel = new EmbeddedChannel(connection);
+        ByteBuf handshakeResponse = (ByteBuf) channel.readOutbound();
+        assertEquals(MessagingService.current_version, handshakeResponse.readInt());
+        handshakeResponse.release();
+
+        for (byte b : bytes.toByteArray())
+            channel.writeInbound(Unpooled.wrappedBuffer(new byte[]{ b }));
+
+        assertTrue(expected.await(30, TimeUnit.SECONDS));
+        assertEquals(FBUtilities.getBroadcastAddress(), connection.from);
+        for (int i = 0; i < count; i++)
+            assertArrayEquals(payloads[i], received.get(i));
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testMessageLength() throws Exception
+    {
+        DataOutputBuffer out = new DataOutputBuffer();
+        out.writeInt(MessagingService.PROTOCOL_MAGIC);
+        out.writeInt(1);
+        out.writeInt(0);
+        echo(new byte[100]).serialize(out, MessagingService.current_version);
+        byte[] message = Arrays.copyOf(out.getData(), out.getLength());
+
+        for (int received = 0; received < message.length; received++)
+            assertEquals(-1, IncomingNettyConnection.messageLength(Unpooled.wrappedBuffer(message, 0, received)));
+        assertEquals(message.length, IncomingNettyConnection.messageLength(Unpooled.wrappedBuffer(message)));
+    }
+}
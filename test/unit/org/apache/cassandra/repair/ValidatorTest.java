@@ -19,21 +19,29 @@
 package org.apache.cassandra.repair;
 
 import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.BufferDecoratedKey;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.db.compaction.CompactionManager;
 import org.apache.cassandra.db.rows.UnfilteredRowIterators;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.PartitionHashes;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.net.IMessageSink;
 import org.apache.cassandra.net.MessageIn;
 import org.apache.cassandra.net.MessageOut;
@@ -41,10 +49,13 @@ import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.repair.messages.RepairMessage;
 import org.apache.cassandra.repair.messages.ValidationComplete;
 import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.service.ActiveRepairService;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.MerkleTree;
 import org.apache.cassandra.utils.concurrent.SimpleCondition;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -55,6 +66,7 @@ public class ValidatorTest
 {
     private static final String keyspace = "ValidatorTest";
     private static final String columnFamily = "Standard1";
+    private static final String columnFamilyWithHashes = "PartitionHashes";
     private static IPartitioner partitioner;
 
     @BeforeClass
@@ -63,7 +75,8 @@ public class ValidatorTest
         SchemaLoader.prepareServer();
         SchemaLoader.createKeyspace(keyspace,
                                     KeyspaceParams.simple(1),
-                                    SchemaLoader.standardCFMD(keyspace, columnFamily));
+                                    SchemaLoader.standardCFMD(keyspace, columnFamily),
+                                    SchemaLoader.standardCFMD(keyspace, columnFamilyWithHashes));
         partitioner = Schema.instance.getCFMetaData(keyspace, columnFamily).partitioner;
     }
 
@@ -176,4 +189,107 @@ public class ValidatorTest
         if (!lock.isSignaled())
             lock.await();
     }
+
+    @Test
+    public void testValidationFromPartitionHashes() throws Throwable
+    {
+        int nowInSec = FBUtilities.nowInSeconds();
+        ColumnFamilyStore withoutHashes = Keyspace.open(keyspace).getColumnFamilyStore(columnFamily);
+        ColumnFamilyStore withHashes = Keyspace.open(keyspace).getColumnFamilyStore(columnFamilyWithHashes);
+        withoutHashes.disableAutoCompaction();
+        withHashes.disableAutoCompaction();
+
+        writeSSTables(withoutHashes, nowInSec);
+        DatabaseDescriptor.setRepairPartitionHashesEnabled(true);
+        try
+        {
+            writeSSTables(withHashes, nowInSec);
+        }
+        finally
+        {
+            DatabaseDescriptor.setRepairPartitionHashesEnabled(false);
+        }
+
+        for (SSTableReader sstable : withoutHashes.getLiveSSTables())
+            assertNull(sstable.openPartitionHashes());
+        for (SSTableReader sstable : withHashes.getLiveSSTables())
+        {
+            try (PartitionHashes hashes = sstable.openPartitionHashes())
+            {
+                assertNotNull(hashes);
+                assertTrue(hashes.isFor(withHashes.metadata.partitionColumns()));
+            }
+        }
+
+        // partitions held by both sstables, and those with purgeable tombstones, are read instead; the trees may be
+        // split differently, so compare the hash of the whole range
+        byte[] expected = validate(withoutHashes, nowInSec);
+        assertArrayEquals(expected, validate(withHashes, nowInSec));
+
+        // a repair involving nodes that hash partitions with SHA-256 can't use the stored hashes
+        byte[] legacy = validate(withoutHashes, nowInSec, MessagingService.VERSION_30);
+        assertFalse(Arrays.equals(expected, legacy));
+        assertArrayEquals(legacy, validate(withHashes, nowInSec, MessagingService.VERSION_30));
+
+        new RowUpdateBuilder(withHashes.metadata, 3, "key3").clustering("c").add("val", "other").build().applyUnsafe();
+        withHashes.forceBlockingFlush();
+        assertFalse(Arrays.equals(expected, validate(withHashes, nowInSec)));
+    }
+
+    private static void writeSSTables(ColumnFamilyStore cfs, int nowInSec)
+    {
+        for (int i = 0; i < 100; i++)
+            new RowUpdateBuilder(cfs.metadata, 1, "key" + i).clustering("c").add("val", "value" + i).build().applyUnsafe();
+        for (int i = 0; i < 10; i++)
+            new RowUpdateBuilder(cfs.metadata, nowInSec, 1L, 3600, "expiring" + i).clustering("c").add("val", "value" + i).build().applyUnsafe();
+        for (int i = 0; i < 10; i++)
+            RowUpdateBuilder.deleteRowAt(cfs.metadata, 1, nowInSec + 3600, "deleted" + i, "c").applyUnsafe();
+        for (int i = 0; i < 10; i++)
+            RowUpdateBuilder.deleteRowAt(cfs.metadata, 1, nowInSec - 3600, "purged" + i, "c").applyUnsafe();
+        cfs.forceBlockingFlush();
+
+        for (int i = 90; i < 120; i++)
+            new RowUpdateBuilder(cfs.metadata, 2, "key" + i).clustering("c").add("val", "updated" + i).build().applyUnsafe();
+        cfs.forceBlockingFlush();
+    }
+
+    private static byte[] validate(ColumnFamilyStore cfs, int gcBefore) throws Throwable
+    {
+        return validate(cfs, gcBefore, MessagingService.current_version);
+    }
+
+    private static byte[] validate(ColumnFamilyStore cfs, int gcBefore, int digestVersion) throws Throwable
+    {
+        Range<Token> range = new Range<>(partitioner.getMinimumToken(), partitioner.getMinimumToken());
+        UUID parentSession = UUID.randomUUID();
+        ActiveRepairService.instance.registerParentRepairSession(parentSession, Collections.singletonList(cfs), Collections.singletonList(range), false);
+        final RepairJobDesc desc = new RepairJobDesc(parentSession, UUID.randomUUID(), keyspace, cfs.name, range);
+
+        final SimpleCondition lock = new SimpleCondition();
+        final AtomicReference<MerkleTree> tree = new AtomicReference<>();
+        MessagingService.instance().addMessageSink(new IMessageSink()
+        {
+            public boolean allowOutgoingMessage(MessageOut message, int id, InetAddress to)
+            {
+                if (message.verb == MessagingService.Verb.REPAIR_MESSAGE && desc.equals(((RepairMessage) message.payload).desc))
+                {
+                    tree.set(((ValidationComplete) message.payload).tree);
+                    lock.signalAll();
+                }
+                return false;
+            }
+
+            public boolean allowIncomingMessage(MessageIn message, int id)
+            {
+                return false;
+            }
+        });
+
+        CompactionManager.instance.submitValidation(cfs, new Validator(desc, InetAddress.getByName("127.0.0.2"), gcBefore, digestVersion)).get();
+        lock.await();
+        MessagingService.instance().clearMessageSinks();
+        ActiveRepairService.instance.removeParentRepairSession(parentSession);
+        assertNotNull(tree.get());
+        return tree.get().hash(range);
+    }
 }
@@ -19,13 +19,16 @@
 package org.apache.cassandra.schema;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.HashSet;
 
 import org.apache.cassandra.SchemaLoader;
 import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.ColumnDefinition;
 import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.UnfilteredRowIterators;
 import org.apache.cassandra.db.partitions.PartitionUpdate;
 import org.apache.cassandra.db.marshal.AsciiType;
@@ -42,6 +45,7 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class SchemaKeyspaceTest
 {
@@ -128,6 +132,43 @@ public class SchemaKeyspaceTest
         }
     }
 
+    @Test
+    public void testMemtableOption() throws Exception
+    {
+        CFMetaData cfm = Schema.instance.getCFMetaData(KEYSPACE1, CF_STANDARD1);
+        KeyspaceMetadata keyspace = Schema.instance.getKSMetaData(KEYSPACE1);
+        assertEquals(MemtableParams.SKIPLIST, cfm.params.memtable);
+
+        // the default isn't written, so that the rows are those of nodes that don't know the option
+        PartitionUpdate skiplist = tablesUpdate(SchemaKeyspace.makeCreateTableMutation(keyspace, cfm, 1));
+        ColumnDefinition memtable = Schema.instance.getCFMetaData(SchemaKeyspace.NAME, SchemaKeyspace.TABLES).getColumnDefinition(ByteBufferUtil.bytes("memtable"));
+        for (Row row : skiplist)
+            assertNull(row.getComplexColumnData(memtable));
+        assertEquals(MemtableParams.SKIPLIST, tableFrom(skiplist, cfm).params.memtable);
+
+        CFMetaData trieCfm = cfm.copy().params(TableParams.builder(cfm.params).memtable(MemtableParams.TRIE).build());
+        PartitionUpdate trie = tablesUpdate(SchemaKeyspace.makeUpdateTableMutation(keyspace, cfm, trieCfm, 2, false));
+        assertEquals(MemtableParams.TRIE, tableFrom(PartitionUpdate.merge(Arrays.asList(skiplist, trie)), cfm).params.memtable);
+
+        // reverting to the default removes the option
+        PartitionUpdate reverted = tablesUpdate(SchemaKeyspace.makeUpdateTableMutation(keyspace, trieCfm, cfm, 3, false));
+        assertEquals(MemtableParams.SKIPLIST, tableFrom(PartitionUpdate.merge(Arrays.asList(skiplist, trie, reverted)), cfm).params.memtable);
+    }
+
+    private static PartitionUpdate tablesUpdate(Mutation mutation)
+    {
+        return mutation.getPartitionUpdate(Schema.instance.getId(SchemaKeyspace.NAME, SchemaKeyspace.TABLES));
+    }
+
+    private static CFMetaData tableFrom(PartitionUpdate tables, CFMetaData cfm) throws Exception
+    {
+        KeyspaceMetadata keyspace = Schema.instance.getKSMetaData(cfm.ksName);
+        Mutation columns = SchemaKeyspace.makeCreateTableMutation(keyspace, cfm, 0);
+        PartitionUpdate serializedCD = columns.getPartitionUpdate(Schema.instance.getId(SchemaKeyspace.NAME, SchemaKeyspace.COLUMNS));
+        return SchemaKeyspace.createTableFromTablePartitionAndColumnsPartition(UnfilteredRowIterators.filter(tables.unfilteredIterator(), FBUtilities.nowInSeconds()),
+                                                                               UnfilteredRowIterators.filter(serializedCD.unfilteredIterator(), FBUtilities.nowInSeconds()));
+    }
+
     private static void checkInverses(CFMetaData cfm) throws Exception
     {
         KeyspaceMetadata keyspace = Schema.instance.getKSMetaData(cfm.ksName);
@@ -85,7 +85,7 @@ public class SerializationsTest extends AbstractSerializationsTester
 
     private void testValidationRequestWrite() throws IOException
     {
-        ValidationRequest message = new ValidationRequest(DESC, 1234);
+        ValidationRequest message = new ValidationRequest(DESC, 1234, getVersion());
         testRepairMessageWrite("service.ValidationRequest.bin", message);
     }
 
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service.paxos;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Iterables;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.util.FileUtils;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.UUIDGen;
+
+import static org.junit.Assert.*;
+
+public class PaxosStateStoreTest
+{
+    private static final String KEYSPACE = "PaxosStateStoreTest";
+    private static final String TABLE = "Standard1";
+
+    private static CFMetaData metadata;
+    private File directory;
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(1),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE));
+        metadata = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).metadata;
+    }
+
+    @Before
+    public void createDirectory()
+    {
+        directory = new File(DatabaseDescriptor.getPaxosStateDirectory(), "PaxosStateStoreTest");
+        if (directory.exists())
+            FileUtils.deleteRecursive(directory);
+        FileUtils.createDirectory(directory);
+    }
+
+    @Test
+    public void testSaveAndLoad()
+    {
+        PaxosStateStore store = PaxosStateStore.open(directory, 1024 * 1024, false);
+        DecoratedKey key = Util.dk("key");
+        assertEmpty(store.load(key, metadata));
+
+        Commit promise = Commit.newPrepare(key, metadata, ballot(1));
+        store.savePromise(promise);
+        PaxosState state = store.load(key, metadata);
+        assertEquals(promise.ballot, state.promised().ballot);
+        assertEquals(promise.ballot, store.loadPromise(key, metadata).ballot);
+        assertEmpty(state.accepted());
+        assertEmpty(state.mostRecentCommit());
+
+        Commit proposal = Commit.newProposal(ballot(1), update(key, 1));
+        store.saveProposal(proposal);
+        state = store.load(key, metadata);
+        assertCommit(proposal, state.accepted());
+        assertEmpty(state.mostRecentCommit());
+
+        // the commit clears the proposal it follows
+        Commit commit = Commit.newProposal(ballot(2), update(key, 2));
+        store.saveCommit(commit);
+        state = store.load(key, metadata);
+        assertEquals(promise.ballot, state.promised().ballot);
+        assertEmpty(state.accepted());
+        assertCommit(commit, state.mostRecentCommit());
+
+        // other partitions are unaffected
+        assertEmpty(store.load(Util.dk("other"), metadata));
+        assertEquals(1, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testReconcilesByBallot()
+    {
+        PaxosStateStore store = PaxosStateStore.open(directory, 1024 * 1024, false);
+        DecoratedKey key = Util.dk("key");
+
+        store.savePromise(Commit.newPrepare(key, metadata, ballot(5)));
+        store.savePromise(Commit.newPrepare(key, metadata, ballot(3)));
+        assertEquals(ballot(5), store.loadPromise(key, metadata).ballot);
+
+        Commit proposal = Commit.newProposal(ballot(5), update(key, 5));
+        store.saveProposal(proposal);
+        store.saveProposal(Commit.newProposal(ballot(4), update(key, 4)));
+        assertCommit(proposal, store.load(key, metadata).accepted());
+
+        // an older commit doesn't clear a newer proposal
+        Commit commit = Commit.newProposal(ballot(4), update(key, 4));
+        store.saveCommit(commit);
+        PaxosState state = store.load(key, metadata);
+        assertCommit(proposal, state.accepted());
+        assertCommit(commit, state.mostRecentCommit());
+        store.close();
+    }
+
+    @Test
+    public void testReplay() throws IOException
+    {
+        PaxosStateStore store = PaxosStateStore.open(directory, 1024, false);
+        for (int i = 0; i < 50; i++)
+        {
+            DecoratedKey key = Util.dk("key" + i);
+            store.savePromise(Commit.newPrepare(key, metadata, ballot(i + 1)));
+            store.saveProposal(Commit.newProposal(ballot(i + 1), update(key, i)));
+            if (i % 2 == 0)
+                store.saveCommit(Commit.newProposal(ballot(i + 1), update(key, i)));
+        }
+        assertTrue(store.segmentCount() > 1);
+        store.close();
+
+        // a record torn by a crash is ignored
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        File last = files[0];
+        for (File file : files)
+            if (segmentId(file) > segmentId(last))
+                last = file;
+        try (FileOutputStream out = new FileOutputStream(last, true))
+        {
+            out.write(new byte[]{ 0, 0, 0, 42, 1, 2, 3 });
+        }
+
+        store = PaxosStateStore.open(directory, 1024, false);
+        assertEquals(50, store.size());
+        for (int i = 0; i < 50; i++)
+        {
+            DecoratedKey key = Util.dk("key" + i);
+            PaxosState state = store.load(key, metadata);
+            assertEquals(ballot(i + 1), state.promised().ballot);
+            if (i % 2 == 0)
+            {
+                assertEmpty(state.accepted());
+                assertCommit(Commit.newProposal(ballot(i + 1), update(key, i)), state.mostRecentCommit());
+            }
+            else
+            {
+                assertCommit(Commit.newProposal(ballot(i + 1), update(key, i)), state.accepted());
+                assertEmpty(state.mostRecentCommit());
+            }
+        }
+
+        // still appendable after the torn record
+        DecoratedKey key = Util.dk("key0");
+        Commit commit = Commit.newProposal(ballot(100), update(key, 100));
+        store.saveCommit(commit);
+        store.close();
+        store = PaxosStateStore.open(directory, 1024, false);
+        assertCommit(commit, store.load(key, metadata).mostRecentCommit());
+        store.close();
+    }
+
+    @Test
+    public void testConcurrentSyncedSaves() throws Exception
+    {
+        final PaxosStateStore store = PaxosStateStore.open(directory, 4096, true);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++)
+        {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++)
+                {
+                    DecoratedKey key = Util.dk("key" + thread + '-' + i);
+                    store.saveProposal(Commit.newProposal(ballot(i + 1), update(key, i)));
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+        executor.shutdown();
+        assertTrue(store.segmentCount() > 1);
+        store.close();
+
+        PaxosStateStore reopened = PaxosStateStore.open(directory, 4096, true);
+        assertEquals(400, reopened.size());
+        for (int t = 0; t < 8; t++)
+        {
+            for (int i = 0; i < 50; i++)
+            {
+                DecoratedKey key = Util.dk("key" + t + '-' + i);
+                assertCommit(Commit.newProposal(ballot(i + 1), update(key, i)), reopened.load(key, metadata).accepted());
+            }
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testMaintain()
+    {
+        PaxosStateStore store = PaxosStateStore.open(directory, 1024, false);
+        DecoratedKey live = Util.dk("live");
+        Commit commit = Commit.newProposal(ballot(1), update(live, 1));
+        store.saveCommit(commit);
+
+        // superseded promises fill up many segments
+        DecoratedKey key = Util.dk("key");
+        for (int i = 0; i < 200; i++)
+            store.savePromise(Commit.newPrepare(key, metadata, ballot(i + 1)));
+        int segments = store.segmentCount();
+        assertTrue(segments > 2);
+
+        // the live commit is moved, and all but the current segment deleted
+        store.maintain();
+        assertEquals(1, store.segmentCount());
+        assertEquals(directory.listFiles().length, store.segmentCount());
+        assertCommit(commit, store.load(live, metadata).mostRecentCommit());
+        assertEquals(ballot(200), store.loadPromise(key, metadata).ballot);
+        store.close();
+
+        store = PaxosStateStore.open(directory, 1024, false);
+        assertCommit(commit, store.load(live, metadata).mostRecentCommit());
+        assertEquals(ballot(200), store.loadPromise(key, metadata).ballot);
+
+        // everything expires eventually
+        store.maintain(Integer.MAX_VALUE);
+        assertEquals(0, store.size());
+        assertEmpty(store.load(live, metadata));
+        store.close();
+    }
+
+    @Test
+    public void testMigration()
+    {
+        File stateDirectory = DatabaseDescriptor.getPaxosStateDirectory();
+        FileUtils.deleteRecursive(stateDirectory);
+        FileUtils.createDirectory(stateDirectory);
+        ColumnFamilyStore table = Keyspace.open(SystemKeyspace.NAME).getColumnFamilyStore(SystemKeyspace.PAXOS);
+        table.truncateBlocking();
+
+        DecoratedKey key = Util.dk("migrated");
+        Commit promise = Commit.newPrepare(key, metadata, ballot(2));
+        Commit commit = Commit.newProposal(ballot(1), update(key, 1));
+        SystemKeyspace.savePaxosPromise(promise);
+        SystemKeyspace.savePaxosCommit(commit);
+
+        DatabaseDescriptor.setPaxosStateLogEnabled(true);
+        try
+        {
+            // the state in system.paxos is moved to the log
+            PaxosState.startup();
+            assertNotNull(PaxosState.store());
+            assertTrue(table.isEmpty());
+            PaxosState state = PaxosState.store().load(key, metadata);
+            assertEquals(promise.ballot, state.promised().ballot);
+            assertCommit(commit, state.mostRecentCommit());
+
+            Commit proposal = Commit.newProposal(ballot(3), update(key, 3));
+            assertTrue(PaxosState.prepare(Commit.newPrepare(key, metadata, ballot(3))).promised);
+            assertTrue(PaxosState.propose(proposal));
+            assertCommit(proposal, PaxosState.store().load(key, metadata).accepted());
+        }
+        finally
+        {
+            DatabaseDescriptor.setPaxosStateLogEnabled(false);
+        }
+
+        // and back to system.paxos once the log is disabled
+        PaxosState.startup();
+        assertNull(PaxosState.store());
+        assertFalse(PaxosStateStore.exists(stateDirectory));
+        PaxosState state = SystemKeyspace.loadPaxosState(key, metadata);
+        assertEquals(ballot(3), state.promised().ballot);
+        assertCommit(Commit.newProposal(ballot(3), update(key, 3)), state.accepted());
+        assertCommit(commit, state.mostRecentCommit());
+    }
+
+    private static long segmentId(File file)
+    {
+        // paxos-<id>-<version>.log
+        return Long.parseLong(file.getName().split("-")[1]);
+    }
+
+    private static UUID ballot(long millis)
+    {
+        return UUIDGen.getTimeUUID(millis);
+    }
+
+    private static PartitionUpdate update(DecoratedKey key, int value)
+    {
+        RowUpdateBuilder builder = new RowUpdateBuilder(metadata, value, key.getKey());
+        builder.clustering("c").add("val", ByteBufferUtil.bytes(value));
+        return Iterables.getOnlyElement(builder.build().getPartitionUpdates());
+    }
+
+    private static void assertEmpty(PaxosState state)
+    {
+        assertEmpty(state.promised());
+        assertEmpty(state.accepted());
+        assertEmpty(state.mostRecentCommit());
+    }
+
+    private static void assertEmpty(Commit commit)
+    {
+        assertEquals(0, UUIDGen.unixTimestamp(commit.ballot));
+    }
+
+    private static void assertCommit(Commit expected, Commit actual)
+    {
+        assertEquals(expected.ballot, actual.ballot);
+        assertEquals(PartitionUpdate.toBytes(expected.update, MessagingService.current_version),
+                     PartitionUpdate.toBytes(actual.update, MessagingService.current_version));
+    }
+}
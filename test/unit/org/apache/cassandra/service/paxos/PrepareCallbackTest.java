@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.service.paxos;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+
+import com.google.common.collect.Iterables;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.SchemaLoader;
+import org.apache.cassandra.Util;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.db.*;
+import org.apache.cassandra.db.partitions.FilteredPartition;
+import org.apache.cassandra.db.partitions.PartitionUpdate;
+import org.apache.cassandra.db.partitions.SingletonUnfilteredPartitionIterator;
+import org.apache.cassandra.db.rows.Row;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.io.IVersionedSerializer;
+import org.apache.cassandra.io.util.DataInputBuffer;
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.net.MessageIn;
+import org.apache.cassandra.net.MessagingService;
+import org.apache.cassandra.schema.KeyspaceParams;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.apache.cassandra.utils.UUIDGen;
+
+import static org.junit.Assert.*;
+
+public class PrepareCallbackTest
+{
+    private static final String KEYSPACE = "PrepareCallbackTest";
+    private static final String TABLE = "Standard1";
+
+    private static CFMetaData metadata;
+    private static DecoratedKey key;
+
+    @BeforeClass
+    public static void defineSchema() throws ConfigurationException
+    {
+        SchemaLoader.prepareServer();
+        SchemaLoader.createKeyspace(KEYSPACE,
+                                    KeyspaceParams.simple(3),
+                                    SchemaLoader.standardCFMD(KEYSPACE, TABLE));
+        metadata = Keyspace.open(KEYSPACE).getColumnFamilyStore(TABLE).metadata;
+        key = Util.dk("key");
+    }
+
+    @Test
+    public void testReadResult() throws Throwable
+    {
+        SinglePartitionReadCommand<?> command = command();
+        PrepareCallback callback = new PrepareCallback(key, metadata, 2, ConsistencyLevel.SERIAL);
+        callback.response(message("127.0.0.1", response(true, data(1))));
+        callback.response(message("127.0.0.2", response(true, data(1))));
+        callback.await();
+
+        assertTrue(callback.promised);
+        FilteredPartition current = callback.readResult(command);
+        assertNotNull(current);
+        assertEquals(1, current.rowCount());
+        Row row = Iterables.getOnlyElement(current);
+        assertEquals(ByteBufferUtil.bytes(1), row.getCell(metadata.getColumnDefinition(ByteBufferUtil.bytes("val"))).value());
+    }
+
+    @Test
+    public void testReadResultDisagreement() throws Throwable
+    {
+        PrepareCallback callback = new PrepareCallback(key, metadata, 2, ConsistencyLevel.SERIAL);
+        callback.response(message("127.0.0.1", response(true, data(1))));
+        callback.response(message("127.0.0.2", response(true, data(2))));
+        callback.await();
+
+        assertTrue(callback.promised);
+        assertNull(callback.readResult(command()));
+    }
+
+    @Test
+    public void testReadResultMissingRead() throws Throwable
+    {
+        PrepareCallback callback = new PrepareCallback(key, metadata, 2, ConsistencyLevel.SERIAL);
+        callback.response(message("127.0.0.1", response(true, data(1))));
+        callback.response(message("127.0.0.2", response(true, null)));
+        callback.await();
+
+        assertTrue(callback.promised);
+        assertNull(callback.readResult(command()));
+    }
+
+    @Test
+    public void testSerialization() throws IOException
+    {
+        SinglePartitionReadCommand<?> command = command();
+        PrepareResponse response = response(true, data(1));
+
+        for (int version : new int[]{ MessagingService.VERSION_30, MessagingService.current_version })
+        {
+            try (DataOutputBuffer out = new DataOutputBuffer())
+            {
+                PrepareResponse.serializer.serialize(response, out, version);
+                assertEquals(out.getLength(), PrepareResponse.serializer.serializedSize(response, version));
+            }
+        }
+
+        PrepareResponse deserialized = roundTrip(PrepareResponse.serializer, response, MessagingService.current_version);
+        assertTrue(deserialized.promised);
+        assertNotNull(deserialized.read);
+        assertEquals(response.read.digest(command), deserialized.read.digest(command));
+
+        // peers that don't know about PAXOS_PREPARE_AND_READ never get the read
+        deserialized = roundTrip(PrepareResponse.serializer, response, MessagingService.VERSION_30);
+        assertTrue(deserialized.promised);
+        assertNull(deserialized.read);
+
+        PrepareAndRead prepare = new PrepareAndRead(Commit.newPrepare(key, metadata, UUIDGen.getTimeUUID()), command);
+        PrepareAndRead deserializedPrepare = roundTrip(PrepareAndRead.serializer, prepare, MessagingService.current_version);
+        assertEquals(prepare.toPrepare.ballot, deserializedPrepare.toPrepare.ballot);
+        assertEquals(key, deserializedPrepare.toPrepare.update.partitionKey());
+        assertEquals(command.partitionKey(), deserializedPrepare.read.partitionKey());
+        assertEquals(command.nowInSec(), deserializedPrepare.read.nowInSec());
+    }
+
+    private static <T> T roundTrip(IVersionedSerializer<T> serializer, T value, int version) throws IOException
+    {
+        try (DataOutputBuffer out = new DataOutputBuffer())
+        {
+            serializer.serialize(value, out, version);
+            try (DataInputBuffer in = new DataInputBuffer(out.buffer(), false))
+            {
+                return serializer.deserialize(in, version);
+            }
+        }
+    }
+
+    private static SinglePartitionReadCommand<?> command()
+    {
+        return SinglePartitionReadCommand.fullPartitionRead(metadata, FBUtilities.nowInSeconds(), key);
+    }
+
+    private static ReadResponse data(int value)
+    {
+        PartitionUpdate update = new RowUpdateBuilder(metadata, 0, key.getKey()).clustering("c")
+                                                                               .add("val", ByteBufferUtil.bytes(value))
+                                                                               .buildUpdate();
+        return ReadResponse.createDataResponse(new SingletonUnfilteredPartitionIterator(update.unfilteredIterator(), false));
+    }
+
+    private static PrepareResponse response(boolean promised, ReadResponse read)
+    {
+        return new PrepareResponse(promised, Commit.emptyCommit(key, metadata), Commit.emptyCommit(key, metadata), read);
+    }
+
+    private static MessageIn<PrepareResponse> message(String from, PrepareResponse response) throws IOException
+    {
+        return MessageIn.create(InetAddress.getByName(from), response, Collections.emptyMap(), MessagingService.Verb.REQUEST_RESPONSE, MessagingService.current_version);
+    }
+}
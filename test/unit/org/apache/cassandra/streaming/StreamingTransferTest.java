@@ -17,6 +17,7 @@
  */
 package org.apache.cassandra.streaming;
 
+import java.io.File;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.util.*;
@@ -46,14 +47,20 @@ import org.apache.cassandra.db.partitions.*;
 import org.apache.cassandra.dht.IPartitioner;
 import org.apache.cassandra.dht.Range;
 import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.io.sstable.Component;
 import org.apache.cassandra.io.sstable.format.SSTableReader;
+import org.apache.cassandra.net.MessagingService;
 import org.apache.cassandra.schema.KeyspaceParams;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.streaming.messages.OutgoingFileMessage;
+import org.apache.cassandra.streaming.messages.StreamMessage;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.concurrent.Refs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 @RunWith(OrderedJUnit4ClassRunner.class)
@@ -67,6 +74,7 @@ public class StreamingTransferTest
     public static final String CF_COUNTER = "Counter1";
     public static final String CF_STANDARDINT = "StandardInteger1";
     public static final String CF_INDEX = "Indexed1";
+    public static final String CF_ENTIRE = "EntireSSTable1";
     public static final String KEYSPACE_CACHEKEY = "KeyStreamingTransferTestSpace";
     public static final String CF_STANDARD2 = "Standard2";
     public static final String CF_STANDARD3 = "Standard3";
@@ -88,7 +96,8 @@ public class StreamingTransferTest
                                                       .addClusteringColumn("cols", Int32Type.instance)
                                                       .addRegularColumn("val", BytesType.instance)
                                                       .build(),
-                                    SchemaLoader.compositeIndexCFMD(KEYSPACE1, CF_INDEX, true));
+                                    SchemaLoader.compositeIndexCFMD(KEYSPACE1, CF_INDEX, true),
+                                    SchemaLoader.standardCFMD(KEYSPACE1, CF_ENTIRE));
         SchemaLoader.createKeyspace(KEYSPACE2,
                                     KeyspaceParams.simple(1));
         SchemaLoader.createKeyspace(KEYSPACE_CACHEKEY,
@@ -346,6 +355,100 @@ public class StreamingTransferTest
         doTransferTable(true);
     }
 
+    @Test
+    public void testTransferEntireSSTable() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_ENTIRE);
+        for (int i = 0; i < 100; i++)
+        {
+            new RowUpdateBuilder(cfs.metadata, FBUtilities.timestampMicros(), "key" + i)
+                .clustering("col")
+                .add("val", ByteBufferUtil.bytes(i))
+                .build()
+                .applyUnsafe();
+        }
+        cfs.forceBlockingFlush();
+        SSTableReader sstable = Iterables.getOnlyElement(cfs.getLiveSSTables());
+        cfs.clearUnsafe();
+
+        DatabaseDescriptor.setStreamEntireSSTables(true);
+        MessagingService.instance().setVersion(LOCAL, MessagingService.current_version);
+        try
+        {
+            // the full ring covers every partition of the sstable, so it is sent as is
+            IPartitioner p = sstable.getPartitioner();
+            List<Range<Token>> ranges = Collections.singletonList(new Range<>(p.getMinimumToken(), p.getMinimumToken()));
+            OutgoingFileMessage message = new OutgoingFileMessage(sstable.ref(), 0, 100, sstable.getPositionsForRanges(ranges), 42, false, true);
+            assertTrue(message.header.isEntireSSTable());
+            assertEquals(sstable.onDiskLength(), message.header.components.sizeOf(Component.DATA));
+            message.complete();
+
+            long repairedAt = System.currentTimeMillis();
+            Refs<SSTableReader> refs = Refs.tryRef(Arrays.asList(sstable));
+            List<StreamSession.SSTableStreamingSections> details = new ArrayList<>();
+            details.add(new StreamSession.SSTableStreamingSections(refs.get(sstable), sstable.getPositionsForRanges(ranges), 100, repairedAt));
+            new StreamPlan("StreamingTransferTest").transferFiles(LOCAL, details).execute().get();
+
+            SSTableReader received = Iterables.getOnlyElement(cfs.getLiveSSTables());
+            assertTrue(received.descriptor.generation != sstable.descriptor.generation);
+            assertEquals(sstable.onDiskLength(), received.onDiskLength());
+            assertEquals(repairedAt, received.getSSTableMetadata().repairedAt);
+            assertTrue(new File(received.descriptor.filenameFor(Component.SUMMARY)).exists());
+            assertEquals(100, Util.getAll(Util.cmd(cfs).build()).size());
+            for (int i = 0; i < 100; i++)
+                assertEquals(1, Util.getAll(Util.cmd(cfs, "key" + i).build()).size());
+        }
+        finally
+        {
+            DatabaseDescriptor.setStreamEntireSSTables(false);
+            MessagingService.instance().resetVersion(LOCAL);
+        }
+    }
+
+    @Test
+    public void testPartialSSTableIsNotSentEntirely() throws Exception
+    {
+        ColumnFamilyStore cfs = Keyspace.open(KEYSPACE1).getColumnFamilyStore(CF_ENTIRE);
+        cfs.truncateBlocking();
+        for (int i = 0; i < 10; i++)
+        {
+            new RowUpdateBuilder(cfs.metadata, FBUtilities.timestampMicros(), "key" + i)
+                .clustering("col")
+                .add("val", ByteBufferUtil.bytes(i))
+                .build()
+                .applyUnsafe();
+        }
+        cfs.forceBlockingFlush();
+        SSTableReader sstable = Iterables.getOnlyElement(cfs.getLiveSSTables());
+
+        IPartitioner p = sstable.getPartitioner();
+        List<Range<Token>> ranges = Collections.singletonList(new Range<>(p.getMinimumToken(), sstable.first.getToken()));
+        List<Range<Token>> all = Collections.singletonList(new Range<>(p.getMinimumToken(), p.getMinimumToken()));
+
+        // an sstable isn't sent entirely unless enabled
+        OutgoingFileMessage message = new OutgoingFileMessage(sstable.ref(), 0, 10, sstable.getPositionsForRanges(all), 0, false, true);
+        assertFalse(message.header.isEntireSSTable());
+        message.complete();
+
+        DatabaseDescriptor.setStreamEntireSSTables(true);
+        try
+        {
+            message = new OutgoingFileMessage(sstable.ref(), 0, 1, sstable.getPositionsForRanges(ranges), 0, false, true);
+            assertFalse(message.header.isEntireSSTable());
+            message.complete();
+
+            // nor to a peer that doesn't support it
+            message = new OutgoingFileMessage(sstable.ref(), 0, 10, sstable.getPositionsForRanges(all), 0, false, false);
+            assertFalse(message.header.isEntireSSTable());
+            assertEquals(StreamMessage.Type.FILE, message.type);
+            message.complete();
+        }
+        finally
+        {
+            DatabaseDescriptor.setStreamEntireSSTables(false);
+        }
+    }
+
     /*
     @Test
     public void testTransferTableCounter() throws Exception
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.transport;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.Mutation;
+import org.apache.cassandra.db.RowUpdateBuilder;
+import org.apache.cassandra.service.StorageProxy;
+import org.apache.cassandra.transport.messages.ResultMessage;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncWriteTest extends CQLTester
+{
+    @BeforeClass
+    public static void setUp()
+    {
+        requireNetwork();
+    }
+
+    @Test
+    public void testMutateAsync() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int PRIMARY KEY, v int)");
+        CFMetaData cfm = currentTableMetadata();
+
+        int permits = StorageProxy.getAvailableAsyncWritePermits();
+        Mutation mutation = new RowUpdateBuilder(cfm, 0, 1).add("v", 1).build();
+        assertNull(StorageProxy.mutateAsync(Collections.singletonList(mutation), ConsistencyLevel.ONE).get());
+        // the write gave its permit back once completed
+        assertEquals(permits, StorageProxy.getAvailableAsyncWritePermits());
+
+        assertRows(execute("SELECT pk, v FROM %s"), row(1, 1));
+    }
+
+    @Test
+    public void testNativeProtocolWrites() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int PRIMARY KEY, v int)");
+
+        try (SimpleClient client = new SimpleClient(nativeAddr.getHostAddress(), nativePort))
+        {
+            client.connect(false);
+
+            ResultMessage result = client.execute(table("INSERT INTO %s (pk, v) VALUES (0, 0)"), ConsistencyLevel.ONE);
+            assertTrue(result instanceof ResultMessage.Void);
+
+            ResultMessage.Prepared prepared = client.prepare(table("INSERT INTO %s (pk, v) VALUES (?, ?)"));
+            for (int i = 1; i < 10; i++)
+            {
+                result = client.executePrepared(prepared.statementId.bytes,
+                                                 Arrays.asList(ByteBufferUtil.bytes(i), ByteBufferUtil.bytes(i)),
+                                                 ConsistencyLevel.ONE);
+                assertTrue(result instanceof ResultMessage.Void);
+            }
+
+            // errors raised while executing the write are returned to the client rather than dropped
+            try
+            {
+                client.execute(table("INSERT INTO %s (pk, v) VALUES (0, 0)"), ConsistencyLevel.SERIAL);
+                fail("Expected an invalid request error");
+            }
+            catch (RuntimeException e)
+            {
+                // expected
+            }
+
+            // the connection is still usable afterwards
+            result = client.execute(table("UPDATE %s SET v = 10 WHERE pk = 0"), ConsistencyLevel.ONE);
+            assertTrue(result instanceof ResultMessage.Void);
+        }
+
+        assertEquals(10, execute("SELECT * FROM %s").size());
+        assertRows(execute("SELECT v FROM %s WHERE pk = 0"), row(10));
+    }
+
+    private String table(String query)
+    {
+        return String.format(query, KEYSPACE + "." + currentTable());
+    }
+}
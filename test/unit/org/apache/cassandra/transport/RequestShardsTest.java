@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.transport;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import org.apache.cassandra.config.DatabaseDescriptor;
+import org.apache.cassandra.cql3.CQLTester;
+import org.apache.cassandra.cql3.QueryOptions;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Token;
+import org.apache.cassandra.transport.messages.ExecuteMessage;
+import org.apache.cassandra.transport.messages.ResultMessage;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.MD5Digest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestShardsTest extends CQLTester
+{
+    @BeforeClass
+    public static void setUp()
+    {
+        DatabaseDescriptor.setNativeTransportRequestShards(4);
+        requireNetwork();
+    }
+
+    @Test
+    public void testShardOf()
+    {
+        assertEquals(0, RequestShards.shardOf(new Murmur3Partitioner.LongToken(Long.MIN_VALUE), 4));
+        assertEquals(1, RequestShards.shardOf(new Murmur3Partitioner.LongToken(-1L), 4));
+        assertEquals(2, RequestShards.shardOf(new Murmur3Partitioner.LongToken(0L), 4));
+        assertEquals(3, RequestShards.shardOf(new Murmur3Partitioner.LongToken(Long.MAX_VALUE), 4));
+        assertEquals(6, RequestShards.shardOf(new Murmur3Partitioner.LongToken(Long.MAX_VALUE), 7));
+
+        // shards are contiguous ranges of the ring
+        int previous = 0;
+        for (long token = Long.MIN_VALUE; token < Long.MAX_VALUE - Long.MAX_VALUE / 50; token += Long.MAX_VALUE / 50)
+        {
+            int shard = RequestShards.shardOf(new Murmur3Partitioner.LongToken(token), 3);
+            assertTrue(shard == previous || shard == previous + 1);
+            previous = shard;
+        }
+        assertEquals(2, previous);
+    }
+
+    @Test
+    public void testRoutingToken() throws Throwable
+    {
+        createTable("CREATE TABLE %s (k1 int, k2 text, c int, v int, PRIMARY KEY ((k1, k2), c))");
+
+        try (SimpleClient client = new SimpleClient(nativeAddr.getHostAddress(), nativePort))
+        {
+            client.connect(false);
+
+            ResultMessage.Prepared prepared = client.prepare(table("SELECT v FROM %s WHERE k2 = ? AND c = ? AND k1 = ?"));
+            ExecuteMessage execute = new ExecuteMessage(prepared.statementId,
+                                                        QueryOptions.forInternalCalls(Arrays.asList(ByteBufferUtil.bytes("a"),
+                                                                                                    ByteBufferUtil.bytes(1),
+                                                                                                    ByteBufferUtil.bytes(2))));
+            Token expected = currentTableMetadata().partitioner.getToken(CompositeType.build(ByteBufferUtil.bytes(2), ByteBufferUtil.bytes("a")));
+            assertEquals(expected, execute.routingToken());
+
+            // an unset partition key value can't be routed
+            execute = new ExecuteMessage(prepared.statementId,
+                                         QueryOptions.forInternalCalls(Arrays.asList(ByteBufferUtil.bytes("a"),
+                                                                                     ByteBufferUtil.bytes(1),
+                                                                                     ByteBufferUtil.UNSET_BYTE_BUFFER)));
+            assertNull(execute.routingToken());
+
+            // neither can a statement that doesn't restrict the partition key with bind markers
+            prepared = client.prepare(table("SELECT v FROM %s WHERE v = ? ALLOW FILTERING"));
+            execute = new ExecuteMessage(prepared.statementId, QueryOptions.forInternalCalls(Arrays.asList(ByteBufferUtil.bytes(2))));
+            assertNull(execute.routingToken());
+
+            // nor one that isn't prepared, which is left to fail when executed
+            execute = new ExecuteMessage(MD5Digest.compute("unknown"), QueryOptions.forInternalCalls(Arrays.asList(ByteBufferUtil.bytes(2))));
+            assertNull(execute.routingToken());
+        }
+    }
+
+    @Test
+    public void testShardedRequests() throws Throwable
+    {
+        createTable("CREATE TABLE %s (pk int PRIMARY KEY, v int)");
+
+        try (SimpleClient client = new SimpleClient(nativeAddr.getHostAddress(), nativePort))
+        {
+            client.connect(false);
+
+            ResultMessage.Prepared insert = client.prepare(table("INSERT INTO %s (pk, v) VALUES (?, ?)"));
+            for (int i = 0; i < 100; i++)
+            {
+                ResultMessage result = client.executePrepared(insert.statementId.bytes,
+                                                              Arrays.asList(ByteBufferUtil.bytes(i), ByteBufferUtil.bytes(i)),
+                                                              ConsistencyLevel.ONE);
+                assertTrue(result instanceof ResultMessage.Void);
+            }
+
+            ResultMessage.Prepared select = client.prepare(table("SELECT v FROM %s WHERE pk = ?"));
+            for (int i = 0; i < 100; i++)
+            {
+                ResultMessage result = client.executePrepared(select.statementId.bytes,
+                                                              Arrays.asList(ByteBufferUtil.bytes(i)),
+                                                              ConsistencyLevel.ONE);
+                assertEquals(1, ((ResultMessage.Rows) result).result.size());
+            }
+
+            // requests that can't be routed by token are still executed
+            ResultMessage result = client.execute(table("SELECT * FROM %s"), ConsistencyLevel.ONE);
+            assertEquals(100, ((ResultMessage.Rows) result).result.size());
+        }
+    }
+
+    private String table(String query)
+    {
+        return String.format(query, KEYSPACE + "." + currentTable());
+    }
+}
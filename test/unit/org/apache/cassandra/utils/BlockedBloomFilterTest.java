@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import org.apache.cassandra.io.util.DataOutputBuffer;
+import org.apache.cassandra.utils.IFilter.FilterKey;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockedBloomFilterTest
+{
+    private static final int ELEMENTS = 100000;
+
+    private static IFilter filter(long elements, double fpChance, boolean offheap)
+    {
+        return FilterFactory.getFilter(elements, fpChance, offheap, false, true);
+    }
+
+    @Test
+    public void testSizing()
+    {
+        for (double fpChance : new double[]{ 0.1, 0.01, 0.001 })
+        {
+            long bits = BlockedBloomFilter.bitsFor(ELEMENTS, fpChance);
+            assertEquals(0, bits % BlockedBloomFilter.BITS_PER_BLOCK);
+            assertTrue(bits >= ELEMENTS);
+        }
+        assertEquals(BlockedBloomFilter.BITS_PER_BLOCK, BlockedBloomFilter.bitsFor(0, 0.01));
+        assertTrue(BlockedBloomFilter.bitsFor(ELEMENTS, 0.001) > BlockedBloomFilter.bitsFor(ELEMENTS, 0.01));
+    }
+
+    @Test
+    public void testNoFalseNegatives()
+    {
+        for (boolean offheap : new boolean[]{ false, true })
+        {
+            try (IFilter bf = filter(ELEMENTS, 0.01, offheap))
+            {
+                assertTrue(bf instanceof BlockedBloomFilter);
+                ResetableIterator<ByteBuffer> keys = new KeyGenerator.RandomStringGenerator(314159, ELEMENTS);
+                while (keys.hasNext())
+                    bf.add(FilterTestHelper.wrap(keys.next()));
+
+                keys = new KeyGenerator.RandomStringGenerator(314159, ELEMENTS);
+                while (keys.hasNext())
+                {
+                    ByteBuffer key = keys.next();
+                    assertTrue(bf.isPresent(FilterTestHelper.wrap(key)));
+                    assertTrue(bf.isPresent(FilterTestHelper.wrapCached(key)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFalsePositives()
+    {
+        for (double fpChance : new double[]{ 0.1, 0.01 })
+        {
+            try (IFilter bf = filter(ELEMENTS, fpChance, true))
+            {
+                double ratio = falsePositiveRatio(bf);
+                // blocking costs a little accuracy compared to a classic filter of the same size, but not much
+                assertTrue(fpChance + " -> " + ratio, ratio < fpChance * 1.5);
+            }
+        }
+    }
+
+    private static double falsePositiveRatio(IFilter bf)
+    {
+        ResetableIterator<ByteBuffer> keys = new KeyGenerator.RandomStringGenerator(271828, ELEMENTS);
+        while (keys.hasNext())
+            bf.add(FilterTestHelper.wrap(keys.next()));
+
+        int fp = 0;
+        ResetableIterator<ByteBuffer> others = new KeyGenerator.RandomStringGenerator(161803, ELEMENTS);
+        while (others.hasNext())
+        {
+            if (bf.isPresent(FilterTestHelper.wrap(others.next())))
+                fp++;
+        }
+        return (double) fp / ELEMENTS;
+    }
+
+    @Test
+    public void testSerialize() throws IOException
+    {
+        try (IFilter bf = filter(ELEMENTS, 0.01, true))
+        {
+            ResetableIterator<ByteBuffer> keys = new KeyGenerator.RandomStringGenerator(42, 1000);
+            while (keys.hasNext())
+                bf.add(FilterTestHelper.wrap(keys.next()));
+
+            DataOutputBuffer out = new DataOutputBuffer();
+            FilterFactory.serialize(bf, out);
+            assertEquals(bf.serializedSize(), out.getLength());
+
+            ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+            try (IFilter bf2 = FilterFactory.deserialize(new DataInputStream(in), true, false, true))
+            {
+                assertTrue(bf2 instanceof BlockedBloomFilter);
+                BitSetTest.compare(((BlockedBloomFilter) bf).bitset, ((BlockedBloomFilter) bf2).bitset);
+                keys = new KeyGenerator.RandomStringGenerator(42, 1000);
+                while (keys.hasNext())
+                    assertTrue(bf2.isPresent(FilterTestHelper.wrap(keys.next())));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDeserializeClassicFilterFails() throws IOException
+    {
+        try (IFilter bf = FilterFactory.getFilter(1000, 0.01, false, false))
+        {
+            DataOutputBuffer out = new DataOutputBuffer();
+            FilterFactory.serialize(bf, out);
+            ByteArrayInputStream in = new ByteArrayInputStream(out.getData(), 0, out.getLength());
+            FilterFactory.deserialize(new DataInputStream(in), false, false, true).close();
+        }
+    }
+
+    @Test
+    public void testSingleBlockPerKey()
+    {
+        try (BlockedBloomFilter bf = (BlockedBloomFilter) filter(ELEMENTS, 0.01, false))
+        {
+            FilterKey key = FilterTestHelper.bytes("a");
+            bf.add(key);
+            long[] hash = new long[2];
+            key.filterHash(hash);
+            long block = bf.blockIndex(hash[0]);
+            for (long i = 0; i < bf.bitset.capacity(); i++)
+            {
+                if (bf.bitset.get(i))
+                    assertEquals(block, i / BlockedBloomFilter.BITS_PER_BLOCK);
+            }
+            assertFalse(bf.isPresent(FilterTestHelper.bytes("b")));
+        }
+    }
+}
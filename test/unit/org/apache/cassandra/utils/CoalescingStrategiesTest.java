@@ -20,6 +20,7 @@ package org.apache.cassandra.utils;
 import org.apache.cassandra.utils.CoalescingStrategies.Clock;
 import org.apache.cassandra.utils.CoalescingStrategies.Coalescable;
 import org.apache.cassandra.utils.CoalescingStrategies.CoalescingStrategy;
+import org.apache.cassandra.utils.CoalescingStrategies.DeferringParker;
 import org.apache.cassandra.utils.CoalescingStrategies.Parker;
 import org.junit.Before;
 import org.junit.Test;
@@ -206,6 +207,21 @@ public class CoalescingStrategiesTest
 
     }
 
+    @Test
+    public void testFixedCoalescingStrategyDefers() throws Exception
+    {
+        // callers that can't park are only woken once messages are available, and flush after the window instead
+        DeferringParker deferring = new DeferringParker();
+        cs = CoalescingStrategies.newCoalescingStrategy("FIXED", 200, deferring, logger, "Stupendopotamus");
+
+        add(42);
+        add(42);
+        cs.coalesce(input, output, 128);
+        assertEquals(2, output.size());
+        assertEquals(toNanos(200), deferring.takeDeferred());
+        assertEquals(0, deferring.takeDeferred());
+    }
+
     @Test
     public void testDisabledCoalescingStrateg() throws Exception
     {
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Murmur3DigestTest
+{
+    @Test
+    public void testMatchesReferenceImplementation()
+    {
+        Random random = new Random();
+        Murmur3Digest digest = new Murmur3Digest();
+        for (int length = 0; length < 100; length++)
+        {
+            byte[] bytes = new byte[length];
+            random.nextBytes(bytes);
+            digest.update(bytes);
+            assertArrayEquals(Hashing.murmur3_128().hashBytes(bytes).asBytes(), digest.digest());
+        }
+        assertEquals(Murmur3Digest.DIGEST_LENGTH, digest.getDigestLength());
+    }
+
+    @Test
+    public void testStreamingUpdates()
+    {
+        Random random = new Random();
+        for (int i = 0; i < 100; i++)
+        {
+            byte[] bytes = new byte[random.nextInt(200)];
+            random.nextBytes(bytes);
+            byte[] expected = Hashing.murmur3_128().hashBytes(bytes).asBytes();
+
+            // the same bytes, fed in random chunks through every update method
+            Murmur3Digest digest = new Murmur3Digest();
+            int offset = 0;
+            while (offset < bytes.length)
+            {
+                int length = Math.min(bytes.length - offset, random.nextInt(40));
+                switch (random.nextInt(4))
+                {
+                    case 0:
+                        for (int j = offset; j < offset + length; j++)
+                            digest.update(bytes[j]);
+                        break;
+                    case 1:
+                        digest.update(bytes, offset, length);
+                        break;
+                    case 2:
+                        digest.update(ByteBuffer.wrap(bytes, offset, length));
+                        break;
+                    default:
+                        ByteBuffer direct = ByteBuffer.allocateDirect(length);
+                        direct.order(random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                        direct.put(bytes, offset, length).flip();
+                        digest.update(direct);
+                        assertEquals(0, direct.remaining());
+                }
+                offset += length;
+            }
+            assertArrayEquals(expected, digest.digest());
+
+            // digesting resets the state
+            digest.update(bytes);
+            assertArrayEquals(expected, digest.digest());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.cassandra.utils.memory;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import org.apache.cassandra.utils.FastByteOperations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class NativeTrieTest
+{
+    private static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>()
+    {
+        public int compare(byte[] o1, byte[] o2)
+        {
+            return FastByteOperations.compareUnsigned(o1, 0, o1.length, o2, 0, o2.length);
+        }
+    };
+
+    @Test
+    public void testPutAndGet()
+    {
+        // a small alphabet produces many shared prefixes, a large one forces dense nodes
+        for (int alphabet : new int[]{ 2, 4, 64 })
+        {
+            Random random = new Random(alphabet);
+            NativeTrie trie = new NativeTrie();
+            TreeMap<byte[], Integer> expected = fill(trie, random, alphabet, 5000, 6);
+
+            for (Map.Entry<byte[], Integer> entry : expected.entrySet())
+                assertEquals((int) entry.getValue(), trie.get(entry.getKey()));
+            assertEquals(NativeTrie.NO_VALUE, trie.get(new byte[]{ (byte) 255, (byte) 255, (byte) 255, (byte) 255, (byte) 255, (byte) 255, (byte) 255 }));
+            trie.discard();
+        }
+    }
+
+    @Test
+    public void testPutIfAbsentKeepsFirstValue()
+    {
+        NativeTrie trie = new NativeTrie();
+        assertEquals(NativeTrie.NO_VALUE, trie.putIfAbsent(new byte[]{ 1, 2, 3 }, 1));
+        assertEquals(NativeTrie.NO_VALUE, trie.putIfAbsent(new byte[]{ 1 }, 2));
+        assertEquals(NativeTrie.NO_VALUE, trie.putIfAbsent(new byte[0], 3));
+        assertEquals(1, trie.putIfAbsent(new byte[]{ 1, 2, 3 }, 4));
+        assertEquals(2, trie.putIfAbsent(new byte[]{ 1 }, 5));
+        assertEquals(3, trie.putIfAbsent(new byte[0], 6));
+        assertEquals(1, trie.get(new byte[]{ 1, 2, 3 }));
+        assertEquals(NativeTrie.NO_VALUE, trie.get(new byte[]{ 1, 2 }));
+        trie.discard();
+    }
+
+    @Test
+    public void testCursorOrderAcrossPages()
+    {
+        Random random = new Random(42);
+        NativeTrie trie = new NativeTrie();
+        TreeMap<byte[], Integer> expected = fill(trie, random, 256, 50000, 32);
+        assert trie.sizeOffHeap() > NativeTrie.PAGE_SIZE;
+
+        NativeTrie.Cursor cursor = trie.cursor(null, null);
+        for (int value : expected.values())
+            assertEquals(value, cursor.next());
+        assertFalse(cursor.hasNext());
+        trie.discard();
+    }
+
+    @Test
+    public void testCursorBounds()
+    {
+        for (int alphabet : new int[]{ 3, 40 })
+        {
+            Random random = new Random(alphabet);
+            NativeTrie trie = new NativeTrie();
+            TreeMap<byte[], Integer> expected = fill(trie, random, alphabet, 2000, 5);
+
+            for (int i = 0; i < 500; i++)
+            {
+                NativeTrie.Bound left = random.nextInt(5) == 0 ? null : randomBound(random, alphabet);
+                NativeTrie.Bound right = random.nextInt(5) == 0 ? null : randomBound(random, alphabet);
+
+                List<Integer> inRange = new ArrayList<>();
+                for (Map.Entry<byte[], Integer> entry : expected.entrySet())
+                {
+                    if (left != null && !isAfter(entry.getKey(), left))
+                        continue;
+                    if (right != null && !isBefore(entry.getKey(), right))
+                        continue;
+                    inRange.add(entry.getValue());
+                }
+
+                List<Integer> found = new ArrayList<>();
+                NativeTrie.Cursor cursor = trie.cursor(left, right);
+                while (cursor.hasNext())
+                    found.add(cursor.next());
+                assertEquals(inRange, found);
+            }
+            trie.discard();
+        }
+    }
+
+    private static TreeMap<byte[], Integer> fill(NativeTrie trie, Random random, int alphabet, int count, int maxLength)
+    {
+        TreeMap<byte[], Integer> expected = new TreeMap<>(UNSIGNED);
+        for (int i = 0; i < count; i++)
+        {
+            byte[] key = randomBytes(random, alphabet, maxLength);
+            Integer previous = expected.putIfAbsent(key, i);
+            assertEquals(previous == null ? NativeTrie.NO_VALUE : previous, trie.putIfAbsent(key, i));
+        }
+        return expected;
+    }
+
+    private static byte[] randomBytes(Random random, int alphabet, int maxLength)
+    {
+        byte[] bytes = new byte[random.nextInt(maxLength + 1)];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = (byte) (random.nextInt(alphabet) * (256 / alphabet));
+        return bytes;
+    }
+
+    private static NativeTrie.Bound randomBound(Random random, int alphabet)
+    {
+        return new NativeTrie.Bound(randomBytes(random, alphabet, 4), random.nextInt(3) - 1, random.nextBoolean());
+    }
+
+    // reference implementation of Bound.compareTo, using plain byte array comparisons
+    private static int compare(byte[] key, NativeTrie.Bound bound)
+    {
+        boolean hasPrefix = key.length >= bound.bytes.length
+                            && UNSIGNED.compare(Arrays.copyOf(key, bound.bytes.length), bound.bytes) == 0;
+        if (!hasPrefix)
+            return UNSIGNED.compare(key, bound.bytes);
+        if (bound.side != 0)
+            return -bound.side;
+        return key.length == bound.bytes.length ? 0 : 1;
+    }
+
+    private static boolean isAfter(byte[] key, NativeTrie.Bound left)
+    {
+        int cmp = compare(key, left);
+        return cmp > 0 || (cmp == 0 && left.inclusive);
+    }
+
+    private static boolean isBefore(byte[] key, NativeTrie.Bound right)
+    {
+        int cmp = compare(key, right);
+        return cmp < 0 || (cmp == 0 && right.inclusive);
+    }
+}